@@ -0,0 +1,83 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-27: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks with the gc profiler, which adds allocation rates to the throughput, and saves
+ * the result as target/jmh/&lt;label&gt;.json. Use for example the commit id as label to compare the
+ * results of two commits.
+ */
+public class BenchmarkRunner {
+
+    // Non instantiable.
+    private BenchmarkRunner() {}
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args &lt;label&gt; [&lt;regexp of benchmarks to run&gt;]
+     */
+    public static void main(final String[] args) throws RunnerException {
+        if (args.length < 1) {
+            System.err.println("Usage: BenchmarkRunner <label> [<regexp of benchmarks to run>]");
+            System.exit(-1);
+        }
+
+        final File resultDir = new File("target/jmh");
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            System.err.println("Failed to create '" + resultDir + "'!");
+            System.exit(-1);
+        }
+
+        new Runner(
+                new OptionsBuilder()
+                        .include(args.length >= 2 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*")
+                        .addProfiler(GCProfiler.class)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(new File(resultDir, args[0] + ".json").getPath())
+                        .build()
+        ).run();
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-27: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.natusoft.doc.markdown.generator.styles.MSS;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Produces synthetic documents of a configurable size to benchmark with.
+ * <p/>
+ * The size is given as a number of sections. Each section contains the same mix of headers, paragraphs
+ * with inline formatting and links, lists, code blocks, block quotes and optionally an image. The same
+ * number of sections and seed always produces the same document, so results can be compared between runs.
+ */
+public class CorpusGenerator {
+
+    //
+    // Constants
+    //
+
+    private static final String[] WORDS = {
+            "markdown", "document", "generate", "parse", "section", "paragraph", "the", "a", "of", "and",
+            "to", "is", "with", "for", "this", "that", "output", "style", "font", "page", "text", "list",
+            "item", "code", "block", "quote", "image", "link", "header", "table", "content", "format",
+            "render", "layout", "margin", "width", "height", "color", "source", "result", "option", "value"
+    };
+
+    //
+    // Private Members
+    //
+
+    /** The number of sections to produce. */
+    private final int sections;
+
+    /** The seed to produce the same random content every time. */
+    private final long seed;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a new CorpusGenerator.
+     *
+     * @param sections The number of sections of the produced documents.
+     * @param seed The seed of the random content.
+     */
+    public CorpusGenerator(final int sections, final long seed) {
+        this.sections = sections;
+        this.seed = seed;
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Produces a markdown document.
+     *
+     * @param imageUrl The url of an image to include in each section, or null for no images.
+     */
+    public @NotNull String markdown(@Nullable final String imageUrl) {
+        return markdown(imageUrl, false);
+    }
+
+    /**
+     * Produces a markdown document.
+     *
+     * @param imageUrl The url of an image to include in each section, or null for no images.
+     * @param imagesInText If true the image of a section starts its first paragraph, so that the text can flow
+     *                     around it, otherwise the image is a paragraph of its own at the end of the section.
+     */
+    public @NotNull String markdown(@Nullable final String imageUrl, final boolean imagesInText) {
+        final Random random = new Random(this.seed);
+        final StringBuilder md = new StringBuilder();
+
+        for (int section = 1; section <= this.sections; section++) {
+            final int level = section % 5 == 1 ? 1 : (section % 2 == 0 ? 2 : 3);
+            for (int i = 0; i < level; i++) {
+                md.append('#');
+            }
+            md.append(" Section ").append(section).append(' ').append(words(random, 3)).append("\n\n");
+
+            for (int p = 0; p < 3; p++) {
+                if (p == 0 && imagesInText && imageUrl != null) {
+                    md.append("![Image ").append(section).append("](").append(imageUrl).append(") ");
+                }
+                paragraph(random, md, section);
+                md.append("\n\n");
+            }
+
+            for (int i = 0; i < 4; i++) {
+                md.append("* ").append(words(random, 4 + random.nextInt(8))).append('\n');
+                if (i % 2 == 1) {
+                    md.append("    * ").append(words(random, 3 + random.nextInt(5))).append('\n');
+                }
+            }
+            md.append('\n');
+
+            for (int i = 1; i <= 3; i++) {
+                md.append(i).append(". ").append(words(random, 5 + random.nextInt(6))).append('\n');
+            }
+            md.append('\n');
+
+            md.append("    for (int i = 0; i < ").append(section).append("; i++) {\n");
+            md.append("        System.out.println(\"").append(words(random, 4)).append("\");\n");
+            md.append("    }\n\n");
+
+            md.append("> ").append(words(random, 20 + random.nextInt(20))).append("\n\n");
+
+            if (imageUrl != null && !imagesInText) {
+                md.append("![Image ").append(section).append("](").append(imageUrl).append(")\n\n");
+            }
+
+            md.append("[ref").append(section).append("]: http://some.site/section/").append(section).append("\n\n");
+
+            if (section % 4 == 0) {
+                md.append("----\n\n");
+            }
+        }
+
+        return md.toString();
+    }
+
+    /**
+     * Produces one paragraph with inline formatting, and links.
+     *
+     * @param random The random source to use.
+     * @param md The markdown to append to.
+     * @param section The current section.
+     */
+    private static void paragraph(@NotNull final Random random, @NotNull final StringBuilder md, final int section) {
+        final int words = 40 + random.nextInt(40);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                md.append(' ');
+            }
+            final String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(20)) {
+                case 0:
+                    md.append('*').append(word).append('*');
+                    break;
+                case 1:
+                    md.append("**").append(word).append("**");
+                    break;
+                case 2:
+                    md.append('`').append(word).append('`');
+                    break;
+                case 3:
+                    md.append('[').append(word).append("](http://some.site/").append(word).append(')');
+                    break;
+                case 4:
+                    md.append("[ref").append(section).append(']');
+                    break;
+                case 5:
+                    md.append("<http://some.site/").append(word).append('>');
+                    break;
+                default:
+                    md.append(word);
+            }
+        }
+        md.append('.');
+    }
+
+    /**
+     * Returns a number of random words separated by space.
+     *
+     * @param random The random source to use.
+     * @param count The number of words to return.
+     */
+    private static @NotNull String words(@NotNull final Random random, final int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Produces a java source file with javadoc comments. Each section becomes a field and a method.
+     */
+    public @NotNull String javaSource() {
+        return javaSource("Corpus");
+    }
+
+    /**
+     * Produces a java source file with javadoc comments. Each section becomes a field and a method.
+     *
+     * @param className The name of the class in the source.
+     */
+    public @NotNull String javaSource(@NotNull final String className) {
+        final Random random = new Random(this.seed);
+        final StringBuilder java = new StringBuilder();
+
+        java.append("package se.natusoft.corpus;\n\n");
+        java.append("import java.util.List;\n\n");
+        java.append("/**\n * ").append(words(random, 20)).append("\n * <p/>\n * ").append(words(random, 30))
+                .append("\n */\n");
+        java.append("public class ").append(className).append(" {\n\n");
+
+        for (int section = 1; section <= this.sections; section++) {
+            java.append("    /** ").append(words(random, 8)).append(" */\n");
+            java.append("    public static final int VALUE_").append(section).append(" = ").append(section).append(";\n\n");
+
+            java.append("    /**\n     * ").append(words(random, 15)).append("\n     * ").append(words(random, 15))
+                    .append("\n     *\n");
+            java.append("     * @param name ").append(words(random, 5)).append("\n");
+            java.append("     * @param values ").append(words(random, 5)).append("\n");
+            java.append("     *\n     * @return ").append(words(random, 6)).append("\n");
+            java.append("     *\n     * @throws IllegalArgumentException ").append(words(random, 4)).append("\n");
+            java.append("     */\n");
+            java.append("    public String method").append(section)
+                    .append("(String name, List<String> values) throws IllegalArgumentException {\n");
+            java.append("        return name + values.size();\n");
+            java.append("    }\n\n");
+        }
+
+        java.append("}\n");
+
+        return java.toString();
+    }
+
+    /**
+     * Writes a tree of java source files, like the sources of a project, to a directory. Each file is produced
+     * with a seed of its own from the seed of this generator.
+     *
+     * @param dir The directory to write to.
+     * @param files The number of files to write.
+     *
+     * @return The written files.
+     *
+     * @throws IOException on failure to write.
+     */
+    public @NotNull List<File> writeJavaTree(@NotNull final File dir, final int files) throws IOException {
+        final List<File> sourceFiles = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            final File sourceFile = new File(dir, "Corpus" + i + ".java");
+            write(sourceFile, new CorpusGenerator(this.sections, this.seed + i).javaSource("Corpus" + i));
+            sourceFiles.add(sourceFile);
+        }
+        return sourceFiles;
+    }
+
+    /**
+     * Writes a small png image.
+     *
+     * @param imageFile The file to write to.
+     *
+     * @throws IOException on failure to write.
+     */
+    public static void writeImage(@NotNull final File imageFile) throws IOException {
+        final BufferedImage image = new BufferedImage(200, 120, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, 200, 120);
+            g.setColor(Color.BLUE);
+            g.fillOval(20, 10, 160, 100);
+        }
+        finally {
+            g.dispose();
+        }
+        ImageIO.write(image, "png", imageFile);
+    }
+
+    /**
+     * Writes an MSS file that is the default MSS, but with an external font for all text that uses
+     * HELVETICA in the default MSS.
+     *
+     * @param mssFile The file to write to.
+     * @param fontFile The true type font file to use.
+     *
+     * @throws IOException on failure to read the default MSS or to write.
+     */
+    public static void writeMSS(@NotNull final File mssFile, @NotNull final File fontFile) throws IOException {
+        final String mss = read(MSS.class.getClassLoader().getResourceAsStream("mss/default.mss"))
+                .replace("/fonts/ttf/some-font.ttf", fontFile.getAbsolutePath().replace("\\", "/"))
+                .replace("\"MDD-EXAMPLE\"", "\"CorpusFont\"")
+                .replace("\"HELVETICA\"", "\"CorpusFont\"");
+        write(mssFile, mss);
+    }
+
+    /**
+     * Writes an MSS file that is the default MSS, but with text flowing around images.
+     *
+     * @param mssFile The file to write to.
+     *
+     * @throws IOException on failure to read the default MSS or to write.
+     */
+    public static void writeImageFlowMSS(@NotNull final File mssFile) throws IOException {
+        final String mss = read(MSS.class.getClassLoader().getResourceAsStream("mss/default.mss"))
+                .replace("\"imgAlign\": \"LEFT\",", "\"imgAlign\": \"LEFT\",\n      \"imgFlow\": true,");
+        write(mssFile, mss);
+    }
+
+    /**
+     * Reads a text stream as UTF-8 and closes it.
+     *
+     * @param stream The stream to read. If this is null an IOException is thrown.
+     *
+     * @throws IOException on failure to read.
+     */
+    public static @NotNull String read(@Nullable final InputStream stream) throws IOException {
+        if (stream == null) {
+            throw new IOException("Resource to read not found!");
+        }
+        try {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes a text file as UTF-8.
+     *
+     * @param file The file to write to.
+     * @param text The text to write.
+     *
+     * @throws IOException on failure to write.
+     */
+    public static void write(@NotNull final File file, @NotNull final String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes a directory created for a corpus and its files.
+     *
+     * @param dir The directory to delete.
+     */
+    public static void deleteDir(@Nullable final File dir) {
+        if (dir != null) {
+            final File[] files = dir.listFiles();
+            if (files != null) {
+                for (final File file : files) {
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+            if (!dir.delete()) {
+                dir.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Writes a corpus to disk, for looking at or for profiling with other tools.
+     *
+     * @param args &lt;dir&gt; &lt;sections&gt; [&lt;font file&gt;]
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <dir> <sections> [<font file>]");
+            System.exit(-1);
+        }
+
+        final File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create '" + dir + "'!");
+        }
+        final CorpusGenerator generator = new CorpusGenerator(Integer.parseInt(args[1]), 1L);
+
+        final File image = new File(dir, "corpus.png");
+        writeImage(image);
+        write(new File(dir, "corpus.md"), generator.markdown(image.getAbsolutePath()));
+        write(new File(dir, "Corpus.java"), generator.javaSource());
+        if (args.length >= 3) {
+            writeMSS(new File(dir, "corpus.mss"), new File(args[2]));
+        }
+    }
+}
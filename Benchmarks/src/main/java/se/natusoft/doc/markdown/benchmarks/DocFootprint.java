@@ -0,0 +1,155 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import se.natusoft.doc.markdown.exception.ParseException;
+import se.natusoft.doc.markdown.model.Doc;
+import se.natusoft.doc.markdown.parser.Javadoc2MDParser;
+import se.natusoft.doc.markdown.parser.MarkdownParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how much heap a parsed document keeps, as bytes per MB of input. This is not a JMH benchmark since
+ * JMH measures allocation rates, not what is retained.
+ * <p/>
+ * Run it with the same heap settings when comparing two commits, for example:
+ *
+ *     java -Xmx2g -cp target/benchmarks.jar se.natusoft.doc.markdown.benchmarks.DocFootprint 1000
+ */
+public class DocFootprint {
+
+    // Non instantiable.
+    private DocFootprint() {}
+
+    /**
+     * Returns the used heap after garbage collection.
+     */
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // A few rounds since one System.gc() does not always collect everything.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Parses the markdown document and returns the parse result.
+     *
+     * @param markdown The document to parse.
+     */
+    private static Doc parseMarkdown(final byte[] markdown) throws IOException, ParseException {
+        final Doc doc = new Doc();
+        new MarkdownParser().parse(doc, new ByteArrayInputStream(markdown), null);
+        return doc;
+    }
+
+    /**
+     * Parses the java source file and returns the parse result.
+     *
+     * @param javaFile The file to parse.
+     */
+    private static Doc parseJavadoc(final File javaFile) throws IOException, ParseException {
+        final Doc doc = new Doc();
+        new Javadoc2MDParser().parse(doc, javaFile, null);
+        return doc;
+    }
+
+    /**
+     * Prints the heap kept per MB of input.
+     *
+     * @param name The name of the input.
+     * @param inputBytes The size of the input.
+     * @param before The used heap before parsing.
+     * @param docs The parse results, which must still be referenced when this is called.
+     */
+    private static void report(final String name, final long inputBytes, final long before, final List<Doc> docs)
+            throws InterruptedException {
+        final long kept = usedHeap() - before;
+        System.out.printf("%-10s %8.2f MB input in %d docs: %8.2f MB heap, %6.2f MB heap per MB input%n", name,
+                inputBytes / 1048576.0, docs.size(), kept / 1048576.0, (double)kept / inputBytes);
+    }
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args [&lt;sections&gt;] [&lt;number of documents&gt;]
+     */
+    public static void main(final String[] args) throws Exception {
+        final int sections = args.length >= 1 ? Integer.parseInt(args[0]) : 1000;
+        final int count = args.length >= 2 ? Integer.parseInt(args[1]) : 4;
+
+        final CorpusGenerator corpus = new CorpusGenerator(sections, 1L);
+        final byte[] markdown = corpus.markdown(null).getBytes(StandardCharsets.UTF_8);
+        final File corpusDir = Files.createTempDirectory("mddoc-footprint").toFile();
+        try {
+            final File javaFile = new File(corpusDir, "Corpus.java");
+            CorpusGenerator.write(javaFile, corpus.javaSource());
+
+            // Warm up so that classes and other one time data is not counted.
+            parseMarkdown(markdown);
+            parseJavadoc(javaFile);
+
+            final List<Doc> docs = new ArrayList<>();
+            long before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                docs.add(parseMarkdown(markdown));
+            }
+            report("markdown", (long)markdown.length * count, before, docs);
+
+            docs.clear();
+            before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                docs.add(parseJavadoc(javaFile));
+            }
+            report("javadoc", javaFile.length() * count, before, docs);
+        }
+        finally {
+            CorpusGenerator.deleteDir(corpusDir);
+        }
+    }
+}
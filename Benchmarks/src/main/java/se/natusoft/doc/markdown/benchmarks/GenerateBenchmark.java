@@ -0,0 +1,162 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-27: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.natusoft.doc.markdown.exception.GenerateException;
+import se.natusoft.doc.markdown.exception.ParseException;
+import se.natusoft.doc.markdown.generator.HTMLGenerator;
+import se.natusoft.doc.markdown.generator.MarkdownGenerator;
+import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions;
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions;
+import se.natusoft.doc.markdown.model.Doc;
+import se.natusoft.doc.markdown.parser.MarkdownParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the HTML and markdown generators. The document is parsed once, and the result is written to
+ * a stream that throws it away so that only the generating is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerateBenchmark {
+
+    //
+    // Properties
+    //
+
+    /** The number of sections of the generated documents. */
+    @Param({"10", "100"})
+    public int sections;
+
+    /** If true each section has an image. */
+    @Param({"false", "true"})
+    public boolean images;
+
+    //
+    // Private Members
+    //
+
+    /** Holds the image and the configured result files. */
+    private File corpusDir;
+
+    /** The parsed document to generate from. */
+    private Doc doc;
+
+    private HTMLGeneratorOptions htmlOptions;
+
+    private MarkdownGeneratorOptions markdownOptions;
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * Throws away everything written to it.
+     */
+    static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {}
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {}
+    }
+
+    //
+    // Methods
+    //
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        this.corpusDir = Files.createTempDirectory("mddoc-bench").toFile();
+
+        String imageUrl = null;
+        if (this.images) {
+            final File image = new File(this.corpusDir, "corpus.png");
+            CorpusGenerator.writeImage(image);
+            imageUrl = image.getAbsolutePath();
+        }
+        final String markdown = new CorpusGenerator(this.sections, 1L).markdown(imageUrl);
+
+        this.doc = new Doc();
+        new MarkdownParser().parse(this.doc, new ByteArrayInputStream(markdown.getBytes(StandardCharsets.UTF_8)), null);
+
+        this.htmlOptions = new HTMLGeneratorOptions();
+        this.htmlOptions.setResultFile(new File(this.corpusDir, "corpus.html").getAbsolutePath());
+        this.htmlOptions.setCss("corpus.css");
+
+        this.markdownOptions = new MarkdownGeneratorOptions();
+        this.markdownOptions.setResultFile(new File(this.corpusDir, "corpus.md").getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        CorpusGenerator.deleteDir(this.corpusDir);
+    }
+
+    @Benchmark
+    public void htmlGenerate() throws IOException, GenerateException {
+        new HTMLGenerator().generate(this.doc, this.htmlOptions, null, new NullOutputStream());
+    }
+
+    @Benchmark
+    public void markdownGenerate() throws IOException, GenerateException {
+        new MarkdownGenerator().generate(this.doc, this.markdownOptions, null, new NullOutputStream());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.natusoft.doc.markdown.exception.ParseException;
+import se.natusoft.doc.markdown.model.Doc;
+import se.natusoft.doc.markdown.parser.Javadoc2MDParser;
+import se.natusoft.doc.markdown.parser.ParallelDocParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing a tree of java source files with the javadoc parser, like when generating the API
+ * documentation of a project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavadocTreeBenchmark {
+
+    //
+    // Properties
+    //
+
+    /** The number of source files in the tree. */
+    @Param({"500"})
+    public int files;
+
+    /** The number of files to parse at the same time. */
+    @Param({"1", "4"})
+    public int parallelism;
+
+    //
+    // Private Members
+    //
+
+    /** The directory of the source tree. */
+    private File treeDir;
+
+    /** The source files to parse. */
+    private List<File> sourceFiles;
+
+    //
+    // Methods
+    //
+
+    @Setup
+    public void setup() throws IOException {
+        this.treeDir = Files.createTempDirectory("mddoc-bench").toFile();
+        this.sourceFiles = new CorpusGenerator(20, 1L).writeJavaTree(this.treeDir, this.files);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CorpusGenerator.deleteDir(this.treeDir);
+    }
+
+    @Benchmark
+    public Doc parseTree() throws IOException, ParseException {
+        final ParallelDocParser parser = new ParallelDocParser();
+        parser.setParser(new Javadoc2MDParser());
+        parser.setParallelism(this.parallelism);
+
+        final Doc doc = new Doc();
+        parser.parse(doc, this.sourceFiles);
+        return doc;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-27: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.natusoft.doc.markdown.generator.styles.MSS;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading of MSS files and looking up styles in them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MSSBenchmark {
+
+    //
+    // Private Members
+    //
+
+    /** The content of the default MSS. */
+    private byte[] defaultMSS;
+
+    /** The loaded default MSS. */
+    private MSS mss;
+
+    //
+    // Methods
+    //
+
+    @Setup
+    public void setup() throws IOException {
+        this.defaultMSS = CorpusGenerator.read(MSS.class.getClassLoader().getResourceAsStream("mss/default.mss"))
+                .getBytes(StandardCharsets.UTF_8);
+        this.mss = MSS.fromInputStream(new ByteArrayInputStream(this.defaultMSS));
+    }
+
+    @Benchmark
+    public MSS loadMSS() throws IOException {
+        return MSS.fromInputStream(new ByteArrayInputStream(this.defaultMSS));
+    }
+
+    /**
+     * Looks up the styles used for each section of a document page, like the renderer does on each style switch.
+     */
+    @Benchmark
+    public void lookupDocumentStyles(Blackhole blackhole) {
+        MSS.ForDocument forDocument = this.mss.getForDocument();
+        for (MSS.MSS_Pages section : MSS.MSS_Pages.values()) {
+            blackhole.consume(forDocument.getFont(section));
+            blackhole.consume(forDocument.getColorPair(section));
+            blackhole.consume(forDocument.getLeftMargin(section));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-27: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.natusoft.doc.markdown.exception.ParseException;
+import se.natusoft.doc.markdown.model.Doc;
+import se.natusoft.doc.markdown.parser.Javadoc2MDParser;
+import se.natusoft.doc.markdown.parser.MarkdownParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    //
+    // Properties
+    //
+
+    /** The number of sections of the parsed documents. */
+    @Param({"10", "100"})
+    public int sections;
+
+    //
+    // Private Members
+    //
+
+    /** The markdown document to parse. */
+    private byte[] markdown;
+
+    /** The directory of the java source file. */
+    private File corpusDir;
+
+    /** The java source file to parse. */
+    private File javaFile;
+
+    /** The java source to parse from a stream. */
+    private byte[] javaSource;
+
+    //
+    // Methods
+    //
+
+    @Setup
+    public void setup() throws IOException {
+        final CorpusGenerator corpus = new CorpusGenerator(this.sections, 1L);
+        this.markdown = corpus.markdown(null).getBytes(StandardCharsets.UTF_8);
+
+        this.corpusDir = Files.createTempDirectory("mddoc-bench").toFile();
+        this.javaFile = new File(this.corpusDir, "Corpus.java");
+        CorpusGenerator.write(this.javaFile, corpus.javaSource());
+        this.javaSource = corpus.javaSource().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CorpusGenerator.deleteDir(this.corpusDir);
+    }
+
+    @Benchmark
+    public Doc markdownParse() throws IOException, ParseException {
+        final Doc doc = new Doc();
+        new MarkdownParser().parse(doc, new ByteArrayInputStream(this.markdown), null);
+        return doc;
+    }
+
+    @Benchmark
+    public Doc javadocParse() throws IOException, ParseException {
+        final Doc doc = new Doc();
+        new Javadoc2MDParser().parse(doc, this.javaFile, null);
+        return doc;
+    }
+
+    @Benchmark
+    public Doc javadocStreamParse() throws IOException, ParseException {
+        final Doc doc = new Doc();
+        new Javadoc2MDParser().parse(doc, new ByteArrayInputStream(this.javaSource), null);
+        return doc;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Benchmarks
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         JMH benchmarks of parsing and generating.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.natusoft.doc.markdown.exception.GenerateException;
+import se.natusoft.doc.markdown.exception.ParseException;
+import se.natusoft.doc.markdown.generator.PDFBoxGenerator;
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions;
+import se.natusoft.doc.markdown.model.Doc;
+import se.natusoft.doc.markdown.parser.MarkdownParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the PDF generator laying out text that flows around images, which makes each line of text check
+ * for holes in the text area.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextFlowBenchmark {
+
+    //
+    // Properties
+    //
+
+    /** The number of sections of the generated documents. Each section starts with an image. */
+    @Param({"10", "50"})
+    public int sections;
+
+    //
+    // Private Members
+    //
+
+    /** Holds the image and the MSS. */
+    private File corpusDir;
+
+    /** The parsed document to generate from. */
+    private Doc doc;
+
+    private PDFGeneratorOptions options;
+
+    //
+    // Methods
+    //
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        this.corpusDir = Files.createTempDirectory("mddoc-bench").toFile();
+
+        final File image = new File(this.corpusDir, "corpus.png");
+        CorpusGenerator.writeImage(image);
+        final String markdown = new CorpusGenerator(this.sections, 1L).markdown(image.getAbsolutePath(), true);
+
+        this.doc = new Doc();
+        new MarkdownParser().parse(this.doc, new ByteArrayInputStream(markdown.getBytes(StandardCharsets.UTF_8)), null);
+
+        final File mss = new File(this.corpusDir, "corpus.mss");
+        CorpusGenerator.writeImageFlowMSS(mss);
+
+        this.options = new PDFGeneratorOptions();
+        this.options.setResultFile(new File(this.corpusDir, "corpus.pdf").getAbsolutePath());
+        this.options.setMss(mss.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        CorpusGenerator.deleteDir(this.corpusDir);
+    }
+
+    @Benchmark
+    public void flowGenerate() throws IOException, GenerateException {
+        new PDFBoxGenerator().generate(this.doc, this.options, null, new GenerateBenchmark.NullOutputStream());
+    }
+}
@@ -40,13 +40,15 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import se.natusoft.doc.markdown.api.Generator;
 import se.natusoft.doc.markdown.api.Options;
-import se.natusoft.doc.markdown.api.Parser;
 import se.natusoft.doc.markdown.exception.GenerateException;
 import se.natusoft.doc.markdown.exception.ParseException;
 import se.natusoft.doc.markdown.generator.GeneratorProvider;
 import se.natusoft.doc.markdown.model.Doc;
-import se.natusoft.doc.markdown.parser.ParserProvider;
+import se.natusoft.doc.markdown.parser.ParallelDocParser;
+import se.natusoft.doc.markdown.parser.ParseCache;
+import se.natusoft.doc.markdown.util.DocWatcher;
 import se.natusoft.doc.markdown.util.MDDocFileHandler;
+import se.natusoft.doc.markdown.util.Metrics;
 import se.natusoft.doc.markdown.util.SourcePaths;
 import se.natusoft.tools.optionsmgr.CommandLineOptionsManager;
 import se.natusoft.tools.optionsmgr.OptionsException;
@@ -54,6 +56,9 @@ import se.natusoft.tools.optionsmgr.OptionsModelException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -61,6 +66,13 @@ import java.util.Properties;
  */
 public class Main {
 
+    //
+    // Constants
+    //
+
+    /** The argument that makes the outputs be generated again each time an input file changes. */
+    private static final String WATCH_ARG = "--watch";
+
     // Non instantiable.
     private Main() {}
 
@@ -69,10 +81,14 @@ public class Main {
      *
      * @param args The arguments.
      */
-    public static void main(final String[] args) {
+    public static void main(String[] args) {
         try {
+            final List<String> argList = new ArrayList<>(Arrays.asList(args));
+            final boolean watch = argList.remove(WATCH_ARG);
+            args = argList.toArray(new String[argList.size()]);
+
             if (args.length == 1 && args[0].endsWith(".mddoc")) {
-                MDDocFileHandler.execute(args[0], true);
+                MDDocFileHandler.execute(args[0], true, watch);
             }
             else {
                 if (args.length < 2) {
@@ -111,7 +127,7 @@ public class Main {
                 }
                 else {
                     String fileSpec = args[1];
-                    generate(generator, fileSpec, options, parserOptions);
+                    generate(generator, fileSpec, options, parserOptions, watch);
                 }
             }
         }
@@ -145,11 +161,21 @@ public class Main {
         System.out.println("       or");
         System.out.println("       java -jar markdowndoc-cmd-line-n.n[.n]-exec.jar <path to a .mddoc file>");
         System.out.println("");
+        System.out.println("Add " + WATCH_ARG + " to any of the above to keep generating the output each time an input file changes.");
+        System.out.println("");
         System.out.println("Where <generator> is one of 'html' or 'pdf'. Specify generator and --help to se generator specific options.");
         System.out.println("and <fileSpec> is a comma separated set of paths to files to parse as input. Wildcards like /**/ and ");
         System.out.println("regular expressions can be used. No space on either side of the commas!");
         System.out.println("Example: src/main/docs/**/.*\\.md,...");
         System.out.println("");
+        System.out.println("To parse several input files at the same time, run java with -D" +
+                ParallelDocParser.PARALLELISM_PROPERTY + "=<number of files>.");
+        System.out.println("To only parse input files that have changed since the last run, run java with -D" +
+                ParseCache.CACHE_DIR_PROPERTY + "=<cache directory>.");
+        System.out.println("To get a JSON report of where the time went, run java with -D" +
+                Metrics.REPORT_PROPERTY + "=<report file>. For a summary, run java with -D" +
+                Metrics.SUMMARY_PROPERTY + "=true.");
+        System.out.println("");
     }
 
     /**
@@ -159,30 +185,59 @@ public class Main {
      * @param fileSpec The source files to parse.
      * @param options The generator options.
      * @param parserOptions The parser options.
+     * @param watch If true the output is generated again each time an input file changes until stopped.
      *
      * @throws ParseException
      * @throws GenerateException
      */
     private static void generate(@NotNull final Generator generator, @NotNull final String fileSpec,
-                                 @NotNull final Options options, @Nullable final Properties parserOptions)
+                                 @NotNull final Options options, @Nullable final Properties parserOptions,
+                                 final boolean watch)
             throws ParseException, GenerateException, IOException {
 
-        final Doc document = new Doc();
-
-        final SourcePaths sourcePaths = new SourcePaths(fileSpec);
-        for (File file : sourcePaths.getSourceFiles()) {
-            final Parser parser = ParserProvider.getParserForFile(file);
-            if (parser == null) {
-                ParseException parseException = new ParseException();
-                parseException.setFile(file.getAbsolutePath());
-                parseException.setLineNo(0);
-                parseException.setLine("");
-                parseException.setMessage("Don't know how to parse this file!");
-                throw parseException;
-            }
-            parser.parse(document, file, parserOptions);
+        final ParallelDocParser docParser = new ParallelDocParser();
+        docParser.setParallelism(ParallelDocParser.getParallelismFromSystemProperty());
+        docParser.setParserOptions(parserOptions);
+        final String parseCacheDir = System.getProperty(ParseCache.CACHE_DIR_PROPERTY);
+        if (parseCacheDir != null) {
+            final ParseCache parseCache = new ParseCache();
+            parseCache.setCacheDir(new File(parseCacheDir));
+            docParser.setParseCache(parseCache);
+        }
+
+        final File metricsReport = Metrics.getReportFileFromSystemProperty();
+        final boolean metricsSummary = Metrics.isSummaryFromSystemProperty();
+
+        if (watch) {
+            final DocWatcher watcher = new DocWatcher();
+            watcher.setFileSpec(fileSpec);
+            watcher.setDocParser(docParser);
+            watcher.setMetricsReport(metricsReport);
+            watcher.setMetricsSummary(metricsSummary);
+            watcher.addOutput(generator, options);
+            watcher.watch();
+            return;
         }
 
-        generator.generate(document, options, null);
+        final Metrics metrics = metricsReport != null || metricsSummary ? new Metrics() : null;
+        Metrics.setCurrent(metrics);
+        try {
+            final Doc document = new Doc();
+
+            final SourcePaths sourcePaths = new SourcePaths(fileSpec);
+            docParser.parse(document, sourcePaths.getSourceFiles());
+            if (docParser.getParseCache() != null) {
+                System.out.println(docParser.getParseCache().getStatistics());
+            }
+
+            generator.generate(document, options, null);
+
+            if (metrics != null) {
+                metrics.report(metricsReport, metricsSummary, System.out);
+            }
+        }
+        finally {
+            Metrics.setCurrent(null);
+        }
     }
 }
@@ -0,0 +1,315 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDocEditor
+ *     
+ *     Code Version
+ *         2.0.2
+ *     
+ *     Description
+ *         An editor that supports editing markdown with formatting preview.
+ *         
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *     
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *     
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *     
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-28: Created!
+ *
+ */
+package se.natusoft.doc.markdowndoc.editor
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+
+/**
+ * Splits one line of markdown into runs of styles for the MarkdownStyler.
+ * <p/>
+ * The lexer is stateful per line: it is given the state at the end of the previous line, and returns the
+ * state at the end of the lexed line. That is what makes code blocks and emphasis spanning several lines
+ * work when only some of the lines of a document are lexed again. A blank line ends everything.
+ * <p/>
+ * An instance holds no state of its own between lines, so it can be used from any thread.
+ */
+@CompileStatic
+@TypeChecked
+class MarkdownLineLexer {
+
+    //
+    // Constants
+    //
+
+    /** The styles of runs. H1 - H6 are 1 - 6. */
+    static final int H1 = 1
+    static final int EMPHASIS = 7
+    static final int BOLD = 8
+    static final int CODE = 9
+    static final int TINY = 10
+
+    /** The state at the beginning of a document. */
+    static final int START_STATE = 0
+
+    private static final int IN_CODE_BLOCK = 0x01
+    private static final int IN_EMPHASIS = 0x02
+    private static final int IN_BOLD = 0x04
+    private static final int UNDERSCORE_MARK = 0x08
+
+    private static final int[] NO_RUNS = new int[0]
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * The result of lexing one line.
+     */
+    static class LexedLine {
+        /** The state at the end of the line. */
+        int state
+
+        /** Triplets of start within line, length, and style. */
+        int[] runs
+    }
+
+    /**
+     * Collects the runs of a line.
+     */
+    private static class Runs {
+        private int[] runs = new int[24]
+        private int size = 0
+
+        void add(final int start, final int length, final int style) {
+            if (length > 0) {
+                if (this.size + 3 > this.runs.length) {
+                    this.runs = Arrays.copyOf(this.runs, this.runs.length * 2)
+                }
+                this.runs[this.size++] = start
+                this.runs[this.size++] = length
+                this.runs[this.size++] = style
+            }
+        }
+
+        int[] toArray() {
+            this.size == 0 ? NO_RUNS : Arrays.copyOf(this.runs, this.size)
+        }
+    }
+
+    //
+    // Properties
+    //
+
+    /** When true the markdown formatting characters are given their own TINY runs. */
+    boolean makeStylingCharsTiny = false
+
+    //
+    // Methods
+    //
+
+    /**
+     * Lexes a line, which should not include the line end.
+     *
+     * @param line The line to lex.
+     * @param state The state at the end of the previous line, or START_STATE for the first line.
+     */
+    @NotNull LexedLine lex(@NotNull final CharSequence line, final int state) {
+        final Runs runs = new Runs()
+        final int endState = lexRuns(line, state, runs)
+        new LexedLine(state: endState, runs: runs.toArray())
+    }
+
+    /**
+     * Lexes a line.
+     *
+     * @param s The line to lex.
+     * @param state The state at the end of the previous line.
+     * @param runs The found runs are added to this.
+     *
+     * @return The state at the end of the line.
+     */
+    private int lexRuns(@NotNull final CharSequence s, int state, @NotNull final Runs runs) {
+        final int n = s.length()
+        int pos = 0
+
+        if (isBlank(s)) {
+            return START_STATE
+        }
+
+        if ((state & IN_CODE_BLOCK) != 0) {
+            runs.add(0, n, CODE)
+            return state
+        }
+
+        // -- Header --------
+        if (s.charAt(0) == '#') {
+            int hashes = 0
+            while (hashes < n && s.charAt(hashes) == '#') {
+                ++hashes
+            }
+            final int size = Math.min(hashes, 6)
+            if (this.makeStylingCharsTiny) {
+                runs.add(0, size, TINY)
+                runs.add(size, n - size, H1 + size - 1)
+            }
+            else {
+                runs.add(0, n, H1 + size - 1)
+            }
+            return state
+        }
+
+        // -- Emphasis or bold continued from previous line --------
+        if ((state & (IN_EMPHASIS | IN_BOLD)) != 0) {
+            final char mark = (state & UNDERSCORE_MARK) != 0 ? (char)'_' : (char)'*'
+            final boolean bold = (state & IN_BOLD) != 0
+            final int end = indexOf(s, mark, pos)
+            if (end < 0) {
+                runs.add(pos, n - pos, bold ? BOLD : EMPHASIS)
+                return state
+            }
+            runs.add(pos, end - pos, bold ? BOLD : EMPHASIS)
+            if (this.makeStylingCharsTiny) {
+                runs.add(end, bold ? 2 : 1, TINY)
+            }
+            pos = end + (bold ? 2 : 1)
+            state &= ~(IN_EMPHASIS | IN_BOLD | UNDERSCORE_MARK)
+        }
+
+        while (pos < n) {
+            final char c = s.charAt(pos)
+
+            // -- Code --------
+            if (c == '`') {
+                int end = indexOf(s, c, pos + 1)
+                if (end < 0) {
+                    end = n
+                }
+                runs.add(pos + 1, end - pos - 1, CODE)
+                pos = end + 1
+            }
+            // -- Monospaced, lasting to the end of the paragraph --------
+            else if (isCodeIndent(s, pos)) {
+                runs.add(pos, n - pos, CODE)
+                return state | IN_CODE_BLOCK
+            }
+            // -- Bold italic (when not escaped, but when double escaped) --------
+            else if ((c == '*' || c == '_') && !isEscaped(s, pos)) {
+                final boolean bold = pos + 1 < n && s.charAt(pos + 1) == c
+                if (!bold && c == '*' && pos + 1 < n && s.charAt(pos + 1) == ' ') {
+                    ++pos // A list entry.
+                    continue
+                }
+                final int mark = bold ? 2 : 1
+                final int start = pos + mark
+                final int end = indexOf(s, c, start)
+                if (this.makeStylingCharsTiny) {
+                    runs.add(pos, mark, TINY)
+                }
+                if (end < 0) {
+                    runs.add(start, n - start, bold ? BOLD : EMPHASIS)
+                    return state | (bold ? IN_BOLD : IN_EMPHASIS) | (c == '_' ? UNDERSCORE_MARK : 0)
+                }
+                runs.add(start, end - start, bold ? BOLD : EMPHASIS)
+                if (this.makeStylingCharsTiny) {
+                    runs.add(end, mark, TINY)
+                }
+                pos = end + mark
+            }
+            else {
+                ++pos
+            }
+        }
+
+        state
+    }
+
+    /**
+     * Returns true if the line only contains whitespace.
+     *
+     * @param s The line to check.
+     */
+    private static boolean isBlank(@NotNull final CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false
+            }
+        }
+        true
+    }
+
+    /**
+     * Returns true if there is a tab or 4 spaces at the specified position, which is not the case for an indented
+     * list entry. This is code wherever in the line it is.
+     *
+     * @param s The line to check.
+     * @param at The position to check at.
+     */
+    private static boolean isCodeIndent(@NotNull final CharSequence s, final int at) {
+        if (!(s.charAt(at) == '\t' || startsWith(s, "    ", at))) {
+            return false
+        }
+        int pos = at
+        while (pos < s.length() && (s.charAt(pos) == ' ' || s.charAt(pos) == '\t')) {
+            ++pos
+        }
+        final char first = pos < s.length() ? s.charAt(pos) : (char)' '
+        !(first == '-' || first == '+' || first == '*')
+    }
+
+    /**
+     * Returns true if the char at the specified position is escaped by a backslash, which it is not if the
+     * backslash itself is escaped.
+     *
+     * @param s The line the char is in.
+     * @param pos The position of the char.
+     */
+    private static boolean isEscaped(@NotNull final CharSequence s, final int pos) {
+        pos >= 1 && s.charAt(pos - 1) == '\\' && !(pos >= 2 && s.charAt(pos - 2) == '\\')
+    }
+
+    private static int indexOf(@NotNull final CharSequence s, final char c, final int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i
+            }
+        }
+        -1
+    }
+
+    private static int indexOf(@NotNull final CharSequence s, @NotNull final String str, final int from) {
+        for (int i = from; i <= s.length() - str.length(); i++) {
+            if (startsWith(s, str, i)) {
+                return i
+            }
+        }
+        -1
+    }
+
+    private static boolean startsWith(@NotNull final CharSequence s, @NotNull final String str, final int at) {
+        if (at + str.length() > s.length()) {
+            return false
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (s.charAt(at + i) != str.charAt(i)) {
+                return false
+            }
+        }
+        true
+    }
+}
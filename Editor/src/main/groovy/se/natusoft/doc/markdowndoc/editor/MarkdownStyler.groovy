@@ -43,20 +43,30 @@ import org.jetbrains.annotations.Nullable
 import se.natusoft.doc.markdowndoc.editor.api.ConfigProvider
 import se.natusoft.doc.markdowndoc.editor.api.Configurable
 import se.natusoft.doc.markdowndoc.editor.api.JTextComponentStyler
-import se.natusoft.doc.markdowndoc.editor.api.JTextComponentStyler.ParagraphBounds
 import se.natusoft.doc.markdowndoc.editor.config.BooleanConfigEntry
 import se.natusoft.doc.markdowndoc.editor.config.ConfigEntry
 import se.natusoft.doc.markdowndoc.editor.config.IntegerConfigEntry
 import se.natusoft.doc.markdowndoc.editor.config.ValidSelectionConfigEntry
 
 import javax.swing.*
+import javax.swing.event.DocumentEvent
+import javax.swing.event.DocumentListener
 import javax.swing.text.*
 import java.awt.*
+import java.util.List
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
 
 import static se.natusoft.doc.markdowndoc.editor.config.Constants.CONFIG_GROUP_EDITING
 
 /**
  * This sits on a reference to a JTextPane and provides Markdown styling for it.
+ * <p/>
+ * Styling is incremental. Inserts and removes mark the lines they touch as damaged. The damaged lines
+ * are lexed by a MarkdownLineLexer on a background thread, continuing past them for as long as the state
+ * at the end of a line differs from before. The resulting runs are then applied on the EDT, but only for
+ * the damaged lines and for lines whose runs changed.
  */
 @CompileStatic
 @TypeChecked
@@ -66,16 +76,15 @@ class MarkdownStyler implements Configurable, JTextComponentStyler {
     // Constants
     //
 
-    private static final char HASH = '#' as char
-    private static final char NL = '\n' as char
-    private static final char CR = '\r' as char
-    private static final char SPACE = ' ' as char
-    private static final char TAB = '\t' as char
-    private static final char MINUS = '-' as char
-    private static final char PLUS = '+' as char
-    private static final char ASTERISK = '*' as char
-    private static final char UNDERSCORE = '_' as char
-    private static final char BACKSLASH = '\\' as char
+    /** Lexes the damaged lines of all stylers, one styling job at a time. */
+    private static final ExecutorService styleWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        Thread newThread(@NotNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "MarkdownStyler")
+            thread.setDaemon(true)
+            thread
+        }
+    })
 
     //
     // Private Members
@@ -87,6 +96,18 @@ class MarkdownStyler implements Configurable, JTextComponentStyler {
     /** The component to style. */
     private final JTextPane stylee
 
+    /** The document created by createDocumentModel(). */
+    private StyledDocument document = null
+
+    /** The lexed state and applied runs of each line of the document. */
+    private final StyledLines lines = new StyledLines()
+
+    /** Changed for each insert or remove in the document. */
+    private volatile int version = 0
+
+    /** True while a styling job is queued or running. Only used on the EDT. */
+    private boolean jobScheduled = false
+
     //
     // Config
     //
@@ -209,6 +230,148 @@ class MarkdownStyler implements Configurable, JTextComponentStyler {
     private Style tinyStyle
     private Style codeStyle
 
+    //
+    // Inner Classes
+    //
+
+    /**
+     * Holds what is known about each line of the document: the lexer state at the end of the line and the
+     * runs applied to it. Also keeps track of the range of damaged lines.
+     * <p/>
+     * This is updated by the document listener, and read when scheduling and applying styling jobs.
+     */
+    private static class StyledLines {
+        private int[] states = new int[256]
+        private int[][] runs = new int[256][]
+        private int size = 1
+
+        /** The first damaged line or -1 if none. */
+        int damageFrom = -1
+
+        /** The last damaged line. */
+        int damageTo = -1
+
+        int size() {
+            this.size
+        }
+
+        /**
+         * Resets to the specified number of lines, all damaged.
+         *
+         * @param lines The number of lines.
+         */
+        synchronized void reset(final int lines) {
+            this.size = 0
+            replace(0, 0, lines)
+            this.damageFrom = 0
+            this.damageTo = lines - 1
+        }
+
+        /**
+         * Replaces lines with new, damaged ones.
+         *
+         * @param index The index of the first line to replace.
+         * @param removed The number of lines to remove.
+         * @param added The number of new lines to insert in their place.
+         */
+        synchronized void replace(final int index, final int removed, final int added) {
+            final int newSize = this.size - removed + added
+            if (newSize > this.states.length) {
+                final int capacity = Math.max(newSize, this.states.length * 2)
+                this.states = Arrays.copyOf(this.states, capacity)
+                this.runs = (int[][])Arrays.copyOf(this.runs, capacity)
+            }
+            final int tail = this.size - index - removed
+            if (tail > 0) {
+                System.arraycopy(this.states, index + removed, this.states, index + added, tail)
+                System.arraycopy(this.runs, index + removed, this.runs, index + added, tail)
+            }
+            for (int i = index; i < index + added; i++) {
+                this.states[i] = MarkdownLineLexer.START_STATE
+                this.runs[i] = null
+            }
+            for (int i = newSize; i < this.size; i++) {
+                this.runs[i] = null
+            }
+            this.size = newSize
+
+            // Damaged lines after the replaced ones move with them.
+            final int shift = added - removed
+            if (this.damageFrom >= index + removed) this.damageFrom += shift
+            if (this.damageTo >= index + removed) this.damageTo += shift
+            if (this.damageTo >= this.size) this.damageTo = this.size - 1
+            damage(index, Math.max(index, index + added - 1))
+        }
+
+        /**
+         * Marks lines as damaged.
+         *
+         * @param from The first damaged line.
+         * @param to The last damaged line.
+         */
+        synchronized void damage(final int from, final int to) {
+            if (this.damageFrom < 0) {
+                this.damageFrom = from
+                this.damageTo = to
+            }
+            else {
+                this.damageFrom = Math.min(this.damageFrom, from)
+                this.damageTo = Math.max(this.damageTo, to)
+            }
+            this.damageTo = Math.min(this.damageTo, this.size - 1)
+        }
+
+        synchronized int[] copyStates() {
+            Arrays.copyOf(this.states, this.size)
+        }
+
+        synchronized int getState(final int line) {
+            this.states[line]
+        }
+
+        synchronized int[] getRuns(final int line) {
+            this.runs[line]
+        }
+
+        synchronized void set(final int line, final int state, @NotNull final int[] runs) {
+            this.states[line] = state
+            this.runs[line] = runs
+        }
+    }
+
+    /**
+     * What a styling job needs to know, taken on the EDT when the job is scheduled.
+     */
+    private static class JobSnapshot {
+        /** The document version the job is for. */
+        int version
+
+        /** The first damaged line. */
+        int from
+
+        /** The last damaged line. */
+        int to
+
+        /** The lexer state at the end of the line before the first damaged line. */
+        int startState
+
+        /** The lexer states at the end of each line when the job was scheduled. */
+        int[] oldStates
+
+        /** False if only the base style should be applied. */
+        boolean format
+    }
+
+    /**
+     * The lexed result of one line, to apply.
+     */
+    private static class StyledLine {
+        int line
+        int start
+        int length
+        MarkdownLineLexer.LexedLine lexed
+    }
+
     //
     // Constructors
     //
@@ -261,17 +424,25 @@ class MarkdownStyler implements Configurable, JTextComponentStyler {
      * Creates a new styled and initialized document model.
      */
     StyledDocument createDocumentModel() {
-        final StyledDocument doc = new DefaultStyledDocument() {
-            void insertString(final int offset, final String str, final AttributeSet a) throws BadLocationException {
-                super.insertString(offset, str, a)
-                if (MarkdownStyler.this.enabled) styleCurrentParagraph()
+        final StyledDocument doc = new DefaultStyledDocument()
+        doc.addDocumentListener(new DocumentListener() {
+            @Override
+            void insertUpdate(@NotNull final DocumentEvent e) {
+                linesChanged(e)
             }
 
-            void remove(final int offs, final int len) throws BadLocationException {
-                super.remove(offs, len)
-                if (MarkdownStyler.this.enabled) styleCurrentParagraph()
+            @Override
+            void removeUpdate(@NotNull final DocumentEvent e) {
+                linesChanged(e)
             }
-        }
+
+            @Override
+            void changedUpdate(@NotNull final DocumentEvent e) {
+                // Only attributes changed, which is what we do.
+            }
+        })
+        this.document = doc
+        this.lines.reset(doc.getDefaultRootElement().getElementCount())
 
         baseStyle = StyleContext.
                 getDefaultStyleContext().
@@ -347,317 +518,205 @@ class MarkdownStyler implements Configurable, JTextComponentStyler {
      */
     @Override
     void styleDocument() {
-        if (isEnabled() && this.stylee != null) {
-            try {
-                final StyledDocument doc = (StyledDocument) this.stylee.getDocument()
-
-                final String text = doc.getText(0, doc.getLength())
-
-                final ParagraphBounds bounds = new ParagraphBounds()
-                bounds.start = 0
-                bounds.end = text.length() - 1
-                intStyleDocument(this.stylee, bounds, text)
-            } catch (final BadLocationException ble) {
-                ble.printStackTrace(System.err)
-            }
+        if (this.document != null) {
+            this.lines.reset(this.document.getDefaultRootElement().getElementCount())
+            scheduleStyling()
         }
     }
 
     /**
-     * Styles the current paragraph.
+     * Styles the current paragraph, and any other lines changed while styling was disabled.
      */
     @Override
     void styleCurrentParagraph() {
-        if (isEnabled() && this.stylee != null) {
-            try {
-                final StyledDocument doc = (StyledDocument) this.stylee.getDocument()
-
-                final String text = doc.getText(0, doc.getLength())
-
-                final ParagraphBounds bounds = findParagraphBounds(this.stylee.getCaretPosition() - 1, text)
-                intStyleDocument(this.stylee, bounds, text)
-
-            } catch (final BadLocationException ble) {
-                ble.printStackTrace(System.err)
-            }
+        if (this.document != null && this.stylee != null) {
+            final int caretLine = this.document.getDefaultRootElement().getElementIndex(this.stylee.getCaretPosition())
+            this.lines.damage(caretLine, caretLine)
+            scheduleStyling()
         }
     }
 
     /**
-     * Styles part of the document specified by the paragraph bounds.
+     * Called by the document listener on inserts and removes to keep track of the lines of the document and
+     * to mark the lines touched as damaged.
      *
-     * @param stylee The component to style.
-     * @param bounds The bounds for styling.
-     * @param text The text of the document to style.
+     * @param e The document event.
      */
-    private void intStyleDocument(@NotNull final JTextPane stylee, @NotNull final ParagraphBounds bounds,
-                                  @Nullable String text) {
-        // Speedup by disabling component while styling.
-        stylee.setEnabled(false)
+    private void linesChanged(@NotNull final DocumentEvent e) {
+        ++this.version
 
-        StyledDocument doc = (StyledDocument)stylee.getDocument()
-        Style base = StyleContext.
-                getDefaultStyleContext().
-                getStyle(StyleContext.DEFAULT_STYLE)
+        final Element root = e.getDocument().getDefaultRootElement()
+        final DocumentEvent.ElementChange change = e.getChange(root)
+        if (change != null) {
+            this.lines.replace(change.getIndex(), change.getChildrenRemoved().length, change.getChildrenAdded().length)
+        }
 
-        try {
-            if (text == null) {
-                text = doc.getText(0, doc.getLength())
-            }
-            doc.setCharacterAttributes(bounds.start, bounds.end - bounds.start, base, true)
-            if (this.markdownFormatWhileEditing) {
-                for (int pos = bounds.start; pos <= bounds.end; pos++) {
-                    try {
-                        char c = text.charAt(pos)
-                        char p = pos == 0 ? text.charAt(pos) : text.charAt(pos - 1)
-                        char pp = pos <= 1 ? text.charAt(pos) : text.charAt(pos - 2)
-
-                        // -- Header --------
-                        if (c == HASH && p != '\\') {
-                            int cnt = 0
-                            int spos = pos
-                            while (pos < text.length() && text.charAt(pos) == HASH) {
-                                ++cnt
-                                ++pos
-                            }
-                            int epos = getPosOfNext(text, pos, '\n' as char)
-                            Style header = null
-
-                            // Only style if it starts at the beginning of a "paragraph".
-                            int hsize = 0
-                            if (pos <= 5 || text.charAt(pos - cnt - 1) == NL || text.charAt(pos - cnt - 1) == CR) {
-                                switch(cnt) {
-                                    case 1:
-                                        header = this.h1Style
-                                        hsize = 1
-                                        break
-                                    case 2:
-                                        header = this.h2Style
-                                        hsize = 2
-                                        break
-                                    case 3:
-                                        header = this.h3Style
-                                        hsize = 3
-                                        break
-                                    case 4:
-                                        header = this.h4Style
-                                        hsize = 4
-                                        break
-                                    case 5:
-                                        header = this.h5Syle
-                                        hsize = 5
-                                        break
-                                    default:
-                                        hsize = 6
-                                        header = this.h6Style
-                                }
-                            }
-                            if (header != null) {
-                                if (this.makeStylingCharsTiny) {
-                                    doc.setCharacterAttributes(spos + hsize, epos - (spos + hsize), header, true)
-                                    doc.setCharacterAttributes(spos, hsize, this.tinyStyle, true)
-                                }
-                                else {
-                                    doc.setCharacterAttributes(spos, epos - spos, header, true)
-                                }
-                            }
-                            pos = epos
-                        }
-                        // -- Code --------
-                        else if (c == '`' as char) {
-                            ++pos
-                            int spos = pos
-                            int cnt = 0
-                            while (pos < text.length() && text.charAt(pos) != '`' && text.charAt(pos) != '\n') {
-                                ++cnt
-                                ++pos
-                            }
-                            doc.setCharacterAttributes(spos, cnt, this.codeStyle, true)
-                            ++pos
-                        }
-                        // -- Monospaced --------
-                        else if ((pos >= 4 && c == SPACE && text.charAt(pos + 1) == SPACE &&
-                                text.charAt(pos + 2) == SPACE && text.charAt(pos + 3) == SPACE) ||
-                                (pos >= 2 && c == TAB)) {
-
-                            boolean isList = true
-                            if (pos >= 5) {
-                                int checkPos = pos + 4
-                                while (text.charAt(checkPos) == SPACE) {
-                                    ++checkPos
-                                }
-                                char p4 = text.charAt(checkPos)
-                                if (p4 != MINUS && p4 != PLUS && p4 != ASTERISK) {
-                                    isList = false
-                                }
-                            }
-
-                            if (!isList) {
-                                int epos = getEndOfParagraph(text, pos)
-                                doc.setCharacterAttributes(pos, (epos - pos), this.codeStyle, true)
-                                pos = epos
-                            }
-                        }
+        // The lines around the change might have been kept as elements, but their text has changed.
+        final int endOffset = e.getType() == DocumentEvent.EventType.INSERT ? e.getOffset() + e.getLength() : e.getOffset()
+        this.lines.damage(root.getElementIndex(e.getOffset()), root.getElementIndex(endOffset))
 
-                        // -- Bold italic (when not escaped, but when double escaped) --------
-                        else if ((c == UNDERSCORE || c == ASTERISK) && (p != BACKSLASH || pp == BACKSLASH)) {
-                            boolean bold = false
-                            int spos = pos
-                            if ((pos + 1) < text.length() && text.charAt(pos + 1) == c) {
-                                bold = true
-                                ++pos
-                            }
-                            else if (c == ASTERISK && (pos + 1) < text.length() &&
-                                    text.charAt(pos + 1) == SPACE) {
-                                continue // Skip if there is a spaced after *. This means it is a list entry.
-                            }
-
-                            @SuppressWarnings("UnnecessaryLocalVariable") // No, this is not unnecessary! It makes it
-                                                                          // clear what it is!
-                            char endChar = c
-                            int epos = getPosOfNext(text, pos + 1, endChar)
-
-                            if (bold) {
-                                doc.setCharacterAttributes(spos + 2, epos - spos - 2, this.boldStyle, true)
-                                if (this.makeStylingCharsTiny) {
-                                    doc.setCharacterAttributes(spos, 2, this.tinyStyle, true)
-                                    doc.setCharacterAttributes(epos, 2, this.tinyStyle, true)
-                                }
-                            }
-                            else {
-                                doc.setCharacterAttributes(spos + 1, epos - spos - 1, this.emphasisStyle, true)
-                                if (this.makeStylingCharsTiny) {
-                                    doc.setCharacterAttributes(spos, 1, this.tinyStyle, true)
-                                    doc.setCharacterAttributes(epos, 1, this.tinyStyle, true)
-                                }
-                            }
-                            pos = epos + 1
-                        }
-                    }
-                    catch (IndexOutOfBoundsException ignore) {/* hide these intentionally! */}
-                }
-            }
+        if (this.enabled) {
+            scheduleStyling()
         }
-        catch (BadLocationException ble) {
-            ble.printStackTrace(System.err)
-        }
-
-        stylee.setEnabled(true)
     }
 
-
     /**
-     * Returns the position of the next 'n'.
-     *
-     * @param text The text to search.
-     * @param start The position to start at.
-     * @param n The character to find.
+     * Schedules lexing of the damaged lines on the style worker, unless a job is already queued or running.
+     * When that job is done it schedules a new job for what has been damaged since it was scheduled.
      */
-    private static int getPosOfNext(@NotNull final String text, final int start, final char n) {
-        int npos = start
-        try {
-            char prev = ' '
-            char prevprev = ' '
-            while (npos < text.length() && !(prev == NL && prevprev == NL) &&
-                    text.charAt(npos) != n) {
-                prevprev = prev
-                prev = text.charAt(npos)
-                ++npos
-            }
+    private void scheduleStyling() {
+        if (!this.enabled || this.document == null || this.jobScheduled) {
+            return
+        }
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater { scheduleStyling() }
+            return
         }
-        catch (final IndexOutOfBoundsException ignore) {/*OK*/}
 
-        npos
+        final StyledDocument doc = this.document
+        if (this.lines.size() != doc.getDefaultRootElement().getElementCount()) {
+            // Should not happen, but if we are out of sync, start over.
+            this.lines.reset(doc.getDefaultRootElement().getElementCount())
+        }
+        if (this.lines.damageFrom < 0) {
+            return
+        }
+
+        final JobSnapshot snapshot = new JobSnapshot(
+                version: this.version,
+                from: this.lines.damageFrom,
+                to: this.lines.damageTo,
+                startState: this.lines.damageFrom > 0 ? this.lines.getState(this.lines.damageFrom - 1) :
+                        MarkdownLineLexer.START_STATE,
+                oldStates: this.lines.copyStates(),
+                format: this.markdownFormatWhileEditing
+        )
+        final MarkdownLineLexer lexer = new MarkdownLineLexer(makeStylingCharsTiny: this.makeStylingCharsTiny)
+
+        this.jobScheduled = true
+        styleWorker.submit {
+            List<StyledLine> styledLines = null
+            try {
+                styledLines = lexLines(doc, snapshot, lexer)
+            }
+            catch (final Exception e) {
+                e.printStackTrace(System.err)
+            }
+            final List<StyledLine> result = styledLines
+            SwingUtilities.invokeLater { applyStyling(snapshot, result) }
+        }
     }
 
     /**
-     * Returns the position of the end of the paragraph.
+     * Lexes the damaged lines, and the lines after them until the state at the end of a line is the same as
+     * before. This runs on the style worker holding a read lock on the document.
      *
-     * @param text The text to search.
-     * @param start The position to start searching at.
+     * @param doc The document to lex.
+     * @param snapshot What to lex.
+     * @param lexer The lexer to use.
+     *
+     * @return The lexed lines or null if the document has changed since the job was scheduled.
      */
-    private static int getEndOfParagraph(@NotNull final String text, final int start) {
-        int npos = start
-
-        try {
-            // I'm leaving this commented out just to remind me of my stupidity!
-            //while (npos < text.length() && safeGetChar(text, npos) != '\n' && safeGetChar(text, (npos + 1)) != '\n') {
-            //    ++npos
-            //}
-            while (npos < text.length()) {
-                if (safeGetChar(text, npos) == NL && safeGetChar(text, npos + 1) == NL) {
+    private List<StyledLine> lexLines(@NotNull final StyledDocument doc, @NotNull final JobSnapshot snapshot,
+                                      @NotNull final MarkdownLineLexer lexer) {
+        final List<StyledLine> styledLines = new LinkedList<>()
+        boolean stale = false
+
+        doc.render {
+            if (this.version != snapshot.version) {
+                stale = true
+                return
+            }
+
+            final Element root = doc.getDefaultRootElement()
+            final Segment text = new Segment()
+            int state = snapshot.startState
+            for (int line = snapshot.from; line < root.getElementCount(); line++) {
+                final Element lineElement = root.getElement(line)
+                final int start = lineElement.getStartOffset()
+                final int length = Math.max(0, Math.min(lineElement.getEndOffset(), doc.getLength()) - start)
+                doc.getText(start, length, text)
+                // The line end is not part of the line.
+                final int lineLength = length > 0 && text.charAt(length - 1) == '\n' ? length - 1 : length
+                text.count = lineLength
+
+                final MarkdownLineLexer.LexedLine lexed = snapshot.format ? lexer.lex(text, state) :
+                        new MarkdownLineLexer.LexedLine(state: MarkdownLineLexer.START_STATE, runs: new int[0])
+                styledLines.add(new StyledLine(line: line, start: start, length: lineLength, lexed: lexed))
+                state = lexed.state
+
+                if (line >= snapshot.to && line < snapshot.oldStates.length && state == snapshot.oldStates[line]) {
                     break
                 }
-                ++npos;
             }
         }
-        catch (final IndexOutOfBoundsException ignore) { /* Intentionally_DoNothing */ }
 
-        if (npos >= text.length()) {
-            npos = text.length() - 1
-        }
-
-        npos
+        stale ? null : styledLines
     }
 
     /**
-     * Gets the char from the specified string at the specified position without the risk of a StringIndexOutOfBoundsException!
-     * By default a space is returned if such an exception occur. This makes the beginning and end of the text much less messy
-     * to handle.
+     * Applies the result of a styling job on the EDT. Damaged lines are always restyled since what was
+     * inserted into them got the attributes of where it was inserted. Other lines are only restyled if their
+     * runs changed. If the document has changed since the job was scheduled, the result is thrown away and
+     * a new job is scheduled.
      *
-     * @param text The text to get the character from.
-     * @param position The position in the text of the character to get.
+     * @param snapshot What was lexed.
+     * @param styledLines The lexed lines or null if nothing should be applied.
      */
-    private static char safeGetChar(@NotNull final String text, final int position) {
-        try {
-            text.charAt(position)
-        }
-        catch (final StringIndexOutOfBoundsException ignore) {
-            SPACE
+    private void applyStyling(@NotNull final JobSnapshot snapshot, @Nullable final List<StyledLine> styledLines) {
+        this.jobScheduled = false
+
+        if (styledLines != null && snapshot.version == this.version) {
+            for (final StyledLine styledLine : styledLines) {
+                final boolean damaged = styledLine.line >= snapshot.from && styledLine.line <= snapshot.to
+                if (damaged || !Arrays.equals(styledLine.lexed.runs, this.lines.getRuns(styledLine.line))) {
+                    applyRuns(styledLine)
+                }
+                this.lines.set(styledLine.line, styledLine.lexed.state, styledLine.lexed.runs)
+            }
+            synchronized (this.lines) {
+                if (this.lines.damageFrom >= snapshot.from && this.lines.damageTo <= snapshot.to) {
+                    this.lines.damageFrom = -1
+                    this.lines.damageTo = -1
+                }
+            }
         }
+
+        scheduleStyling()
     }
 
     /**
-     * Returns true if the character at the specified position in the specified text contains a "new line" character.
+     * Sets the base style on a line and then the styles of its runs.
      *
-     * @param text The text to the character from.
-     * @param position The position of the character to check.
+     * @param styledLine The line to style.
      */
-    private static boolean checkPgBound(@NotNull final String text, final int position) {
-        _intCheckPgBound(text, position) && _intCheckPgBound(text, position + 1)
-    }
-
-    private static boolean _intCheckPgBound(final String text, final int position) {
-        // Note that Groovy String[ix] returns another String, not a char!!
-        position < text.length() && position >= 0 && ( text[position] == '\n' || text[position] == '\r' )
+    private void applyRuns(@NotNull final StyledLine styledLine) {
+        final StyledDocument doc = this.document
+        doc.setCharacterAttributes(styledLine.start, styledLine.length, this.baseStyle, true)
+        final int[] runs = styledLine.lexed.runs
+        for (int i = 0; i < runs.length; i += 3) {
+            doc.setCharacterAttributes(styledLine.start + runs[i], runs[i + 1], styleOf(runs[i + 2]), true)
+        }
     }
 
     /**
-     * Find the beginning of the current paragraph and then the end of it, and returns those found bounds.
+     * Returns the style to use for a run style of the lexer.
      *
-     * @param currentPos The current position in the text to scan.
-     * @param text The text to scan.
+     * @param runStyle The run style to get the style for.
      */
-    private static ParagraphBounds findParagraphBounds(int currentPos, @NotNull final String text) {
-        if (currentPos < 0) { currentPos = 0 }
-        final ParagraphBounds bounds = new ParagraphBounds()
-
-        // Find beginning
-        while (currentPos > 0 && !checkPgBound(text, currentPos)) {
-            --currentPos
-        }
-        bounds.start = text.length() > currentPos ? (text.charAt(currentPos) == SPACE ?
-                currentPos + 1 : currentPos) : currentPos
-
-        // Find end
-        currentPos = bounds.start + 1
-        while (currentPos < text.length() && !checkPgBound(text, currentPos)) {
-            ++currentPos
+    private @NotNull Style styleOf(final int runStyle) {
+        switch (runStyle) {
+            case MarkdownLineLexer.H1: return this.h1Style
+            case MarkdownLineLexer.H1 + 1: return this.h2Style
+            case MarkdownLineLexer.H1 + 2: return this.h3Style
+            case MarkdownLineLexer.H1 + 3: return this.h4Style
+            case MarkdownLineLexer.H1 + 4: return this.h5Syle
+            case MarkdownLineLexer.H1 + 5: return this.h6Style
+            case MarkdownLineLexer.EMPHASIS: return this.emphasisStyle
+            case MarkdownLineLexer.BOLD: return this.boldStyle
+            case MarkdownLineLexer.CODE: return this.codeStyle
+            case MarkdownLineLexer.TINY: return this.tinyStyle
+            default: return this.baseStyle
         }
-        bounds.end = text.length() > currentPos ? (text.charAt(currentPos) == SPACE ?
-                currentPos - 1 : currentPos) : currentPos
-
-        bounds
     }
-
 }
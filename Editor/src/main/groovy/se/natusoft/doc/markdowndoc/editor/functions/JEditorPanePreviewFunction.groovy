@@ -41,21 +41,18 @@ import groovy.transform.TypeChecked
 import net.iharder.dnd.FileDrop
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
-import se.natusoft.doc.markdown.api.Generator
-import se.natusoft.doc.markdown.api.Parser
-import se.natusoft.doc.markdown.exception.GenerateException
-import se.natusoft.doc.markdown.exception.ParseException
-import se.natusoft.doc.markdown.generator.HTMLGenerator
-import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
-import se.natusoft.doc.markdown.model.Doc
-import se.natusoft.doc.markdown.parser.MarkdownParser
 import se.natusoft.doc.markdowndoc.editor.ToolBarGroups
 import se.natusoft.doc.markdowndoc.editor.api.*
 import se.natusoft.doc.markdowndoc.editor.config.*
 import se.natusoft.doc.markdowndoc.editor.exceptions.FunctionException
+import se.natusoft.doc.markdowndoc.editor.functions.utils.PreviewRenderer
 import se.natusoft.doc.markdowndoc.editor.gui.MDECaret
 
 import javax.swing.*
+import javax.swing.event.DocumentEvent
+import javax.swing.event.DocumentListener
+import javax.swing.text.DefaultCaret
+import javax.swing.text.Document
 import javax.swing.text.html.HTMLEditorKit
 import java.awt.*
 import java.awt.event.*
@@ -65,6 +62,9 @@ import static se.natusoft.doc.markdowndoc.editor.config.Constants.CONFIG_GROUP_P
 
 /**
  * This provides formatted markdown preview function.
+ * <p/>
+ * The preview is live. While it is shown, changes to the editor content are rendered again in the
+ * background after a short pause, replacing only the parts of the preview that changed.
  */
 @CompileStatic
 @TypeChecked
@@ -76,8 +76,30 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
 
     private JToggleButton previewButton
     private JEditorPane preview
+    private PreviewRenderer renderer
     private boolean enabled = false
 
+    /** The editor document being previewed, while the preview is on. */
+    private Document previewedDocument = null
+
+    /** Renders the editor content again when it changes while previewed. */
+    private DocumentListener editorContentListener = new DocumentListener() {
+        @Override
+        void insertUpdate(final DocumentEvent e) {
+            JEditorPanePreviewFunction.this.renderer.markdownChanged()
+        }
+
+        @Override
+        void removeUpdate(final DocumentEvent e) {
+            JEditorPanePreviewFunction.this.renderer.markdownChanged()
+        }
+
+        @Override
+        void changedUpdate(final DocumentEvent e) {
+            // Style changes does not affect the markdown.
+        }
+    }
+
     //
     // Properties
     //
@@ -211,6 +233,8 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
         this.preview = new JEditorPane()
         this.preview.editable = false
         this.preview.caret = new MDECaret()
+        // The preview is updated while shown, and should not scroll to the caret when that happens.
+        ((DefaultCaret)this.preview.caret).updatePolicy = DefaultCaret.NEVER_UPDATE
         this.preview.contentType = "text/html"
         this.preview.margin = new Insets(
                                   topMarginConfig.intValue,
@@ -221,6 +245,9 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
 
         this.preview.addKeyListener(this)
 
+        this.renderer = new PreviewRenderer(this.preview)
+        this.renderer.markdownSource = { this.editor.getEditorContent() }
+
         // We don't need to save the FileDrop instance since it installs itself into the first argument.
         // Do also note that FileDrop is an external library residing in the Editor/lib catalog since
         // it is not available on maven central.
@@ -266,15 +293,9 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
                 }
                 mdFileReader.close()
 
-                final String html = markdownToHTML(markdownText.toString())
-                this.preview.text = html
-                this.preview.setLocation(0,0)
-            }
-            catch (final ParseException pe) {
-                pe.printStackTrace(System.err)
-            }
-            catch (final GenerateException ge) {
-                ge.printStackTrace(System.err)
+                // The dropped file is shown until the preview is turned off, not replaced by editor changes.
+                unwatchEditorContent()
+                this.renderer.render(markdownText.toString(), { this.preview.setLocation(0,0) })
             }
             catch (final IOException ioe) {
                 ioe.printStackTrace(System.err)
@@ -326,6 +347,9 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
      * Restores the edit view.
      */
     private void previewOff() {
+        unwatchEditorContent()
+        this.renderer.cancel()
+
         this.editor.showEditorComponent()
 
         this.editor.enableToolBarGroup(ToolBarGroups.FORMAT.name())
@@ -337,12 +361,11 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
      */
     private void previewOn() {
         try {
-            final String html = markdownToHTML(this.editor.getEditorContent())
-            this.preview.setText(html)
-
             // Set a relatively correct position in the HTML view based on the
-            // edit view.
-            this.preview.location = this.editor.caretLocation
+            // edit view once the HTML has been rendered.
+            final Point caretLocation = this.editor.caretLocation
+            this.renderer.render(this.editor.getEditorContent(), { this.preview.location = caretLocation })
+            watchEditorContent()
 
             this.editor.showOtherComponent(this.preview)
 
@@ -357,46 +380,24 @@ class JEditorPanePreviewFunction implements EditorFunction, KeyListener, MouseMo
     }
 
     /**
-     * Takes a string of markdown and returns a string for formatted HTML.
-     *
-     * @param markdownText The markdown to convert to HTML.
-     *
-     * @return The HTML converted markdown.
-     *
-     * @throws IOException
-     * @throws ParseException
-     * @throws GenerateException
+     * Starts rendering the preview again when the editor content changes.
      */
-    private static @NotNull String markdownToHTML(@NotNull final String markdownText)
-            throws IOException, ParseException, GenerateException {
-
-        final ByteArrayInputStream markDownStream = new ByteArrayInputStream(markdownText.getBytes())
-
-        final Parser parser = new MarkdownParser()
-        final Doc document = new Doc()
-        final Properties parserOptions = new Properties()
-        parser.parse(document, markDownStream, parserOptions)
-        markDownStream.close()
-
-        final ByteArrayOutputStream htmlStream = new ByteArrayOutputStream()
-        final Generator generator = new HTMLGenerator()
-        final HTMLGeneratorOptions htmlOpts = new HTMLGeneratorOptions()
-        htmlOpts.inlineCSS = true
-        htmlOpts.css = null
-        htmlOpts.primitiveHTML = true
-        htmlOpts.resultFile = null
-        generator.generate(document, htmlOpts, null, htmlStream)
-        htmlStream.close()
-
-        String html = new String(htmlStream.toByteArray())
-
-        // This is a workaround for JEditorPane not supporting a CSS rule for making
-        // <code> sensible! It insists on indenting the first row with a tab! With
-        // this workaround it will be indenting a space. The drawback is that there
-        // will be one more empty line, but this still looks better.
-        html = html.replaceAll("<code>", "<code>\n&nbsp")
-
-        return html
+    private void watchEditorContent() {
+        unwatchEditorContent()
+        if (this.editor.editable != null) {
+            this.previewedDocument = this.editor.editable.editorPane.document
+            this.previewedDocument.addDocumentListener(this.editorContentListener)
+        }
+    }
+
+    /**
+     * Stops rendering the preview again when the editor content changes.
+     */
+    private void unwatchEditorContent() {
+        if (this.previewedDocument != null) {
+            this.previewedDocument.removeDocumentListener(this.editorContentListener)
+            this.previewedDocument = null
+        }
     }
 
     // KeyListener methods
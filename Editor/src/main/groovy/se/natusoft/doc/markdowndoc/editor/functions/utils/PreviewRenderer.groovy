@@ -0,0 +1,638 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDocEditor
+ *     
+ *     Code Version
+ *         2.0.2
+ *     
+ *     Description
+ *         An editor that supports editing markdown with formatting preview.
+ *         
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *     
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *     
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *     
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2015-08-03: Created!
+ *         2017-06-29: Created!
+ *
+ */
+package se.natusoft.doc.markdowndoc.editor.functions.utils
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.api.Generator
+import se.natusoft.doc.markdown.api.Parser
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.generator.HTMLGenerator
+import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+import javax.swing.*
+import javax.swing.text.BadLocationException
+import javax.swing.text.Element
+import javax.swing.text.html.HTMLDocument
+import java.awt.*
+import java.awt.event.ActionEvent
+import java.awt.event.ActionListener
+import java.util.List
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Renders markdown as HTML into a preview JEditorPane.
+ * <p/>
+ * The markdown is split into top level blocks at blank lines, and each block is rendered to HTML on its
+ * own on a background thread. Rendered blocks are cached by their markdown, so after an edit usually only
+ * the block being edited is parsed and generated again. When the result is shown, only the blocks that
+ * differ from what is already shown are replaced in the HTML document of the preview, which keeps the
+ * scroll position.
+ * <p/>
+ * Rendering of text that is still being edited is delayed until there has been a short pause in the
+ * changes, and a render that has been overtaken by a newer one is abandoned.
+ */
+@CompileStatic
+@TypeChecked
+class PreviewRenderer {
+
+    //
+    // Constants
+    //
+
+    /** The number of milliseconds of no changes before changed markdown is rendered. */
+    static final int DEBOUNCE_MILLIS = 300
+
+    /** The prefix of the ids of the div wrapping each block in the preview. */
+    private static final String BLOCK_ID_PREFIX = "mdblock-"
+
+    /** Renders the blocks of all previews, one render at a time. */
+    private static final ExecutorService renderWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        Thread newThread(@NotNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "MarkdownPreview")
+            thread.setDaemon(true)
+            thread
+        }
+    })
+
+    //
+    // Private Members
+    //
+
+    /** The pane to render into. */
+    private JEditorPane preview
+
+    /** Delays rendering of changed markdown until the changes pause. */
+    private javax.swing.Timer debounceTimer
+
+    /** Incremented for each new render. A render whose generation is no longer current is abandoned. */
+    private AtomicInteger generation = new AtomicInteger()
+
+    /** The rendered HTML of blocks by the markdown they were rendered from. Only used by the render worker. */
+    private Map<String, String> renderedBlocks = new HashMap<>()
+
+    /** The blocks currently shown in the preview, in order. Only used on the EDT. */
+    private List<ShownBlock> shownBlocks = null
+
+    /** Used to give each shown block a unique id. Only used on the EDT. */
+    private int nextBlockId = 0
+
+    //
+    // Properties
+    //
+
+    /** Provides the markdown to render when changes have paused. */
+    @Nullable Closure<String> markdownSource
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a new PreviewRenderer.
+     *
+     * @param preview The pane to render into.
+     */
+    PreviewRenderer(@NotNull final JEditorPane preview) {
+        this.preview = preview
+        this.debounceTimer = new javax.swing.Timer(DEBOUNCE_MILLIS, new ActionListener() {
+            @Override
+            void actionPerformed(final ActionEvent ignored) {
+                if (PreviewRenderer.this.markdownSource != null) {
+                    PreviewRenderer.this.render((String)PreviewRenderer.this.markdownSource.call())
+                }
+            }
+        })
+        this.debounceTimer.repeats = false
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Informs that the markdown has changed. The markdown provided by the markdownSource property will be
+     * rendered when there have been no further changes for DEBOUNCE_MILLIS. Must be called on the EDT.
+     */
+    void markdownChanged() {
+        this.debounceTimer.restart()
+    }
+
+    /**
+     * Renders the specified markdown in the background and shows it in the preview, keeping the scroll
+     * position. Any render in progress is abandoned. Must be called on the EDT.
+     *
+     * @param markdown The markdown to render.
+     */
+    void render(@NotNull final String markdown) {
+        render(markdown, null)
+    }
+
+    /**
+     * Renders the specified markdown in the background and shows it in the preview. Any render in progress
+     * is abandoned. Must be called on the EDT.
+     *
+     * @param markdown The markdown to render.
+     * @param whenShown If not null, this is called on the EDT when the result is shown instead of restoring
+     *                  the scroll position.
+     */
+    void render(@NotNull final String markdown, @Nullable final Closure whenShown) {
+        this.debounceTimer.stop()
+        final int renderGeneration = this.generation.incrementAndGet()
+        renderWorker.submit(new Runnable() {
+            @Override
+            void run() {
+                renderBlocks(markdown, renderGeneration, whenShown)
+            }
+        })
+    }
+
+    /**
+     * Abandons any pending or running render. Must be called on the EDT.
+     */
+    void cancel() {
+        this.debounceTimer.stop()
+        this.generation.incrementAndGet()
+    }
+
+    /**
+     * Returns true if the specified render has been overtaken by a newer render or a cancel.
+     *
+     * @param renderGeneration The generation of the render to check.
+     */
+    private boolean isStale(final int renderGeneration) {
+        this.generation.get() != renderGeneration
+    }
+
+    /**
+     * Renders all blocks of the markdown, reusing cached blocks, and passes the result on to the EDT.
+     * This runs on the render worker.
+     *
+     * @param markdown The markdown to render.
+     * @param renderGeneration The generation of this render.
+     * @param whenShown Passed on to showBlocks().
+     */
+    private void renderBlocks(
+            @NotNull final String markdown,
+            final int renderGeneration,
+            @Nullable final Closure whenShown
+    ) {
+        if (isStale(renderGeneration)) return
+
+        final List<String> lines = markdown.readLines()
+        final Map<String, String> linkSpecs = linkSpecs(lines)
+
+        final List<String> blockSources = new ArrayList<>()
+        for (final String block : splitBlocks(lines)) {
+            blockSources.add(withLinkSpecs(block, linkSpecs))
+        }
+
+        final List<String> blockHTML = new ArrayList<>(blockSources.size())
+        final Map<String, String> rendered = new HashMap<>()
+        for (final String source : blockSources) {
+            if (isStale(renderGeneration)) return
+
+            String html = this.renderedBlocks.get(source)
+            if (html == null) {
+                html = renderBlock(source)
+            }
+            rendered.put(source, html)
+            blockHTML.add(html)
+        }
+        // Only keep what is still in use so that the cache does not grow while typing.
+        this.renderedBlocks = rendered
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            void run() {
+                if (!isStale(renderGeneration)) {
+                    showBlocks(blockSources, blockHTML, whenShown)
+                }
+            }
+        })
+    }
+
+    /**
+     * Splits markdown lines into top level blocks that can be rendered separately. A block ends at a
+     * blank line unless the following line is indented, is a list item following a list, or a comment or
+     * div is still open.
+     *
+     * @param lines The markdown lines to split.
+     *
+     * @return The blocks, each with its lines terminated by newline.
+     */
+    static @NotNull List<String> splitBlocks(@NotNull final List<String> lines) {
+        final List<String> blocks = new LinkedList<>()
+        StringBuilder block = new StringBuilder()
+        boolean blockIsList = false
+        boolean inComment = false
+        int openDivs = 0
+        boolean afterBlank = false
+
+        for (final String line : lines) {
+            final String trimmed = line.trim()
+            if (trimmed.isEmpty()) {
+                afterBlank = true
+                if (block.length() > 0) block.append('\n')
+                continue
+            }
+
+            if (afterBlank && block.length() > 0 && !inComment && openDivs <= 0 &&
+                    !isIndented(line) && !(blockIsList && isListItem(trimmed))) {
+                blocks.add(block.toString())
+                block = new StringBuilder()
+            }
+            afterBlank = false
+
+            if (block.length() == 0) {
+                blockIsList = isListItem(trimmed)
+            }
+            block.append(line).append('\n')
+
+            final int commentStart = trimmed.lastIndexOf("<!--")
+            if (commentStart >= 0 && trimmed.indexOf("-->", commentStart) < 0) {
+                inComment = true
+            }
+            else if (inComment && trimmed.contains("-->")) {
+                inComment = false
+            }
+            if (trimmed.startsWith("<div")) ++openDivs
+            if (trimmed.startsWith("</div")) --openDivs
+        }
+        if (block.length() > 0) {
+            blocks.add(block.toString())
+        }
+
+        blocks
+    }
+
+    /**
+     * Returns true if the line starts with a tab or a space.
+     *
+     * @param line The line to check.
+     */
+    private static boolean isIndented(@NotNull final String line) {
+        final char first = line.charAt(0)
+        first == (char)' ' || first == (char)'\t'
+    }
+
+    /**
+     * Returns true if the trimmed line starts an unordered or ordered list item.
+     *
+     * @param trimmed The trimmed line to check.
+     */
+    private static boolean isListItem(@NotNull final String trimmed) {
+        if (trimmed.length() < 2) return false
+
+        final char first = trimmed.charAt(0)
+        if ((first == (char)'*' || first == (char)'-' || first == (char)'+') && trimmed.charAt(1) == (char)' ') {
+            return true
+        }
+
+        int i = 0
+        while (i < trimmed.length() && Character.isDigit(trimmed.charAt(i))) ++i
+        i > 0 && i + 1 < trimmed.length() && trimmed.charAt(i) == (char)'.' && trimmed.charAt(i + 1) == (char)' '
+    }
+
+    /**
+     * Returns the reference link definitions ("[label]: url") of the markdown lines by label. Like the
+     * parser this only includes definitions whose label is used as a link somewhere.
+     *
+     * @param lines The markdown lines to get the link definitions from.
+     */
+    private static @NotNull Map<String, String> linkSpecs(@NotNull final List<String> lines) {
+        final Map<String, String> linkSpecs = new LinkedHashMap<>()
+        final StringBuilder text = new StringBuilder()
+        for (final String line : lines) {
+            final String label = linkSpecLabel(line)
+            if (label != null) {
+                linkSpecs.put(label, line.trim())
+            }
+            else {
+                text.append(line).append('\n')
+            }
+        }
+
+        final Iterator<String> labels = linkSpecs.keySet().iterator()
+        while (labels.hasNext()) {
+            if (text.indexOf("[" + labels.next() + "]") < 0) {
+                labels.remove()
+            }
+        }
+
+        linkSpecs
+    }
+
+    /**
+     * Returns the label of a line that looks like a reference link definition, or null for other lines.
+     *
+     * @param line The line to check.
+     */
+    private static @Nullable String linkSpecLabel(@NotNull final String line) {
+        if (line.isEmpty() || isIndented(line)) return null
+        final String trimmed = line.trim()
+        if (!trimmed.startsWith("[")) return null
+        final int end = trimmed.indexOf("]:")
+
+        end > 1 ? trimmed.substring(1, end) : null
+    }
+
+    /**
+     * Returns the markdown of a block to render. Since a block can use a link defined anywhere in the
+     * document, the definitions used by the block are moved to it. This also makes a block render again
+     * when a definition it uses changes, but not when some other definition changes.
+     *
+     * @param block The markdown of the block.
+     * @param linkSpecs The link definitions of the document by label.
+     */
+    private static @NotNull String withLinkSpecs(@NotNull final String block, @NotNull final Map<String, String> linkSpecs) {
+        if (linkSpecs.isEmpty()) return block
+
+        final StringBuilder source = new StringBuilder()
+        for (final String line : block.readLines()) {
+            final String label = linkSpecLabel(line)
+            if (label == null || !linkSpecs.containsKey(label)) {
+                source.append(line).append('\n')
+            }
+        }
+        boolean first = true
+        for (final Map.Entry<String, String> linkSpec : linkSpecs.entrySet()) {
+            if (source.indexOf("[" + linkSpec.key + "]") >= 0) {
+                if (first) {
+                    source.append('\n')
+                    first = false
+                }
+                source.append(linkSpec.value).append('\n')
+            }
+        }
+
+        source.toString()
+    }
+
+    /**
+     * Renders one block to the HTML of its content.
+     *
+     * @param markdown The markdown of the block.
+     */
+    private static @NotNull String renderBlock(@NotNull final String markdown) {
+        try {
+            final String html = markdownToHTML(markdown)
+            final int bodyStart = html.indexOf("<body>")
+            final int bodyEnd = html.lastIndexOf("</body>")
+            if (bodyStart < 0 || bodyEnd < bodyStart) {
+                return ""
+            }
+
+            html.substring(bodyStart + "<body>".length(), bodyEnd)
+        }
+        catch (final Exception e) {
+            // A block being typed can be temporarily broken. Show it as is rather than interrupting with an
+            // error dialog for each pause in the typing.
+            e.printStackTrace(System.err)
+            "<pre>" + escape(markdown) + "</pre>"
+        }
+    }
+
+    /**
+     * Escapes text for use in HTML.
+     *
+     * @param text The text to escape.
+     */
+    private static @NotNull String escape(@NotNull final String text) {
+        text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+    }
+
+    /**
+     * Takes a string of markdown and returns a string for formatted HTML.
+     *
+     * @param markdownText The markdown to convert to HTML.
+     *
+     * @return The HTML converted markdown.
+     *
+     * @throws IOException
+     * @throws ParseException
+     * @throws GenerateException
+     */
+    static @NotNull String markdownToHTML(@NotNull final String markdownText)
+            throws IOException, ParseException, GenerateException {
+
+        final ByteArrayInputStream markDownStream = new ByteArrayInputStream(markdownText.getBytes())
+
+        final Parser parser = new MarkdownParser()
+        final Doc document = new Doc()
+        final Properties parserOptions = new Properties()
+        parser.parse(document, markDownStream, parserOptions)
+        markDownStream.close()
+
+        final ByteArrayOutputStream htmlStream = new ByteArrayOutputStream()
+        final Generator generator = new HTMLGenerator()
+        final HTMLGeneratorOptions htmlOpts = new HTMLGeneratorOptions()
+        htmlOpts.inlineCSS = true
+        htmlOpts.css = null
+        htmlOpts.primitiveHTML = true
+        htmlOpts.resultFile = null
+        generator.generate(document, htmlOpts, null, htmlStream)
+        htmlStream.close()
+
+        String html = new String(htmlStream.toByteArray(), "UTF-8")
+
+        // This is a workaround for JEditorPane not supporting a CSS rule for making
+        // <code> sensible! It insists on indenting the first row with a tab! With
+        // this workaround it will be indenting a space. The drawback is that there
+        // will be one more empty line, but this still looks better.
+        html = html.replaceAll("<code>", "<code>\n&nbsp")
+
+        return html
+    }
+
+    /**
+     * Shows rendered blocks in the preview. Only the blocks between the unchanged leading and trailing
+     * blocks are replaced in the document of the preview. This runs on the EDT.
+     *
+     * @param sources The markdown of the blocks to show.
+     * @param html The rendered HTML of the blocks to show.
+     * @param whenShown If not null, this is called when the blocks are shown instead of restoring the
+     *                  scroll position.
+     */
+    private void showBlocks(
+            @NotNull final List<String> sources,
+            @NotNull final List<String> html,
+            @Nullable final Closure whenShown
+    ) {
+        final JViewport viewport = this.preview.parent instanceof JViewport ? (JViewport)this.preview.parent : null
+        final Point viewPosition = viewport != null ? viewport.viewPosition : null
+
+        if (!patchBlocks(sources, html)) {
+            final List<ShownBlock> shown = new ArrayList<>(sources.size())
+            final StringBuilder page = new StringBuilder("<html>\n  <head>\n  </head>\n  <body>\n")
+            for (int i = 0; i < sources.size(); i++) {
+                final ShownBlock block = newShownBlock(sources.get(i))
+                page.append(block.toHTML(html.get(i)))
+                shown.add(block)
+            }
+            page.append("  </body>\n</html>\n")
+
+            this.preview.text = page.toString()
+            this.shownBlocks = shown
+        }
+
+        if (whenShown != null) {
+            whenShown.call()
+        }
+        else if (viewPosition != null) {
+            // Restore after the layout of the changed document.
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                void run() {
+                    viewport.viewPosition = viewPosition
+                }
+            })
+        }
+    }
+
+    /**
+     * Replaces the changed blocks of the shown document. Returns false if this cannot be done, in which
+     * case the whole document has to be replaced.
+     *
+     * @param sources The markdown of the blocks to show.
+     * @param html The rendered HTML of the blocks to show.
+     */
+    private boolean patchBlocks(@NotNull final List<String> sources, @NotNull final List<String> html) {
+        if (this.shownBlocks == null || !(this.preview.document instanceof HTMLDocument)) return false
+        final HTMLDocument document = (HTMLDocument)this.preview.document
+
+        final int oldSize = this.shownBlocks.size()
+        final int newSize = sources.size()
+        int prefix = 0
+        while (prefix < oldSize && prefix < newSize && this.shownBlocks.get(prefix).source == sources.get(prefix)) {
+            ++prefix
+        }
+        int suffix = 0
+        while (suffix < oldSize - prefix && suffix < newSize - prefix &&
+                this.shownBlocks.get(oldSize - 1 - suffix).source == sources.get(newSize - 1 - suffix)) {
+            ++suffix
+        }
+        if (prefix == oldSize && prefix == newSize) return true
+        // With nothing left to anchor the changed blocks to, the whole document is replaced.
+        if (prefix == 0 && suffix == 0) return false
+
+        try {
+            final List<ShownBlock> inserted = new ArrayList<>(newSize - prefix - suffix)
+            final StringBuilder insertedHTML = new StringBuilder()
+            for (int i = prefix; i < newSize - suffix; i++) {
+                final ShownBlock block = newShownBlock(sources.get(i))
+                insertedHTML.append(block.toHTML(html.get(i)))
+                inserted.add(block)
+            }
+
+            for (int i = prefix; i < oldSize - suffix; i++) {
+                final Element element = document.getElement(this.shownBlocks.get(i).id)
+                if (element == null) return false
+                document.removeElement(element)
+            }
+
+            if (!inserted.isEmpty()) {
+                final Element anchor = prefix > 0 ?
+                        document.getElement(this.shownBlocks.get(prefix - 1).id) :
+                        document.getElement(this.shownBlocks.get(oldSize - suffix).id)
+                if (anchor == null) return false
+                if (prefix > 0) {
+                    document.insertAfterEnd(anchor, insertedHTML.toString())
+                }
+                else {
+                    document.insertBeforeStart(anchor, insertedHTML.toString())
+                }
+            }
+
+            final List<ShownBlock> shown = new ArrayList<>(newSize)
+            shown.addAll(this.shownBlocks.subList(0, prefix))
+            shown.addAll(inserted)
+            shown.addAll(this.shownBlocks.subList(oldSize - suffix, oldSize))
+            this.shownBlocks = shown
+
+            true
+        }
+        catch (final BadLocationException | IOException e) {
+            e.printStackTrace(System.err)
+            false
+        }
+    }
+
+    /**
+     * Creates a new ShownBlock with a unique id.
+     *
+     * @param source The markdown of the block.
+     */
+    private @NotNull ShownBlock newShownBlock(@NotNull final String source) {
+        new ShownBlock(source: source, id: BLOCK_ID_PREFIX + (this.nextBlockId++))
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * A block shown in the preview.
+     */
+    private static class ShownBlock {
+
+        /** The markdown of the block. */
+        String source
+
+        /** The id of the div holding the block in the preview. */
+        String id
+
+        /**
+         * Returns the div to show the block in.
+         *
+         * @param html The rendered HTML of the block.
+         */
+        @NotNull String toHTML(@NotNull final String html) {
+            "<div id=\"" + this.id + "\">\n" + html + "</div>\n"
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-25: Created!
+ *
+ */
+package se.natusoft.doc.markdown.api
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.model.DocItem
+
+/**
+ * Receives top level DocItems one at a time from a StreamingParser.
+ */
+@CompileStatic
+@TypeChecked
+interface DocItemConsumer {
+
+    /**
+     * Receives the next completed top level DocItem. The item will not be changed by the parser after this call.
+     *
+     * @param docItem The received item.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on failures to generate output from the item.
+     */
+    void consume(@NotNull DocItem docItem) throws IOException, GenerateException
+}
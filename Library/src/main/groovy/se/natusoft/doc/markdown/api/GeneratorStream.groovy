@@ -0,0 +1,58 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-25: Created!
+ *
+ */
+package se.natusoft.doc.markdown.api
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import se.natusoft.doc.markdown.exception.GenerateException
+
+/**
+ * Output of a StreamingGenerator that is in progress. Each consumed DocItem is written directly and can then
+ * be forgotten.
+ */
+@CompileStatic
+@TypeChecked
+interface GeneratorStream extends DocItemConsumer {
+
+    /**
+     * Writes whatever ends the output and flushes it. The result stream is not closed.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    void finish() throws IOException, GenerateException
+}
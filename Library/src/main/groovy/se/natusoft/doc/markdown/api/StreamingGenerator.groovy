@@ -0,0 +1,65 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-25: Created!
+ *
+ */
+package se.natusoft.doc.markdown.api
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.exception.GenerateException
+
+/**
+ * A generator that can write its output one top level DocItem at a time.
+ */
+@CompileStatic
+@TypeChecked
+interface StreamingGenerator extends Generator {
+
+    /**
+     * Starts generating output. Pass the document items to the returned stream in order, and then call finish()
+     * on it. The result is the same as generate() would produce for a Doc with the same items.
+     *
+     * @param options The generator options.
+     * @param rootDir The optional root directory to prefix configured output with. Can be null.
+     * @param resultStream The stream to write the result to.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    @NotNull GeneratorStream generateStream(@NotNull Options options, @Nullable File rootDir,
+                                            @NotNull OutputStream resultStream) throws IOException, GenerateException
+}
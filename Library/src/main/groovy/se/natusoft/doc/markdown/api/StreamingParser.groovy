@@ -0,0 +1,81 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-25: Created!
+ *
+ */
+package se.natusoft.doc.markdown.api
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.exception.ParseException
+
+/**
+ * A parser that can pass each completed top level DocItem on to a consumer instead of building a complete Doc.
+ * This allows a generator to write output while parsing, without keeping the whole document in memory.
+ */
+@CompileStatic
+@TypeChecked
+interface StreamingParser extends Parser {
+
+    /**
+     * Parses a file and passes its top level DocItems to the consumer in document order.
+     *
+     * @param parseFile The file whose content to parse.
+     * @param parserOptions options to pass on to the parser.
+     * @param consumer Receives the parsed items.
+     *
+     * @throws IOException on failure.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException when thrown by the consumer.
+     */
+    void parse(@NotNull File parseFile, @Nullable Properties parserOptions, @NotNull DocItemConsumer consumer)
+            throws IOException, ParseException, GenerateException
+
+    /**
+     * Parses a stream and passes its top level DocItems to the consumer in document order.
+     *
+     * @param parseStream The stream whose content to parse.
+     * @param parserOptions options to pass on to the parser.
+     * @param consumer Receives the parsed items.
+     *
+     * @throws IOException on failure.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException when thrown by the consumer.
+     */
+    void parse(@NotNull InputStream parseStream, @Nullable Properties parserOptions, @NotNull DocItemConsumer consumer)
+            throws IOException, ParseException, GenerateException
+}
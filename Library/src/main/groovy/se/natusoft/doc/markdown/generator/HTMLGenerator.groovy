@@ -40,23 +40,41 @@ import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
-import se.natusoft.doc.markdown.api.Generator
+import se.natusoft.doc.markdown.api.GeneratorStream
 import se.natusoft.doc.markdown.api.Options
+import se.natusoft.doc.markdown.api.StreamingGenerator
 import se.natusoft.doc.markdown.exception.GenerateException
 import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
+import se.natusoft.doc.markdown.generator.utils.HTMLWriter
 import se.natusoft.doc.markdown.model.*
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.util.concurrent.*
 
 /**
  * This is a generator that generates HTML from a document model.
+ *
+ * When the splitLevel option is set and the result is written to a file, a "site" is generated instead of one
+ * page: the document is split into one page per header of splitLevel or higher, and each page gets the same table
+ * of contents. The pages are generated in parallel.
  */
 @CompileStatic
 @TypeChecked
-class HTMLGenerator implements Generator {
+class HTMLGenerator implements StreamingGenerator {
 
     private static class HTMLGeneratorContext extends GeneratorContext {
 
         /** The HTML generator options. */
         HTMLGeneratorOptions options
+
+        /** When generating a site, the id of each header. */
+        Map<Header, String> headerIds
+
+        /** When generating a site, the file name of the page each header id is on. */
+        Map<String, String> idPages
+
+        /** When generating a site, the file name of the page being generated. */
+        String page
     }
 
     //
@@ -94,20 +112,27 @@ class HTMLGenerator implements Generator {
                 rootDir: rootDir
         )
 
-        final def writer = rootDir != null ?
-                new FileWriter(rootDir.path + File.separator + context.options.resultFile) :
-                new FileWriter(context.options.resultFile)
+        final File resultFile = rootDir != null ?
+                new File(rootDir.path + File.separator + context.options.resultFile) :
+                new File(context.options.resultFile)
+
+        if (context.options.splitLevel > 0) {
+            generateSite(document, context, resultFile)
+            return
+        }
 
+        final HTMLWriter writer = new HTMLWriter(new FileOutputStream(resultFile))
         try {
             doGenerate(document, context.options, writer, context)
         }
         finally {
             writer.close()
         }
+        Metrics.count("bytesWritten", resultFile.length())
     }
 
     /**
-     * Generates output from DocItem model.
+     * Generates output from DocItem model. This always generates one page, also when the splitLevel option is set.
      *
      * @param document The model to generate from.
      * @param options The generator options.
@@ -127,11 +152,48 @@ class HTMLGenerator implements Generator {
                 rootDir: rootDir
         )
 
-        final OutputStreamWriter resultWriter = new OutputStreamWriter(resultStream)
+        final HTMLWriter resultWriter = new HTMLWriter(Metrics.countWritten(resultStream, "bytesWritten"))
         doGenerate(document, context.options, resultWriter, context)
         resultWriter.close()
     }
 
+    /**
+     * Starts generating HTML one top level DocItem at a time. The html head is written directly. This always
+     * generates one page, also when the splitLevel option is set.
+     *
+     * @param opts The generator options.
+     * @param rootDir The optional root directory to prefix configured output with. Can be null.
+     * @param resultStream The stream to write the result to.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    @Override
+    @NotNull GeneratorStream generateStream(@NotNull final Options opts, @Nullable final File rootDir,
+                                            @NotNull final OutputStream resultStream)
+            throws IOException, GenerateException {
+        final HTMLGeneratorContext context = new HTMLGeneratorContext(
+                options: opts as HTMLGeneratorOptions,
+                rootDir: rootDir
+        )
+
+        final HTMLWriter writer = new HTMLWriter(resultStream)
+        final HTMLOutput html = new HTMLOutput(w: writer)
+        writeStart(context.options, html)
+
+        new GeneratorStream() {
+            @Override
+            void consume(@NotNull final DocItem docItem) throws IOException, GenerateException {
+                writeDocItem(docItem, html, context)
+            }
+
+            @Override
+            void finish() throws IOException, GenerateException {
+                writeEnd(html)
+                writer.flush()
+            }
+        }
+    }
 
     /**
      * The main API for the generator. This does the job!
@@ -140,14 +202,272 @@ class HTMLGenerator implements Generator {
      * @param options The options.
      */
     private static void doGenerate(@NotNull final Doc document, @NotNull final HTMLGeneratorOptions options,
-                            @NotNull final Writer writer, @NotNull final HTMLGeneratorContext context)
+                            @NotNull final HTMLWriter writer, @NotNull final HTMLGeneratorContext context)
             throws IOException, GenerateException {
+        final long start = System.nanoTime()
+
+        final HTMLOutput html = new HTMLOutput(w: writer)
+
+        writeStart(options, html)
+        document.items.each { final DocItem docItem ->
+            writeDocItem(docItem, html, context)
+        }
+        writeEnd(html)
+        writer.flush()
 
-        final def printWriter = new PrintWriter(writer)
-        final def html = new HTMLOutput(pw: printWriter)
+        Metrics.time("html", start)
+    }
+
+    /**
+     * Generates one page per header of splitLevel or higher, and a first page with whatever comes before the first
+     * such header. The first page is written to the result file and the others next to it, named after it with
+     * the page number added.
+     *
+     * @param document The model to generate from.
+     * @param context The HTML generator context.
+     * @param resultFile The file to write the first page to.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    private static void generateSite(@NotNull final Doc document, @NotNull final HTMLGeneratorContext context,
+                                     @NotNull final File resultFile) throws IOException, GenerateException {
+        final long start = System.nanoTime()
+
+        final java.util.List<SitePage> pages = splitIntoPages(document, context.options.splitLevel,
+                resultFile.name)
+        final Map<Header, String> headerIds = new IdentityHashMap<>()
+        final Map<String, String> idPages = new HashMap<>()
+        final Set<String> usedIds = new HashSet<>()
+        pages.each { final SitePage page ->
+            page.items.each { final DocItem item ->
+                if (item instanceof Header) {
+                    final String id = uniqueId((item as Header).text, usedIds)
+                    headerIds.put(item as Header, id)
+                    idPages.put(id, page.fileName)
+                }
+            }
+        }
+        final byte[] toc = tableOfContents(pages, headerIds)
+
+        final File dir = resultFile.absoluteFile.parentFile
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(pages.size(), Runtime.runtime.availableProcessors()),
+                new ThreadFactory() {
+                    @Override
+                    Thread newThread(@NotNull final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "HTMLPageGenerator")
+                        thread.daemon = true
+                        thread
+                    }
+                }
+        )
+        try {
+            final java.util.List<Future<Object>> generated = new LinkedList<>()
+            pages.each { final SitePage page ->
+                final HTMLGeneratorContext pageContext = new HTMLGeneratorContext(
+                        options: context.options,
+                        rootDir: context.rootDir,
+                        headerIds: headerIds,
+                        idPages: idPages,
+                        page: page.fileName
+                )
+                generated.add(executor.submit(pageTask(page, new File(dir, page.fileName), toc, pageContext)))
+            }
+            for (final Future<Object> page : generated) {
+                try {
+                    page.get()
+                }
+                catch (final ExecutionException ee) {
+                    if (ee.cause instanceof IOException) throw ee.cause as IOException
+                    if (ee.cause instanceof GenerateException) throw ee.cause as GenerateException
+                    throw new GenerateException(message: "Failed to generate page!", cause: ee.cause)
+                }
+                catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt()
+                    throw new InterruptedIOException("Interrupted while generating pages!")
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+
+        Metrics.time("html", start)
+    }
+
+    /**
+     * Splits the top level items of a document into pages. A div that is open where a page ends is closed at the
+     * end of that page and opened again at the start of the next.
+     *
+     * @param document The document to split.
+     * @param splitLevel A header of this level or higher starts a new page.
+     * @param firstPage The file name of the first page.
+     */
+    private static @NotNull java.util.List<SitePage> splitIntoPages(@NotNull final Doc document, final int splitLevel,
+                                                                   @NotNull final String firstPage) {
+        final int extIx = firstPage.lastIndexOf('.')
+        final String baseName = extIx > 0 ? firstPage.substring(0, extIx) : firstPage
+        final String ext = extIx > 0 ? firstPage.substring(extIx) : ".html"
+
+        final java.util.List<SitePage> pages = new ArrayList<>()
+        SitePage page = new SitePage(fileName: firstPage)
+        pages.add(page)
+        // The innermost open div first.
+        final Deque<Div> openDivs = new LinkedList<>()
+        document.items.each { final DocItem item ->
+            if (item instanceof Header && (item as Header).level.level <= splitLevel) {
+                for (int i = 0; i < openDivs.size(); i++) {
+                    page.items.add(Div.endDiv())
+                }
+                page = new SitePage(fileName: baseName + "-" + pages.size() + ext, header: item as Header)
+                pages.add(page)
+                final Iterator<Div> outermostFirst = openDivs.descendingIterator()
+                while (outermostFirst.hasNext()) {
+                    page.items.add(Div.startDiv(outermostFirst.next().name))
+                }
+            }
+            page.items.add(item)
+
+            if (item instanceof Div) {
+                if ((item as Div).isStart()) {
+                    openDivs.push(item as Div)
+                }
+                else if (!openDivs.isEmpty()) {
+                    openDivs.pop()
+                }
+            }
+        }
+
+        pages
+    }
+
+    /**
+     * Returns an id for a header made from its text, that is not in the used ids. The returned id is added to the
+     * used ids.
+     *
+     * @param text The text of the header.
+     * @param usedIds The ids already used.
+     */
+    private static @NotNull String uniqueId(@NotNull final String text, @NotNull final Set<String> usedIds) {
+        final StringBuilder sb = new StringBuilder(text.length())
+        boolean dash = false
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i)
+            if (Character.isLetterOrDigit(c)) {
+                if (dash && sb.length() > 0) sb.append('-')
+                sb.append(Character.toLowerCase(c))
+                dash = false
+            }
+            else {
+                dash = true
+            }
+        }
+        final String base = sb.length() > 0 ? sb.toString() : "section"
+
+        String id = base
+        int n = 0
+        while (!usedIds.add(id)) {
+            id = base + "-" + ++n
+        }
+
+        id
+    }
+
+    /**
+     * Renders the table of contents shared by all pages of a site. Each page header is listed, with lists of lower
+     * level headers nested in the list of the higher level header before them.
+     *
+     * @param pages The pages of the site.
+     * @param headerIds The ids of the headers.
+     *
+     * @return The table of contents encoded as UTF-8.
+     */
+    private static @NotNull byte[] tableOfContents(@NotNull final java.util.List<SitePage> pages,
+                                                   @NotNull final Map<Header, String> headerIds) {
+        final ByteArrayOutputStream toc = new ByteArrayOutputStream()
+        final HTMLWriter writer = new HTMLWriter(toc, 8192)
+        final HTMLOutput html = new HTMLOutput(w: writer)
+        // The table of contents is written just after the body start tag.
+        html.incrementIndent()
+        html.incrementIndent()
+
+        html.tagln("div class=\"toc\"")
+        final Deque<Integer> levels = new LinkedList<>()
+        pages.each { final SitePage page ->
+            if (page.header != null) {
+                final int level = page.header.level.level
+                while (!levels.isEmpty() && levels.peek() > level) {
+                    html.etagln("ul")
+                    levels.pop()
+                }
+                if (levels.isEmpty() || levels.peek() < level) {
+                    html.tagln("ul")
+                    levels.push(level)
+                }
+                html.doIndent()
+                html.tag("li")
+                html.tag("a href='" + page.fileName + "#" + headerIds.get(page.header) + "'")
+                html.content(page.header.text)
+                html.etag("a")
+                html.etag("li")
+                html.ln()
+            }
+        }
+        while (!levels.isEmpty()) {
+            html.etagln("ul")
+            levels.pop()
+        }
+        html.etagln("div")
+        writer.close()
+
+        toc.toByteArray()
+    }
+
+    /**
+     * Returns a task that generates one page of a site.
+     *
+     * @param page The page to generate.
+     * @param pageFile The file to write the page to.
+     * @param toc The table of contents to write at the top of the page.
+     * @param context The HTML generator context of the page.
+     */
+    private static @NotNull Callable<Object> pageTask(@NotNull final SitePage page, @NotNull final File pageFile,
+                                                      @NotNull final byte[] toc,
+                                                      @NotNull final HTMLGeneratorContext context) {
+        new Callable<Object>() {
+            @Override
+            Object call() throws Exception {
+                final HTMLWriter writer = new HTMLWriter(new FileOutputStream(pageFile))
+                try {
+                    final HTMLOutput html = new HTMLOutput(w: writer)
+                    writeStart(context.options, html)
+                    writer.encoded(toc)
+                    for (final DocItem docItem : page.items) {
+                        writeDocItem(docItem, html, context)
+                    }
+                    writeEnd(html)
+                }
+                finally {
+                    writer.close()
+                }
+                Metrics.count("bytesWritten", pageFile.length())
+                null
+            }
+        }
+    }
+
+    /**
+     * Writes everything up to and including the body start tag.
+     *
+     * @param options The options.
+     * @param html The output to write to.
+     */
+    private static void writeStart(@NotNull final HTMLGeneratorOptions options, @NotNull final HTMLOutput html)
+            throws IOException {
 
         if (!options.primitiveHTML) {
-            printWriter.println("<!DOCTYPE html>")
+            html.outputln("<!DOCTYPE html>")
         }
         html.tagln("html")
         html.tagln("head")
@@ -160,22 +480,14 @@ class HTMLGenerator implements Generator {
         if (options.css != null && options.css.trim().length() > 0) {
             if (options.inlineCSS) {
                 html.tagln("style type=\"text/css\"")
-                final BufferedReader reader
+                final InputStream inStream
                 if (options.css.startsWith("classpath:")) {
-                    final String css = options.css.substring(10)
-                    final InputStream inStream = ClassLoader.getSystemResourceAsStream(css)
-                    reader = new BufferedReader(new InputStreamReader(inStream))
+                    inStream = ClassLoader.getSystemResourceAsStream(options.css.substring(10))
                 }
                 else {
-                    reader = new BufferedReader(new FileReader(options.css))
-                }
-                String line = reader.readLine()
-                while (line != null) {
-                    html.doIndent()
-                    html.outputln(line) // We want no <>& translations here.
-                    line = reader.readLine()
+                    inStream = new FileInputStream(options.css)
                 }
-                reader.close()
+                html.indentedLines(readText(inStream)) // We want no <>& translations here.
                 html.etagln("style")
             }
             else {
@@ -185,57 +497,107 @@ class HTMLGenerator implements Generator {
         }
         html.etagln("head")
         html.tagln("body")
+    }
 
-        document.items.each { final DocItem docItem ->
-            switch (docItem.format) {
-                case DocFormat.Comment:
-                    html.doIndent()
-                    html.outputln("<!--")
-                    html.doIndent()
-                    html.outputln("  " + ((Comment)docItem).text)
-                    html.doIndent()
-                    html.outputln("-->")
-                    break
-
-                case DocFormat.Paragraph:
-                    writeParagraph((Paragraph)docItem, html, context)
-                    break
-
-                case DocFormat.Header:
-                    writeHeader((Header)docItem, html)
-                    break
-
-                case DocFormat.BlockQuote:
-                    writeBlockQuote((BlockQuote)docItem, html, context)
-                    break;
-
-                case DocFormat.CodeBlock:
-                    writeCodeBlock((CodeBlock)docItem, html)
-                    break
-
-                case DocFormat.HorizontalRule:
-                    writeHorizontalRule(html)
-                    break
-
-                case DocFormat.List:
-                    writeList((List)docItem, html, context)
-                    break
+    /**
+     * Reads all text of a stream and closes it.
+     *
+     * @param inStream The stream to read. It is read as UTF-8.
+     */
+    private static @NotNull StringBuilder readText(@NotNull final InputStream inStream) throws IOException {
+        final StringBuilder text = new StringBuilder()
+        final Reader reader = new InputStreamReader(inStream, "UTF-8")
+        try {
+            final char[] buffer = new char[8192]
+            int read = reader.read(buffer)
+            while (read >= 0) {
+                text.append(buffer, 0, read)
+                read = reader.read(buffer)
+            }
+        }
+        finally {
+            reader.close()
+        }
 
-                case DocFormat.Div:
-                    writeDiv((Div)docItem, html)
-                    break
+        text
+    }
 
-                default:
-                    throw new GenerateException(message: "Unknown format model in Doc! [" + docItem.class.name + "]")
-            }
+    /**
+     * Writes one top level DocItem.
+     *
+     * @param docItem The item to write.
+     * @param html The output to write to.
+     * @param context The HTML generator context.
+     */
+    private static void writeDocItem(@NotNull final DocItem docItem, @NotNull final HTMLOutput html,
+                                     @NotNull final HTMLGeneratorContext context)
+            throws IOException, GenerateException {
+        switch (docItem.format) {
+            case DocFormat.Comment:
+                html.doIndent()
+                html.outputln("<!--")
+                html.doIndent()
+                html.outputln("  " + ((Comment)docItem).text)
+                html.doIndent()
+                html.outputln("-->")
+                break
+
+            case DocFormat.Paragraph:
+                writeParagraph((Paragraph)docItem, html, context)
+                break
+
+            case DocFormat.Header:
+                writeHeader((Header)docItem, html, context)
+                break
+
+            case DocFormat.BlockQuote:
+                writeBlockQuote((BlockQuote)docItem, html, context)
+                break;
+
+            case DocFormat.CodeBlock:
+                writeCodeBlock((CodeBlock)docItem, html)
+                break
+
+            case DocFormat.HorizontalRule:
+                writeHorizontalRule(html)
+                break
+
+            case DocFormat.List:
+                writeList((List)docItem, html, context)
+                break
+
+            case DocFormat.Div:
+                writeDiv((Div)docItem, html)
+                break
+
+            default:
+                throw new GenerateException(message: "Unknown format model in Doc! [" + docItem.class.name + "]")
         }
+    }
 
+    /**
+     * Writes the body and html end tags.
+     *
+     * @param html The output to write to.
+     */
+    private static void writeEnd(@NotNull final HTMLOutput html) {
         html.etagln("body")
         html.etagln("html")
     }
 
-    private static void writeHeader(@NotNull final Header header, @NotNull final HTMLOutput html) {
-        html.tagln(header.level.name(), header.text)
+    private static void writeHeader(@NotNull final Header header, @NotNull final HTMLOutput html,
+                                    @NotNull final HTMLGeneratorContext context) {
+        final String id = context.headerIds != null ? context.headerIds.get(header) : null
+        if (id != null) {
+            html.doIndent()
+            html.tag(header.level.name() + " id=\"" + id + "\"")
+            html.content(header.text)
+            html.etag(header.level.name())
+            html.ln()
+        }
+        else {
+            html.tagln(header.level.name(), header.text)
+        }
     }
 
     private static void writeBlockQuote(@NotNull final BlockQuote blockQuote, @NotNull final HTMLOutput html,
@@ -329,10 +691,10 @@ class HTMLGenerator implements Generator {
                     break
 
                 case DocFormat.Link:
-                    writeLink((Link)docItem, html)
+                    writeLink((Link)docItem, html, context)
                     break
                 case DocFormat.AutoLink:
-                    writeLink((AutoLink)docItem, html)
+                    writeLink((AutoLink)docItem, html, context)
                     break
 
                 case DocFormat.Space:
@@ -368,8 +730,9 @@ class HTMLGenerator implements Generator {
                 "' alt='" + image.text + "'")
     }
 
-    private static void writeLink(@NotNull final Link link, @NotNull final HTMLOutput html) {
-        html.tag("a href='" + link.url + "' title='" + link.title + "'")
+    private static void writeLink(@NotNull final Link link, @NotNull final HTMLOutput html,
+                                  @NotNull final HTMLGeneratorContext context) {
+        html.tag("a href='" + pageUrl(link.url, context) + "' title='" + link.title + "'")
         html.content(link.text)
         html.etag("a")
     }
@@ -387,6 +750,23 @@ class HTMLGenerator implements Generator {
         }
     }
 
+    /**
+     * When generating a site, a link to a header on another page is made to point to that page.
+     *
+     * @param url The url of a link.
+     * @param context The generators context.
+     */
+    private static @NotNull String pageUrl(@NotNull final String url, @NotNull final HTMLGeneratorContext context) {
+        if (context.idPages != null && url.startsWith("#")) {
+            final String page = context.idPages.get(url.substring(1))
+            if (page != null && page != context.page) {
+                return page + url
+            }
+        }
+
+        url
+    }
+
     // TODO: Break out resolveUrl & possiblyMakeRelative to a common base class or a Trait.
 
     /**
@@ -475,6 +855,21 @@ class HTMLGenerator implements Generator {
     // Inner Classes
     //
 
+    /**
+     * One page of a generated site.
+     */
+    private static class SitePage {
+
+        /** The file name of the page. */
+        String fileName
+
+        /** The header the page starts with, or null for the first page. */
+        Header header
+
+        /** The top level items of the page. */
+        java.util.List<DocItem> items = new LinkedList<>()
+    }
+
     /**
      * A small convenience class for writing HTML will auto indentation.
      */
@@ -484,7 +879,7 @@ class HTMLGenerator implements Generator {
         //
 
         /** The writer to output on. */
-        PrintWriter pw
+        HTMLWriter w
 
         /** The indentation level */
         private int indent = 0
@@ -493,17 +888,6 @@ class HTMLGenerator implements Generator {
         // Methods
         //
 
-        /**
-         * Provides character replacements.
-         *
-         * @param content The content to replace in.
-         *
-         * @return A new string with replacements.
-         */
-        private static @NotNull String replace(@NotNull final String content) {
-            return content.replaceAll("&", "&amp;").replaceAll("<", "&lt;").replaceAll(">", "&gt;")
-        }
-
         void incrementIndent() {
             this.indent += 2
         }
@@ -518,7 +902,9 @@ class HTMLGenerator implements Generator {
          * @param tag The name of the tag to output.
          */
         void tag(@NotNull final String tag) {
-            pw.print("<" + tag + ">")
+            w.text("<")
+            w.text(tag)
+            w.text(">")
         }
 
         /**
@@ -528,7 +914,9 @@ class HTMLGenerator implements Generator {
          * @param content The content of the tag.
          */
         void tag(@NotNull final String tag, @NotNull final String content) {
-            pw.print("<" + tag + ">" + replace(content) + "</" + tag + ">")
+            this.tag(tag)
+            w.escaped(content)
+            etag(tag)
         }
 
         /**
@@ -538,7 +926,9 @@ class HTMLGenerator implements Generator {
          */
         void tage(@NotNull final String tag) {
             doIndent()
-            pw.print("<" + tag + "/>")
+            w.text("<")
+            w.text(tag)
+            w.text("/>")
         }
 
         /**
@@ -548,7 +938,8 @@ class HTMLGenerator implements Generator {
          */
         void tagln(@NotNull final String tag) {
             doIndent()
-            pw.println("<" + tag + ">")
+            this.tag(tag)
+            w.newLine()
             incrementIndent()
         }
 
@@ -560,7 +951,8 @@ class HTMLGenerator implements Generator {
          */
         void tagln(@NotNull final String tag, @NotNull final String content) {
             doIndent()
-            pw.println("<" + tag + ">" + replace(content) + "</" + tag + ">")
+            this.tag(tag, content)
+            w.newLine()
         }
 
         /**
@@ -569,7 +961,7 @@ class HTMLGenerator implements Generator {
          * @param content The content to output.
          */
         void content(@NotNull final String content) {
-            pw.print(replace(content))
+            w.escaped(content)
         }
 
         /**
@@ -580,7 +972,7 @@ class HTMLGenerator implements Generator {
         void contentln(@NotNull final String cont) {
             doIndent()
             content(cont)
-            pw.println()
+            w.newLine()
         }
 
         /**
@@ -594,7 +986,7 @@ class HTMLGenerator implements Generator {
          * @param text The text to output.
          */
         void output(@NotNull final String text) {
-            pw.print(text)
+            w.text(text)
         }
 
         /**
@@ -608,7 +1000,17 @@ class HTMLGenerator implements Generator {
          * @param text The text to output.
          */
         void outputln(@NotNull final String text) {
-            pw.println(text)
+            w.text(text)
+            w.newLine()
+        }
+
+        /**
+         * Outputs text as is, each line indented at current indent level.
+         *
+         * @param text The text to output.
+         */
+        void indentedLines(@NotNull final CharSequence text) {
+            w.indentedLines(text, this.indent)
         }
 
         /**
@@ -617,7 +1019,9 @@ class HTMLGenerator implements Generator {
          * @param tag The tag to end.
          */
         void etag(@NotNull final String tag) {
-            pw.print("</" + tag + ">")
+            w.text("</")
+            w.text(tag)
+            w.text(">")
         }
 
         /**
@@ -628,26 +1032,22 @@ class HTMLGenerator implements Generator {
         void etagln(@NotNull final String tag) {
             decrementIndent()
             doIndent()
-            pw.println("</" + tag + ">")
+            etag(tag)
+            w.newLine()
         }
 
         /**
          * Outputs a newline.
          */
         void ln() {
-            pw.println()
+            w.newLine()
         }
 
         /**
          * Outputs indentation at current indent level.
          */
         void doIndent() {
-            // If the ".times" part is error marked in red then you are using IDEA. It is perfectly valid to
-            // do a .times on an int. This compiles without any problems. If it were Eclipse I would not
-            // be surprised, but I do put the JetBrains to a higher standard.
-            this.indent.times {
-                pw.print(" ")
-            }
+            w.spaces(this.indent)
         }
     }
 }
@@ -40,18 +40,22 @@ import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
-import se.natusoft.doc.markdown.api.Generator
+import se.natusoft.doc.markdown.api.GeneratorStream
 import se.natusoft.doc.markdown.api.Options
+import se.natusoft.doc.markdown.api.StreamingGenerator
 import se.natusoft.doc.markdown.exception.GenerateException
 import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
 import se.natusoft.doc.markdown.model.*
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.nio.charset.StandardCharsets
 
 /**
  * This is a generator that generates Markdown from a document model.
  */
 @CompileStatic
 @TypeChecked
-class MarkdownGenerator implements Generator {
+class MarkdownGenerator implements StreamingGenerator {
 
     /**
      * Extend standard context with generator specific options.
@@ -97,9 +101,10 @@ class MarkdownGenerator implements Generator {
                 rootDir: rootDir
         )
 
-        final def writer = rootDir != null ?
-                new FileWriter(rootDir.path + File.separator + context.options.resultFile) :
-                new FileWriter(context.options.resultFile)
+        final File resultFile = rootDir != null ?
+                new File(rootDir.path + File.separator + context.options.resultFile) :
+                new File(context.options.resultFile)
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(resultFile), StandardCharsets.UTF_8)
 
         try {
             doGenerate(document, writer, context)
@@ -107,6 +112,7 @@ class MarkdownGenerator implements Generator {
         finally {
             writer.close()
         }
+        Metrics.count("bytesWritten", resultFile.length())
     }
 
     /**
@@ -115,7 +121,7 @@ class MarkdownGenerator implements Generator {
      * @param document The model to generate from.
      * @param options The generator options.
      * @param rootDir The optional root directory to prefix configured output with. Can be null.
-     * @param resultStream The stream to write the result to.
+     * @param resultStream The stream to write the UTF-8 encoded result to.
      *
      * @throws IOException on I/O failures.
      * @throws GenerateException on other failures to generate target.
@@ -129,8 +135,49 @@ class MarkdownGenerator implements Generator {
                 rootDir: rootDir
         )
 
-        final OutputStreamWriter resultWriter = new OutputStreamWriter(resultStream)
-        doGenerate(document, resultWriter, context)
+        final OutputStreamWriter resultWriter = new OutputStreamWriter(Metrics.countWritten(resultStream, "bytesWritten"),
+                StandardCharsets.UTF_8)
+        try {
+            doGenerate(document, resultWriter, context)
+        }
+        finally {
+            // The stream belongs to the caller, so it is not closed, but what the writer still buffers must reach it.
+            resultWriter.flush()
+        }
+    }
+
+    /**
+     * Starts generating Markdown one top level DocItem at a time.
+     *
+     * @param opts The generator options.
+     * @param rootDir The optional root directory to prefix configured output with. Can be null.
+     * @param resultStream The stream to write the UTF-8 encoded result to.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    @Override
+    @NotNull GeneratorStream generateStream(@NotNull final Options opts, @Nullable final File rootDir,
+                                            @NotNull final OutputStream resultStream)
+            throws IOException, GenerateException {
+        final MarkdownGeneratorContext context = new MarkdownGeneratorContext(
+                options: opts as MarkdownGeneratorOptions,
+                rootDir: rootDir
+        )
+
+        final PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(resultStream, StandardCharsets.UTF_8)))
+
+        new GeneratorStream() {
+            @Override
+            void consume(@NotNull final DocItem docItem) throws IOException, GenerateException {
+                writeDocItem(docItem, pw, context)
+            }
+
+            @Override
+            void finish() throws IOException, GenerateException {
+                pw.flush()
+            }
+        }
     }
 
     /**
@@ -143,49 +190,65 @@ class MarkdownGenerator implements Generator {
     private static void doGenerate(@NotNull final Doc document, @NotNull final Writer writer,
                                    @NotNull final MarkdownGeneratorContext context)
             throws IOException, GenerateException {
+        final long start = System.nanoTime()
 
         final PrintWriter pw = new PrintWriter(writer)
 
         document.items.each { final DocItem docItem ->
-            switch (docItem.format) {
-                case DocFormat.Comment:
-                    pw.println("<!--")
-                    pw.println("  " + (docItem as Comment).text)
-                    pw.println("-->")
-                    break
-
-                case DocFormat.Paragraph:
-                    writeParagraph(docItem as Paragraph, pw, context)
-                    break
-
-                case DocFormat.Header:
-                    writeHeader(docItem as Header, pw)
-                    break
-
-                case DocFormat.BlockQuote:
-                    writeBlockQuote(docItem as BlockQuote, pw, context)
-                    break;
-
-                case DocFormat.CodeBlock:
-                    writeCodeBlock(docItem as CodeBlock, pw)
-                    break
-
-                case DocFormat.HorizontalRule:
-                    writeHorizontalRule(pw)
-                    break
-
-                case DocFormat.List:
-                    writeList(docItem as List, pw, context)
-                    break
+            writeDocItem(docItem, pw, context)
+        }
 
-                case DocFormat.Div:
-                    writeDiv(docItem as Div, pw)
-                    break
+        Metrics.time("markdown", start)
+    }
 
-                default:
-                    throw new GenerateException(message: "Unknown format model in Doc! [" +
-                            docItem.getClass().getName() + "]")
-            }
+    /**
+     * Writes one top level DocItem.
+     *
+     * @param docItem The item to write.
+     * @param pw The PrintWriter to write to.
+     * @param context The generator context.
+     */
+    private static void writeDocItem(@NotNull final DocItem docItem, @NotNull final PrintWriter pw,
+                                     @NotNull final MarkdownGeneratorContext context)
+            throws IOException, GenerateException {
+        switch (docItem.format) {
+            case DocFormat.Comment:
+                pw.println("<!--")
+                pw.println("  " + (docItem as Comment).text)
+                pw.println("-->")
+                break
+
+            case DocFormat.Paragraph:
+                writeParagraph(docItem as Paragraph, pw, context)
+                break
+
+            case DocFormat.Header:
+                writeHeader(docItem as Header, pw)
+                break
+
+            case DocFormat.BlockQuote:
+                writeBlockQuote(docItem as BlockQuote, pw, context)
+                break;
+
+            case DocFormat.CodeBlock:
+                writeCodeBlock(docItem as CodeBlock, pw)
+                break
+
+            case DocFormat.HorizontalRule:
+                writeHorizontalRule(pw)
+                break
+
+            case DocFormat.List:
+                writeList(docItem as List, pw, context)
+                break
+
+            case DocFormat.Div:
+                writeDiv(docItem as Div, pw)
+                break
+
+            default:
+                throw new GenerateException(message: "Unknown format model in Doc! [" +
+                        docItem.getClass().getName() + "]")
         }
     }
 
@@ -0,0 +1,213 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-22: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.generator.styles.MSS
+import se.natusoft.doc.markdown.model.Doc
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Generates several PDF documents in parallel.
+ *
+ * The jobs are run on a fixed size thread pool using one shared PDFBoxGenerator. Each MSS file is only
+ * loaded once per batch generator and then shared by all jobs using it. External fonts are shared through
+ * PDFBoxFontRegistry.SHARED, so each font file is only parsed once. Everything else, like the PDF documents
+ * being built, belongs to one job only.
+ *
+ * Each job must have its own PDFGeneratorOptions instance since comment annotations like @PDFTitle in a
+ * document update the options during generation.
+ */
+@CompileStatic
+@TypeChecked
+class PDFBoxBatchGenerator {
+    //
+    // Inner Classes
+    //
+
+    /**
+     * One document to generate.
+     */
+    static class Job {
+        //
+        // Properties
+        //
+
+        /** The document to generate from. */
+        @NotNull
+        Doc document
+
+        /** The options for this document. */
+        @NotNull
+        PDFGeneratorOptions options
+
+        /** The optional root directory to prefix configured output with. */
+        @Nullable
+        File rootDir
+
+        /** The stream to write the result to. This is not closed by the batch generator. */
+        @NotNull
+        OutputStream resultStream
+    }
+
+    //
+    // Properties
+    //
+
+    /** The max number of documents to generate at the same time. Defaults to the number of processors. */
+    int parallelism = Runtime.getRuntime().availableProcessors()
+
+    //
+    // Private Members
+    //
+
+    /** Does the actual generation. This holds no state of its own between calls. */
+    private final PDFBoxGenerator generator = new PDFBoxGenerator()
+
+    /** The loaded MSS instances keyed on canonical MSS file path, or "" for the default MSS. */
+    private final ConcurrentMap<String, MSS> mssCache = new ConcurrentHashMap<>()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Generates all the jobs and returns when all of them are done.
+     *
+     * A failing job does not stop the other jobs.
+     *
+     * @param jobs The documents to generate.
+     *
+     * @throws GenerateException if one or more jobs failed. The cause is the failure of the first failing job.
+     */
+    void generate( @NotNull java.util.List<Job> jobs ) throws GenerateException {
+        if ( jobs.isEmpty() ) return
+
+        final ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( this.parallelism, jobs.size() ) ) )
+        try {
+            final java.util.List<Future<Object>> results = new ArrayList<Future<Object>>( jobs.size() )
+            jobs.each { final Job job ->
+                results.add( executor.submit( new Callable<Object>() {
+                    @Override
+                    Object call() throws Exception {
+                        generate( job )
+                        null
+                    }
+                } ) )
+            }
+
+            final StringBuilder failures = new StringBuilder()
+            Throwable firstFailure = null
+            int failed = 0
+            for ( int index = 0; index < results.size(); index++ ) {
+                try {
+                    results.get( index ).get()
+                }
+                catch ( ExecutionException ee ) {
+                    Throwable cause = ee.cause != null ? ee.cause : ee
+                    if ( firstFailure == null ) firstFailure = cause
+                    ++failed
+                    failures.append( "\n    " ).append( jobs.get( index ).options.resultFile ).append( ": " )
+                            .append( cause.message )
+                }
+            }
+
+            if ( failed > 0 ) {
+                throw new GenerateException(
+                        message: "${ failed } of ${ jobs.size() } PDF documents failed to generate!${ failures }",
+                        cause: firstFailure
+                )
+            }
+        }
+        catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt()
+            throw new GenerateException( message: "Interrupted while waiting for PDF generation!", cause: ie )
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Generates one job on the calling thread.
+     *
+     * @param job The job to generate.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    void generate( @NotNull Job job ) throws IOException, GenerateException {
+        this.generator.generate( job.document, job.options, job.rootDir, job.resultStream, getMSS( job ) )
+    }
+
+    /**
+     * Returns the MSS to use for a job, loading it if this is the first job using it.
+     *
+     * @param job The job to get the MSS for.
+     *
+     * @throws IOException on failure to read the MSS file.
+     */
+    private @NotNull MSS getMSS( @NotNull Job job ) throws IOException {
+        final FileResource fileResource = new FileResource( rootDir: job.rootDir, optsRootDir: job.options.rootDir )
+
+        String key = ""
+        if ( job.options.mss != null && !job.options.mss.isEmpty() ) {
+            key = fileResource.getResourceFile( job.options.mss ).canonicalPath
+        }
+
+        MSS mss = this.mssCache.get( key )
+        if ( mss == null ) {
+            mss = PDFBoxGenerator.loadMSS( job.options, fileResource )
+            final MSS existing = this.mssCache.putIfAbsent( key, mss )
+            if ( existing != null ) mss = existing
+        }
+
+        mss
+    }
+}
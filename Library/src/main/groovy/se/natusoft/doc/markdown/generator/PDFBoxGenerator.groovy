@@ -38,6 +38,8 @@ package se.natusoft.doc.markdown.generator
 
 import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
+import org.apache.pdfbox.io.MemoryUsageSetting
+import org.apache.pdfbox.pdmodel.PDPage
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
 import se.natusoft.doc.markdown.api.Generator
@@ -46,6 +48,7 @@ import se.natusoft.doc.markdown.exception.GenerateException
 import se.natusoft.doc.markdown.generator.models.TOC
 import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
 import se.natusoft.doc.markdown.generator.pdfbox.PDFBoxDocRenderer
+import se.natusoft.doc.markdown.generator.pdfbox.PDFBoxImageLoader
 import se.natusoft.doc.markdown.generator.pdfbox.PDFBoxStylesMSSAdapter
 import se.natusoft.doc.markdown.generator.pdfbox.PageMargins
 import se.natusoft.doc.markdown.generator.styles.MSS
@@ -53,14 +56,28 @@ import se.natusoft.doc.markdown.generator.styles.MSS.MSS_Pages
 import se.natusoft.doc.markdown.generator.styles.MSSColor
 import se.natusoft.doc.markdown.generator.styles.MSSColorPair
 import se.natusoft.doc.markdown.generator.styles.MSSImage
+import se.natusoft.doc.markdown.generator.utils.RemoteImageCache
 import se.natusoft.doc.markdown.generator.utils.Sectionizer
 import se.natusoft.doc.markdown.model.*
+import se.natusoft.doc.markdown.util.Metrics
 import se.natusoft.doc.markdown.util.StructuredNumber
 
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+import static se.natusoft.doc.markdown.generator.utils.Sectionizer.enterSection
+import static se.natusoft.doc.markdown.generator.utils.Sectionizer.leaveSection
 import static se.natusoft.doc.markdown.generator.utils.Sectionizer.withSection
 
 /**
  * Generates a PDF document using PDFBox to generate PDF.
+ *
+ * With the chapterParallelism option the chapters, starting at level 1 headers, are laid out in parallel in
+ * documents of their own. These are then joined with page numbers, table of contents, and outline continuing
+ * over the chapters, and the table of contents and title page are rendered last as usual.
  */
 @CompileStatic
 @TypeChecked
@@ -97,17 +114,69 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
         @NotNull
         MSS.MSS_TOC level = MSS.MSS_TOC.h1
 
+        /** This will get an instance if header numbering is enabled in the options. */
+        @Nullable
+        StructuredNumber headerNumber = null
+
+        /** Loads the images of the document. */
+        @NotNull
+        PDFBoxImageLoader images
+
+        /**
+         * When a chapter is laid out by itself, its outline entries are collected here to be added when the
+         * chapters are joined. Otherwise null.
+         */
+        @Nullable
+        java.util.List<OutlineEntry> outlineEntries = null
+    }
+
+    /**
+     * An outline entry of a chapter laid out by itself.
+     */
+    static class OutlineEntry {
+        //
+        // Properties
+        //
+
+        /** The header level of the entry. */
+        int level
+
+        /** The title of the entry. */
+        @NotNull
+        String title
+
+        /** The page the entry points to. */
+        @NotNull
+        PDPage page
+    }
+
+    /**
+     * A chapter laid out in a document of its own.
+     */
+    private static class Chapter {
+        //
+        // Properties
+        //
+
+        /** The renderer holding the laid out pages. */
+        @NotNull
+        PDFBoxDocRenderer renderer
+
+        /** The context the chapter was laid out with, holding its TOC and outline entries. */
+        @NotNull
+        PDFGeneratorContext context
     }
 
     //
-    // Private Members
+    // Constants
     //
 
-    /** This will get an instance if header numbering is enabled in the options. */
-    private StructuredNumber headerNumber = null
-
-    /** The current header level. */
-//    private int currentHeaderLevel = 1
+    /** The comment annotations that update options. See extractCommentOptionsAnnotations(...). */
+    private static final java.util.List<String> OPTIONS_ANNOTATIONS = [
+            "@PDFTitle", "@PDFSubject", "@PDFAuthor", "@PDFVersion", "@PDFCopyright", "@PDFHideLinks",
+            "@PDFUnorderedListItemPrefix", "@PDFGenerateSectionNumbers", "@PDFGenerateTOC", "@PDFGenerateTitlePage",
+            "@PDFTitlePageImage"
+    ]
 
     //
     // Methods
@@ -183,8 +252,39 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
             @Nullable File rootDir,
             @NotNull OutputStream resultStream
     ) throws IOException, GenerateException {
+        generate( document, options, rootDir, resultStream, null )
+    }
+
+    /**
+     * Generates output from DocItem model using an already loaded MSS.
+     *
+     * All generation state is kept in a context created for each call, so one PDFBoxGenerator
+     * instance and one MSS instance can be used by several threads generating different
+     * documents at the same time.
+     *
+     * @param document The model to generate from.
+     * @param options The generator options.
+     * @param rootDir The optional root directory to prefix configured output with. Can be null.
+     * @param resultStream The stream to write the result to.
+     * @param mss The MSS to use, or null to load it as specified by the options.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    void generate(
+            @NotNull Doc document,
+            @NotNull Options options,
+            @Nullable File rootDir,
+            @NotNull OutputStream resultStream,
+            @Nullable MSS mss
+    ) throws IOException, GenerateException {
+        final long start = System.nanoTime()
         Sectionizer.setup()
 
+        PDFBoxDocRenderer renderer = null
+        java.util.List<Chapter> chapters = null
+        MSS usedMSS = null
+        boolean saved = false
         try {
             final PDFGeneratorContext context = new PDFGeneratorContext(
                     options: options as PDFGeneratorOptions,
@@ -197,119 +297,504 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
 
             context.pdfStyles.fileResource = context.fileResource
 
-            // Load MSS file if specified
-            if ( context.options.mss != null && !context.options.mss.isEmpty() ) {
-                final File mssFile = context.fileResource.getResourceFile( context.options.mss )
-                final BufferedInputStream bis = new BufferedInputStream( new FileInputStream( mssFile ) )
-                try {
-                    context.pdfStyles.mss = MSS.fromInputStream( bis )
-                }
-                finally {
-                    bis.close()
-                }
+            context.images = new PDFBoxImageLoader(
+                    fileResource: context.fileResource,
+                    resultFile: context.resultFile,
+                    remoteCache: remoteImageCache( context.options, rootDir )
+            )
+            // The images are read and decoded while the text is laid out.
+            context.images.prefetch( imageUrls( document, new LinkedHashSet<String>() ) )
+
+            final long mssStart = System.nanoTime()
+            usedMSS = mss != null ? mss : loadMSS( context.options, context.fileResource )
+            Metrics.time( "mss", mssStart )
+            context.pdfStyles.mss = usedMSS
+
+            if ( !"A0 A1 A2 A3 A4 A5 A6 LEGAL LETTER".contains( context.pdfStyles.mss.pageFormat ) ) {
+                throw new GenerateException( message: "Used MSS file declares bad 'pageFormat'! Valid values are A0-A6, LEGAL, LETTER." )
+            }
+
+            final long layoutStart = System.nanoTime()
+            renderer = newRenderer( context )
+            final java.util.List<java.util.List<DocItem>> chapterItems = splitIntoChapters( document, context )
+            if ( chapterItems != null ) {
+                chapters = layoutChapters( chapterItems, context )
+                joinChapters( chapters, renderer, context )
             }
             else {
-                System.out.println( "Using default MSS!" )
-                context.pdfStyles.mss = MSS.defaultMSS()
+                renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                layout( document.items, renderer, context, new LinkedList<String>(), true )
             }
 
-            if ( !"A0 A1 A2 A3 A4 A5 A6 LEGAL LETTER".contains( context.pdfStyles.mss.pageFormat ) ) {
-                throw new GenerateException( message: "Used MSS file declares bad 'pageFormat'! Valid values are A0-A6, LEGAL, LETTER." )
+            if ( context.options.generateTOC ) {
+                writeToc( renderer, context )
             }
 
-            PDFBoxDocRenderer renderer = new PDFBoxDocRenderer(
-                    margins: new PageMargins(
-                            mss: context.pdfStyles.mss
-                    ),
-                    pageSize: context.pdfStyles.mss.pageFormat,
-                    pageNoActive: true
-            )
-            renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+            if ( context.options.generateTitlePage ) {
+                writeTitlePage( renderer, context )
+            }
+
+            Metrics.time( "pdf.layout", layoutStart )
+
+            final long saveStart = System.nanoTime()
+            renderer.save( Metrics.countWritten( resultStream, "bytesWritten" ) )
+            saved = true
+            Metrics.time( "pdf.save", saveStart )
+            Metrics.time( "pdf", start )
+        }
+        finally {
+            if ( renderer != null && !saved ) {
+                renderer.close()
+            }
+            if ( chapters != null && !saved ) {
+                closeChapters( chapters )
+            }
+            if ( usedMSS != null ) {
+                usedMSS.currentDivs = null
+            }
+            Sectionizer.cleanup()
+        }
+    }
 
-            final LinkedList<String> divs = new LinkedList<>()
+    /**
+     * Creates a renderer for the document or a chapter of it.
+     *
+     * @param context The generator context.
+     */
+    private static @NotNull PDFBoxDocRenderer newRenderer( @NotNull PDFGeneratorContext context ) {
+        new PDFBoxDocRenderer(
+                margins: new PageMargins(
+                        mss: context.pdfStyles.mss
+                ),
+                pageSize: context.pdfStyles.mss.pageFormat,
+                pageNoActive: true,
+                memoryUsageSetting: memoryUsageSetting( context.options )
+        )
+    }
 
-            context.pdfStyles.mss.currentDivs = divs
+    /**
+     * Lays out document items.
+     *
+     * @param items The items to lay out.
+     * @param renderer The renderer to lay out with.
+     * @param context The generator context.
+     * @param divs The divs the items are within. This is updated by the div items.
+     * @param optionsAnnotations If true, options annotations in comments update the options.
+     */
+    private void layout(
+            @NotNull java.util.List<DocItem> items,
+            @NotNull PDFBoxDocRenderer renderer,
+            @NotNull PDFGeneratorContext context,
+            @NotNull LinkedList<String> divs,
+            boolean optionsAnnotations
+    ) throws GenerateException {
+        context.pdfStyles.mss.currentDivs = divs
 
-            document.items.each { final DocItem docItem ->
+        for ( DocItem docItem : items ) {
 
-                switch ( docItem.format ) {
-                    case DocFormat.Comment:
-                        // We skip comments in general, but act on "@PB" within the comment for doing a page break.
-                        final Comment comment = docItem as Comment
-                        if ( comment.text.indexOf( "@PB" ) >= 0 || comment.text.indexOf( "@PageBreak" ) >= 0 ) {
-                            renderer.newPage()
-                        }
-                        // and also act on @PDFTitle, @PDFSubject, @PDFKeywords, @PDFAuthor, @PDFVersion, and @PDFCopyright
-                        // for overriding those settings in the options. This allows the document rather than the generate
-                        // config to provide this information.
+            switch ( docItem.format ) {
+                case DocFormat.Comment:
+                    // We skip comments in general, but act on "@PB" within the comment for doing a page break.
+                    final Comment comment = docItem as Comment
+                    if ( comment.text.indexOf( "@PB" ) >= 0 || comment.text.indexOf( "@PageBreak" ) >= 0 ) {
+                        renderer.newPage()
+                    }
+                    // and also act on @PDFTitle, @PDFSubject, @PDFKeywords, @PDFAuthor, @PDFVersion, and @PDFCopyright
+                    // for overriding those settings in the options. This allows the document rather than the generate
+                    // config to provide this information.
+                    if ( optionsAnnotations ) {
                         extractCommentOptionsAnnotations( comment, context )
-                        break
-
-                    case DocFormat.Paragraph:
-                        writeParagraph( docItem as Paragraph, renderer, context )
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        renderer.newSection()
-                        break
-
-                    case DocFormat.Header:
-                        writeHeader( docItem as Header, renderer, context )
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        renderer.newSection()
-                        break
-
-                    case DocFormat.BlockQuote:
-                        writeBlockQuote( docItem as BlockQuote, renderer, context )
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        renderer.newSection()
-                        break
-
-                    case DocFormat.CodeBlock:
-                        writeCodeBlock( docItem as CodeBlock, renderer, context )
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        renderer.newSection()
-                        renderer.newLine()
-                        break
-
-                    case DocFormat.HorizontalRule:
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        writeHr( renderer, context )
-                        renderer.newLine()
-                        break
-
-                    case DocFormat.List:
-                        writeList( docItem as List, renderer, context )
-                        renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
-                        renderer.newSection()
-                        break
-
-                    case DocFormat.Div:
-                        final Div div = docItem as Div
-                        if ( div.start ) {
-                            divs.offerFirst( div.name )
-                        }
-                        else {
-                            divs.removeFirst()
-                        }
-                        break
+                    }
+                    break
+
+                case DocFormat.Paragraph:
+                    writeParagraph( docItem as Paragraph, renderer, context )
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    renderer.newSection()
+                    break
+
+                case DocFormat.Header:
+                    writeHeader( docItem as Header, renderer, context )
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    renderer.newSection()
+                    break
+
+                case DocFormat.BlockQuote:
+                    writeBlockQuote( docItem as BlockQuote, renderer, context )
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    renderer.newSection()
+                    break
+
+                case DocFormat.CodeBlock:
+                    writeCodeBlock( docItem as CodeBlock, renderer, context )
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    renderer.newSection()
+                    renderer.newLine()
+                    break
+
+                case DocFormat.HorizontalRule:
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    writeHr( renderer, context )
+                    renderer.newLine()
+                    break
+
+                case DocFormat.List:
+                    writeList( docItem as List, renderer, context )
+                    renderer.setStyle( context.pdfStyles, MSS_Pages.standard )
+                    renderer.newSection()
+                    break
+
+                case DocFormat.Div:
+                    updateDivs( docItem as Div, divs )
+                    context.pdfStyles.mss.currentDivs = divs
+                    break
+
+                default:
+                    throw new GenerateException( message: "Unknown format model in Doc! [" + docItem.class.name + "]" )
+            }
+        }
+    }
+
+    /**
+     * Enters or leaves a div.
+     *
+     * @param div The div item.
+     * @param divs The divs currently within, innermost first.
+     */
+    private static void updateDivs( @NotNull Div div, @NotNull LinkedList<String> divs ) {
+        if ( div.start ) {
+            divs.offerFirst( div.name )
+        }
+        else {
+            divs.removeFirst()
+        }
+    }
 
-                    default:
-                        throw new GenerateException( message: "Unknown format model in Doc! [" + docItem.class.name + "]" )
+    /**
+     * Splits the document into chapters to lay out in parallel, if the chapterParallelism option asks for it.
+     *
+     * The first chapter is everything before the second level 1 header, and each following level 1 header starts
+     * another chapter. A level 1 header only starts a new page once the document has more than one page, so the
+     * first chapter always starts the document, and is joined with the next ones as long as they fit on the same
+     * page. See layoutChapters(...).
+     *
+     * Options annotations in comments update the options while the document is laid out. This can only be done in
+     * parallel when all such comments come before any content, and they are then applied here.
+     *
+     * @param document The document to split.
+     * @param context The generator context.
+     *
+     * @return The items of each chapter, or null if the document should be laid out as a whole.
+     */
+    private static @Nullable java.util.List<java.util.List<DocItem>> splitIntoChapters(
+            @NotNull Doc document, @NotNull PDFGeneratorContext context ) {
+        if ( context.options.chapterParallelism <= 1 ) return null
+
+        final java.util.List<Comment> optionsComments = new LinkedList<>()
+        final java.util.List<java.util.List<DocItem>> chapters = new ArrayList<>()
+        java.util.List<DocItem> chapter = new ArrayList<>()
+        boolean content = false
+        int level1Headers = 0
+        for ( DocItem docItem : document.items ) {
+            if ( docItem instanceof Comment ) {
+                if ( hasOptionsAnnotations( docItem as Comment ) ) {
+                    if ( content ) return null
+                    optionsComments.add( docItem as Comment )
                 }
             }
+            else {
+                content = true
+            }
 
-            if ( context.options.generateTOC ) {
-                writeToc( renderer, context )
+            if ( docItem instanceof Header && ( docItem as Header ).level.level == 1 && ++level1Headers > 1 ) {
+                chapters.add( chapter )
+                chapter = new ArrayList<>()
             }
+            chapter.add( docItem )
+        }
+        chapters.add( chapter )
+        if ( chapters.size() < 2 ) return null
 
-            if ( context.options.generateTitlePage ) {
-                writeTitlePage( renderer, context )
+        for ( Comment comment : optionsComments ) {
+            extractCommentOptionsAnnotations( comment, context )
+        }
+
+        chapters
+    }
+
+    /**
+     * Returns true if the comment contains annotations that update options.
+     *
+     * @param comment The comment to check.
+     */
+    private static boolean hasOptionsAnnotations( @NotNull Comment comment ) {
+        for ( String annotation : OPTIONS_ANNOTATIONS ) {
+            if ( comment.text.indexOf( annotation ) >= 0 ) return true
+        }
+
+        false
+    }
+
+    /**
+     * Lays out the chapters in parallel, each in a document of its own.
+     *
+     * In a document laid out as a whole, a level 1 header only starts a new page if the document already has more
+     * than one page. So if the first chapter ends up on one page, it is laid out again together with the next
+     * chapter, and so on, to get exactly the same pages.
+     *
+     * @param chapterItems The items of the chapters.
+     * @param context The generator context.
+     *
+     * @return The laid out chapters, in document order.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    private @NotNull java.util.List<Chapter> layoutChapters(
+            @NotNull java.util.List<java.util.List<DocItem>> chapterItems, @NotNull PDFGeneratorContext context )
+            throws IOException, GenerateException {
+        final java.util.List<Chapter> chapters = new ArrayList<Chapter>( chapterItems.size() )
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min( context.options.chapterParallelism, chapterItems.size() ) )
+        try {
+            final java.util.List<Future<Chapter>> laidOut = new ArrayList<Future<Chapter>>( chapterItems.size() )
+            for ( int index = 0; index < chapterItems.size(); index++ ) {
+                laidOut.add( executor.submit( layoutTask( chapterItems, index, context ) ) )
+            }
+            Throwable failure = null
+            for ( Future<Chapter> chapter : laidOut ) {
+                try {
+                    chapters.add( chapter.get() )
+                }
+                catch ( ExecutionException ee ) {
+                    if ( failure == null ) failure = ee.cause
+                }
+            }
+            if ( failure != null ) {
+                closeChapters( chapters )
+                if ( failure instanceof IOException ) throw failure as IOException
+                if ( failure instanceof GenerateException ) throw failure as GenerateException
+                throw new GenerateException( message: "Failed to lay out chapter!", cause: failure )
+            }
+        }
+        catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt()
+            closeChapters( chapters )
+            throw new GenerateException( message: "Interrupted while laying out chapters!", cause: ie )
+        }
+        finally {
+            executor.shutdownNow()
+        }
+
+        while ( chapters.size() > 1 && chapters.get( 0 ).renderer.pageNo <= 1 ) {
+            final java.util.List<DocItem> items = new ArrayList<DocItem>( chapterItems.get( 0 ) )
+            items.addAll( chapterItems.get( 1 ) )
+            chapterItems.set( 0, items )
+            chapterItems.remove( 1 )
+
+            closeChapters( chapters.subList( 0, 2 ) )
+            chapters.remove( 1 )
+            chapters.set( 0, layoutChapter( chapterItems, 0, context ) )
+        }
+
+        chapters
+    }
+
+    /**
+     * Returns a task that lays out a chapter.
+     *
+     * @param chapterItems The items of all chapters.
+     * @param index The index of the chapter to lay out.
+     * @param context The generator context.
+     */
+    private @NotNull Callable<Chapter> layoutTask(
+            @NotNull final java.util.List<java.util.List<DocItem>> chapterItems, final int index,
+            @NotNull final PDFGeneratorContext context ) {
+        new Callable<Chapter>() {
+            @Override
+            Chapter call() throws Exception {
+                layoutChapter( chapterItems, index, context )
+            }
+        }
+    }
+
+    /**
+     * Lays out a chapter in a document of its own. The section numbers and divs are brought to what they are at
+     * the start of the chapter when laying out the whole document. The page numbers are rendered when the chapter
+     * is joined with the others.
+     *
+     * @param chapterItems The items of all chapters.
+     * @param index The index of the chapter to lay out.
+     * @param context The generator context.
+     *
+     * @throws IOException on I/O failures.
+     * @throws GenerateException on other failures to generate target.
+     */
+    private @NotNull Chapter layoutChapter(
+            @NotNull java.util.List<java.util.List<DocItem>> chapterItems, int index,
+            @NotNull PDFGeneratorContext context ) throws IOException, GenerateException {
+        final long start = System.nanoTime()
+        Sectionizer.setup()
+
+        final PDFGeneratorContext chapterContext = new PDFGeneratorContext(
+                options: context.options,
+                rootDir: context.rootDir,
+                fileResource: context.fileResource,
+                resultFile: context.resultFile,
+                images: context.images,
+                outlineEntries: new LinkedList<OutlineEntry>()
+        )
+        // Embedded fonts belong to one document, so each chapter needs its own fonts.
+        chapterContext.pdfStyles.fileResource = context.fileResource
+        chapterContext.pdfStyles.mss = context.pdfStyles.mss
+
+        final LinkedList<String> divs = new LinkedList<>()
+        for ( int previous = 0; previous < index; previous++ ) {
+            for ( DocItem docItem : chapterItems.get( previous ) ) {
+                if ( docItem instanceof Header ) {
+                    numberHeader( docItem as Header, chapterContext )
+                }
+                else if ( docItem instanceof Div ) {
+                    updateDivs( docItem as Div, divs )
+                }
             }
+        }
 
-            renderer.save( resultStream )
+        final PDFBoxDocRenderer renderer = newRenderer( chapterContext )
+        renderer.pageNoDeferred = true
+        boolean done = false
+        try {
+            renderer.setStyle( chapterContext.pdfStyles, MSS_Pages.standard )
+            layout( chapterItems.get( index ), renderer, chapterContext, divs, false )
+            chapterContext.pdfStyles.subsetEmbeddedFonts()
+            done = true
         }
         finally {
+            if ( !done ) {
+                renderer.close()
+            }
+            chapterContext.pdfStyles.mss.currentDivs = null
             Sectionizer.cleanup()
         }
+
+        Metrics.time( "pdf.chapter", String.valueOf( index + 1 ), start )
+
+        new Chapter( renderer: renderer, context: chapterContext )
+    }
+
+    /**
+     * Appends the pages of the chapters to the renderer of the whole document, and adds their TOC and outline
+     * entries with page numbers continuing over the chapters.
+     *
+     * @param chapters The laid out chapters in document order.
+     * @param renderer The renderer of the whole document.
+     * @param context The generator context of the whole document.
+     */
+    private static void joinChapters(
+            @NotNull java.util.List<Chapter> chapters, @NotNull PDFBoxDocRenderer renderer,
+            @NotNull PDFGeneratorContext context ) {
+        for ( Chapter chapter : chapters ) {
+            final int pagesBefore = renderer.currentPageNumber
+            renderer.appendPages( chapter.renderer )
+
+            for ( TOC toc : chapter.context.toc ) {
+                toc.pageNumber += pagesBefore
+                context.toc.add( toc )
+            }
+            for ( OutlineEntry entry : chapter.context.outlineEntries ) {
+                renderer.addOutlineEntry( entry.level, entry.title, entry.page )
+            }
+        }
+    }
+
+    /**
+     * Closes the renderers of chapters.
+     *
+     * @param chapters The chapters to close.
+     */
+    private static void closeChapters( @NotNull java.util.List<Chapter> chapters ) {
+        for ( Chapter chapter : chapters ) {
+            chapter.renderer.close()
+        }
+    }
+
+    /**
+     * Loads the MSS specified by the options, or the default MSS if none is specified.
+     *
+     * @param options The options specifying the MSS.
+     * @param fileResource Used to resolve the MSS path.
+     *
+     * @throws IOException on failure to read the MSS file.
+     */
+    static @NotNull MSS loadMSS( @NotNull PDFGeneratorOptions options, @NotNull FileResource fileResource )
+            throws IOException {
+        if ( options.mss != null && !options.mss.isEmpty() ) {
+            final File mssFile = fileResource.getResourceFile( options.mss )
+            final BufferedInputStream bis = new BufferedInputStream( new FileInputStream( mssFile ) )
+            try {
+                return MSS.fromInputStream( bis )
+            }
+            finally {
+                bis.close()
+            }
+        }
+
+        System.out.println( "Using default MSS!" )
+        MSS.defaultMSS()
+    }
+
+    /**
+     * Returns how PDFBox should buffer the document according to the options.
+     *
+     * @param options The options specifying the memory to use.
+     */
+    static @NotNull MemoryUsageSetting memoryUsageSetting( @NotNull PDFGeneratorOptions options ) {
+        if ( options.maxMainMemoryMB < 0 ) {
+            return MemoryUsageSetting.setupMainMemoryOnly()
+        }
+
+        MemoryUsageSetting.setupMixed( options.maxMainMemoryMB * 1024L * 1024L )
+    }
+
+    /**
+     * Returns the cache to fetch remote images through according to the options, or null for no cache.
+     *
+     * @param options The options specifying the cache.
+     * @param rootDir The optional root directory to resolve a relative cache directory against.
+     */
+    static @Nullable RemoteImageCache remoteImageCache( @NotNull PDFGeneratorOptions options, @Nullable File rootDir ) {
+        if ( options.imageCacheDir == null || options.imageCacheDir.trim().isEmpty() ) {
+            return null
+        }
+
+        File cacheDir = new File( options.imageCacheDir.trim() )
+        if ( !cacheDir.isAbsolute() && rootDir != null ) {
+            cacheDir = new File( rootDir, options.imageCacheDir.trim() )
+        }
+
+        new RemoteImageCache( cacheDir: cacheDir, maxBytes: options.imageCacheMaxMB * 1024L * 1024L )
+    }
+
+    /**
+     * Collects the urls of all images in the document.
+     *
+     * @param docItem The item to collect image urls within.
+     * @param urls The collected urls.
+     *
+     * @return The passed urls.
+     */
+    private static @NotNull Set<String> imageUrls( @NotNull DocItem docItem, @NotNull Set<String> urls ) {
+        if ( docItem instanceof Image ) {
+            urls.add( ( docItem as Image ).url )
+        }
+        if ( docItem.hasSubItems() ) {
+            for ( DocItem item : docItem.items ) {
+                imageUrls( item, urls )
+            }
+        }
+
+        urls
     }
 
     /**
@@ -561,24 +1046,28 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
         }
 
         String outlineTitle = ""
+        numberHeader( header, context )
         if ( context.options.generateSectionNumbers ) {
-            if ( this.headerNumber == null ) {
-                this.headerNumber = new StructuredNumber( newDigitValue: 1 )
-            }
-            this.headerNumber = this.headerNumber.toLevelAndIncrement( header.level.level )
-            outlineTitle += this.headerNumber.root.toString() + ". "
+            outlineTitle += context.headerNumber.root.toString() + ". "
         }
         outlineTitle += header.text
         MSS.MSS_TOC tocSection = MSS.MSS_TOC.valueOf( "h" + header.level.level )
         context.toc.add(
                 new TOC(
                         section: tocSection,
-                        sectionNumber: this.headerNumber?.root?.toString(),
+                        sectionNumber: context.headerNumber?.root?.toString(),
                         sectionTitle: header.text,
                         pageNumber: renderer.currentPageNumber
                 )
         )
-        renderer.addOutlineEntry( header.level.level, outlineTitle, renderer.currentPage )
+        if ( context.outlineEntries != null ) {
+            context.outlineEntries.add(
+                    new OutlineEntry( level: header.level.level, title: outlineTitle, page: renderer.currentPage )
+            )
+        }
+        else {
+            renderer.addOutlineEntry( header.level.level, outlineTitle, renderer.currentPage )
+        }
 
         MSS_Pages section = MSS_Pages.valueOf( "h" + header.level.level )
 
@@ -596,7 +1085,7 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
 
             renderer.pageY -= sectionNumberYOffset
             renderer.pageX += sectionNumberXOffset
-            renderer.rawText( this.headerNumber.root.toString() + ". ", styleApplicator )
+            renderer.rawText( context.headerNumber.root.toString() + ". ", styleApplicator )
             renderer.pageY += sectionNumberYOffset
         }
 
@@ -609,6 +1098,21 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
         }
     }
 
+    /**
+     * Updates the section number for a header if section numbers are generated.
+     *
+     * @param header The header to number.
+     * @param context The generator context holding the current section number.
+     */
+    private static void numberHeader( @NotNull Header header, @NotNull PDFGeneratorContext context ) {
+        if ( context.options.generateSectionNumbers ) {
+            if ( context.headerNumber == null ) {
+                context.headerNumber = new StructuredNumber( newDigitValue: 1 )
+            }
+            context.headerNumber = context.headerNumber.toLevelAndIncrement( header.level.level )
+        }
+    }
+
     /**
      * Writes a block quote.
      *
@@ -785,26 +1289,7 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
                             @NotNull String imgUrl, float x, float y, @NotNull MSSImage mssImage ) {
         // Image extends Url, but we allow the Image.url to be a local path also, even without file:
         imgUrl = imgUrl.trim()
-        InputStream imageStream
         try {
-            if ( imgUrl.startsWith( "http:" ) || imgUrl.startsWith( "https:" ) || imgUrl.startsWith( "ftp:" ) ) {
-                URL url = new URL( imgUrl )
-                imageStream = url.openStream()
-            }
-            else {
-                String imageRef = imgUrl
-                if ( imageRef.startsWith( "file:" ) ) {
-                    imageRef = imageRef.substring( 5 )
-                }
-                try {
-                    File imageFile = context.fileResource.getResourceFile( imageRef, context.resultFile )
-                    imageStream = new BufferedInputStream( new FileInputStream( imageFile ) )
-                }
-                catch ( FileNotFoundException ignore ) {
-                    imageStream = ClassLoader.getSystemResourceAsStream( imageRef )
-                }
-            }
-
             if ( mssImage.imgX != null ) {
                 x = mssImage.imgX
             }
@@ -813,7 +1298,7 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
             }
 
             PDFBoxDocRenderer.ImageParam params = new PDFBoxDocRenderer.ImageParam(
-                    imageStream: imageStream,
+                    image: context.images.load( imgUrl ),
                     holeMargin: mssImage.imgFlowMargin,
                     createHole: false,
                     xOverride: x,
@@ -822,10 +1307,6 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
                     rotate: mssImage.rotateDegrees
             )
 
-            if ( imgUrl.endsWith( ".jpg" ) || imgUrl.endsWith( ".jpeg" ) ) {
-                params.jpeg = true
-            }
-
             withSection( MSS_Pages.image ) {
                 renderer.image( params )
             }
@@ -833,9 +1314,6 @@ class PDFBoxGenerator implements Generator, BoxedTrait {
         catch ( IOException ioe ) {
             throw new GenerateException( message: "Failed to read image! (${ imgUrl })", cause: ioe )
         }
-        finally {
-            if ( imageStream != null ) imageStream.close()
-        }
     }
 
     /**
@@ -1021,12 +1499,18 @@ class ParagraphWriter implements BoxedTrait {
      * @param stylesApplicator This closure is run to apply styles.
      */
     void writeText( @NotNull String text, @NotNull MSS_Pages section, @Nullable Closure stylesApplicator ) {
-        withSection( section ) {
+        // Not withSection(...) since this is called for each text, and the closure would pass the text and the
+        // stylesApplicator on through dynamic casts.
+        enterSection( section )
+        try {
             renderer.text( text, stylesApplicator,
                     checkAndSetParagraphBoxed( section, this.renderer, this.context.pdfStyles.mss )
             )
             clearParagraphBoxed( section, this.renderer, this.context.pdfStyles.mss )
         }
+        finally {
+            leaveSection()
+        }
     }
 
     /**
@@ -1110,28 +1594,9 @@ class ParagraphWriter implements BoxedTrait {
 
         // Image extends Url, but we allow the Image.url to be a local path also, even without file:
         image.url = image.url.trim()
-        InputStream imageStream
         try {
-            if ( image.url.startsWith( "http:" ) || image.url.startsWith( "https:" ) || image.url.startsWith( "ftp:" ) ) {
-                URL url = new URL( image.url )
-                imageStream = url.openStream()
-            }
-            else {
-                String imageRef = image.url
-                if ( imageRef.startsWith( "file:" ) ) {
-                    imageRef = imageRef.substring( 5 )
-                }
-                try {
-                    File imageFile = context.fileResource.getResourceFile( imageRef, context.resultFile )
-                    imageStream = new BufferedInputStream( new FileInputStream( imageFile ) )
-                }
-                catch ( FileNotFoundException ignore ) {
-                    imageStream = ClassLoader.getSystemResourceAsStream( imageRef )
-                }
-            }
-
             PDFBoxDocRenderer.ImageParam params = new PDFBoxDocRenderer.ImageParam(
-                    imageStream: imageStream,
+                    image: context.images.load( image.url ),
                     xOffset: xOffset,
                     holeMargin: mssImage.imgFlowMargin,
                     createHole: mssImage.imgFlow
@@ -1149,18 +1614,11 @@ class ParagraphWriter implements BoxedTrait {
                 params.rotate = mssImage.rotateDegrees
             }
 
-            if ( image.url.endsWith( ".jpg" ) || image.url.endsWith( ".jpeg" ) ) {
-                params.jpeg = true
-            }
-
             renderer.image( params )
         }
         catch ( IOException ioe ) {
             throw new GenerateException( message: "Failed to read image! (${ image.url })", cause: ioe )
         }
-        finally {
-            if ( imageStream != null ) imageStream.close()
-        }
 
         clearParagraphBoxed( MSS_Pages.image, this.renderer, this.context.pdfStyles.mss )
     }
@@ -50,7 +50,7 @@ class GeneratorOptions {
 
     @Option
     @Name("generator")
-    @Description("The generator to run. \"html\" or \"pdf\".")
+    @Description("The generator to run. \"html\", \"pdf\" or \"md\". In the maven plugin several generators can be given comma separated, and they are then run at the same time from one parse.")
     @Required
     String generator
 
@@ -72,4 +72,28 @@ class GeneratorOptions {
     @Optional
     String parserOptions
 
+    @Option
+    @Name("parseParallelism")
+    @Description("The number of input files to parse at the same time. Default: 1. The result is the same as with 1.")
+    @Optional
+    int parseParallelism = 1
+
+    @Option
+    @Name("parseCacheDir")
+    @Description("A directory to cache parse results in, for example target/mddoc-cache. Only input files that have changed since the last run are parsed. Relative paths are relative to the project base directory. Default: no cache.")
+    @Optional
+    String parseCacheDir
+
+    @Option
+    @Name("metricsReport")
+    @Description("A file to write a JSON report of where the time of the run went to, for example target/mddoc-metrics.json. Relative paths are relative to the project base directory. Default: no report.")
+    @Optional
+    String metricsReport
+
+    @Option
+    @Name("metricsSummary")
+    @Description("If true a summary of where the time of the run went is logged. Default: false.")
+    @Optional
+    boolean metricsSummary = false
+
 }
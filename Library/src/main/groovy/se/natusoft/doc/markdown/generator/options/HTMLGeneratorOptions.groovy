@@ -72,6 +72,12 @@ class HTMLGeneratorOptions implements Options {
     @Description("The path file links should be relative to.")
     String makeFileLinksRelativeTo = null;
 
+    @Option
+    @Name("splitLevel")
+    @Description("When 1 - 6 a site is generated with one page per header of this level or higher, and a table of contents on each page. The first page is written to resultFile, and the others next to it.")
+    @Optional
+    int splitLevel = 0
+
     @Option
     @Name("resultFile")
     @Description("Where to write the result.")
@@ -160,6 +160,30 @@ class PDFGeneratorOptions implements Options {
     @Optional
     boolean generateTitlePage = false
 
+    @Option
+    @Name("maxMainMemoryMB")
+    @Description("The number of megabytes of memory to use for the document while it is generated. What does not fit is put in a scratch file in the temp directory. Default is to keep everything in memory.")
+    @Optional
+    int maxMainMemoryMB = -1
+
+    @Option
+    @Name("chapterParallelism")
+    @Description("The max number of chapters, starting at level 1 headers, to lay out at the same time. The result is the same as when laying out the whole document at once. Default is 0, which lays out the whole document at once.")
+    @Optional
+    int chapterParallelism = 0
+
+    @Option
+    @Name("imageCacheDir")
+    @Description("A directory to cache remote (http, https, ftp) images in. A cached image is fetched again after a day, but is still used if that fails. Default is no cache.")
+    @Optional
+    String imageCacheDir = null
+
+    @Option
+    @Name("imageCacheMaxMB")
+    @Description("The maximum size in megabytes of the image cache. The least recently fetched images are removed when it is exceeded. Default is 100.")
+    @Optional
+    int imageCacheMaxMB = 100
+
     @Option
     @Name("help")
     @Description("Shows help.")
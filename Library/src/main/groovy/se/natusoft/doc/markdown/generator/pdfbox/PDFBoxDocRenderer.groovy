@@ -38,7 +38,7 @@ package se.natusoft.doc.markdown.generator.pdfbox
 
 import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
-import org.apache.pdfbox.multipdf.Overlay
+import org.apache.pdfbox.io.MemoryUsageSetting
 import org.apache.pdfbox.pdmodel.PDDocument
 import org.apache.pdfbox.pdmodel.PDPage
 import org.apache.pdfbox.pdmodel.PDPageContentStream
@@ -62,6 +62,7 @@ import se.natusoft.doc.markdown.generator.styles.MSS.MSS_TOC
 import se.natusoft.doc.markdown.generator.utils.RequiresWithSection
 import se.natusoft.doc.markdown.generator.utils.Sectionizer
 import se.natusoft.doc.markdown.util.NotNullTrait
+import se.natusoft.doc.markdown.util.Metrics
 import se.natusoft.doc.markdown.util.Text
 import se.natusoft.doc.markdown.util.Word
 
@@ -151,7 +152,7 @@ class PDFBoxDocRenderer implements NotNullTrait {
     /**
      * Maps model page sizes to PDFBox page sizes.
      */
-    private static Map<String, PDRectangle> pageSizes = [
+    private static final Map<String, PDRectangle> pageSizes = [
             A0    : PDRectangle.A0,
             A1    : PDRectangle.A1,
             A2    : PDRectangle.A2,
@@ -197,20 +198,25 @@ class PDFBoxDocRenderer implements NotNullTrait {
     }
 
     /**
-     * This represents an internal document layer. This is not a PDFBox concept! Each layer is a PDF document.
-     * They are merged at the end. There is a front layer, the main document layer, and a background layer.
+     * This represents an internal document layer. This is not a PDFBox concept! Each layer is a separate content
+     * stream of each page of the one document. There is a front layer, the main document layer, and a background
+     * layer.
      */
     class PDFDocLayer { // No, I have not missed static keyword here! This needs to be an instance member.
 
-        /** Represents the whole document. */
-        PDDocument document = new PDDocument()
-
         /** The current page of the document. */
         PDPage docPage
 
         /** The current stream of the current page of the document. */
         PDPageContentStream docStream
 
+        /**
+         * Returns the whole document. This is the same for all layers.
+         */
+        PDDocument getDocument() {
+            return PDFBoxDocRenderer.this.docMgr.document
+        }
+
         /**
          * Checks if the internal content stream is available (have been created).
          */
@@ -236,6 +242,32 @@ class PDFBoxDocRenderer implements NotNullTrait {
             return this.docStream
         }
 
+        /**
+         * Ends the content of this layer on the current page, and starts it on a new page. The new content
+         * stream is added after the content streams already on the page.
+         *
+         * @param page The page to start rendering this layer on.
+         */
+        void startPage( @NotNull PDPage page ) {
+            endPage()
+            this.docPage = page
+            this.docStream = new PDPageContentStream( this.document, page, PDPageContentStream.AppendMode.APPEND, true )
+            // The content streams of a page are one stream to the reader, so what is set in one layer would otherwise
+            // leak into the layers after it. This makes each layer start out like a page of its own.
+            this.docStream.saveGraphicsState()
+        }
+
+        /**
+         * Ends the content of this layer on the current page.
+         */
+        void endPage() {
+            if ( this.docStream != null ) {
+                this.docStream.restoreGraphicsState()
+                this.docStream.close()
+                this.docStream = null
+            }
+        }
+
     }
 
     //
@@ -243,8 +275,8 @@ class PDFBoxDocRenderer implements NotNullTrait {
     //
 
     /**
-     * This holds 2 documents in parallel. One is used to render text, while the other
-     * is used to render rects, etc below the text. These documents are merged on save.
+     * This holds the document and its 3 layers. One is used to render text, one is used to render rects, etc
+     * below the text, and one to render above the text.
      */
     private class DocMgr {
         //
@@ -276,16 +308,16 @@ class PDFBoxDocRenderer implements NotNullTrait {
         // NOTE1: If you have A and B and A is rendered before B at the same coordinates then B would be on top of A.
         //        The latest rendered is always on top of previous things. This in conjunction with that we don't
         //        know the end coordinates of a text until after rendering it makes it difficult to do things like
-        //        colored boxed behind text. This could have been solved with just one document, but a bit messier.
-        //        I decided to use 3 documents in parallel. One front document for text that should be above everything
-        //        else. One middle document where text in general is rendered. One background document where drawing
-        //        like boxes are done. These are then overlayed in correct order on save. Functions like newPage()
-        //        manages all 3 layers so that they are in sync.
+        //        colored boxed behind text. This is solved with 3 layers in parallel. One front layer for text that
+        //        should be above everything else. One middle layer where text in general is rendered. One background
+        //        layer where drawing like boxes are done. Functions like newPage() manages all 3 layers so that they
+        //        are in sync.
         //
-        // NOTE2: External fonts are loaded into a specific document. An already loaded font cannot be applied
-        //        to another document. It needs to be loaded separately for each document. This is currently
-        //        a bit messy so the fgLayer are currently not used. I'm however leaving it in here for future
-        //        use.
+        //        Each layer used to be a document of its own, and these were overlayed in correct order on save.
+        //        That kept the whole document in memory about 5 times over at the end. Now each page instead gets
+        //        one content stream per layer, in background, middle, front order, which renders the same.
+        //
+        // NOTE2: The fgLayer is currently not used. I'm however leaving it in here for future use.
         //
 
         /** The foreground layer. Anything here will be rendered on top of the other 2 layers. */
@@ -308,6 +340,16 @@ class PDFBoxDocRenderer implements NotNullTrait {
         /** The PDF outline. */
         Outline outline = null
 
+        /** The document all layers render into. Created on first use. */
+        private PDDocument _document = null
+
+        PDDocument getDocument() {
+            if ( this._document == null ) {
+                this._document = new PDDocument( PDFBoxDocRenderer.this.memoryUsageSetting )
+            }
+            this._document
+        }
+
         /** Current page number. */
         int pageNumber = 0
 
@@ -347,72 +389,38 @@ class PDFBoxDocRenderer implements NotNullTrait {
 
             switch ( newPagePosition ) {
                 case NewPagePosition.LAST:
-                    this.middleLayer.document.addPage( page )
+                    this.document.addPage( page )
                     break
 
                 case NewPagePosition.FIRST:
-                    this.middleLayer.document.pages.insertBefore( page, this.middleLayer.document.pages.get( 0 ) )
+                    this.document.pages.insertBefore( page, this.document.pages.get( 0 ) )
                     break
 
                 case NewPagePosition.AFTER_CURRENT:
-                    this.middleLayer.document.pages.insertAfter( page, this.middleLayer.docPage )
+                    this.document.pages.insertAfter( page, this.middleLayer.docPage )
                     break
             }
-            this.middleLayer.docPage = page
 
             if ( this.middleLayer.docStreamAvailable ) {
                 ensureTextModeOff()
-                this.middleLayer.docStream.close()
-            }
-            this.middleLayer.docStream = new PDPageContentStream( this.middleLayer.document, this.middleLayer.docPage )
-
-
-            PDPage bgPage = new PDPage()
-            bgPage.setMediaBox( PDFBoxDocRenderer.this.pageFormat )
-
-            switch ( newPagePosition ) {
-                case NewPagePosition.LAST:
-                    this.bgLayer.document.addPage( bgPage )
-                    break
-
-                case NewPagePosition.FIRST:
-                    this.bgLayer.document.pages.insertBefore( bgPage, this.bgLayer.document.pages.get( 0 ) )
-                    break
-
-                case NewPagePosition.AFTER_CURRENT:
-                    this.bgLayer.document.pages.insertAfter( bgPage, this.bgLayer.docPage )
-                    break
             }
-            this.bgLayer.docPage = bgPage
-
-            if ( this.bgLayer.docStreamAvailable ) {
-                this.bgLayer.docStream.close()
-            }
-            this.bgLayer.docStream = new PDPageContentStream( this.bgLayer.document, this.bgLayer.docPage )
-
 
-            PDPage fgPage = new PDPage()
-            fgPage.setMediaBox( PDFBoxDocRenderer.this.pageFormat )
-
-            switch ( newPagePosition ) {
-                case NewPagePosition.LAST:
-                    this.fgLayer.document.addPage( fgPage )
-                    break
-
-                case NewPagePosition.FIRST:
-                    this.fgLayer.document.pages.insertBefore( fgPage, this.fgLayer.document.pages.get( 0 ) )
-                    break
-
-                case NewPagePosition.AFTER_CURRENT:
-                    this.fgLayer.document.pages.insertAfter( fgPage, this.fgLayer.docPage )
-                    break
-            }
-            this.fgLayer.docPage = fgPage
+            // The order of these decides the order of the layers on the page.
+            this.bgLayer.startPage( page )
+            this.middleLayer.startPage( page )
+            this.fgLayer.startPage( page )
+        }
 
-            if ( this.fgLayer.docStreamAvailable ) {
-                this.fgLayer.docStream.close()
+        /**
+         * Ends the content of all layers on the current page.
+         */
+        void endPage() {
+            if ( this.middleLayer.docStreamAvailable ) {
+                ensureTextModeOff()
             }
-            this.fgLayer.docStream = new PDPageContentStream( this.fgLayer.document, this.fgLayer.docPage )
+            this.bgLayer.endPage()
+            this.middleLayer.endPage()
+            this.fgLayer.endPage()
         }
     }
 
@@ -455,6 +463,10 @@ class PDFBoxDocRenderer implements NotNullTrait {
     @NotNull
     protected DocMgr docMgr = new DocMgr()
 
+    /** The images embedded in the document so far, by content hash. */
+    @NotNull
+    private Map<String, PDImageXObject> embeddedImages = new HashMap<>()
+
     /**
      * Keeps track of PDFBoxes text mode since I have not found a way to ask PDFBox for it.
      * ensureTextMode() and ensureTextModeOff() makes use of this.
@@ -467,13 +479,30 @@ class PDFBoxDocRenderer implements NotNullTrait {
     /** Indicates that the current mode is free floating overlay text. */
     private boolean freeFloating = false
 
+    /** The renderers whose pages have been appended to this one. Their documents are closed with this. */
+    @NotNull
+    private List<PDFBoxDocRenderer> appended = new LinkedList<>()
+
     //
     // Properties
     //
 
+    /**
+     * How PDFBox should buffer the document while it is rendered. With a scratch file, what does not fit in the
+     * allowed memory is written to disk. This must be set before anything is rendered.
+     */
+    @NotNull
+    MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupMainMemoryOnly()
+
     /** Indicates if page number should be rendered and incremented. */
     boolean pageNoActive = false
 
+    /**
+     * Indicates that page numbers are only incremented, and rendered when the pages are appended to another
+     * renderer with appendPages(...).
+     */
+    boolean pageNoDeferred = false
+
     /** The size of the page. Use constants on this class for valid standard sizes. */
     String pageSize = A4
 
@@ -509,8 +538,8 @@ class PDFBoxDocRenderer implements NotNullTrait {
         this.docMgr.pageNumber
     }
 
-    /** A set of holes in the text rendering area that will be avoided by normal text paragraphs. */
-    List<TextHole> textHoles = new LinkedList<>()
+    /** The holes in the text rendering area of the current page that will be avoided by normal text paragraphs. */
+    TextHoles textHoles = TextHoles.NONE
 
     /** A margin between a hole edge and rendered text. A hole is usually not emtpy ... */
     float holeMargin
@@ -544,7 +573,7 @@ class PDFBoxDocRenderer implements NotNullTrait {
         MSSColorPair colors
         boolean preFormatted
         Closure<Void> stylesApplicator
-        List<TextHole> textHoles = []
+        TextHoles textHoles
     }
     private SaveState savedState = null
 
@@ -558,9 +587,9 @@ class PDFBoxDocRenderer implements NotNullTrait {
                         background: this.colors.background
                 ),
                 preFormatted: this.preFormatted,
-                stylesApplicator: this.stylesApplicator
+                stylesApplicator: this.stylesApplicator,
+                textHoles: this.textHoles
         )
-        this.savedState.textHoles.addAll( this.textHoles )
     }
 
     void restoreState() {
@@ -572,8 +601,7 @@ class PDFBoxDocRenderer implements NotNullTrait {
         this.colors = this.savedState.colors
         this.preFormatted = this.savedState.preFormatted
         this.stylesApplicator = this.savedState.stylesApplicator
-        this.textHoles.clear()
-        this.textHoles.addAll( this.savedState.textHoles )
+        this.textHoles = this.savedState.textHoles
         this.savedState = null
     }
 
@@ -765,7 +793,8 @@ class PDFBoxDocRenderer implements NotNullTrait {
     @SuppressWarnings( "GroovyUnusedDeclaration" )
     void setTextAndLinesColor( @NotNull MSSColor textAndLinesColor ) {
         notNull( "foregroundColor", textAndLinesColor )
-        this.colors.foreground = textAndLinesColor
+        // The current pair can be shared with the MSS, so it is replaced rather than changed.
+        this.colors = new MSSColorPair( foreground: textAndLinesColor, background: this.colors.background )
         this.colors.foreground.applyColor this.docMgr.DOC_TEXT_AND_FILL_COLOR
     }
 
@@ -785,7 +814,7 @@ class PDFBoxDocRenderer implements NotNullTrait {
      */
     void setBackgroundFillColor( @NotNull MSSColor backgroundColor ) {
         notNull( "backgroundColor", backgroundColor )
-        this.colors.background = backgroundColor
+        this.colors = new MSSColorPair( foreground: this.colors.foreground, background: backgroundColor )
         this.colors.background.applyColor this.docMgr.BG_DOC_TEXT_AND_FILL_COLOR
     }
 
@@ -853,8 +882,8 @@ class PDFBoxDocRenderer implements NotNullTrait {
     @SuppressWarnings( "GroovyUnusedDeclaration" )
     PDFBoxFontMSSAdapter loadExternalFont( @NotNull String url, @NotNull MSSFont mssFont ) {
         URL fontURL = new URL( url )
-        // Note that this is only done for the middle layer!
-        PDFont font = PDType0Font.load( this.docMgr.middleLayer.document, fontURL.openStream() )
+        // All layers share the document, so the font can be used in any layer.
+        PDFont font = PDType0Font.load( this.docMgr.document, fontURL.openStream() )
         return new PDFBoxFontMSSAdapter( font, mssFont )
     }
 
@@ -985,19 +1014,8 @@ class PDFBoxDocRenderer implements NotNullTrait {
      */
     static protected float calcTextWidth( @NotNull PDFBoxFontMSSAdapter fontAdapter, @NotNull String text ) {
         notNull( "text", text )
-        float width
-        try {
-            width = ( fontAdapter.font.getStringWidth( text ) / 1000.0f * ( float ) fontAdapter.size ) as float
-        }
-        catch ( IllegalArgumentException ignore ) { // PDFBox have problems with certain characters.
-            StringBuilder sb = new StringBuilder()
-            text.length().times {
-                sb.append( 'X' )
-            }
-            width = ( fontAdapter.font.getStringWidth( sb.toString() ) / 1000.0f * ( float ) fontAdapter.size ) as float
-        }
 
-        width
+        fontAdapter.textWidth( text )
     }
 
     /**
@@ -1094,13 +1112,11 @@ class PDFBoxDocRenderer implements NotNullTrait {
                 // be the result, and I fail to comprehend why it is!!
                 float dotsSize = ( ( this.pageX - titleEnd ) - calcTextWidth( "..0000" ) ) as float
 
-                StringBuilder sb = new StringBuilder()
-                while ( calcTextWidth( sb.toString() ) < dotsSize ) {
-                    sb.append( '.' )
-                }
+                char[] dots = new char[ this.fontMSSAdapter.repeatsToCover( '.' as char, dotsSize ) ]
+                Arrays.fill( dots, '.' as char )
                 this.pageX = ( titleEnd + calcTextWidth( ".." ) ) as float
                 positionTextAtPageLocation()
-                rawText( sb.toString() )
+                rawText( new String( dots ) )
             }
 
             this.pageY -= this.fontMSSAdapter.size + 2
@@ -1180,12 +1196,11 @@ class PDFBoxDocRenderer implements NotNullTrait {
 
         text.split( "[\n\r]" ).each { String origLine ->
             String line = origLine
-            boolean needWrap = false
-            float width = calcTextWidth( line )
-            while ( ( this.margins.leftMargin + this.leftInset + width ) > ( this.pageFormat.width - this.margins.rightMargin ) ) {
-                needWrap = true
-                line = line[ 0..( line.size() - 2 ) ]
-                width = calcTextWidth( line )
+            int fitting = this.fontMSSAdapter.fittingChars( line, ( this.margins.leftMargin + this.leftInset ) as float,
+                    ( this.pageFormat.width - this.margins.rightMargin ) as float )
+            boolean needWrap = fitting < line.length()
+            if ( needWrap ) {
+                line = line.substring( 0, fitting )
             }
             result += cr
             if ( needWrap ) {
@@ -1235,45 +1250,158 @@ class PDFBoxDocRenderer implements NotNullTrait {
     }
 
     /**
-     * Returns the hole the specified coordinates are in if any, otherwise null is returned.
-     *
-     * @param x The x coordinate of the hole to check for.
-     * @param y The y coordinate of the hole to check for.
+     * Checks if pageX is within a hole in the text and if so moves pageX to after the hole.
      *
-     * @return A TextHole or null.
+     * @param wordSize The width of the word to render at pageX.
      */
-    @Nullable
-    private TextHole checkForHole( float x, float y ) {
-        this.textHoles.find { TextHole hole ->
-            x >= hole.x && x <= ( hole.x + hole.width ) && y >= hole.y && y <= ( hole.y + hole.height )
+    private void adaptToTextHoles( float wordSize ) {
+        if ( this.textHoles.isEmpty() ) {
+            return
         }
-    }
 
-    /**
-     * Checks if pageX is within a hole in the text and if so moves pageX to after the hole.
-     *
-     * @param adaptParams holeMargin and wordSize parameters.
-     */
-    private void adaptToTextHoles( @NotNull AdaptParams adaptParams ) {
         float x = this.pageX
         float y = this.pageY + ( this.fontMSSAdapter.size * 2 )
-        TextHole hole = checkForHole( x, y )
+        TextHole hole = this.textHoles.find( x, y )
         if ( hole == null ) {
-            x = this.pageX + adaptParams.holeMargin + adaptParams.wordSize
-            hole = checkForHole( x, y )
+            x = this.pageX + this.holeMargin + wordSize
+            hole = this.textHoles.find( x, y )
         }
         if ( hole != null ) {
-            this.pageX = hole.x + hole.width + adaptParams.holeMargin
+            this.pageX = hole.x + hole.width + this.holeMargin
         }
     }
 
-    private static class AdaptParams {
-        float holeMargin, wordSize
+    /**
+     * The words of a text that follow each other on the same line, and can thus be shown with one showText(...).
+     */
+    private static class TextRun {
+        /** The texts of all the words of the text, as they are rendered. */
+        String[] wordTexts
+
+        /** The widths of all the words of the text. */
+        float[] wordSizes
+
+        /** The index of the first word of the run. */
+        int first = 0
+
+        /** The index after the last word of the run. */
+        int end = 0
+
+        /** Where the run starts. */
+        float x, y
+
+        /** Where the next word must start to continue the run. */
+        float nextX
+
+        boolean isEmpty() {
+            this.first == this.end
+        }
+
+        /**
+         * Continues the run with the next word, or starts a new run with it if the run is empty.
+         *
+         * @param x Where the word starts.
+         * @param y Where the word starts.
+         */
+        void add( float x, float y ) {
+            if ( isEmpty() ) {
+                this.x = x
+                this.y = y
+            }
+            this.nextX = x + this.wordSizes[ this.end ]
+            ++this.end
+        }
+
+        /**
+         * @return The text of the run.
+         */
+        String getText() {
+            if ( this.end - this.first == 1 ) {
+                return this.wordTexts[ this.first ]
+            }
+            StringBuilder text = new StringBuilder()
+            for ( int i = this.first; i < this.end; i++ ) {
+                text.append( this.wordTexts[ i ] )
+            }
+            text.toString()
+        }
+
+        /**
+         * @return The width of the run.
+         */
+        float getWidth() {
+            this.nextX - this.x
+        }
+
+        /**
+         * Empties the run. The next word starts a new run.
+         */
+        void clear() {
+            this.first = this.end
+        }
+    }
+
+    /**
+     * Shows the words of a run at the start of the run, and empties the run.
+     *
+     * @param run The run to show.
+     */
+    private void showRun( @NotNull TextRun run ) {
+        if ( run.isEmpty() ) {
+            return
+        }
+
+        ensureTextModeOff()
+        ensureTextMode( run.x, run.y )
+        try {
+            this.docMgr.mainLayer.docStream.showText( run.text )
+            underline( run.x, run.y, run.width )
+        }
+        catch ( IllegalArgumentException ignored ) {
+            // Show the words one at a time so that only the words that cannot be rendered are left out.
+            float x = run.x
+            for ( int i = run.first; i < run.end; i++ ) {
+                ensureTextModeOff()
+                ensureTextMode( x, run.y )
+                try {
+                    this.docMgr.mainLayer.docStream.showText( run.wordTexts[ i ] )
+                    underline( x, run.y, run.wordSizes[ i ] )
+                }
+                catch ( IllegalArgumentException iae ) {
+                    System.err.println( "PDFBox failed to render word '${ run.wordTexts[ i ] }' due to \"${ iae.message }\"" )
+                }
+                x += run.wordSizes[ i ]
+            }
+        }
+        run.clear()
+    }
+
+    /**
+     * Underlines shown text if the current font is underlined.
+     *
+     * @param x The x coordinate of the text.
+     * @param y The y coordinate of the text.
+     * @param width The width of the text.
+     */
+    private void underline( float x, float y, float width ) {
+        if ( this.fontMSSAdapter.underlined ) {
+            // I did spend some hours on trying to do this the officially correct way, but
+            // finally gave up since nothing seemed to work.
+            ensureTextModeOff()
+            applyStyles()
+            this.docMgr.mainLayer.docStream.setLineWidth( 0.001f )
+            this.docMgr.mainLayer.docStream.addRect( x, y - 3 as float, width, 0.5f )
+            this.docMgr.mainLayer.docStream.closeAndFillAndStroke()
+            ensureTextMode()
+        }
     }
 
     /**
      * Writes text to the document using the current font, colors, etc.
      *
+     * The words are laid out in one pass. The words that follow each other on a line are shown together, and only
+     * a line break, a page break or a hole in the text starts a new run of words.
+     *
      * @param txt The txt to write
      * @param stylesApplicator A closure that will be called to style text when needed.
      * @param pgBoxed If true then the text will be rendered with a background of the set background color.
@@ -1291,6 +1419,12 @@ class PDFBoxDocRenderer implements NotNullTrait {
 
 
         Text text = new Text( content: txt.toString() )
+        List<Word> words = text.words
+        TextRun run = new TextRun( wordTexts: new String[ words.size() ], wordSizes: new float[ words.size() ] )
+        for ( int i = 0; i < words.size(); i++ ) {
+            run.wordTexts[ i ] = words.get( i ).toString( this.preFormatted )
+            run.wordSizes[ i ] = calcTextWidth( run.wordTexts[ i ] )
+        }
 
         if ( pgBoxed ) {
             startParagraphBox()
@@ -1303,12 +1437,14 @@ class PDFBoxDocRenderer implements NotNullTrait {
         PDRectangle textArea = new PDRectangle( lowerLeftX: this.pageX, lowerLeftY: this.pageY )
         PDRectangle boxedTextArea = new PDRectangle( lowerLeftX: this.pageX - 1, lowerLeftY: this.pageY )
 
-        text.words.each { Word word ->
-            float wordSize = calcTextWidth( word.toString( this.preFormatted ) )
+        for ( int i = 0; i < run.wordTexts.length; i++ ) {
+            float wordSize = run.wordSizes[ i ]
 
-            adaptToTextHoles( new AdaptParams( holeMargin: this.holeMargin, wordSize: wordSize ) )
+            adaptToTextHoles( wordSize )
 
             if ( this.pageX + wordSize > rightMarginPos ) {
+                showRun( run )
+
                 if ( pgBoxed ) {
                     endParagraphBox( boxedTextArea )
                 }
@@ -1319,33 +1455,22 @@ class PDFBoxDocRenderer implements NotNullTrait {
                     newPage()
                 }
 
-                adaptToTextHoles( new AdaptParams( holeMargin: this.holeMargin, wordSize: wordSize ) )
+                adaptToTextHoles( wordSize )
 
                 if ( pgBoxed ) {
                     boxedTextArea = new PDRectangle( lowerLeftX: this.pageX - 1, lowerLeftY: this.pageY )
                 }
             }
-
-            positionTextAtPageLocation()
-
-            try {
-                this.docMgr.mainLayer.docStream.showText( word.toString( this.preFormatted ) )
-                if ( this.fontMSSAdapter.underlined ) {
-                    // I did spend some hours on trying to do this the officially correct way, but
-                    // finally gave up since nothing seemed to work.
-                    ensureTextModeOff()
-                    applyStyles()
-                    this.docMgr.mainLayer.docStream.setLineWidth( 0.001f )
-                    this.docMgr.mainLayer.docStream.addRect( this.pageX, this.pageY - 3 as float, wordSize, 0.5f )
-                    this.docMgr.mainLayer.docStream.closeAndFillAndStroke()
-                    ensureTextMode()
-                }
-            }
-            catch ( IllegalArgumentException iae ) {
-                System.err.println( "PDFBox failed to render word '${ word }' due to \"${ iae.message }\"" )
+            else if ( !run.isEmpty() && ( this.pageX != run.nextX || this.pageY != run.y ) ) {
+                // Moved past a hole.
+                showRun( run )
             }
+
+            run.add( this.pageX, this.pageY )
             this.pageX += wordSize
         }
+        showRun( run )
+
         if ( pgBoxed ) {
             endParagraphBox( boxedTextArea )
         }
@@ -1625,7 +1750,7 @@ class PDFBoxDocRenderer implements NotNullTrait {
      */
     @RequiresWithSection
     void newPage() {
-        this.textHoles.clear()
+        this.textHoles = TextHoles.NONE
 
         MSSColor boxColor = null
         if ( isBox() ) {
@@ -1641,7 +1766,9 @@ class PDFBoxDocRenderer implements NotNullTrait {
 
         if ( this.pageNoActive ) {
             ++this.pageNo
-            pageNumber( this.pageNo )
+            if ( !this.pageNoDeferred ) {
+                pageNumber( this.pageNo )
+            }
         }
 
         if ( boxColor != null ) {
@@ -1673,8 +1800,12 @@ class PDFBoxDocRenderer implements NotNullTrait {
     }
 
     static final class ImageParam {
+        /** The image to render. If this is null, imageStream is used. */
+        @Nullable
+        PDFBoxImage image
+
         /** If non null, the url to the image. */
-        @NotNull
+        @Nullable
         InputStream imageStream
 
         /** Set to true if image stream contans a JPEG. */
@@ -1726,7 +1857,19 @@ class PDFBoxDocRenderer implements NotNullTrait {
         // The dumb PDImageXObject API only allows loading from local file!! Thereby we have to go a little lower
         // than that. Since the TIFF support only loads from local file, TIFFs are not supported!
 
-        if ( param.jpeg ) {
+        if ( param.image != null ) {
+            // The same image is only embedded once, no matter how many times it is used.
+            image = this.embeddedImages.get( param.image.contentHash )
+            if ( image == null ) {
+                image = param.image.createXObject( this.docMgr.mainLayer.document )
+                this.embeddedImages.put( param.image.contentHash, image )
+                Metrics.count( "images.embedded", 1 )
+            }
+            else {
+                Metrics.count( "images.reused", 1 )
+            }
+        }
+        else if ( param.jpeg ) {
             image = JPEGFactory.createFromStream( this.docMgr.mainLayer.document, param.imageStream )
         }
         else {
@@ -1795,14 +1938,14 @@ class PDFBoxDocRenderer implements NotNullTrait {
         this.docMgr.mainLayer.docStream.drawImage( image, new Matrix( at ) )
 
         if ( param.createHole ) {
-            this.textHoles << new TextHole(
+            this.textHoles = this.textHoles.withHole( new TextHole(
                     x: imageX - holeMargin,
                     // Adding (font-size * 2) was achieved by trial and error, but I'm failing to understand why this is needed!
                     // It feels like an offset between image and text coordinates!
                     y: imageY + holeMargin + this.fontMSSAdapter.size,
                     width: scaledWidth + ( holeMargin * 2.0f ),
                     height: scaledHeight + ( ( holeMargin * 2.0f ) as float ) + ( this.fontMSSAdapter.size as float )
-            )
+            ) )
         }
         else {
             newLine( scaledHeight + 2.0f as float )
@@ -1833,6 +1976,64 @@ class PDFBoxDocRenderer implements NotNullTrait {
         ensureTextMode( this.pageX, this.pageY )
     }
 
+    /**
+     * Appends all pages of another renderer to the document of this renderer, after the pages already in it. If
+     * pageNoActive is true the appended pages get page numbers, continuing from the last page number of this
+     * renderer.
+     *
+     * The pages are moved, not copied, so the other renderer must not be used after this. Its document is closed
+     * when this renderer is saved or closed.
+     *
+     * @param other The renderer whose pages to append.
+     */
+    void appendPages( @NotNull PDFBoxDocRenderer other ) {
+        other.docMgr.endPage()
+        this.appended.add( other )
+
+        // Copied since adding a page to this document changes its parent.
+        final List<PDPage> pages = new ArrayList<PDPage>( other.docMgr.document.numberOfPages )
+        for ( PDPage page : other.docMgr.document.pages ) {
+            pages.add( page )
+        }
+        for ( PDPage page : pages ) {
+            this.docMgr.document.addPage( page )
+            ++this.docMgr.pageNumber
+            if ( this.pageNoActive ) {
+                ++this.pageNo
+                appendedPageNumber( page, this.pageNo )
+            }
+        }
+    }
+
+    /**
+     * Renders a page number on a page that is already rendered. This draws exactly what pageNumber(pageNumber)
+     * draws while rendering a page.
+     *
+     * @param page The page to render the page number on.
+     * @param pageNumber The page number to render.
+     */
+    private void appendedPageNumber( @NotNull PDPage page, int pageNumber ) {
+        String pgnStr = "${ pageNumber }"
+        PDFBoxFontMSSAdapter pageNoFont = PDFBoxFontMSSAdapter.PAGE_NUMBER_FONT
+        float width = calcTextWidth( pageNoFont, pgnStr )
+
+        PDPageContentStream stream =
+                new PDPageContentStream( this.docMgr.document, page, PDPageContentStream.AppendMode.APPEND, true )
+        try {
+            stream.saveGraphicsState()
+            stream.beginText()
+            pageNoFont.applyFont( stream )
+            stream.newLineAtOffset( this.pageFormat.width - this.margins.rightMargin - width as float,
+                    this.margins.bottomMargin - ( ( pageNoFont.size * 2 ) + 6 ) as float )
+            stream.showText( pgnStr )
+            stream.endText()
+            stream.restoreGraphicsState()
+        }
+        finally {
+            stream.close()
+        }
+    }
+
     /**
      *
      * Forwards save to internal PDDocument.
@@ -1870,56 +2071,34 @@ class PDFBoxDocRenderer implements NotNullTrait {
      * @throws IOException on failure to save
      */
     void save( @NotNull OutputStream stream ) throws IOException {
-        PDDocument finalDoc
-
-        if ( this.docMgr.middleLayer.docStreamAvailable ) {
-            this.docMgr.middleLayer.docStream.close()
-
-            if ( this.docMgr.bgLayer.docStreamAvailable ) {
-                this.docMgr.bgLayer.docStream.close()
-
-                Overlay overlay = new Overlay(
-                        inputPDF: this.docMgr.middleLayer.document,
-                        allPagesOverlayPDF: this.docMgr.bgLayer.document,
-                        overlayPosition: Overlay.Position.BACKGROUND
-                )
-                finalDoc = overlay.overlay( new HashMap<Integer, String>() )
-                overlay.close()
-            }
-
-            if ( this.docMgr.fgLayer.docStreamAvailable && finalDoc != null ) {
-                this.docMgr.fgLayer.docStream.close()
-
-                Overlay overlay = new Overlay(
-                        inputPDF: finalDoc,
-                        allPagesOverlayPDF: this.docMgr.fgLayer.document,
-                        overlayPosition: Overlay.Position.FOREGROUND
-                )
-                finalDoc = overlay.overlay( new HashMap<Integer, String>() )
-                overlay.close()
-
-            }
+        if ( !this.docMgr.middleLayer.docStreamAvailable && this.appended.isEmpty() ) {
+            throw new IOException( "There was nothing to save!" )
         }
 
-        if ( finalDoc != null ) {
-            finalDoc.save( stream )
-            finalDoc.close()
-            this.docMgr.middleLayer.document.close()
-            this.docMgr.bgLayer.document.close()
-            this.docMgr.fgLayer.document.close()
+        this.docMgr.endPage()
+        Metrics.count( "pages", this.docMgr.document.numberOfPages )
+        try {
+            this.docMgr.document.save( stream )
         }
-        else {
-            throw new IOException( "There was nothing to save!" )
+        finally {
+            close()
         }
     }
 
     /**
-     * Closes content stream and document.
+     * Closes content stream and document, and the documents of the renderers whose pages have been appended.
      */
     void close() {
-        this.docMgr.fgLayer.document.close()
-        this.docMgr.middleLayer.document.close()
-        this.docMgr.bgLayer.document.close()
+        try {
+            this.docMgr.document.close()
+        }
+        finally {
+            // The appended pages are part of these documents until the document above has been saved.
+            for ( PDFBoxDocRenderer other : this.appended ) {
+                other.close()
+            }
+            this.appended.clear()
+        }
     }
 
 }
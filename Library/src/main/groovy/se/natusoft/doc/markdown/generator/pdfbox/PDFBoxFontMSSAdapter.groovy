@@ -73,18 +73,25 @@ class PDFBoxFontMSSAdapter {
     /** If underlined or not. */
     boolean underlined = false
 
+    //
+    // Private Members
+    //
+
+    /** The advance widths of the font. Resolved on first measurement. */
+    private PDFBoxFontMetrics metrics = null
+
     //
     // Constructors
     //
 
     PDFBoxFontMSSAdapter(@NotNull final MSSFont mssFont) {
-        this.font = toStdStyle(mssFont.family, mssFont.style)
+        this.@font = toStdStyle(mssFont.family, mssFont.style)
         this.size = mssFont.size
         this.underlined = mssFont.underlined
     }
 
     protected PDFBoxFontMSSAdapter(@NotNull PDFont font, @NotNull final MSSFont mssFont) {
-        this.font = font
+        this.@font = font
         this.size = mssFont.size
         this.underlined = mssFont.underlined
         setStyle(font, mssFont.style)
@@ -94,6 +101,88 @@ class PDFBoxFontMSSAdapter {
     // Methods
     //
 
+    /**
+     * Sets the PDF font to render with.
+     *
+     * @param font The font to set.
+     */
+    void setFont(@NotNull PDFont font) {
+        this.font = font
+        this.metrics = null
+    }
+
+    /**
+     * Returns the advance width metrics of the font.
+     */
+    @NotNull PDFBoxFontMetrics getMetrics() {
+        if (this.metrics == null) {
+            this.metrics = PDFBoxFontMetrics.forFont(this.font)
+        }
+        this.metrics
+    }
+
+    /**
+     * Converts a width in glyph space units to a width for the size of this font.
+     *
+     * @param glyphSpaceWidth The width to convert.
+     */
+    private float toFontSize(float glyphSpaceWidth) {
+        (glyphSpaceWidth / 1000.0f * (float) this.size) as float
+    }
+
+    /**
+     * Calculates the width of a text in this font and size.
+     *
+     * @param text The text to measure.
+     */
+    float textWidth(@NotNull CharSequence text) {
+        toFontSize(getMetrics().stringWidth(text))
+    }
+
+    /**
+     * Calculates the width of a character in this font and size.
+     *
+     * @param c The character to measure.
+     */
+    float charWidth(char c) {
+        toFontSize(getMetrics().charWidth(c))
+    }
+
+    /**
+     * Returns the number of times a character have to be repeated to cover at least the specified width.
+     * This is used for things like dot leaders.
+     *
+     * @param c The character to repeat.
+     * @param width The width to cover.
+     */
+    int repeatsToCover(char c, float width) {
+        float cWidth = charWidth(c)
+        if (width <= 0.0f || cWidth <= 0.0f) return 0
+
+        Math.ceil(width / cWidth) as int
+    }
+
+    /**
+     * Returns how many characters from the beginning of a text that fits when rendered starting at startX
+     * without passing endX.
+     *
+     * @param text The text to fit.
+     * @param startX The position the text starts at.
+     * @param endX The position the text must not pass.
+     */
+    int fittingChars(@NotNull CharSequence text, float startX, float endX) {
+        PDFBoxFontMetrics metrics = getMetrics()
+        float width = 0.0f
+        int count = 0
+        while (count < text.length()) {
+            width += metrics.charWidth(text.charAt(count))
+            if ((startX + toFontSize(width)) > endX) break
+            ++count
+        }
+
+        count
+    }
+
     /**
      * Sets the font represented by this adapter on a  page content stream.
      *
@@ -0,0 +1,221 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-20: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.apache.pdfbox.pdmodel.font.PDFont
+import org.jetbrains.annotations.NotNull
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Measures text using a table of advance widths for a font.
+ *
+ * PDFont.getStringWidth(...) encodes the whole string to a byte array and then looks up each code. This
+ * keeps the width of each character once it has been looked up, and measuring a text is then just a loop
+ * over its characters without any allocations. The sum is done in the same order as PDFBox does it so the
+ * result is the same.
+ *
+ * All widths returned are in glyph space units (1/1000 of the font size).
+ *
+ * Characters that the font cannot encode are measured as an 'X'. This is done per character, not for the
+ * whole text.
+ */
+@CompileStatic
+@TypeChecked
+class PDFBoxFontMetrics {
+    //
+    // Constants
+    //
+
+    /** The character to measure instead of one the font cannot encode. */
+    private static final String FALLBACK_CHAR = "X"
+
+    /** The raw bits of +0.0f which is the "not measured yet" marker in the width tables. */
+    private static final int NOT_MEASURED = Float.floatToRawIntBits( 0.0f )
+
+    /** What we store for characters that really have zero width, to tell them from not measured. */
+    private static final float ZERO_WIDTH = -0.0f
+
+    //
+    // Private Members
+    //
+
+    /** Metrics for the standard 14 fonts, which are the same instances in all documents. */
+    private static final ConcurrentMap<PDFont, PDFBoxFontMetrics> standardFontMetrics =
+            new ConcurrentHashMap<>()
+
+    /** The font to measure. */
+    private final PDFont font
+
+    /**
+     * Widths of the characters in the Basic Multilingual Plane in pages of 256 characters. A page is
+     * created on first use. An entry of +0.0f means not measured yet. Since a new array is always all
+     * +0.0f, a table shared between threads can at worst cause a character to be measured twice.
+     */
+    private final float[][] widthPages = new float[ 256 ][]
+
+    /** The width to use for characters the font cannot encode. */
+    private float fallbackWidth = -1.0f
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a new PDFBoxFontMetrics.
+     *
+     * @param font The font to measure.
+     */
+    private PDFBoxFontMetrics( @NotNull PDFont font ) {
+        this.font = font
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the metrics for the specified font. The standard 14 fonts share their metrics JVM wide. Other
+     * fonts are embedded in a specific document and get new metrics.
+     *
+     * @param font The font to get metrics for.
+     */
+    static @NotNull PDFBoxFontMetrics forFont( @NotNull PDFont font ) {
+        if ( !font.isStandard14() ) {
+            return new PDFBoxFontMetrics( font )
+        }
+
+        PDFBoxFontMetrics metrics = standardFontMetrics.get( font )
+        if ( metrics == null ) {
+            metrics = new PDFBoxFontMetrics( font )
+            PDFBoxFontMetrics existing = standardFontMetrics.putIfAbsent( font, metrics )
+            if ( existing != null ) metrics = existing
+        }
+
+        metrics
+    }
+
+    /**
+     * Returns the width of a character.
+     *
+     * @param c The character to get the width of.
+     */
+    float charWidth( char c ) {
+        int ch = ( int ) c
+        float[] page = this.widthPages[ ch >>> 8 ]
+        if ( page == null ) {
+            page = new float[ 256 ]
+            this.widthPages[ ch >>> 8 ] = page
+        }
+
+        float width = page[ ch & 0xff ]
+        if ( Float.floatToRawIntBits( width ) == NOT_MEASURED ) {
+            width = measure( ch )
+            page[ ch & 0xff ] = width == 0.0f ? ZERO_WIDTH : width
+        }
+
+        width
+    }
+
+    /**
+     * Returns the width of a text.
+     *
+     * @param text The text to measure.
+     */
+    float stringWidth( @NotNull CharSequence text ) {
+        stringWidth( text, 0, text.length() )
+    }
+
+    /**
+     * Returns the width of a part of a text.
+     *
+     * @param text The text to measure.
+     * @param start The index of the first character to measure.
+     * @param end The index after the last character to measure.
+     */
+    float stringWidth( @NotNull CharSequence text, int start, int end ) {
+        float width = 0.0f
+        int ix = start
+        while ( ix < end ) {
+            char c = text.charAt( ix )
+            if ( Character.isHighSurrogate( c ) && ix + 1 < end && Character.isLowSurrogate( text.charAt( ix + 1 ) ) ) {
+                // Outside of the tables. These are rare enough to not be worth caching.
+                width += measure( Character.toCodePoint( c, text.charAt( ix + 1 ) ) )
+                ix += 2
+            }
+            else {
+                width += charWidth( c )
+                ++ix
+            }
+        }
+
+        width
+    }
+
+    /**
+     * Looks up the width of a code point in the font.
+     *
+     * @param codePoint The code point to measure.
+     */
+    private float measure( int codePoint ) {
+        try {
+            this.font.getStringWidth( new String( Character.toChars( codePoint ) ) )
+        }
+        catch ( IllegalArgumentException ignore ) { // The font has no glyph for this character.
+            getFallbackWidth()
+        }
+    }
+
+    /**
+     * Returns the width to use for characters the font cannot encode.
+     */
+    private float getFallbackWidth() {
+        if ( this.fallbackWidth < 0.0f ) {
+            try {
+                this.fallbackWidth = this.font.getStringWidth( FALLBACK_CHAR )
+            }
+            catch ( IllegalArgumentException ignore ) {
+                this.fallbackWidth = this.font.averageFontWidth
+            }
+        }
+
+        this.fallbackWidth
+    }
+}
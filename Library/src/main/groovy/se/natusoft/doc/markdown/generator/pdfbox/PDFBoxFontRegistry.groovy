@@ -0,0 +1,185 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-18: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.apache.fontbox.ttf.TTFParser
+import org.apache.fontbox.ttf.TrueTypeFont
+import org.jetbrains.annotations.NotNull
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.security.MessageDigest
+
+/**
+ * Keeps parsed external font programs (TTF) so that each font file is only parsed once, no matter how many
+ * documents or how many style switches use it.
+ *
+ * Font programs are keyed on both path and a hash of the font content. A font file that is replaced on disk
+ * will thus be parsed again rather than served stale.
+ *
+ * The parsed TrueTypeFont is only read from after parsing, and fontbox synchronizes its lazy table and glyph
+ * loading, so the same program can be embedded into several documents, also from different threads. Each
+ * document still gets its own PDType0Font (with its own subset) created from the shared program.
+ *
+ * Only the most recently used font programs are kept, so that a long running process like a maven daemon or
+ * the watch mode does not keep every font it has ever loaded. A font program that is dropped is not closed,
+ * since a document being generated may still use it. It is garbage collected when no longer used.
+ */
+@CompileStatic
+@TypeChecked
+class PDFBoxFontRegistry {
+    //
+    // Constants
+    //
+
+    /** The default max number of font programs to keep. */
+    static final int DEFAULT_MAX_FONT_PROGRAMS = 32
+
+    /** The JVM wide registry. */
+    static final PDFBoxFontRegistry SHARED = new PDFBoxFontRegistry()
+
+    //
+    // Private Members
+    //
+
+    /** The parsed font programs keyed on "path#contenthash", least recently used first. */
+    private final Map<String, TrueTypeFont> fontPrograms
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a registry keeping at most DEFAULT_MAX_FONT_PROGRAMS font programs.
+     */
+    PDFBoxFontRegistry() {
+        this( DEFAULT_MAX_FONT_PROGRAMS )
+    }
+
+    /**
+     * Creates a registry.
+     *
+     * @param maxFontPrograms The max number of font programs to keep.
+     */
+    PDFBoxFontRegistry( final int maxFontPrograms ) {
+        this.fontPrograms = Collections.synchronizedMap(
+                new LinkedHashMap<String, TrueTypeFont>( 16, 0.75f, true ) {
+                    @Override
+                    protected boolean removeEldestEntry( Map.Entry<String, TrueTypeFont> eldest ) {
+                        size() > maxFontPrograms
+                    }
+                }
+        )
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the parsed font program for the specified font. The font data is only parsed if this path and
+     * content have not been seen before.
+     *
+     * @param fontPath The path the font was loaded from. Together with the content hash this is the key.
+     * @param fontData The bytes of the font file.
+     *
+     * @return A parsed font program.
+     *
+     * @throws IOException on failure to parse font.
+     */
+    @NotNull TrueTypeFont getFontProgram( @NotNull String fontPath, @NotNull byte[] fontData ) throws IOException {
+        String key = fontPath + "#" + contentHash( fontData )
+
+        TrueTypeFont fontProgram = this.fontPrograms.get( key )
+        if ( fontProgram == null ) {
+            Metrics.count( "fonts.parsed", 1 )
+            TrueTypeFont parsed = new TTFParser().parse( new ByteArrayInputStream( fontData ) )
+            synchronized ( this.fontPrograms ) {
+                fontProgram = this.fontPrograms.get( key )
+                if ( fontProgram == null ) {
+                    this.fontPrograms.put( key, parsed )
+                }
+            }
+            if ( fontProgram == null ) {
+                fontProgram = parsed
+            }
+            else {
+                // Someone else parsed the same font at the same time. Use theirs.
+                parsed.close()
+            }
+        }
+
+        fontProgram
+    }
+
+    /**
+     * @return The number of font programs currently held.
+     */
+    int size() {
+        this.fontPrograms.size()
+    }
+
+    /**
+     * Closes and forgets all font programs. This must not be called while a document using one of them is
+     * being generated.
+     */
+    void clear() {
+        Collection<TrueTypeFont> programs
+        synchronized ( this.fontPrograms ) {
+            programs = new ArrayList<TrueTypeFont>( this.fontPrograms.values() )
+            this.fontPrograms.clear()
+        }
+        programs.each { TrueTypeFont fontProgram -> fontProgram.close() }
+    }
+
+    /**
+     * Produces a hex string hash of the font content.
+     *
+     * @param fontData The content to hash.
+     */
+    private static @NotNull String contentHash( @NotNull byte[] fontData ) {
+        byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( fontData )
+        StringBuilder sb = new StringBuilder( digest.length * 2 )
+        for ( byte b : digest ) {
+            sb.append( Character.forDigit( ( b >> 4 ) & 0x0f, 16 ) )
+            sb.append( Character.forDigit( b & 0x0f, 16 ) )
+        }
+
+        sb.toString()
+    }
+}
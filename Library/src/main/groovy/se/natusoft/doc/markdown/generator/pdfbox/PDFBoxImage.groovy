@@ -0,0 +1,219 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.apache.pdfbox.cos.COSName
+import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.generator.utils.RemoteImageCache
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+
+/**
+ * An image read into memory, ready to be embedded into a PDF document.
+ *
+ * A JPEG is embedded as is, since PDF can hold JPEG data directly. Only its header is read, to get the size
+ * and color space. Other formats are decoded and embedded losslessly. The decoding can be done in advance,
+ * on any thread, by calling decode(). The decoded image is let go of as soon as it has been embedded, since
+ * it is much larger than the image file and the document only needs the XObject from then on.
+ */
+@CompileStatic
+@TypeChecked
+class PDFBoxImage {
+    //
+    // Properties
+    //
+
+    /** The content of the image file. */
+    @NotNull
+    final byte[] data
+
+    /** A hash of the content. Images with the same hash are the same image. */
+    @NotNull
+    final String contentHash
+
+    /** The frame header of a JPEG that can be embedded as is, or null. */
+    @Nullable
+    private final JPEGHeader jpegHeader
+
+    /** True if the data is a JPEG. */
+    final boolean jpeg
+
+    /** The decoded image of a non JPEG, from decode() until createXObject(...). */
+    private volatile BufferedImage decoded = null
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * The information from a JPEG frame header (SOFn) that PDF needs.
+     */
+    private static class JPEGHeader {
+        int width, height, bitsPerComponent, components
+    }
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a new PDFBoxImage.
+     *
+     * @param data The content of the image file.
+     */
+    PDFBoxImage( @NotNull byte[] data ) {
+        this.data = data
+        this.contentHash = RemoteImageCache.toHex( RemoteImageCache.sha1( data ) )
+        this.jpeg = data.length > 2 && ( data[ 0 ] & 0xff ) == 0xff && ( data[ 1 ] & 0xff ) == 0xd8
+        this.jpegHeader = this.jpeg ? readJPEGHeader( data ) : null
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Decodes a non JPEG image unless already done. This can be called from any thread.
+     *
+     * @throws IOException if the image format is not supported.
+     */
+    void decode() throws IOException {
+        if ( !this.jpeg && this.decoded == null ) {
+            BufferedImage image = ImageIO.read( new ByteArrayInputStream( this.data ) )
+            if ( image == null ) {
+                throw new IOException( "Unsupported image format!" )
+            }
+            this.decoded = image
+        }
+    }
+
+    /**
+     * Returns true if the decoded image is held.
+     */
+    boolean isDecoded() {
+        this.decoded != null
+    }
+
+    /**
+     * Creates an image XObject for this image in the specified document.
+     *
+     * @param document The document to create the image in.
+     *
+     * @throws IOException on failure to create image.
+     */
+    @NotNull PDImageXObject createXObject( @NotNull PDDocument document ) throws IOException {
+        if ( this.jpegHeader != null ) {
+            PDColorSpace colorSpace = this.jpegHeader.components == 1 ? PDDeviceGray.INSTANCE : PDDeviceRGB.INSTANCE as PDColorSpace
+            return new PDImageXObject( document, new ByteArrayInputStream( this.data ), COSName.DCT_DECODE,
+                    this.jpegHeader.width, this.jpegHeader.height, this.jpegHeader.bitsPerComponent, colorSpace )
+        }
+
+        if ( this.jpeg ) {
+            // Some JPEG PDFBox has to look closer at, like CMYK.
+            return JPEGFactory.createFromByteArray( document, this.data )
+        }
+
+        decode()
+        BufferedImage image = this.decoded
+        this.decoded = null
+        LosslessFactory.createFromImage( document, image )
+    }
+
+    /**
+     * Reads the frame header of a JPEG. Returns null unless the JPEG is of a kind that all PDF readers can
+     * show as is: baseline or progressive, 8 bits per component, and gray or YCbCr/RGB color.
+     *
+     * @param data The JPEG data.
+     */
+    private static @Nullable JPEGHeader readJPEGHeader( @NotNull byte[] data ) {
+        int ix = 2
+        while ( ix + 4 <= data.length ) {
+            if ( ( data[ ix ] & 0xff ) != 0xff ) return null
+
+            int marker = data[ ix + 1 ] & 0xff
+            if ( marker == 0xff ) {
+                // Fill byte.
+                ++ix
+                continue
+            }
+            if ( marker == 0x01 || ( marker >= 0xd0 && marker <= 0xd8 ) ) {
+                // Markers without a segment.
+                ix += 2
+                continue
+            }
+            if ( marker == 0xd9 || marker == 0xda ) {
+                // End of image, or image data, before any frame header.
+                return null
+            }
+
+            int length = ( ( data[ ix + 2 ] & 0xff ) << 8 ) | ( data[ ix + 3 ] & 0xff )
+            if ( marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc ) {
+                if ( ix + 9 >= data.length ) return null
+
+                JPEGHeader header = new JPEGHeader(
+                        bitsPerComponent: data[ ix + 4 ] & 0xff,
+                        height: ( ( data[ ix + 5 ] & 0xff ) << 8 ) | ( data[ ix + 6 ] & 0xff ),
+                        width: ( ( data[ ix + 7 ] & 0xff ) << 8 ) | ( data[ ix + 8 ] & 0xff ),
+                        components: data[ ix + 9 ] & 0xff
+                )
+                boolean supportedCoding = marker == 0xc0 || marker == 0xc1 || marker == 0xc2
+                boolean supportedColor = header.components == 1 || header.components == 3
+                if ( !supportedCoding || !supportedColor || header.bitsPerComponent != 8 || header.width == 0 ||
+                        header.height == 0 ) {
+                    return null
+                }
+
+                return header
+            }
+
+            ix += 2 + length
+        }
+
+        null
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.generator.FileResource
+import se.natusoft.doc.markdown.generator.utils.RemoteImageCache
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.util.concurrent.*
+
+/**
+ * Loads the images of a document. The images can be prefetched in parallel before the document is laid out,
+ * and each image is only loaded once no matter how many times it is used.
+ *
+ * An image url can be a http, https, or ftp url, a file: url, a path relative to the result file, or a classpath
+ * resource.
+ */
+@CompileStatic
+@TypeChecked
+class PDFBoxImageLoader {
+    //
+    // Properties
+    //
+
+    /** Used to resolve local images. */
+    @NotNull
+    FileResource fileResource
+
+    /** The file being produced. Local images are searched for relative to this. */
+    @Nullable
+    File resultFile
+
+    /** If not null, remote images are fetched through this cache. */
+    @Nullable
+    RemoteImageCache remoteCache
+
+    /** The max number of images to load at the same time when prefetching. */
+    int parallelism = Math.max( 2, Runtime.runtime.availableProcessors() )
+
+    //
+    // Private Members
+    //
+
+    /** The loaded and loading images by url. */
+    private ConcurrentMap<String, Future<PDFBoxImage>> images = new ConcurrentHashMap<>()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Starts loading the specified images in the background and returns directly. Failures are reported when
+     * the image is later requested with load(url).
+     *
+     * @param urls The urls of the images to load.
+     */
+    void prefetch( @NotNull Collection<String> urls ) {
+        java.util.List<String> toLoad = new LinkedList<>()
+        for ( String url : urls ) {
+            if ( !toLoad.contains( url.trim() ) && !this.images.containsKey( url.trim() ) ) {
+                toLoad.add( url.trim() )
+            }
+        }
+        if ( toLoad.isEmpty() ) return
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( this.parallelism, toLoad.size() ),
+                new ThreadFactory() {
+                    @Override
+                    Thread newThread( @NotNull Runnable runnable ) {
+                        Thread thread = new Thread( runnable, "ImageLoader" )
+                        thread.daemon = true
+                        thread
+                    }
+                }
+        )
+        try {
+            for ( String url : toLoad ) {
+                this.images.putIfAbsent( url, executor.submit( loadTask( url ) ) )
+            }
+        }
+        finally {
+            // The threads finish the submitted loads and then go away.
+            executor.shutdown()
+        }
+    }
+
+    /**
+     * Returns a task that reads and decodes an image.
+     *
+     * @param url The url of the image.
+     */
+    private @NotNull Callable<PDFBoxImage> loadTask( @NotNull final String url ) {
+        new Callable<PDFBoxImage>() {
+            @Override
+            PDFBoxImage call() throws Exception {
+                long start = System.nanoTime()
+                PDFBoxImage image = read( url )
+                image.decode()
+                Metrics.time( "images.load", url, start )
+                Metrics.count( "bytesRead", image.data.length )
+                image
+            }
+        }
+    }
+
+    /**
+     * Returns an image, waiting for it if it is being prefetched, and loading it if it is not.
+     *
+     * @param url The url of the image.
+     *
+     * @throws IOException on failure to load the image.
+     */
+    @NotNull PDFBoxImage load( @NotNull String url ) throws IOException {
+        url = url.trim()
+        Future<PDFBoxImage> image = this.images.get( url )
+        if ( image == null ) {
+            FutureTask<PDFBoxImage> task = new FutureTask<PDFBoxImage>( loadTask( url ) )
+            image = this.images.putIfAbsent( url, task )
+            if ( image == null ) {
+                image = task
+                task.run()
+            }
+        }
+
+        try {
+            return image.get()
+        }
+        catch ( ExecutionException ee ) {
+            if ( ee.cause instanceof IOException ) throw ee.cause as IOException
+            throw new IOException( ee.cause.message, ee.cause )
+        }
+        catch ( InterruptedException ie ) {
+            throw new InterruptedIOException( "Interrupted while loading image '${ url }'!" )
+        }
+    }
+
+    /**
+     * Reads an image.
+     *
+     * @param url The url of the image.
+     *
+     * @throws IOException on failure to read the image.
+     */
+    private @NotNull PDFBoxImage read( @NotNull String url ) throws IOException {
+        InputStream imageStream
+        if ( url.startsWith( "http:" ) || url.startsWith( "https:" ) || url.startsWith( "ftp:" ) ) {
+            if ( this.remoteCache != null ) {
+                return new PDFBoxImage( this.remoteCache.fetch( new URL( url ) ) )
+            }
+            imageStream = new URL( url ).openStream()
+        }
+        else {
+            String imageRef = url
+            if ( imageRef.startsWith( "file:" ) ) {
+                imageRef = imageRef.substring( 5 )
+            }
+            try {
+                File imageFile
+                // FileResource resolves its root directory lazily, which is not thread safe.
+                synchronized ( this.fileResource ) {
+                    imageFile = this.fileResource.getResourceFile( imageRef, this.resultFile )
+                }
+                imageStream = new FileInputStream( imageFile )
+            }
+            catch ( FileNotFoundException ignore ) {
+                imageStream = ClassLoader.getSystemResourceAsStream( imageRef )
+                if ( imageStream == null ) throw ignore
+            }
+        }
+
+        new PDFBoxImage( RemoteImageCache.readFully( imageStream ) )
+    }
+}
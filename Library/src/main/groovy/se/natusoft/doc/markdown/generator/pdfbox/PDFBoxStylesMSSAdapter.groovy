@@ -39,6 +39,7 @@ package se.natusoft.doc.markdown.generator.pdfbox
 import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
 import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.pdmodel.font.PDFont
 import org.apache.pdfbox.pdmodel.font.PDType0Font
 import org.jetbrains.annotations.NotNull
 import se.natusoft.doc.markdown.exception.GenerateException
@@ -46,6 +47,7 @@ import se.natusoft.doc.markdown.generator.FileResource
 import se.natusoft.doc.markdown.generator.styles.MSS
 import se.natusoft.doc.markdown.generator.styles.MSSExtFont
 import se.natusoft.doc.markdown.generator.styles.MSSFont
+import se.natusoft.doc.markdown.util.Metrics
 
 /**
  * Handles the conversion of MSS styles to iText PDF fonts.
@@ -62,6 +64,25 @@ class PDFBoxStylesMSSAdapter {
 
     @NotNull FileResource fileResource
 
+    /** The registry of parsed font programs to use. Defaults to the JVM wide registry. */
+    @NotNull PDFBoxFontRegistry fontRegistry = PDFBoxFontRegistry.SHARED
+
+    //
+    // Private Members
+    //
+
+    /** The document that the cached fonts below belong to. */
+    private PDDocument cachedFontsDocument = null
+
+    /** Fonts embedded in cachedFontsDocument keyed on font path and style. */
+    private Map<String, PDFont> embeddedFonts = new HashMap<>()
+
+    /**
+     * Font adapters for cachedFontsDocument keyed on the family, style, size and underline of the MSSFont, so
+     * equal fonts share an adapter even when they are different instances.
+     */
+    private Map<String, PDFBoxFontMSSAdapter> fontAdapters = new HashMap<>()
+
     //
     // Methods
     //
@@ -82,7 +103,7 @@ class PDFBoxStylesMSSAdapter {
     /**
      * Best effort to resolve font. If not a standard font then an external font is expected under PDF/TTF.
      *
-     * @oaram document The pdf document being generatd.
+     * @param document The pdf document being generated.
      * @param mssFont The font reference to resolve.
      *
      * @return The resolved font.
@@ -92,6 +113,40 @@ class PDFBoxStylesMSSAdapter {
     private @NotNull PDFBoxFontMSSAdapter resolveFont(@NotNull final PDDocument document, @NotNull final MSSFont mssFont)
             throws GenerateException {
 
+        if (document != this.cachedFontsDocument) {
+            // Embedded fonts belong to a specific document and can not be shared with another.
+            this.embeddedFonts = new HashMap<>()
+            this.fontAdapters = new HashMap<>()
+            this.cachedFontsDocument = document
+        }
+
+        final String fontKey = "${mssFont.family}|${mssFont.style}|${mssFont.size}|${mssFont.underlined}".toString()
+        PDFBoxFontMSSAdapter fontAdapter = this.fontAdapters.get(fontKey)
+        if (fontAdapter == null) {
+            fontAdapter = createFont(document, mssFont)
+            this.fontAdapters.put(fontKey, fontAdapter)
+            Metrics.count("fonts.cacheMisses", 1)
+        }
+        else {
+            Metrics.count("fonts.cacheHits", 1)
+        }
+
+        fontAdapter
+    }
+
+    /**
+     * Creates a new font adapter for the specified font.
+     *
+     * @param document The pdf document being generated.
+     * @param mssFont The font reference to resolve.
+     *
+     * @return The resolved font.
+     *
+     * @throws GenerateException If not font is found.
+     */
+    private @NotNull PDFBoxFontMSSAdapter createFont(@NotNull final PDDocument document, @NotNull final MSSFont mssFont)
+            throws GenerateException {
+
         if (!isStandardFont(mssFont.family.toUpperCase())) {
             // We don't have a standard font! Lets see if we can find a ttf font!
             final MSSExtFont mssExtFont = this.mss.getPdfExternalFontPath(mssFont.family)
@@ -108,16 +163,62 @@ class PDFBoxStylesMSSAdapter {
     }
 
     /**
-     * Loads a font file into a byte array.
+     * Loads an external font. The font program is parsed only once while it is in PDFBoxFontRegistry, and is
+     * embedded as a subset only once per document and style.
      *
      * @param document The document being generated.
      * @param mssExtFont An object containing the path to the font to read.
+     * @param mssFont The font reference to load for.
      *
-     * @return The loaded bytes.
+     * @return The loaded font.
      *
      * @throws GenerateException on failure to load font.
      */
     private @NotNull PDFBoxFontMSSAdapter loadFont(@NotNull PDDocument document, @NotNull final MSSExtFont mssExtFont, @NotNull final MSSFont mssFont) throws GenerateException {
+        // PDFBoxFontMSSAdapter applies the style to the font descriptor, so each style needs its own PDFont.
+        final String embeddedKey = "${mssExtFont.fontPath}|${mssFont.style}".toString()
+        PDFont font = this.embeddedFonts.get(embeddedKey)
+        if (font == null) {
+            final long start = System.nanoTime()
+            try {
+                font = PDType0Font.load(document, this.fontRegistry.getFontProgram(mssExtFont.fontPath,
+                        readFontData(mssExtFont)), true)
+            }
+            catch (final IOException ioe) {
+                throw new GenerateException(message: "Failed to load font '${mssExtFont.fontPath}'!", cause: ioe)
+            }
+            this.embeddedFonts.put(embeddedKey, font)
+            Metrics.time("fonts.load", mssExtFont.fontPath, start)
+        }
+
+        new PDFBoxFontMSSAdapter(font, mssFont)
+    }
+
+    /**
+     * Subsets the external fonts embedded in the current document. This is normally done when the document is
+     * saved. It must be done here when the pages of the document are instead moved to another document that is
+     * saved.
+     *
+     * @throws IOException on failure to subset a font.
+     */
+    void subsetEmbeddedFonts() throws IOException {
+        for (final PDFont font : this.embeddedFonts.values()) {
+            if (font.willBeSubset()) {
+                font.subset()
+            }
+        }
+    }
+
+    /**
+     * Loads a font file into a byte array.
+     *
+     * @param mssExtFont An object containing the path to the font to read.
+     *
+     * @return The loaded bytes.
+     *
+     * @throws GenerateException on failure to load font.
+     */
+    private @NotNull byte[] readFontData(@NotNull final MSSExtFont mssExtFont) throws GenerateException {
         InputStream fontStream
         // @formatter:off
         if (
@@ -147,7 +248,18 @@ class PDFBoxStylesMSSAdapter {
         }
 
         try {
-            new PDFBoxFontMSSAdapter(PDType0Font.load(document, fontStream), mssFont)
+            final ByteArrayOutputStream fontData = new ByteArrayOutputStream()
+            final byte[] buffer = new byte[8192]
+            int read = fontStream.read(buffer)
+            while (read >= 0) {
+                fontData.write(buffer, 0, read)
+                read = fontStream.read(buffer)
+            }
+
+            fontData.toByteArray()
+        }
+        catch (final IOException ioe) {
+            throw new GenerateException(message: "Failed to read font '${mssExtFont.fontPath}'!", cause: ioe)
         }
         finally {
             fontStream.close()
@@ -165,20 +277,19 @@ class PDFBoxStylesMSSAdapter {
     @NotNull PDFBoxFontMSSAdapter getFont(@NotNull PDDocument document, @NotNull final MSS.Section section) throws GenerateException {
         validate()
 
-        MSSFont mssFont = null
-
-        switch (section.class) {
-            case MSS.MSS_Pages:
-                mssFont = this.mss.forDocument.getFont(section as MSS.MSS_Pages)
-                break
-            case MSS.MSS_Front_Page:
-                mssFont = this.mss.forFrontPage.getFont(section as MSS.MSS_Front_Page)
-                break
-            case MSS.MSS_TOC:
-                mssFont = this.mss.forTOC.getFont(section as MSS.MSS_TOC)
-                break
-            default:
-                throw new IllegalArgumentException("BUG: Unknwon MSS.Section passed! (${section.class})")
+        final MSSFont mssFont
+
+        if (section instanceof MSS.MSS_Pages) {
+            mssFont = this.mss.getFontForDocument(section as MSS.MSS_Pages)
+        }
+        else if (section instanceof MSS.MSS_Front_Page) {
+            mssFont = this.mss.getFontForFrontPage(section as MSS.MSS_Front_Page)
+        }
+        else if (section instanceof MSS.MSS_TOC) {
+            mssFont = this.mss.getFontForTOC(section as MSS.MSS_TOC)
+        }
+        else {
+            throw new IllegalArgumentException("BUG: Unknwon MSS.Section passed! (${section.class})")
         }
 
         resolveFont(document, mssFont)
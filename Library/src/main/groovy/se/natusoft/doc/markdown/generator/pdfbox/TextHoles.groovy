@@ -0,0 +1,175 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+
+/**
+ * The holes in the text rendering area of a page.
+ *
+ * This is immutable. Adding a hole gives a new instance, so a saved state can keep a reference to an instance
+ * instead of a copy of its holes.
+ *
+ * Text is laid out a line at a time, and most lines are checked for holes once per word at the same y coordinate.
+ * The holes covering the last checked y coordinate are therefore kept, so that only those need to be checked for
+ * the x coordinate until the text moves to another line.
+ */
+@CompileStatic
+@TypeChecked
+class TextHoles {
+    //
+    // Constants
+    //
+
+    /** A page without holes. */
+    static final TextHoles NONE = new TextHoles( new TextHole[0] )
+
+    //
+    // Private Members
+    //
+
+    /** The holes in the order they were added. */
+    private final TextHole[] holes
+
+    /** The holes covering the last checked y coordinate. */
+    private Band band = null
+
+    //
+    // Constructors
+    //
+
+    private TextHoles( @NotNull TextHole[] holes ) {
+        this.holes = holes
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns new holes with the specified hole added to these.
+     *
+     * @param hole The hole to add.
+     */
+    @NotNull TextHoles withHole( @NotNull TextHole hole ) {
+        TextHole[] added = new TextHole[ this.holes.length + 1 ]
+        System.arraycopy( this.holes, 0, added, 0, this.holes.length )
+        added[ this.holes.length ] = hole
+        new TextHoles( added )
+    }
+
+    /**
+     * @return The number of holes.
+     */
+    int size() {
+        this.holes.length
+    }
+
+    /**
+     * @return true if there are no holes.
+     */
+    boolean isEmpty() {
+        this.holes.length == 0
+    }
+
+    /**
+     * Returns the first added hole the specified coordinates are in if any, otherwise null is returned.
+     *
+     * @param x The x coordinate to check.
+     * @param y The y coordinate to check.
+     */
+    @Nullable TextHole find( float x, float y ) {
+        if ( this.holes.length == 0 ) {
+            return null
+        }
+
+        // The band is replaced rather than changed, so that a band is always complete for its y coordinate.
+        Band band = this.band
+        if ( band == null || band.y != y ) {
+            band = new Band( y, this.holes )
+            this.band = band
+        }
+
+        for ( int i = 0; i < band.holes.length; i++ ) {
+            TextHole hole = band.holes[ i ]
+            if ( x >= hole.x && x <= ( hole.x + hole.width ) ) {
+                return hole
+            }
+        }
+        null
+    }
+
+    String toString() {
+        "TextHoles${ Arrays.toString( this.holes ) }"
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * The holes covering one y coordinate, in the order they were added.
+     */
+    private static class Band {
+        final float y
+        final TextHole[] holes
+
+        Band( float y, @NotNull TextHole[] all ) {
+            this.y = y
+            int count = 0
+            for ( int i = 0; i < all.length; i++ ) {
+                if ( covers( all[ i ], y ) ) {
+                    ++count
+                }
+            }
+            this.holes = new TextHole[ count ]
+            count = 0
+            for ( int i = 0; i < all.length; i++ ) {
+                if ( covers( all[ i ], y ) ) {
+                    this.holes[ count++ ] = all[ i ]
+                }
+            }
+        }
+
+        private static boolean covers( @NotNull TextHole hole, float y ) {
+            y >= hole.y && y <= ( hole.y + hole.height )
+        }
+    }
+}
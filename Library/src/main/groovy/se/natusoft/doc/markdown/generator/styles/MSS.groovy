@@ -41,6 +41,7 @@ import groovy.transform.ToString
 import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.util.Metrics
 import se.natusoft.doc.markdown.util.TestSafeResource
 import se.natusoft.json.JSON
 import se.natusoft.json.JSONArray
@@ -51,6 +52,9 @@ import se.natusoft.json.JSONObject
 import se.natusoft.json.JSONString
 import se.natusoft.json.JSONValue
 
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
 /**
  * Markdown Style Sheet. This can be used for all non HTML generators to allow users
  * provide style data at generation time.
@@ -235,8 +239,30 @@ class MSS {
     // Properties
     //
 
-    /** The current divs. */
-    LinkedList<String> currentDivs
+    /**
+     * @return The current divs of the calling thread, innermost first, or null if there are none.
+     */
+    LinkedList<String> getCurrentDivs() {
+        StyleTable styles = this.threadStyles.get()
+        styles != null ? new LinkedList<String>( styles.divs ) : null
+    }
+
+    /**
+     * Sets the current divs of the calling thread, innermost first. Setting null forgets them.
+     *
+     * The styles of the divs are looked up here and not on every style lookup. The passed list is not kept, so
+     * this has to be called again after the list has been changed.
+     *
+     * @param currentDivs The divs to set.
+     */
+    void setCurrentDivs( LinkedList<String> currentDivs ) {
+        if ( currentDivs != null && !currentDivs.isEmpty() ) {
+            this.threadStyles.set( getStyleTable( currentDivs ) )
+        }
+        else {
+            this.threadStyles.remove()
+        }
+    }
 
     //
     // Private Members
@@ -264,7 +290,44 @@ class MSS {
     private JSONObject _toc = null
 
     /** Holds a cache of resolved color values. */
-    private final Map<String, MSSColor> colorMap = new HashMap<>()
+    private final Map<String, MSSColor> colorMap
+
+    /** The style table for the current divs of each thread. No entry means no current divs. */
+    private final ThreadLocal<StyleTable> threadStyles = new ThreadLocal<>()
+
+    /** The styles of the "pages" sections when there are no current divs. */
+    private final StyleTable noDivStyles
+
+    /** The styles of the "pages" sections by current divs. */
+    private final Map<List<String>, StyleTable> divStyles
+
+    /** The fonts of the "front_page" sections by MSS_Front_Page ordinal. */
+    private final MSSFont[] frontPageFonts
+
+    /** The color pairs of the "front_page" sections by MSS_Front_Page ordinal. */
+    private final MSSColorPair[] frontPageColorPairs
+
+    /** The image data of the "front_page" section. */
+    private final MSSImage frontPageImage
+
+    /** The fonts of the "toc" sections by MSS_TOC ordinal. */
+    private final MSSFont[] tocFonts
+
+    /** The color pairs of the "toc" sections by MSS_TOC ordinal. */
+    private final MSSColorPair[] tocColorPairs
+
+    /** The max number of compiled MSS instances to keep. */
+    private static final int MAX_COMPILED_MSS = 16
+
+    /** Compiled MSS instances by SHA-1 of their MSS file content. These are only copied, never handed out. */
+    private static final Map<String, MSS> compiledMSS = Collections.synchronizedMap(
+            new LinkedHashMap<String, MSS>( 16, 0.75f, true ) {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<String, MSS> eldest ) {
+                    size() > MAX_COMPILED_MSS
+                }
+            }
+    )
 
     //
     // Constructors
@@ -277,6 +340,54 @@ class MSS {
      */
     private MSS( @NotNull final JSONObject mss ) {
         this.mss = mss
+        this.colorMap = new ConcurrentHashMap<>()
+        this.divStyles = new ConcurrentHashMap<>()
+        this.frontPageFonts = new MSSFont[ MSS_Front_Page.values().length ]
+        this.frontPageColorPairs = new MSSColorPair[ MSS_Front_Page.values().length ]
+        this.tocFonts = new MSSFont[ MSS_TOC.values().length ]
+        this.tocColorPairs = new MSSColorPair[ MSS_TOC.values().length ]
+
+        // Everything is resolved up front, so that style lookups are only array indexing. Only nested divs
+        // are resolved when they are first used, since there can be any number of combinations of them.
+        final List<String> noDivs = Collections.emptyList()
+        this.noDivStyles = compileStyleTable( noDivs )
+        for ( JSONString divName : this.divs.propertyNames ) {
+            List<String> divNames = Collections.singletonList( divName.toString() )
+            this.divStyles.put( divNames, compileStyleTable( divNames ) )
+        }
+
+        for ( MSS_Front_Page section : MSS_Front_Page.values() ) {
+            this.frontPageFonts[ section.ordinal() ] = resolveFontForFrontPage( section )
+            this.frontPageColorPairs[ section.ordinal() ] = resolveColorPairForFrontPage( section )
+        }
+        this.frontPageImage = resolveImageDataForFrontPage()
+
+        for ( MSS_TOC section : MSS_TOC.values() ) {
+            this.tocFonts[ section.ordinal() ] = resolveFontForTOC( section )
+            this.tocColorPairs[ section.ordinal() ] = resolveColorPairForTOC( section )
+        }
+    }
+
+    /**
+     * Creates a new MSS instance that shares the compiled styles of another. Only the current divs are its own.
+     *
+     * @param compiled The MSS to share the compiled styles of.
+     */
+    private MSS( @NotNull final MSS compiled ) {
+        this.mss = compiled.mss
+        this._document = compiled.document
+        this._pages = compiled.pages
+        this._divs = compiled.divs
+        this._frontPage = compiled.frontPage
+        this._toc = compiled.TOC
+        this.colorMap = compiled.colorMap
+        this.noDivStyles = compiled.noDivStyles
+        this.divStyles = compiled.divStyles
+        this.frontPageFonts = compiled.frontPageFonts
+        this.frontPageColorPairs = compiled.frontPageColorPairs
+        this.frontPageImage = compiled.frontPageImage
+        this.tocFonts = compiled.tocFonts
+        this.tocColorPairs = compiled.tocColorPairs
     }
 
     //
@@ -588,25 +699,23 @@ class MSS {
     }
 
     /**
-     * Checks if a header is underlined.
+     * Resolves if a header is underlined.
      *
-     * @param section The header section to lookup underline status for.
+     * @param section The header section to resolve underline status for.
+     * @param divObjects The current divs.
      */
-    boolean isHeaderUnderlinedForDocument( @NotNull final MSS_Pages section ) {
+    private boolean resolveHeaderUnderlined( @NotNull final MSS_Pages section, @NotNull final List<JSONObject> divObjects ) {
         if ( !section.name().startsWith( "h" ) ) {
             return false
         }
 
         Boolean isUnderlined = null
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { String divName ->
-                JSONObject div = this.divs.getProperty( divName ) as JSONObject
-                JSONValue header = div.getProperty( section.name() )
-                if ( header != null && header instanceof JSONObject ) {
-                    JSONValue val = ( header as JSONObject ).getProperty( MSS_Header.underlined.name() )
-                    if ( val != null && val instanceof JSONBoolean ) {
-                        isUnderlined = ( val as JSONBoolean ).asBoolean
-                    }
+        for ( JSONObject div : divObjects ) {
+            JSONValue header = div.getProperty( section.name() )
+            if ( header != null && header instanceof JSONObject ) {
+                JSONValue val = ( header as JSONObject ).getProperty( MSS_Header.underlined.name() )
+                if ( val != null && val instanceof JSONBoolean ) {
+                    isUnderlined = ( val as JSONBoolean ).asBoolean
                 }
             }
         }
@@ -637,25 +746,19 @@ class MSS {
     }
 
     /**
-     * Returns the header underline offset.
+     * Resolves the header underline offset.
      *
-     * @param section The header section to lookup underline offset for.
+     * @param section The header section to resolve underline offset for.
+     * @param divObjects The current divs.
      */
-    float getHeaderUnderlineOffsetForDocument( @NotNull final MSS_Pages section ) {
-        if ( !section.name().startsWith( "h" ) ) {
-            throw new IllegalArgumentException( "Only valid for headers!!" )
-        }
-
+    private float resolveHeaderUnderlineOffset( @NotNull final MSS_Pages section, @NotNull final List<JSONObject> divObjects ) {
         Float underlineOffset = null
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { String divName ->
-                JSONObject div = this.divs.getProperty( divName ) as JSONObject
-                JSONValue header = div.getProperty( section.name() )
-                if ( header != null && header instanceof JSONObject ) {
-                    JSONValue val = ( header as JSONObject ).getProperty( MSS_Header.underline_offset.name() )
-                    if ( val != null && val instanceof JSONBoolean ) {
-                        underlineOffset = ( val as JSONNumber ).toFloat()
-                    }
+        for ( JSONObject div : divObjects ) {
+            JSONValue header = div.getProperty( section.name() )
+            if ( header != null && header instanceof JSONObject ) {
+                JSONValue val = ( header as JSONObject ).getProperty( MSS_Header.underline_offset.name() )
+                if ( val != null && val instanceof JSONBoolean ) {
+                    underlineOffset = ( val as JSONNumber ).toFloat()
                 }
             }
         }
@@ -686,20 +789,19 @@ class MSS {
     }
 
     /**
-     * Returns a MSSColorPair containing foreground color and background color to use for the section.
+     * Resolves a MSSColorPair containing foreground color and background color to use for the section.
      *
      * @param section A section type like h1, blockquote, etc.
+     * @param divObjects The current divs.
      */
     @NotNull
-    MSSColorPair getColorPairForDocument( @NotNull final MSS_Pages section ) {
+    private MSSColorPair resolveColorPairForDocument( @NotNull final MSS_Pages section,
+                                                      @NotNull final List<JSONObject> divObjects ) {
         MSSColorPair colorPair = new MSSColorPair()
 
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { String divName ->
-                JSONObject div = this.divs.getProperty( divName ) as JSONObject
-                updateMSSColorPairIfNotSet( colorPair, div?.getProperty( section.name() ) as JSONObject )
-                updateMSSColorPairIfNotSet( colorPair, div )
-            }
+        for ( JSONObject div : divObjects ) {
+            updateMSSColorPairIfNotSet( colorPair, div.getProperty( section.name() ) as JSONObject )
+            updateMSSColorPairIfNotSet( colorPair, div )
         }
 
         updateMSSColorPairIfNotSet( colorPair, this.pages.getProperty( section.name() ) as JSONObject )
@@ -711,20 +813,18 @@ class MSS {
     }
 
     /**
-     * Returns a MSSFont to use for the specified div and section.
+     * Resolves a MSSFont to use for the specified divs and section.
      *
      * @param section A section type like h1, blockquote, etc.
+     * @param divObjects The current divs.
      */
     @NotNull
-    MSSFont getFontForDocument( @NotNull final MSS_Pages section ) {
+    private MSSFont resolveFontForDocument( @NotNull final MSS_Pages section, @NotNull final List<JSONObject> divObjects ) {
         MSSFont font = new MSSFont()
 
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { String divName ->
-                JSONObject div = this.divs.getProperty( divName ) as JSONObject
-                updateMSSFontIfNotSet( font, div?.getProperty( section.name() ) as JSONObject )
-                updateMSSFontIfNotSet( font, div )
-            }
+        for ( JSONObject div : divObjects ) {
+            updateMSSFontIfNotSet( font, div.getProperty( section.name() ) as JSONObject )
+            updateMSSFontIfNotSet( font, div )
         }
 
         updateMSSFontIfNotSet( font, this.pages.getProperty( section.name() ) as JSONObject )
@@ -736,26 +836,24 @@ class MSS {
     }
 
     /**
-     * Returns a MSSImage containing image format information.
+     * Resolves a MSSImage containing image format information.
+     *
+     * @param divObjects The current divs.
      */
     @NotNull
-    MSSImage getImageStyleForDocument() {
+    private MSSImage resolveImageStyleForDocument( @NotNull final List<JSONObject> divObjects ) {
         final MSSImage image = new MSSImage()
 
         JSONObject standard
 
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { final String divName ->
-                final JSONObject div = this.divs.getProperty( divName ) as JSONObject
-
-                standard = div?.getProperty( MSS_Pages.standard.name() ) as JSONObject
-                if ( standard != null ) {
-                    updateMSSImageIfNotSet( image, standard.getProperty( MSS_Pages.image.name() ) as JSONObject )
-                }
-                updateMSSImageIfNotSet( image, standard )
-                updateMSSImageIfNotSet( image, div?.getProperty( MSS_Pages.image.name() ) as JSONObject )
-                updateMSSImageIfNotSet( image, div )
+        for ( JSONObject div : divObjects ) {
+            standard = div.getProperty( MSS_Pages.standard.name() ) as JSONObject
+            if ( standard != null ) {
+                updateMSSImageIfNotSet( image, standard.getProperty( MSS_Pages.image.name() ) as JSONObject )
             }
+            updateMSSImageIfNotSet( image, standard )
+            updateMSSImageIfNotSet( image, div.getProperty( MSS_Pages.image.name() ) as JSONObject )
+            updateMSSImageIfNotSet( image, div )
         }
 
         standard = this.pages.getProperty( MSS_Pages.standard.name() ) as JSONObject
@@ -836,13 +934,218 @@ class MSS {
         value
     }
 
+    /**
+     * The styles of all "pages" sections, fully resolved for one combination of current divs. Values are held in
+     * arrays indexed by MSS_Pages ordinal.
+     * <p/>
+     * A table is compiled once and never changed after that. It is shared by all threads and by all MSS instances
+     * loaded from the same content, so the returned MSSFont, MSSColorPair, and MSSImage instances must not be modified.
+     */
+    static final class StyleTable {
+        //
+        // Properties
+        //
+
+        /** The divs this table is compiled for, innermost first. */
+        final List<String> divs
+
+        final MSSFont[] fonts = new MSSFont[ MSS_Pages.values().length ]
+        final MSSColorPair[] colorPairs = new MSSColorPair[ MSS_Pages.values().length ]
+        final float[] topMargins = new float[ MSS_Pages.values().length ]
+        final float[] leftMargins = new float[ MSS_Pages.values().length ]
+        final float[] rightMargins = new float[ MSS_Pages.values().length ]
+        final float[] bottomMargins = new float[ MSS_Pages.values().length ]
+        final Float[] pageXs = new Float[ MSS_Pages.values().length ]
+        final Float[] pageYs = new Float[ MSS_Pages.values().length ]
+        final boolean[] freeFloatings = new boolean[ MSS_Pages.values().length ]
+        final float[] paragraphSpaces = new float[ MSS_Pages.values().length ]
+        final boolean[] boxeds = new boolean[ MSS_Pages.values().length ]
+        final MSSColor[] boxColors = new MSSColor[ MSS_Pages.values().length ]
+        final float[] sectionNumberYOffsets = new float[ MSS_Pages.values().length ]
+        final float[] sectionNumberXOffsets = new float[ MSS_Pages.values().length ]
+        final boolean[] headerUnderlineds = new boolean[ MSS_Pages.values().length ]
+        final float[] headerUnderlineOffsets = new float[ MSS_Pages.values().length ]
+        final boolean[] preformattedWordWraps = new boolean[ MSS_Pages.values().length ]
+
+        final MSSImage imageStyle
+        final float hrThickness
+        final String hrColorName
+        final MSSColor hrColor
+
+        //
+        // Constructors
+        //
+
+        StyleTable( @NotNull List<String> divs, @NotNull MSSImage imageStyle, float hrThickness,
+                    @NotNull String hrColorName, @NotNull MSSColor hrColor ) {
+            this.divs = divs
+            this.imageStyle = imageStyle
+            this.hrThickness = hrThickness
+            this.hrColorName = hrColorName
+            this.hrColor = hrColor
+        }
+    }
+
+    /**
+     * Returns the style table of the current divs of the calling thread.
+     */
+    @NotNull
+    private StyleTable getCurrentStyles() {
+        StyleTable styles = this.threadStyles.get()
+        styles != null ? styles : this.noDivStyles
+    }
+
+    /**
+     * Returns the style table of the specified divs, compiling it if this combination has not been used before.
+     *
+     * @param divNames The divs to get the style table for, innermost first.
+     */
+    @NotNull
+    private StyleTable getStyleTable( @NotNull List<String> divNames ) {
+        StyleTable styles = this.divStyles.get( divNames )
+        if ( styles == null ) {
+            List<String> key = Collections.unmodifiableList( new ArrayList<String>( divNames ) )
+            styles = compileStyleTable( key )
+            StyleTable existing = this.divStyles.putIfAbsent( key, styles )
+            if ( existing != null ) styles = existing
+        }
+
+        styles
+    }
+
+    /**
+     * Resolves all "pages" styles for the specified divs.
+     *
+     * @param divNames The divs to compile for, innermost first. Divs not in the MSS are ignored.
+     */
+    @NotNull
+    private StyleTable compileStyleTable( @NotNull List<String> divNames ) {
+        List<JSONObject> divObjects = new ArrayList<>( divNames.size() )
+        for ( String divName : divNames ) {
+            JSONObject div = this.divs.getProperty( divName ) as JSONObject
+            if ( div != null ) divObjects.add( div )
+        }
+
+        JSONNumber hrThickness =
+                getSingleValue( MSS_HR.thickness.name(), MSS_Pages.horizontal_ruler.name(), divObjects ) as JSONNumber
+        JSONString hrColor =
+                getSingleValue( MSS_HR.color.name(), MSS_Pages.horizontal_ruler.name(), divObjects ) as JSONString
+        String hrColorName = hrColor != null ? hrColor.toString() : "0:0:0"
+
+        StyleTable styles = new StyleTable(
+                divNames,
+                resolveImageStyleForDocument( divObjects ),
+                hrThickness != null ? hrThickness.toFloat() : 0.5f,
+                hrColorName,
+                lookupColor( hrColorName )
+        )
+
+        for ( MSS_Pages section : MSS_Pages.values() ) {
+            int ix = section.ordinal()
+            String name = section.name()
+
+            styles.fonts[ ix ] = resolveFontForDocument( section, divObjects )
+            styles.colorPairs[ ix ] = resolveColorPairForDocument( section, divObjects )
+
+            styles.topMargins[ ix ] = cmInPtFloatToFloat( nullToDefault(
+                    getSingleValue( MSS_Page.topMargin.name(), name, divObjects ), new JSONString( "2.54cm" ) ) )
+            styles.leftMargins[ ix ] = cmInPtFloatToFloat( nullToDefault(
+                    getSingleValue( MSS_Page.leftMargin.name(), name, divObjects ), new JSONString( "2.54cm" ) ) )
+            styles.rightMargins[ ix ] = cmInPtFloatToFloat( nullToDefault(
+                    getSingleValue( MSS_Page.rightMargin.name(), name, divObjects ), new JSONString( "2.54cm" ) ) )
+            styles.bottomMargins[ ix ] = cmInPtFloatToFloat( nullToDefault(
+                    getSingleValue( MSS_Page.bottomMargin.name(), name, divObjects ), new JSONString( "2.54cm" ) ) )
+
+            JSONNumber pageX = getSingleValue( MSS_Page.pageX.name(), name, divObjects ) as JSONNumber
+            styles.pageXs[ ix ] = pageX != null ? pageX.toFloat() : null
+            JSONNumber pageY = getSingleValue( MSS_Page.pageY.name(), name, divObjects ) as JSONNumber
+            styles.pageYs[ ix ] = pageY != null ? pageY.toFloat() : null
+
+            JSONBoolean freeFloating = getSingleValue( MSS_Page.freeFloating.name(), name, divObjects ) as JSONBoolean
+            styles.freeFloatings[ ix ] = freeFloating != null ? freeFloating.asBoolean : false
+
+            styles.paragraphSpaces[ ix ] = cmInPtFloatToFloat( nullToDefault(
+                    getSingleValue( MSS_Page.paragraphSpace.name(), name, divObjects ), new JSONNumber( 10.0f ) ) )
+
+            JSONBoolean boxed = getSingleValue( MSS_Boxed.boxed.name(), name, divObjects ) as JSONBoolean
+            styles.boxeds[ ix ] = boxed != null ? boxed.asBoolean : false
+            JSONString boxedColor = getSingleValue( MSS_Boxed.boxedColor.name(), name, divObjects ) as JSONString
+            styles.boxColors[ ix ] = boxedColor != null ? lookupColor( boxedColor.toString() ) : new MSSColor( color: "240:240:240" )
+
+            JSONNumber snYOff = getSingleValue( MSS_SectionNumber.sectionNumberYOffset.name(), name, divObjects ) as JSONNumber
+            styles.sectionNumberYOffsets[ ix ] = snYOff != null ? snYOff.toFloat() : 0.0f
+            JSONNumber snXOff = getSingleValue( MSS_SectionNumber.sectionNumberXOffset.name(), name, divObjects ) as JSONNumber
+            styles.sectionNumberXOffsets[ ix ] = snXOff != null ? snXOff.toFloat() : 0.0f
+
+            styles.headerUnderlineds[ ix ] = resolveHeaderUnderlined( section, divObjects )
+            if ( name.startsWith( "h" ) ) {
+                styles.headerUnderlineOffsets[ ix ] = resolveHeaderUnderlineOffset( section, divObjects )
+            }
+
+            JSONBoolean preWordWrap =
+                    getSingleValue( MSS_Preformatted.preformattedWordWrap.name(), name, divObjects ) as JSONBoolean
+            styles.preformattedWordWraps[ ix ] = preWordWrap != null ? preWordWrap.asBoolean : false
+        }
+
+        styles
+    }
+
+    /**
+     * Checks if a header is underlined.
+     *
+     * @param section The header section to lookup underline status for.
+     */
+    boolean isHeaderUnderlinedForDocument( @NotNull final MSS_Pages section ) {
+        this.currentStyles.headerUnderlineds[ section.ordinal() ]
+    }
+
+    /**
+     * Returns the header underline offset.
+     *
+     * @param section The header section to lookup underline offset for.
+     */
+    float getHeaderUnderlineOffsetForDocument( @NotNull final MSS_Pages section ) {
+        if ( !section.name().startsWith( "h" ) ) {
+            throw new IllegalArgumentException( "Only valid for headers!!" )
+        }
+
+        this.currentStyles.headerUnderlineOffsets[ section.ordinal() ]
+    }
+
+    /**
+     * Returns a MSSColorPair containing foreground color and background color to use for the section.
+     *
+     * @param section A section type like h1, blockquote, etc.
+     */
+    @NotNull
+    MSSColorPair getColorPairForDocument( @NotNull final MSS_Pages section ) {
+        this.currentStyles.colorPairs[ section.ordinal() ]
+    }
+
+    /**
+     * Returns a MSSFont to use for the specified div and section.
+     *
+     * @param section A section type like h1, blockquote, etc.
+     */
+    @NotNull
+    MSSFont getFontForDocument( @NotNull final MSS_Pages section ) {
+        this.currentStyles.fonts[ section.ordinal() ]
+    }
+
+    /**
+     * Returns a MSSImage containing image format information.
+     */
+    @NotNull
+    MSSImage getImageStyleForDocument() {
+        this.currentStyles.imageStyle
+    }
+
     /**
      * Returns the top margin of a page.
      */
     @NotNull
     float getTopMarginForDocument( MSS_Pages section ) {
-        JSONValue marginValue = getSingleValueForDocument( MSS_Page.topMargin.name(), section.name() )
-        cmInPtFloatToFloat( nullToDefault( marginValue, new JSONString( "2.54cm" ) ) )
+        this.currentStyles.topMargins[ section.ordinal() ]
     }
 
     /**
@@ -850,8 +1153,7 @@ class MSS {
      */
     @NotNull
     float getLeftMarginForDocument( MSS_Pages section ) {
-        JSONValue marginValue = getSingleValueForDocument( MSS_Page.leftMargin.name(), section.name() )
-        cmInPtFloatToFloat( nullToDefault( marginValue, new JSONString( "2.54cm" ) ) )
+        this.currentStyles.leftMargins[ section.ordinal() ]
     }
 
     /**
@@ -859,8 +1161,7 @@ class MSS {
      */
     @NotNull
     float getRightMarginForDocument( MSS_Pages section ) {
-        JSONValue marginValue = getSingleValueForDocument( MSS_Page.rightMargin.name(), section.name() )
-        cmInPtFloatToFloat( nullToDefault( marginValue, new JSONString( "2.54cm" ) ) )
+        this.currentStyles.rightMargins[ section.ordinal() ]
     }
 
     /**
@@ -868,32 +1169,33 @@ class MSS {
      */
     @NotNull
     float getBottomMarginForDocument( MSS_Pages section ) {
-        JSONValue marginValue = getSingleValueForDocument( MSS_Page.bottomMargin.name(), section.name() )
-        cmInPtFloatToFloat( nullToDefault( marginValue, new JSONString( "2.54cm" ) ) )
+        this.currentStyles.bottomMargins[ section.ordinal() ]
     }
 
     @NotNull
     float getPageXForDocument( MSS_Pages section ) {
-        JSONValue pageXValue = getSingleValueForDocument( MSS_Page.pageX.name(), section.name() )
-        ( pageXValue as JSONNumber ).toFloat()
+        Float pageX = this.currentStyles.pageXs[ section.ordinal() ]
+        if ( pageX == null ) throw new MSSException( message: "No 'pageX' specified for free floating '${ section }'!" )
+
+        pageX
     }
 
     @NotNull
     float getPageYForDocument( MSS_Pages section ) {
-        JSONValue pageYValue = getSingleValueForDocument( MSS_Page.pageY.name(), section.name() )
-        ( pageYValue as JSONNumber ).toFloat()
+        Float pageY = this.currentStyles.pageYs[ section.ordinal() ]
+        if ( pageY == null ) throw new MSSException( message: "No 'pageY' specified for free floating '${ section }'!" )
+
+        pageY
     }
 
     @NotNull
     boolean isFreeFloatingForDocument( MSS_Pages section ) {
-        JSONValue freeFloatingValue = getSingleValueForDocument( MSS_Page.freeFloating.name(), section.name() )
-        freeFloatingValue != null ? ( freeFloatingValue as JSONBoolean ).asBoolean : false
+        this.currentStyles.freeFloatings[ section.ordinal() ]
     }
 
     @NotNull
     float getParagraphSpaceForDocument( MSS_Pages section ) {
-        JSONValue paragraphSpaceValue = getSingleValueForDocument( MSS_Page.paragraphSpace.name(), section.name() )
-        cmInPtFloatToFloat( nullToDefault( paragraphSpaceValue , new JSONNumber(10.0f)) )
+        this.currentStyles.paragraphSpaces[ section.ordinal() ]
     }
 
     /**
@@ -903,8 +1205,7 @@ class MSS {
      */
     @NotNull
     boolean isBoxedForDocument( @NotNull MSS_Pages section ) {
-        JSONBoolean boxed = getSingleValueForDocument( MSS_Boxed.boxed.name(), section.name() ) as JSONBoolean
-        boxed != null ? boxed.asBoolean : false
+        this.currentStyles.boxeds[ section.ordinal() ]
     }
 
     /**
@@ -914,24 +1215,21 @@ class MSS {
      */
     @NotNull
     MSSColor getBoxColorForDocument( @NotNull MSS_Pages section ) {
-        JSONString boxedColor = getSingleValueForDocument( MSS_Boxed.boxedColor.name(), section.name() ) as JSONString
-        boxedColor != null ? lookupColor( boxedColor.toString() ) : new MSSColor( color: "240:240:240" )
+        this.currentStyles.boxColors[ section.ordinal() ]
     }
 
     /**
      * Returns the thickness of an hr.
      */
     float getHrThicknessForDocument() {
-        JSONNumber hrThickness = getSingleValueForDocument( MSS_HR.thickness.name(), MSS_Pages.horizontal_ruler.name() ) as JSONNumber
-        hrThickness != null ? hrThickness.toFloat() : 0.5f
+        this.currentStyles.hrThickness
     }
 
     /**
      * Returns the color of an hr.
      */
     String getHrColorForDocument() {
-        JSONString hrColor = getSingleValueForDocument( MSS_HR.color.name(), MSS_Pages.horizontal_ruler.name() ) as JSONString
-        hrColor != null ? hrColor : "0:0:0"
+        this.currentStyles.hrColorName
     }
 
     /**
@@ -940,8 +1238,7 @@ class MSS {
      * @param section The section to get Y offset for.
      */
     float getSectionNumberYOffsetForDocument( @NotNull MSS_Pages section ) {
-        JSONNumber snYOff = getSingleValueForDocument( MSS_SectionNumber.sectionNumberYOffset.name(), section.name() ) as JSONNumber
-        snYOff != null ? snYOff.toFloat() : 0.0f
+        this.currentStyles.sectionNumberYOffsets[ section.ordinal() ]
     }
 
     /**
@@ -950,8 +1247,7 @@ class MSS {
      * @param section The section to get X offset for.
      */
     float getSectionNumberXOffsetForDocument( @NotNull MSS_Pages section ) {
-        JSONNumber snXOff = getSingleValueForDocument( MSS_SectionNumber.sectionNumberXOffset.name(), section.name() ) as JSONNumber
-        snXOff != null ? snXOff.toFloat() : 0.0f
+        this.currentStyles.sectionNumberXOffsets[ section.ordinal() ]
     }
 
     /**
@@ -960,8 +1256,7 @@ class MSS {
      * @param section The section to get preformatted word wrap setting for.
      */
     boolean isPreformattedWordWrapForDocument( @NotNull MSS_Pages section ) {
-        JSONBoolean preWordWrap = getSingleValueForDocument( MSS_Preformatted.preformattedWordWrap.name(), section.name() ) as JSONBoolean
-        preWordWrap != null ? preWordWrap.asBoolean : false
+        this.currentStyles.preformattedWordWraps[ section.ordinal() ]
     }
 
     /**
@@ -990,16 +1285,14 @@ class MSS {
      *
      * @param valueName The name of the value to fetch.
      * @param sectionName The name of the section in which to look for the value.
+     * @param divObjects The current divs.
      */
-    private JSONValue getSingleValueForDocument( String valueName, String sectionName ) {
+    private JSONValue getSingleValue( String valueName, String sectionName, List<JSONObject> divObjects ) {
         JSONValue value = null
-        if ( this.currentDivs != null ) {
-            this.currentDivs.each { String divName ->
-                JSONObject div = this.divs.getProperty( divName ) as JSONObject
-                JSONValue pValue = checkSingleValue( div, valueName, sectionName )
-                if ( pValue != null ) {
-                    value = pValue
-                }
+        for ( JSONObject div : divObjects ) {
+            JSONValue pValue = checkSingleValue( div, valueName, sectionName )
+            if ( pValue != null ) {
+                value = pValue
             }
         }
 
@@ -1020,7 +1313,6 @@ class MSS {
         value
     }
 
-
     class ForDocument {
         @NotNull
         MSSColorPair getColorPair( @NotNull final MSS_Pages section ) {
@@ -1080,7 +1372,7 @@ class MSS {
 
         @NotNull
         MSSColor getHrColor() {
-            lookupColor( getHrColorForDocument() )
+            getCurrentStyles().hrColor
         }
 
         float getSectionNumberYOffset( @NotNull MSS_Pages section ) {
@@ -1115,6 +1407,16 @@ class MSS {
      */
     @NotNull
     MSSColorPair getColorPairForFrontPage( @NotNull final MSS_Front_Page section ) {
+        this.frontPageColorPairs[ section.ordinal() ]
+    }
+
+    /**
+     * Resolves a MSSColorPair containing foreground and background color to use for the section.
+     *
+     * @param section The front page section to resolve color pair for.
+     */
+    @NotNull
+    private MSSColorPair resolveColorPairForFrontPage( @NotNull final MSS_Front_Page section ) {
         MSSColorPair colorPair = new MSSColorPair()
 
         updateMSSColorPairIfNotSet( colorPair, this.frontPage.getProperty( section.name() ) as JSONObject )
@@ -1130,6 +1432,16 @@ class MSS {
      */
     @NotNull
     MSSFont getFontForFrontPage( @NotNull final MSS_Front_Page section ) {
+        this.frontPageFonts[ section.ordinal() ]
+    }
+
+    /**
+     * Resolves an MSSFont to use for the section.
+     *
+     * @param section The front page section to resolve font for.
+     */
+    @NotNull
+    private MSSFont resolveFontForFrontPage( @NotNull final MSS_Front_Page section ) {
         MSSFont font = new MSSFont()
 
         updateMSSFontIfNotSet( font, this.frontPage.getProperty( section.name() ) as JSONObject )
@@ -1143,6 +1455,14 @@ class MSS {
      */
     @NotNull
     MSSImage getImageDataForFrontPage() {
+        this.frontPageImage
+    }
+
+    /**
+     * Resolves an MSSImage with image info.
+     */
+    @NotNull
+    private MSSImage resolveImageDataForFrontPage() {
         MSSImage image = new MSSImage()
 
         updateMSSImageIfNotSet( image, this.frontPage.getProperty( MSS_Front_Page.image.name() ) as JSONObject )
@@ -1179,6 +1499,16 @@ class MSS {
      */
     @NotNull
     MSSColorPair getColorPairForTOC( @NotNull final MSS_TOC section ) {
+        this.tocColorPairs[ section.ordinal() ]
+    }
+
+    /**
+     * Resolves a MSSColorPair containing foreground and background color to use for the TOC section.
+     *
+     * @param section The TOC section to resolve the color pair for.
+     */
+    @NotNull
+    private MSSColorPair resolveColorPairForTOC( @NotNull final MSS_TOC section ) {
         MSSColorPair colorPair = new MSSColorPair()
 
         updateMSSColorPairIfNotSet( colorPair, this.TOC.getProperty( section.name() ) as JSONObject )
@@ -1194,6 +1524,16 @@ class MSS {
      */
     @NotNull
     MSSFont getFontForTOC( @NotNull final MSS_TOC section ) {
+        this.tocFonts[ section.ordinal() ]
+    }
+
+    /**
+     * Resolves a MSSFont to use for the TOC section.
+     *
+     * @param section The TOC section to resolve the font for.
+     */
+    @NotNull
+    private MSSFont resolveFontForTOC( @NotNull final MSS_TOC section ) {
         MSSFont font = new MSSFont()
 
         updateMSSFontIfNotSet( font, this.TOC.getProperty( section.name() ) as JSONObject )
@@ -1224,13 +1564,41 @@ class MSS {
 
     /**
      * Loads styles from JSON .mss document. See src/main/resources/mss/default.mss for an example.
+     * <p/>
+     * An MSS is compiled into style tables when loaded. The result is cached by the content of the MSS, so
+     * loading the same MSS again, also from another thread, returns a new instance sharing the same style tables.
      *
-     * @param styleStream
+     * @param styleStream The stream to read the MSS from. It is read to its end but not closed.
      *
      * @throws IOException
      */
     static @NotNull
     MSS fromInputStream( @NotNull final InputStream styleStream ) throws IOException {
+        final byte[] content = styleStream.bytes
+        final String hash = MessageDigest.getInstance( "SHA-1" ).digest( content ).encodeHex().toString()
+
+        MSS compiled = compiledMSS.get( hash )
+        if ( compiled == null ) {
+            compiled = compile( new ByteArrayInputStream( content ) )
+            compiledMSS.put( hash, compiled )
+            Metrics.count( "mss.cacheMisses", 1 )
+        }
+        else {
+            Metrics.count( "mss.cacheHits", 1 )
+        }
+
+        new MSS( compiled )
+    }
+
+    /**
+     * Reads and compiles an MSS.
+     *
+     * @param styleStream The stream to read the MSS from.
+     *
+     * @throws IOException
+     */
+    private static @NotNull
+    MSS compile( @NotNull final InputStream styleStream ) throws IOException {
         final JSONObject mss = ( JSONObject ) JSON.read( styleStream, new JSONErrorHandler() {
             @Override
             void warning( @NotNull final String message ) {
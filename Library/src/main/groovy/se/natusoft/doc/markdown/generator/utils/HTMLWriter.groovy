@@ -0,0 +1,313 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.utils
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+
+/**
+ * A writer of generated HTML. Characters are encoded as UTF-8 straight into a large byte buffer that is
+ * written to the underlying stream when full, and content is escaped in the same pass as it is encoded.
+ *
+ * This is not thread safe. Use one writer per output.
+ */
+@CompileStatic
+@TypeChecked
+class HTMLWriter extends Writer {
+    //
+    // Constants
+    //
+
+    /** The default buffer size. */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024
+
+    /** What println() of a PrintWriter would write. */
+    private static final String LINE_SEPARATOR = System.lineSeparator()
+
+    //
+    // Private Members
+    //
+
+    /** The stream to write to. */
+    private OutputStream out
+
+    /** The encoded bytes not yet written. */
+    private byte[] buffer
+
+    /** The number of bytes in buffer. */
+    private int count = 0
+
+    /** A high surrogate waiting for its low surrogate, or 0. */
+    private char highSurrogate = 0 as char
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a new HTMLWriter.
+     *
+     * @param out The stream to write to.
+     */
+    HTMLWriter( @NotNull OutputStream out ) {
+        this( out, DEFAULT_BUFFER_SIZE )
+    }
+
+    /**
+     * Creates a new HTMLWriter.
+     *
+     * @param out The stream to write to.
+     * @param bufferSize The number of bytes to buffer before writing to the stream.
+     */
+    HTMLWriter( @NotNull OutputStream out, int bufferSize ) {
+        this.out = out
+        this.buffer = new byte[ Math.max( 16, bufferSize ) ]
+    }
+
+    //
+    // Methods
+    //
+
+    @Override
+    void write( int c ) throws IOException {
+        put( c as char )
+    }
+
+    @Override
+    void write( @NotNull char[] chars, int offset, int length ) throws IOException {
+        int end = offset + length
+        for ( int i = offset; i < end; ++i ) {
+            put( chars[ i ] )
+        }
+    }
+
+    @Override
+    void write( @NotNull String str, int offset, int length ) throws IOException {
+        int end = offset + length
+        for ( int i = offset; i < end; ++i ) {
+            put( str.charAt( i ) )
+        }
+    }
+
+    /**
+     * Writes text as is.
+     *
+     * @param text The text to write.
+     */
+    void text( @NotNull CharSequence text ) throws IOException {
+        int length = text.length()
+        for ( int i = 0; i < length; ++i ) {
+            put( text.charAt( i ) )
+        }
+    }
+
+    /**
+     * Writes text with &amp;, &lt;, and &gt; replaced by their entities.
+     *
+     * @param text The text to write.
+     */
+    void escaped( @NotNull CharSequence text ) throws IOException {
+        int length = text.length()
+        for ( int i = 0; i < length; ++i ) {
+            char c = text.charAt( i )
+            switch ( c ) {
+                case '&' as char: ascii( "&amp;" ); break
+                case '<' as char: ascii( "&lt;" ); break
+                case '>' as char: ascii( "&gt;" ); break
+                default: put( c )
+            }
+        }
+    }
+
+    /**
+     * Writes text line by line, each line prefixed with indentation. Lines can end with \n, \r\n, or \r, and are
+     * written ending with the line separator of the platform. A last line without an end gets one.
+     *
+     * @param text The text to write.
+     * @param indent The number of spaces to prefix each line with.
+     */
+    void indentedLines( @NotNull CharSequence text, int indent ) throws IOException {
+        int length = text.length()
+        boolean lineStart = true
+        for ( int i = 0; i < length; ++i ) {
+            char c = text.charAt( i )
+            if ( c == '\n' as char || c == '\r' as char ) {
+                if ( lineStart ) spaces( indent )
+                newLine()
+                lineStart = true
+                if ( c == '\r' as char && i + 1 < length && text.charAt( i + 1 ) == '\n' as char ) ++i
+            }
+            else {
+                if ( lineStart ) spaces( indent )
+                lineStart = false
+                put( c )
+            }
+        }
+        if ( !lineStart ) newLine()
+    }
+
+    /**
+     * Writes spaces.
+     *
+     * @param number The number of spaces to write.
+     */
+    void spaces( int number ) throws IOException {
+        for ( int i = 0; i < number; ++i ) {
+            if ( this.count == this.buffer.length ) flushBuffer()
+            this.buffer[ this.count++ ] = 32 as byte
+        }
+    }
+
+    /**
+     * Writes the line separator of the platform.
+     */
+    void newLine() throws IOException {
+        ascii( LINE_SEPARATOR )
+    }
+
+    /**
+     * Writes already encoded bytes, for example a part of the output rendered once and used in several outputs.
+     *
+     * @param bytes The UTF-8 encoded bytes to write.
+     */
+    void encoded( @NotNull byte[] bytes ) throws IOException {
+        if ( bytes.length > this.buffer.length - this.count ) {
+            flushBuffer()
+            if ( bytes.length > this.buffer.length ) {
+                this.out.write( bytes )
+                return
+            }
+        }
+        System.arraycopy( bytes, 0, this.buffer, this.count, bytes.length )
+        this.count += bytes.length
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and flushes it.
+     */
+    @Override
+    void flush() throws IOException {
+        flushBuffer()
+        this.out.flush()
+    }
+
+    /**
+     * Flushes and closes the stream.
+     */
+    @Override
+    void close() throws IOException {
+        if ( this.out != null ) {
+            try {
+                flush()
+            }
+            finally {
+                this.out.close()
+                this.out = null
+            }
+        }
+    }
+
+    /**
+     * Writes text known to only contain ASCII characters.
+     *
+     * @param text The text to write.
+     */
+    private void ascii( @NotNull String text ) throws IOException {
+        int length = text.length()
+        if ( length > this.buffer.length - this.count ) flushBuffer()
+        for ( int i = 0; i < length; ++i ) {
+            this.buffer[ this.count++ ] = text.charAt( i ) as byte
+        }
+    }
+
+    /**
+     * Encodes one character into the buffer.
+     *
+     * @param c The character to encode.
+     */
+    private void put( char c ) throws IOException {
+        if ( this.buffer.length - this.count < 4 ) flushBuffer()
+
+        int cp = c as int
+        if ( this.highSurrogate != 0 as char ) {
+            char high = this.highSurrogate
+            this.highSurrogate = 0 as char
+            if ( Character.isLowSurrogate( c ) ) {
+                cp = Character.toCodePoint( high, c )
+                this.buffer[ this.count++ ] = ( 0xF0 | ( cp >> 18 ) ) as byte
+                this.buffer[ this.count++ ] = ( 0x80 | ( ( cp >> 12 ) & 0x3F ) ) as byte
+                this.buffer[ this.count++ ] = ( 0x80 | ( ( cp >> 6 ) & 0x3F ) ) as byte
+                this.buffer[ this.count++ ] = ( 0x80 | ( cp & 0x3F ) ) as byte
+                return
+            }
+            // A lone high surrogate is written as '?' just like the JDK encoder does.
+            this.buffer[ this.count++ ] = 63 as byte
+            if ( this.buffer.length - this.count < 4 ) flushBuffer()
+        }
+
+        if ( cp < 0x80 ) {
+            this.buffer[ this.count++ ] = cp as byte
+        }
+        else if ( cp < 0x800 ) {
+            this.buffer[ this.count++ ] = ( 0xC0 | ( cp >> 6 ) ) as byte
+            this.buffer[ this.count++ ] = ( 0x80 | ( cp & 0x3F ) ) as byte
+        }
+        else if ( Character.isHighSurrogate( c ) ) {
+            this.highSurrogate = c
+        }
+        else if ( Character.isLowSurrogate( c ) ) {
+            this.buffer[ this.count++ ] = 63 as byte
+        }
+        else {
+            this.buffer[ this.count++ ] = ( 0xE0 | ( cp >> 12 ) ) as byte
+            this.buffer[ this.count++ ] = ( 0x80 | ( ( cp >> 6 ) & 0x3F ) ) as byte
+            this.buffer[ this.count++ ] = ( 0x80 | ( cp & 0x3F ) ) as byte
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream.
+     */
+    private void flushBuffer() throws IOException {
+        if ( this.out == null ) throw new IOException( "Stream closed!" )
+        if ( this.count > 0 ) {
+            this.out.write( this.buffer, 0, this.count )
+            this.count = 0
+        }
+    }
+}
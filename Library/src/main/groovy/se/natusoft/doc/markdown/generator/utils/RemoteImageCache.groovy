@@ -0,0 +1,267 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.generator.utils
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * An on disk cache of remote (http, https, ftp) images.
+ *
+ * A cached image is used without going to the network until it is older than refreshAfterMillis. After that
+ * it is fetched again, but if that fails the cached copy is still used and counts as fresh for another
+ * refreshAfterMillis, so that not every generation waits for the network to fail. So once fetched, an image is
+ * available also without a network.
+ *
+ * The cache is kept below maxBytes by deleting the least recently fetched images. Several generations can
+ * use the same cache directory at the same time.
+ */
+@CompileStatic
+@TypeChecked
+class RemoteImageCache {
+    //
+    // Constants
+    //
+
+    /** The extension of cached images. */
+    private static final String CACHE_FILE_EXT = ".img"
+
+    //
+    // Properties
+    //
+
+    /** The directory to store cached images in. It is created if it does not exist. */
+    @NotNull File cacheDir
+
+    /** The maximum total size of the cached images. */
+    long maxBytes = 100L * 1024L * 1024L
+
+    /** The age after which a cached image is fetched again. */
+    long refreshAfterMillis = 24L * 60L * 60L * 1000L
+
+    //
+    // Private Members
+    //
+
+    /** The number of images served from cache. */
+    private final AtomicInteger hits = new AtomicInteger()
+
+    /** The number of images fetched from the network. */
+    private final AtomicInteger misses = new AtomicInteger()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the content of a remote image, from cache if there is a fresh enough copy, and otherwise from the
+     * network. This can be called from several threads at the same time.
+     *
+     * @param url The url of the image.
+     *
+     * @throws IOException if the image is not cached and cannot be fetched.
+     */
+    @NotNull byte[] fetch( @NotNull URL url ) throws IOException {
+        File cacheFile = new File( this.cacheDir, toHex( sha1( url.toString().getBytes( "UTF-8" ) ) ) + CACHE_FILE_EXT )
+
+        byte[] cached = read( cacheFile )
+        if ( cached != null && System.currentTimeMillis() - cacheFile.lastModified() < this.refreshAfterMillis ) {
+            this.hits.incrementAndGet()
+            Metrics.count( "remoteImages.hits", 1 )
+            return cached
+        }
+
+        byte[] fetched
+        try {
+            fetched = readFully( url.openStream() )
+        }
+        catch ( IOException ioe ) {
+            if ( cached == null ) throw ioe
+
+            // Offline, or the server is down. A stale image is better than none. Touch it so that the following
+            // fetches use it without waiting for the network to fail again.
+            cacheFile.setLastModified( System.currentTimeMillis() )
+            this.hits.incrementAndGet()
+            Metrics.count( "remoteImages.hits", 1 )
+            return cached
+        }
+
+        this.misses.incrementAndGet()
+        Metrics.count( "remoteImages.misses", 1 )
+        write( cacheFile, fetched )
+        trim()
+
+        fetched
+    }
+
+    /**
+     * @return The number of images served from cache.
+     */
+    int getHits() {
+        this.hits.get()
+    }
+
+    /**
+     * @return The number of images fetched from the network.
+     */
+    int getMisses() {
+        this.misses.get()
+    }
+
+    /**
+     * Deletes the least recently fetched images until the cache is within maxBytes.
+     */
+    synchronized void trim() {
+        File[] files = this.cacheDir.listFiles( new FileFilter() {
+            @Override
+            boolean accept( File file ) {
+                file.name.endsWith( CACHE_FILE_EXT )
+            }
+        } )
+        if ( files == null ) return
+
+        long total = 0
+        for ( File file : files ) {
+            total += file.length()
+        }
+        if ( total <= this.maxBytes ) return
+
+        Arrays.sort( files, new Comparator<File>() {
+            @Override
+            int compare( File file1, File file2 ) {
+                Long.compare( file1.lastModified(), file2.lastModified() )
+            }
+        } )
+        for ( File file : files ) {
+            if ( total <= this.maxBytes ) break
+            long length = file.length()
+            // Another generation using the same directory could have deleted it already.
+            if ( file.delete() ) {
+                total -= length
+            }
+        }
+    }
+
+    /**
+     * Reads a cached image, or returns null if there is none.
+     *
+     * @param cacheFile The file of the cached image.
+     */
+    private static byte[] read( @NotNull File cacheFile ) {
+        try {
+            return cacheFile.isFile() ? Files.readAllBytes( cacheFile.toPath() ) : null
+        }
+        catch ( IOException ignore ) {
+            // Deleted by a trim() in between.
+            return null
+        }
+    }
+
+    /**
+     * Stores an image in the cache. A failure to do so is only warned about.
+     *
+     * @param cacheFile The file to store the image in.
+     * @param data The content of the image.
+     */
+    private static void write( @NotNull File cacheFile, @NotNull byte[] data ) {
+        File tempFile = null
+        try {
+            cacheFile.parentFile.mkdirs()
+            tempFile = File.createTempFile( "image", ".tmp", cacheFile.parentFile )
+            tempFile.bytes = data
+            Files.move( tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING )
+            tempFile = null
+        }
+        catch ( IOException ioe ) {
+            System.err.println( "Warning: Failed to write image cache file '${ cacheFile }': ${ ioe.message }" )
+        }
+        finally {
+            if ( tempFile != null ) tempFile.delete()
+        }
+    }
+
+    /**
+     * Reads and closes a stream.
+     *
+     * @param stream The stream to read.
+     */
+    static @NotNull byte[] readFully( @NotNull InputStream stream ) throws IOException {
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream()
+            byte[] buffer = new byte[ 8192 ]
+            int read
+            while ( ( read = stream.read( buffer ) ) >= 0 ) {
+                data.write( buffer, 0, read )
+            }
+            return data.toByteArray()
+        }
+        finally {
+            stream.close()
+        }
+    }
+
+    /**
+     * Returns the SHA-1 digest of the passed bytes.
+     *
+     * @param data The data to digest.
+     */
+    static @NotNull byte[] sha1( @NotNull byte[] data ) {
+        MessageDigest.getInstance( "SHA-1" ).digest( data )
+    }
+
+    /**
+     * Returns a lower case hex representation of the passed bytes.
+     *
+     * @param bytes The bytes to convert.
+     */
+    static @NotNull String toHex( @NotNull byte[] bytes ) {
+        StringBuilder sb = new StringBuilder( bytes.length * 2 )
+        for ( byte b : bytes ) {
+            sb.append( Character.forDigit( ( b >> 4 ) & 0x0f, 16 ) )
+            sb.append( Character.forDigit( b & 0x0f, 16 ) )
+        }
+
+        sb.toString()
+    }
+}
@@ -1,5 +1,7 @@
 package se.natusoft.doc.markdown.generator.utils
 
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
 import se.natusoft.doc.markdown.generator.styles.MSS
 
 /**
@@ -7,42 +9,97 @@ import se.natusoft.doc.markdown.generator.styles.MSS
  *
  * Not having to pass the current section to every method needing it makes the code a
  * little bit cleaner and less messy.
+ *
+ * All state is per thread, so generations running at the same time on different threads
+ * do not see each others sections. setup() and cleanup() can be nested on the same thread,
+ * the state is removed when the outermost cleanup() is done.
+ *
+ * This is used for all text that is rendered, so it is statically compiled.
  */
+@CompileStatic
+@TypeChecked
 class Sectionizer {
 
-    private static ThreadLocal<MSS.Section> currentSection = null
+    /**
+     * The section state of one thread.
+     */
+    private static class State {
+        /** The current section, which links to the ones it was entered from. */
+        Entered current = null
+
+        /** The number of setup() calls not yet matched by a cleanup(). */
+        int setups = 0
+    }
+
+    /**
+     * An entered section. The sections are linked rather than kept in a Deque, since a section taken from a Deque
+     * is cast through a dynamic call site that is linked again for each type of section.
+     */
+    private static class Entered {
+        MSS.Section section
 
-    private static Deque<MSS.Section> previousSections = null
+        /** The section this was entered from or null. */
+        Entered previous
+    }
+
+    private static final ThreadLocal<State> threadState = new ThreadLocal<>()
+
+    private static State getState() {
+        State state = threadState.get()
+        if ( state == null ) {
+            state = new State()
+            threadState.set( state )
+        }
+
+        state
+    }
 
     static final setup() {
-        currentSection = new ThreadLocal<>()
-        previousSections = new LinkedList<>()
+        ++getState().setups
     }
 
     static final cleanup() {
-        currentSection = null
-        previousSections = null
+        State state = threadState.get()
+        if ( state != null && --state.setups <= 0 ) {
+            threadState.remove()
+        }
     }
 
     static final withSection( MSS.Section section, Closure sectonizedCode ) {
-        if ( currentSection.get() != null ) {
-            previousSections.push( currentSection.get() )
+        enterSection( section )
+        try {
+            sectonizedCode.call()
         }
+        finally {
+            leaveSection()
+        }
+    }
 
-        currentSection.set( section )
-
-        sectonizedCode.call()
+    /**
+     * Makes the specified section the current section until leaveSection() is called. This is the same as
+     * withSection(...) without a closure, for code that is called for each text rendered.
+     *
+     * @param section The section to enter.
+     */
+    static void enterSection( MSS.Section section ) {
+        State state = getState()
+        state.current = new Entered( section: section, previous: state.current )
+    }
 
-        if ( previousSections.isEmpty() ) {
-            currentSection.remove()
-        }
-        else {
-            currentSection.set( previousSections.pop() )
-        }
+    /**
+     * Goes back to the section that was current when the matching enterSection(...) was called.
+     */
+    static void leaveSection() {
+        State state = getState()
+        state.current = state.current.previous
     }
 
     static final MSS.Section getSection() {
-        MSS.Section section = currentSection.get()
+        State state = threadState.get()
+        MSS.Section section = null
+        if ( state != null && state.current != null ) {
+            section = state.current.section
+        }
         if ( section == null ) section = MSS.MSS_Pages.standard
 
         section
@@ -42,6 +42,10 @@ import org.jetbrains.annotations.NotNull
 
 /**
  * This represents a line of text.
+ * <p/>
+ * Lines are read in large numbers, so a Line does as little as possible up front. The words of the line are
+ * only split out when first asked for, and the start and end of the trimmed text are found once with a
+ * single scan and then remembered.
  */
 @CompileStatic
 @TypeChecked
@@ -54,8 +58,14 @@ class Line {
     /** The original String passed to us. */
     protected String origLine = null
 
-    /** The words of the line. */
-    protected String[] words = new String[0]
+    /** The words of the line. Split out on first use. */
+    private String[] splitWords = null
+
+    /** The index of the first char of the trimmed line, or -1 before the line has been scanned. */
+    private int trimStart = -1
+
+    /** The index after the last char of the trimmed line. */
+    private int trimEnd = -1
 
     /** The current word index. */
     protected int currentWord = -1
@@ -89,7 +99,6 @@ class Line {
      */
     Line(@NotNull final String line, final int lineNumber) {
         this.origLine = line
-        this.words = line.split("\\s+")
         this.lineNumber = lineNumber
     }
 
@@ -97,6 +106,82 @@ class Line {
     // Methods
     //
 
+    /**
+     * Returns the words of the line. This gives the same result as origLine.split("\\s+"), but without regexp.
+     */
+    protected @NotNull String[] getWords() {
+        if (this.splitWords == null) {
+            this.splitWords = splitWords(this.origLine)
+        }
+        this.splitWords
+    }
+
+    /**
+     * Splits a string into words exactly like split("\\s+") does.
+     *
+     * @param text The text to split.
+     */
+    private static @NotNull String[] splitWords(@NotNull final String text) {
+        final int length = text.length()
+        int pos = 0
+        while (pos < length && !isRegexpSpace(text.charAt(pos))) ++pos
+        if (pos == length) return [ text ] as String[]
+
+        final java.util.List<String> parts = new ArrayList<String>()
+        int start = 0
+        while (pos < length) {
+            parts.add(text.substring(start, pos))
+            while (pos < length && isRegexpSpace(text.charAt(pos))) ++pos
+            start = pos
+            while (pos < length && !isRegexpSpace(text.charAt(pos))) ++pos
+        }
+        parts.add(text.substring(start, length))
+
+        int size = parts.size()
+        while (size > 0 && parts.get(size - 1).isEmpty()) --size
+
+        parts.subList(0, size).toArray(new String[size])
+    }
+
+    /**
+     * Returns true for the chars matched by \\s in a regexp.
+     *
+     * @param c The char to test.
+     */
+    protected static boolean isRegexpSpace(final char c) {
+        c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+    }
+
+    /**
+     * Finds the start and end of the trimmed line the first time it is needed.
+     */
+    private void scanTrim() {
+        if (this.trimStart < 0) {
+            int end = this.origLine.length()
+            int start = 0
+            while (start < end && this.origLine.charAt(start) <= (char)' ') ++start
+            while (end > start && this.origLine.charAt(end - 1) <= (char)' ') --end
+            this.trimEnd = end
+            this.trimStart = start
+        }
+    }
+
+    /**
+     * Returns the index of the first char not removed by trim(). This is the length of the line for a blank line.
+     */
+    protected int getTrimStart() {
+        scanTrim()
+        this.trimStart
+    }
+
+    /**
+     * Returns the index after the last char not removed by trim().
+     */
+    protected int getTrimEnd() {
+        scanTrim()
+        this.trimEnd
+    }
+
     /**
      * Returns the text from the beginning up to the specified word number, not including.
      *
@@ -106,7 +191,7 @@ class Line {
      */
     @NotNull String getTextUpToWord(int word) {
         StringBuilder sb = new StringBuilder()
-        if (word > this.words.length) word = this.words.length
+        if (word > getWords().length) word = getWords().length
         String blank = ""
         (1..word).each { int i ->
             sb.append(blank)
@@ -126,10 +211,10 @@ class Line {
      */
     @NotNull String getTextFromWord(int word) {
         StringBuilder sb = new StringBuilder()
-        if (word > (this.words.length + 1)) return ""
+        if (word > (getWords().length + 1)) return ""
         String blank = ""
         word += 1
-        (word..(this.words.length)).each {int i ->
+        (word..(getWords().length)).each {int i ->
             sb.append(blank)
             blank = " "
             sb.append(getWord(i - 1))
@@ -145,7 +230,7 @@ class Line {
      */
     @NotNull Line removeBeg(@NotNull final String beg) {
         Line line = this
-        if (this.origLine.trim().startsWith(beg)) {
+        if (startsWithExcludingWhitespace(beg)) {
             final int ix = this.origLine.indexOf(beg);
             final String nwLine = this.origLine[(ix+1)..-1]
             line = newLine(nwLine)
@@ -201,7 +286,7 @@ class Line {
      * Returns true if there are more words in this line.
      */
     boolean hasMoreWords() {
-        (this.currentWord + 1) < this.words.size()
+        (this.currentWord + 1) < getWords().length
     }
 
     /**
@@ -222,7 +307,7 @@ class Line {
         String str = ""
 
         if (hasMoreWords()) {
-            str = this.words[++this.currentWord]
+            str = getWords()[++this.currentWord]
         }
 
         str
@@ -236,7 +321,7 @@ class Line {
         String str = ""
 
         if (this.currentWord > 0) {
-            str = this.words[--this.currentWord]
+            str = getWords()[--this.currentWord]
         }
 
         str
@@ -248,7 +333,7 @@ class Line {
      */
     @NotNull String getCurrentWord() {
         if (this.currentWord < 0) { this.currentWord = 0 }
-        this.words[this.currentWord]
+        getWords()[this.currentWord]
     }
 
     /**
@@ -260,15 +345,15 @@ class Line {
      */
     @NotNull String getFirstWord() {
         this.currentWord = 0
-        this.words[this.currentWord]
+        getWords()[this.currentWord]
     }
 
     /**
      * Moves to the last word.
      */
     @NotNull String getLastWord() {
-        this.currentWord = words.size() - 1
-        this.words[this.currentWord]
+        this.currentWord = getWords().length - 1
+        getWords()[this.currentWord]
     }
 
     /**
@@ -282,7 +367,7 @@ class Line {
      * Returns the number of words in the line.
      */
     int getNumberOfWords() {
-        this.words.size()
+        getWords().length
     }
 
     /**
@@ -291,7 +376,7 @@ class Line {
      * @param word The position of the word to get.
      */
     @NotNull String getWord(final int word) {
-        this.words[word];
+        getWords()[word];
     }
 
     /**
@@ -315,18 +400,17 @@ class Line {
      */
     int getLeadingSpaces() {
         int leading = 0
-        int lpos = 0
-
-        if (this.origLine.length() > 0) {
-            while (this.origLine[lpos] == " " || this.origLine[lpos] == "\t") {
-                if (this.origLine[lpos] == "\t") {
-                    leading += 4
-                }
-                else {
-                    ++leading
-                }
-                ++lpos
-                if (lpos == this.origLine.size()) break
+
+        for (int lpos = 0; lpos < this.origLine.length(); lpos++) {
+            final char c = this.origLine.charAt(lpos)
+            if (c == '\t') {
+                leading += 4
+            }
+            else if (c == ' ') {
+                ++leading
+            }
+            else {
+                break
             }
         }
 
@@ -353,7 +437,7 @@ class Line {
      * @param wordClosure The closure to call.
      */
     void eachWord(@NotNull final Closure wordClosure) {
-        this.words.each wordClosure
+        getWords().each wordClosure
     }
 
     /**
@@ -371,7 +455,7 @@ class Line {
      * @param startsWith The text to check for.
      */
     boolean startsWithExcludingWhitespace(@NotNull final String startsWith) {
-        this.origLine.trim().startsWith(startsWith)
+        getTrimEnd() - getTrimStart() >= startsWith.length() && this.origLine.startsWith(startsWith, getTrimStart())
     }
 
     /**
@@ -389,7 +473,8 @@ class Line {
      * @param endsWith The text to check for.
      */
     boolean endsWithExcludingWhitespace(@NotNull final String endsWith) {
-        this.origLine.trim().endsWith(endsWith)
+        getTrimEnd() - getTrimStart() >= endsWith.length() &&
+                this.origLine.regionMatches(getTrimEnd() - endsWith.length(), endsWith, 0, endsWith.length())
     }
 
     /**
@@ -414,7 +499,7 @@ class Line {
      * @return true if this line is empty.
      */
     boolean isEmpty() {
-        this.origLine.trim().length() == 0
+        getTrimStart() == getTrimEnd()
     }
 
     /**
@@ -423,16 +508,16 @@ class Line {
     @NotNull Line removeFirstWord() {
         String space = ""
         boolean first = true
-        String text = ""
-        eachWord { final String word ->
+        final StringBuilder text = new StringBuilder()
+        for (final String word : getWords()) {
             if (!first) {
-                text += space + word
+                text.append(space).append(word)
                 space = " "
             }
             if (!word.isEmpty()) first = false
         }
 
-        newLine(text)
+        newLine(text.toString())
     }
 
     /**
@@ -55,7 +55,7 @@ public class LineReader {
     private BufferedReader reader = null
 
     /** For read ahead data. */
-    private Deque<Line> readAhead = new LinkedList<Line>()
+    private Deque<Line> readAhead = new ArrayDeque<Line>()
 
     /** The current line number. */
     private int lineNo = 1
@@ -96,16 +96,10 @@ public class LineReader {
      * @throws IOException on any I/O failure.
      */
     @Nullable Line readLine() throws IOException {
-        Line line = null
+        Line line = this.readAhead.pollFirst()
 
-        if (!this.readAhead.isEmpty()) {
-            line = this.readAhead.pollFirst()
-        }
-        else {
-            final String str = this.reader.readLine()
-            if (str != null) {
-                line = createLine(str.replaceAll("\t", "    "))
-            }
+        if (line == null) {
+            line = readNewLine()
         }
 
         ++this.lineNo
@@ -115,13 +109,31 @@ public class LineReader {
         line
     }
 
+    /**
+     * Reads a line from the wrapped reader and creates a Line of it, with tabs replaced by 4 spaces.
+     *
+     * @return The line or null on end-of-file.
+     *
+     * @throws IOException on any I/O failure.
+     */
+    private @Nullable Line readNewLine() throws IOException {
+        Line line = null
+
+        final String str = this.reader.readLine()
+        if (str != null) {
+            line = createLine(str.indexOf("\t") >= 0 ? str.replace("\t", "    ") : str)
+        }
+
+        line
+    }
+
     /**
      * Pushed the specified line back to be returned again on next readLine().
      *
      * @param line The line to push back.
      */
     void pushBackLine(@NotNull final Line line) {
-        this.readAhead.offerLast(line)
+        this.readAhead.offerFirst(line)
         --this.lineNo
     }
 
@@ -133,12 +145,14 @@ public class LineReader {
      * @throws IOException on any I/O failure.
      */
     @Nullable Line peekNextLine() throws IOException {
-        final Line saveLastReadLine = this.lastReadLine
-        final Line line = readLine()
-        if (line != null) {
-            pushBackLine(line)
+        Line line = this.readAhead.peekFirst()
+
+        if (line == null) {
+            line = readNewLine()
+            if (line != null) {
+                this.readAhead.offerLast(line)
+            }
         }
-        this.lastReadLine = saveLastReadLine
 
         line
     }
@@ -147,7 +161,7 @@ public class LineReader {
      * Returns true if this reader has any line to read. When this returns false end-of-file has been reached.
      */
     boolean hasLine() {
-        peekNextLine() != null
+        !this.readAhead.isEmpty() || peekNextLine() != null
     }
 
     // Wanted to test this, and it works fine, but is not optimal for parsing ...
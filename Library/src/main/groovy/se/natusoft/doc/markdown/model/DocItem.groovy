@@ -42,7 +42,7 @@ import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
 import se.natusoft.doc.markdown.io.Line
 
-import java.util.LinkedList as JLinkedList
+import java.util.ArrayList as JArrayList
 import java.util.List as JList
 
 /**
@@ -51,12 +51,22 @@ import java.util.List as JList
 @CompileStatic
 @TypeChecked
 abstract class DocItem {
+    //
+    // Constants
+    //
+
+    /** The items of all DocItems without sub items. This is never modified, it is replaced before adding to it. */
+    protected static final JList<DocItem> NO_ITEMS = Collections.emptyList()
+
     //
     // Properties
     //
 
-    /** The sub items of this DocItem.  */
-    @NotNull JList<DocItem> items = new JLinkedList<DocItem>()
+    /**
+     * The sub items of this DocItem. This is the shared NO_ITEMS until something is added, or until getItems() is
+     * called, which might be to add to it.
+     */
+    @NotNull JList<DocItem> items = NO_ITEMS
 
     /** If true the consecutive instances are merged. */
     boolean keepConsecutiveTogether = false
@@ -110,7 +120,7 @@ abstract class DocItem {
      * @param paragraph A Paragraph to add.
      */
     void addItem(@NotNull final DocItem docItem) {
-        this.items.add(docItem)
+        modifiableItems().add(docItem)
     }
 
     /**
@@ -131,7 +141,7 @@ abstract class DocItem {
      */
     void addItem(@NotNull final String text) {
         final PlainText pt = new PlainText(text: text)
-        this.items.add(pt);
+        modifiableItems().add(pt);
     }
 
     /**
@@ -144,7 +154,65 @@ abstract class DocItem {
     }
 
     /**
-     * Returns true if this DocItem has sub items.
+     * Returns the sub items of this DocItem. The list can be added to.
+     */
+    @NotNull JList<DocItem> getItems() {
+        modifiableItems()
+    }
+
+    /**
+     * Returns the items as a list that can be added to.
+     */
+    protected @NotNull JList<DocItem> modifiableItems() {
+        if (this.items.is(NO_ITEMS)) {
+            this.items = new JArrayList<DocItem>()
+        }
+        this.items
+    }
+
+    /**
+     * Makes this item and its sub items use less memory. Call this when the item is complete, that is, when the
+     * parser will not add anything more to it. The item can still be changed after this, but that makes it use
+     * more memory again.
+     * <p/>
+     * The item lists are shrunk to their size, and the texts are moved to the text buffer.
+     *
+     * @param textBuffer The buffer to move texts to. All items of a parsed file should use the same buffer.
+     */
+    void compact(@NotNull final TextBuffer textBuffer) {
+        if (this.items.isEmpty()) {
+            this.items = NO_ITEMS
+        }
+        else if (this.items instanceof JArrayList) {
+            ((JArrayList<DocItem>)this.items).trimToSize()
+        }
+        else {
+            this.items = new JArrayList<DocItem>(this.items)
+        }
+
+        // Indexed since the list is an ArrayList or empty by now.
+        for (int i = 0; i < this.items.size(); i++) {
+            this.items.get(i).compact(textBuffer)
+        }
+    }
+
+    /**
+     * Sets the parse file of this item and all its sub items.
+     *
+     * @param parseFile The file the items were parsed from.
+     */
+    void applyParseFile(@NotNull final File parseFile) {
+        this.parseFile = parseFile
+        // Indexed, and the item as receiver rather than argument, since passing it casts through a dynamic call site
+        // that is linked again for each type of item.
+        for (int i = 0; i < this.items.size(); i++) {
+            this.items.get(i).applyParseFile(parseFile)
+        }
+    }
+
+    /**
+     * Returns true if this DocItem has sub items. Unlike getItems() this does not create a list for an item
+     * without sub items.
      */
     boolean hasSubItems() {
         return this.items.size() > 0
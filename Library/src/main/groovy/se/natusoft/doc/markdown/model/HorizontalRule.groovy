@@ -54,7 +54,7 @@ class HorizontalRule extends DocFormatItem {
         // DO note that the content of this model is only a visual help when dumping the model for debugging
         // purposes. When generating the contents are not used for this specific model. An hr does not have
         // content :-).
-        super.items.add(new PlainText(text: "_______________________________________________________________"))
+        addItem(new PlainText(text: "_______________________________________________________________"))
     }
 
     /**
@@ -51,13 +51,94 @@ class PlainText extends DocFormatItem {
     // Private Members
     //
 
-    /** The text of this item. */
-    @NotNull String text = ""
+    /**
+     * The text of this item. This is a StringBuilder while text is added to it a piece at a time, and null
+     * when the text has been moved to a TextBuffer.
+     */
+    private CharSequence chars = ""
+
+    /** The buffer holding the text after compact(...). */
+    private TextBuffer textBuffer = null
+
+    /** The start of the text in the text buffer. */
+    private int start = 0
+
+    /** The end of the text in the text buffer. */
+    private int end = 0
+
+    /** The text as a String once asked for, until the text is changed. */
+    private String text = null
 
     //
     // Methods
     //
 
+    /**
+     * Returns the text of this item.
+     */
+    @NotNull String getText() {
+        if (this.text == null) {
+            this.text = this.textBuffer != null ? this.textBuffer.substring(this.start, this.end) : this.chars.toString()
+        }
+        this.text
+    }
+
+    /**
+     * Sets the text of this item.
+     *
+     * @param text The text to set.
+     */
+    void setText(@NotNull final String text) {
+        this.chars = text != null ? text : ""
+        this.textBuffer = null
+        this.text = null
+    }
+
+    /**
+     * Returns the length of the text of this item.
+     */
+    int getTextLength() {
+        this.textBuffer != null ? this.end - this.start : this.chars.length()
+    }
+
+    /**
+     * Returns the text as a StringBuilder that can be appended to. The String returned by getText() is dropped
+     * since the text is about to change.
+     */
+    private @NotNull StringBuilder textBuilder() {
+        if (!(this.chars instanceof StringBuilder)) {
+            this.chars = new StringBuilder(getText())
+            this.textBuffer = null
+        }
+        this.text = null
+        (StringBuilder)this.chars
+    }
+
+    /**
+     * Provides the left shift operator. Characters are appended without creating a String for each.
+     *
+     * @param object The object to left shift in.
+     */
+    @Override
+    @NotNull DocItem leftShift(@NotNull final Object object) {
+        if (object instanceof Character) {
+            addChar((Character)object)
+        }
+        else {
+            addItem(object.toString())
+        }
+        this
+    }
+
+    /**
+     * Adds a character to this plain text.
+     *
+     * @param c The character to add.
+     */
+    protected void addChar(final char c) {
+        textBuilder().append(c)
+    }
+
     /**
      * Adds text to this plain text.
      *
@@ -65,8 +146,8 @@ class PlainText extends DocFormatItem {
      */
     @Override
     void addItem(@NotNull final String text) {
-        if (text != null) {
-            this.text = this.text + text
+        if (text != null && !text.isEmpty()) {
+            textBuilder().append(text)
         }
     }
 
@@ -79,6 +160,29 @@ class PlainText extends DocFormatItem {
         throw new GenerateException(message: "PlainText only takes strings!")
     }
 
+    /**
+     * Moves the text to the text buffer.
+     *
+     * @param textBuffer The buffer to move the text to.
+     */
+    @Override
+    void compact(@NotNull final TextBuffer textBuffer) {
+        super.compact(textBuffer)
+
+        if (this.textBuffer == null) {
+            if (this.chars.length() == 0) {
+                this.chars = ""
+            }
+            else {
+                this.start = textBuffer.append(this.chars)
+                this.end = this.start + this.chars.length()
+                this.textBuffer = textBuffer
+                this.chars = null
+                this.text = null
+            }
+        }
+    }
+
     /**
      * Returns the format this model represents.
      */
@@ -89,12 +193,11 @@ class PlainText extends DocFormatItem {
 
     @Override
     boolean validate() {
-        this.text != null && this.text.length() > 0;
+        getTextLength() > 0
     }
 
     @Override
     @NotNull String toString() {
-        this.text
+        getText()
     }
 }
-
@@ -0,0 +1,100 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.model
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+
+/**
+ * Holds the text of all items parsed from one file after they have been compacted. Each item only keeps the
+ * start and end of its text in here instead of a String of its own. See DocItem.compact(...).
+ *
+ * Text is only appended while parsing. After that the buffer is only read, which can be done by several threads.
+ */
+@CompileStatic
+@TypeChecked
+class TextBuffer {
+    //
+    // Private Members
+    //
+
+    /** The text of all items. */
+    private final StringBuilder chars = new StringBuilder(1024)
+
+    //
+    // Methods
+    //
+
+    /**
+     * Adds text to the end of the buffer.
+     *
+     * @param text The text to add.
+     *
+     * @return The start of the added text in the buffer.
+     */
+    int append(@NotNull final CharSequence text) {
+        final int start = this.chars.length()
+        this.chars.append(text)
+        start
+    }
+
+    /**
+     * Returns a part of the text in the buffer.
+     *
+     * @param start The start of the text.
+     * @param end The end of the text, exclusive.
+     */
+    @NotNull String substring(final int start, final int end) {
+        this.chars.substring(start, end)
+    }
+
+    /**
+     * Returns the number of characters in the buffer.
+     */
+    int length() {
+        this.chars.length()
+    }
+
+    /**
+     * Releases the space reserved for text that was never appended. Call this when all items of the file have
+     * been compacted.
+     */
+    void complete() {
+        this.chars.trimToSize()
+    }
+}
@@ -44,7 +44,15 @@ import se.natusoft.doc.markdown.api.Parser
 import se.natusoft.doc.markdown.exception.ParseException
 import se.natusoft.doc.markdown.model.*
 
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.CharacterCodingException
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.nio.file.StandardOpenOption
 import java.util.List
+import java.util.regex.Pattern
 
 /**
  * This parses javadoc comments into the markdown model.
@@ -72,6 +80,11 @@ import java.util.List
  * <p/>
  * _Please note that this parser does not try to parse java code more than trying to identify the beginning of a class and method.
  * All other information comes from the javadoc comment block. If there is no javadoc the resulting information will be quite poor.
+ * <p/>
+ * The source is read in one go and scanned a character at a time. Only the lines of javadoc comments and of the
+ * declarations following them become Strings. Other code is skipped after looking at the first character of each line.
+ * All state of a parse is kept in a JavadocScan of its own, so one instance of this parser can parse several files
+ * at the same time.
  */
 @CompileStatic
 @TypeChecked
@@ -83,45 +96,45 @@ class Javadoc2MDParser implements Parser {
 
     private static final String MARKDOWN_JAVADOC = "markdownJavadoc"
 
-    //
-    // Private Members
-    //
-
-    /** Indicates if we are currently in a javadoc block. */
-    private boolean inJavadocBlock = false
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+")
 
-    /** Indicates if we are currently in a declaration. */
-    private boolean inDeclarationBlock = false
+    private static final Pattern PRE_START = Pattern.compile("^<[Pp][Rr][Ee]>.*")
 
-    /** The package of the currently parsed java file. */
-    private String pkg = ""
+    private static final Pattern PRE_END = Pattern.compile("^</[Pp][Rr][Ee]>.*")
 
-    /** The latest found javadoc block. */
-    private List<String> javadoc = null
-
-    /** The current declaration found. */
-    private String declaration = null
-
-    /** The parser options. */
-    private Properties parserOptions = null
+    private static final Pattern ANNOTATION = Pattern.compile("(@[A-Z,a-z]+){1} ")
 
     //
     // Methods
     //
 
     /**
-     * Parses a java source file and adds its javadoc comments as appropriate markdown models to the passed Doc.
+     * Parses java source from a stream and adds its javadoc comments as appropriate markdown models to the passed Doc.
+     * The stream is closed when read.
      *
      * @param doc The parsed result is added to this.
-     * @param parseFile The file whose content to parse.
+     * @param parseStream The stream whose content to parse.
      * @param parserOptions The options for this parser.
      *
      * @throws IOException on failure.
      * @throws ParseException on parse failures.
      */
     @Override
-    void parse(final Doc document, final InputStream parseStream, final Properties parserOptions) throws IOException, ParseException {
-        throw new ParseException(message: "Parsing from an InputStream is not supported by this parser!")
+    void parse(@NotNull final Doc document, @NotNull final InputStream parseStream,
+               @Nullable final Properties parserOptions) throws IOException, ParseException {
+        final ByteArrayOutputStream source = new ByteArrayOutputStream(64 * 1024)
+        try {
+            final byte[] buffer = new byte[64 * 1024]
+            int read
+            while ((read = parseStream.read(buffer)) != -1) {
+                source.write(buffer, 0, read)
+            }
+        }
+        finally {
+            parseStream.close()
+        }
+
+        parseSource(document, decode(ByteBuffer.wrap(source.toByteArray())), null, parserOptions)
     }
 
     /**
@@ -137,44 +150,36 @@ class Javadoc2MDParser implements Parser {
     @Override
     void parse(@NotNull final Doc document, @NotNull final File parseFile,
                @Nullable final Properties parserOptions) throws IOException, ParseException {
+        final FileChannel channel = FileChannel.open(parseFile.toPath(), StandardOpenOption.READ)
+        final ByteBuffer source
+        try {
+            source = ByteBuffer.allocate((int)channel.size())
+            while (source.hasRemaining() && channel.read(source) != -1) {
+                // Some channels return less than asked for.
+            }
+            source.flip()
+        }
+        finally {
+            channel.close()
+        }
 
-        this.inJavadocBlock = false
-        this.inDeclarationBlock = false
-        this.pkg = ""
-        this.javadoc = null
-        this.declaration = null
-        this.parserOptions = parserOptions
-
-        final Doc localDoc = new Doc();
+        parseSource(document, decode(source), parseFile, parserOptions)
+    }
 
-        parseFile.eachLine { final String line ->
-            if (!inJavadocBlock && !inDeclarationBlock && line.trim().startsWith("package")) {
-                this.pkg = line.replaceFirst("package ", "").replace(';', ' ').trim()
-            }
-            else if (!inJavadocBlock && !inDeclarationBlock && line.trim().startsWith("/**")) {
-                saveJavadocLine(line)
-                if (!line.trim().endsWith("*/")) {
-                    inJavadocBlock = true
-                }
-            }
-            else if (inJavadocBlock && !line.trim().endsWith("*/")) {
-                saveJavadocLine(line)
-            }
-            else if (inJavadocBlock && line.trim().endsWith("*/")) {
-                inJavadocBlock = false
-            }
-            else if (!inJavadocBlock && !inDeclarationBlock && this.javadoc != null) {
-                parseDeclarationLine(localDoc, line)
-                if (!(isFieldOrConst(line) || isMethod(line) || isEnumConst(line))) {
-                    inDeclarationBlock = true
-                }
-            }
-            else if (!inJavadocBlock && inDeclarationBlock) {
-                parseDeclarationLine(localDoc, line)
-            }
+    /**
+     * Parses decoded java source.
+     *
+     * @param document The parsed result is added to this.
+     * @param source The source to parse.
+     * @param parseFile The file the source comes from or null if from a stream.
+     * @param parserOptions The options for this parser.
+     */
+    private static void parseSource(@NotNull final Doc document, @NotNull final CharBuffer source, @Nullable final File parseFile,
+                                    @Nullable final Properties parserOptions) throws IOException, ParseException {
+        final Doc localDoc = new Doc()
 
-            return "" // Apparently the closure must return something even though it does not make any sense in such a case as this.
-        }
+        new JavadocScan(localDoc, parserOptions).scan(source.array(), source.arrayOffset() + source.position(),
+                source.arrayOffset() + source.limit())
 
         Paragraph p = new Paragraph()
         p.addItem(new PlainText(text: "}"))
@@ -186,24 +191,40 @@ class Javadoc2MDParser implements Parser {
         p.addItem("    ")
         localDoc.addItem(p)
 
-        setParseFileOnDocItems(localDoc, parseFile)
+        if (parseFile != null) {
+            localDoc.applyParseFile(parseFile)
+        }
+
+        final TextBuffer textBuffer = new TextBuffer()
+        localDoc.compact(textBuffer)
+        textBuffer.complete()
 
         document.addItems(localDoc.items)
     }
 
     /**
-     * This will provide the parse file to each DocItem created by this parser run.
+     * Decodes java source. This is UTF-8 unless the source is not valid UTF-8, in which case the default encoding of
+     * the platform is used. UTF-16 is used if the source starts with its byte order mark. This is the guess
+     * File.eachLine(...) makes, but made over the whole source instead of the start of it.
      *
-     * @param docItems
-     * @param parseFile
+     * @param source The bytes to decode.
      */
-    private void setParseFileOnDocItems(@NotNull final DocItem docItem, @NotNull final File parseFile) {
-        docItem.parseFile = parseFile
-        if (docItem.hasSubItems()) {
-            for (final DocItem subDocItem : docItem.items) {
-                setParseFileOnDocItems(subDocItem, parseFile)
+    private static @NotNull CharBuffer decode(@NotNull final ByteBuffer source) {
+        if (source.remaining() >= 2) {
+            final int bom = ((source.get(0) & 0xFF) << 8) | (source.get(1) & 0xFF)
+            if (bom == 0xFEFF || bom == 0xFFFE) {
+                return StandardCharsets.UTF_16.decode(source)
             }
         }
+
+        try {
+            // A new decoder reports malformed input instead of replacing it.
+            return StandardCharsets.UTF_8.newDecoder().decode(source)
+        }
+        catch (final CharacterCodingException ignore) {
+            source.rewind()
+            return Charset.defaultCharset().decode(source)
+        }
     }
 
     private static boolean isFieldOrConst(@NotNull final String line) {
@@ -223,319 +244,573 @@ class Javadoc2MDParser implements Parser {
     }
 
     /**
-     * Saves a javadoc line. They are filtered from comment characters and then added to the javadoc list to be parsed later.
+     * Removes annotation from the line.
+     *
+     * @param line The line to remove annotations from.
+     *
+     * @return The update line without annotations.
+     */
+    private static String removeAnnotations(@NotNull final String line) {
+        ANNOTATION.matcher(line).replaceAll("")
+    }
+
+    /**
+     * Splits a line of javadoc text into words. Whitespace, '>' followed by any whitespace, and "</" separate words,
+     * which leaves the start of html tags like "<p" as words. The result is the same as for
+     * line.split("\\s+|>\\s*|</"), including the empty words.
      *
-     * @param line The javadoc line to save for later.
+     * @param line The line to split.
      */
-    private void saveJavadocLine(@NotNull final String line) {
-        String sline = line.trim()
-        if (sline.startsWith("/**")) {
-            sline = sline.substring(3)
-        }
-        else if (sline.startsWith("*")) {
-            if (sline.length() > 2) {
-                sline = sline.substring(2)
+    private static @NotNull List<String> javadocWords(@NotNull final String line) {
+        final List<String> words = new ArrayList<String>()
+        final int length = line.length()
+        int wordStart = 0
+        int i = 0
+        while (i < length) {
+            final char c = line.charAt(i)
+            int separatorEnd = -1
+            if (isSpace(c) || c == (char)'>') {
+                separatorEnd = i + 1
+                while (separatorEnd < length && isSpace(line.charAt(separatorEnd))) {
+                    ++separatorEnd
+                }
+            }
+            else if (c == (char)'<' && i + 1 < length && line.charAt(i + 1) == (char)'/') {
+                separatorEnd = i + 2
+            }
+
+            if (separatorEnd != -1) {
+                words.add(line.substring(wordStart, i))
+                wordStart = separatorEnd
+                i = separatorEnd
             }
             else {
-                sline = ""
+                ++i
             }
         }
-        if (sline.endsWith("*/")) {
-            sline = sline.substring(0, sline.length() -2)
+
+        if (words.isEmpty()) {
+            // Without separators the whole line is the only word, even when empty.
+            words.add(line)
         }
-        if (this.javadoc == null) {
-            this.javadoc = new LinkedList<>()
+        else {
+            words.add(line.substring(wordStart))
+            while (!words.isEmpty() && words.get(words.size() - 1).isEmpty()) {
+                words.remove(words.size() - 1)
+            }
         }
-        this.javadoc.add(sline)
+
+        words
     }
 
     /**
-     * This is called when a declaration has been identified and will parse that declaration building a model for it, and
-     * then adding it to the document model. After that parseJavadoc(...) is called to add the javadoc information for the
-     * declaration to the document model.
-     * <p/>
-     * In java the javadoc comes before the declaration, but our doc format puts the declaration first and then its javadoc
-     * information.
+     * Returns true for the whitespace characters of regular expressions (\s).
      *
-     * @param document The document model to add to.
-     * @param line The current declaration line. A declaration might occupy more than one line so until we see the end of
-     *             it, we just save the line text possibly adding it to previous text.
+     * @param c The character to check.
      */
-    private void parseDeclarationLine(@NotNull final Doc document, @NotNull final String line) {
-        if (this.declaration == null) {
-            this.declaration = line.trim()
-        }
-        else {
-            this.declaration += " " + line.trim()
-        }
-
-        final VisibilityUtil visibility = new VisibilityUtil(this.declaration)
-        final DeclarationTypeUtil declType = new DeclarationTypeUtil(this.declaration)
-
-        if (isFieldOrConst(this.declaration) || isMethod(this.declaration) || isEnumConst(this.declaration)) {
-            inDeclarationBlock = false
-
-            boolean classOrInterface = false;
-            final Paragraph p = new Paragraph()
-            if ((declType.isClass() || declType.isInterface() || declType.isEnum()) && (visibility.isPublic() || visibility.isProtected())) {
+    private static boolean isSpace(final char c) {
+        c == (char)' ' || c == (char)'\t' || c == (char)'\n' || c == (char)'\u000B' || c == (char)'\f' || c == (char)'\r'
+    }
 
-                classOrInterface = true
-                final String[] words = this.declaration.split("\\s+")
-                boolean handledName = false
-                for (int i = 0; i < words.length; i++) {
-                    String word = words[i]
+    /**
+     * Returns true if the word starts a paragraph, that is, if it is "<p" or "<P" followed by at most one character
+     * that does not end a line.
+     *
+     * @param word The javadoc word to check.
+     */
+    private static boolean isParagraphStart(@NotNull final String word) {
+        if (word.length() < 2 || word.length() > 3 || word.charAt(0) != (char)'<' ||
+                (word.charAt(1) != (char)'p' && word.charAt(1) != (char)'P')) {
+            return false
+        }
 
-                    if (VisibilityUtil.isPublic(word) || VisibilityUtil.isProtected(word)) {
-                        final PlainText pt = new PlainText(text: word)
-                        p.addItem(pt)
-                    }
-                    else if (DeclarationTypeUtil.isDeclarationType(word) || ModifierUtil.isModifier(word)) {
-                        Emphasis emp = new Emphasis(text: word)
-                        p.addItem(emp)
-                    }
-                    else {
-                        if (!handledName) {
-                            Strong s = new Strong(text: word + " ")
-                            p.addItem(s)
-                            handledName = true
-                        }
-                        else {
-                            // Note that we remove any  '{' at the end since we will add it ourself later
-                            // after the [package] specification.
-                            final PlainText pt = new PlainText(text:  word.replace('{', ' ').trim() + " ")
-                            p.addItem(pt)
-                        }
-                    }
-                }
-                final PlainText pt2 = new PlainText(text: "[" + this.pkg + "] {")
-                p.addItem(pt2)
-            }
-            else {
-                if (visibility.isPublic() || visibility.isProtected()) {
-                    final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(';', ' ').replace('{', ' ').replace('}', ' ').
-                            trim()))
-                    p.addItem(s)
-                }
-                // For interfaces!
-                else if (isInterfaceMethod(this.declaration) && !visibility.isPrivate()) {
-                    final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(';', ' ').replace('{', ' ').replace('}', ' ').
-                            trim()))
-                    p.addItem(s)
-                }
-                else if (isEnumConst(this.declaration)) {
-                    final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(',', ' ').trim()))
-                    p.addItem(s)
-                }
-            }
-            document.addItem(p)
+        if (word.length() == 2) return true
+        final char c = word.charAt(2)
+        c != (char)'\n' && c != (char)'\r' && c != (char)'\u0085' && c != (char)'\u2028' && c != (char)'\u2029'
+    }
 
-            if (!classOrInterface && (visibility.isPublic() || visibility.isProtected())) {
-                parseJavadoc(document, classOrInterface)
-            }
-            else if (isInterfaceMethod(this.declaration) && !visibility.isPrivate()) {
-                parseJavadoc(document, classOrInterface)
-            }
-            else if (isEnumConst(this.declaration)) {
-                parseJavadoc(document, classOrInterface)
-            }
-            else if (classOrInterface) {
-                parseJavadoc(document, classOrInterface)
-            }
+    /**
+     * Returns true if the word is "</p" or "</P".
+     *
+     * @param word The javadoc word to check.
+     */
+    private static boolean isParagraphEnd(@NotNull final String word) {
+        word.length() == 3 && word.startsWith("</") && (word.charAt(2) == (char)'p' || word.charAt(2) == (char)'P')
+    }
 
-            this.declaration = null
-            this.javadoc = null
+    /**
+     * Returns true if the characters from start start with the text.
+     *
+     * @param chars The characters to look in.
+     * @param start The start of the characters to look at.
+     * @param end The end of the characters to look at, exclusive.
+     * @param text The text to look for.
+     */
+    private static boolean startsWith(@NotNull final char[] chars, final int start, final int end, @NotNull final String text) {
+        if (end - start < text.length()) return false
+        for (int i = 0; i < text.length(); i++) {
+            if (chars[start + i] != text.charAt(i)) return false
         }
+
+        true
     }
 
     /**
-     * Removes annotation from the line.
-     *
-     * @param line The line to remove annotations from.
+     * Returns true if the characters up to end end with the text.
      *
-     * @return The update line without annotations.
+     * @param chars The characters to look in.
+     * @param start The start of the characters to look at.
+     * @param end The end of the characters to look at, exclusive.
+     * @param text The text to look for.
      */
-    private static String removeAnnotations(@NotNull final String line) {
-        line.replaceAll("(@[A-Z,a-z]+){1} ", "")
+    private static boolean endsWith(@NotNull final char[] chars, final int start, final int end, @NotNull final String text) {
+        end - start >= text.length() && startsWith(chars, end - text.length(), end, text)
     }
 
     /**
-     * Here handle previously saved javadoc text.
+     * Returns true if the extension of the specified file is a valid extension for this parser.
      *
-     * @param document The document model to add javadoc information to.
-     * @param classOrInterface true if this javadoc is for a class or interface.
+     * @param fileName The file to check extension of.
      */
-    private void parseJavadoc(@NotNull final Doc document, final boolean classOrInterface) {
-        final List<String> text = new LinkedList<>()
-        final List<String> params = new LinkedList<>()
-        final List<String> exceptions = new LinkedList<>()
-        String returnDesc = null
-        String seeDesc = null
-
-        if (this.javadoc == null || this.javadoc.size() == 0) {
-            if (this.javadoc == null) {
-                this.javadoc = new LinkedList<>()
-            }
-            this.javadoc.add("(No Javadoc provided!)")
+    @Override
+    boolean validFileExtension(@NotNull final String fileName) {
+        fileName.endsWith(".java")
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * The state of parsing one java source.
+     */
+    @CompileStatic
+    @TypeChecked
+    private static class JavadocScan {
+        //
+        // Private Members
+        //
+
+        /** The document model to add to. */
+        private Doc document
+
+        /** The parser options. */
+        private Properties parserOptions
+
+        /** Indicates if we are currently in a javadoc block. */
+        private boolean inJavadocBlock = false
+
+        /** Indicates if we are currently in a declaration. */
+        private boolean inDeclarationBlock = false
+
+        /** The package of the parsed java source. */
+        private String pkg = ""
+
+        /** The latest found javadoc block. */
+        private List<String> javadoc = null
+
+        /** The current declaration found. */
+        private String declaration = null
+
+        //
+        // Constructors
+        //
+
+        /**
+         * Creates a new JavadocScan.
+         *
+         * @param document The document model to add to.
+         * @param parserOptions The parser options.
+         */
+        JavadocScan(@NotNull final Doc document, @Nullable final Properties parserOptions) {
+            this.document = document
+            this.parserOptions = parserOptions
         }
 
-        boolean textPart = true
-        this.javadoc.each { final String jdline ->
-            if (jdline.contains("@param")) {
-                textPart = false
-                params.add(jdline)
+        //
+        // Methods
+        //
+
+        /**
+         * Scans java source line by line. Lines end with '\n', '\r', or "\r\n" like for BufferedReader.readLine().
+         *
+         * @param chars The characters of the source.
+         * @param start The start of the source.
+         * @param end The end of the source, exclusive.
+         */
+        void scan(@NotNull final char[] chars, final int start, final int end) {
+            int lineStart = start
+            // A byte order mark of UTF-8 is decoded as a character, which File.eachLine(...) skipped.
+            if (lineStart < end && chars[lineStart] == (char)'\uFEFF') {
+                ++lineStart
             }
-            else if (jdline.contains("@exception") || jdline.contains("@throws")) {
-                textPart = false
-                exceptions.add(jdline)
+
+            while (lineStart < end) {
+                int first = lineStart
+                while (first < end && chars[first] != (char)'\n' && chars[first] != (char)'\r' &&
+                        chars[first] <= (char)' ') {
+                    ++first
+                }
+
+                int lineEnd = first
+                while (lineEnd < end && chars[lineEnd] != (char)'\n' && chars[lineEnd] != (char)'\r') {
+                    ++lineEnd
+                }
+
+                // Code between declarations only matters if it is a package statement or starts a javadoc comment.
+                if (this.inJavadocBlock || this.inDeclarationBlock || this.javadoc != null ||
+                        (first < lineEnd && (chars[first] == (char)'p' || chars[first] == (char)'/'))) {
+                    int last = lineEnd
+                    while (last > first && chars[last - 1] <= (char)' ') {
+                        --last
+                    }
+                    scanLine(chars, lineStart, first, last, lineEnd)
+                }
+
+                lineStart = lineEnd + 1
+                if (lineEnd + 1 < end && chars[lineEnd] == (char)'\r' && chars[lineEnd + 1] == (char)'\n') {
+                    ++lineStart
+                }
             }
-            else if (jdline.contains("@see")) {
-                seeDesc = jdline.replace("@see", "").trim()
+        }
+
+        /**
+         * Handles one line of the source.
+         *
+         * @param chars The characters of the source.
+         * @param lineStart The start of the line.
+         * @param first The start of the line without leading whitespace.
+         * @param last The end of the line without trailing whitespace, exclusive.
+         * @param lineEnd The end of the line, exclusive.
+         */
+        private void scanLine(@NotNull final char[] chars, final int lineStart, final int first, final int last,
+                              final int lineEnd) {
+            if (!this.inJavadocBlock && !this.inDeclarationBlock && startsWith(chars, first, last, "package")) {
+                final String line = new String(chars, lineStart, lineEnd - lineStart)
+                this.pkg = line.replaceFirst("package ", "").replace(';', ' ').trim()
             }
-            else if (jdline.contains("@return")) {
-                returnDesc = jdline.replace("@return", "").trim()
+            else if (!this.inJavadocBlock && !this.inDeclarationBlock && startsWith(chars, first, last, "/**")) {
+                saveJavadocLine(chars, first, last)
+                if (!endsWith(chars, first, last, "*/")) {
+                    this.inJavadocBlock = true
+                }
             }
-            else if (jdline.trim().startsWith("@")) {
-                text.add("")
-                text.add(jdline)
+            else if (this.inJavadocBlock) {
+                if (!endsWith(chars, first, last, "*/")) {
+                    saveJavadocLine(chars, first, last)
+                }
+                else {
+                    this.inJavadocBlock = false
+                }
+            }
+            else if (!this.inDeclarationBlock && this.javadoc != null) {
+                final String line = new String(chars, lineStart, lineEnd - lineStart)
+                parseDeclarationLine(line)
+                if (!(isFieldOrConst(line) || isMethod(line) || isEnumConst(line))) {
+                    this.inDeclarationBlock = true
+                }
             }
-            else if (textPart) {
-                text.add(jdline)
+            else if (this.inDeclarationBlock) {
+                parseDeclarationLine(new String(chars, lineStart, lineEnd - lineStart))
             }
         }
 
-        DocItem p
-        if (this.parserOptions != null && this.parserOptions.getProperty(MARKDOWN_JAVADOC) != null) {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream()
-            final PrintStream ps = new PrintStream(baos)
-            text.each { final String line ->
-                ps.println(line)
+        /**
+         * Saves a javadoc line. They are filtered from comment characters and then added to the javadoc list to be
+         * parsed later.
+         *
+         * @param chars The characters of the source.
+         * @param first The start of the line without leading whitespace.
+         * @param last The end of the line without trailing whitespace, exclusive.
+         */
+        private void saveJavadocLine(@NotNull final char[] chars, final int first, final int last) {
+            int start = first
+            if (startsWith(chars, start, last, "/**")) {
+                start += 3
             }
-            ps.flush()
-            ps.close()
-            final MarkdownParser mdParser = new MarkdownParser()
-            final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray())
-            mdParser.parse(document, bais, this.parserOptions)
+            else if (startsWith(chars, start, last, "*")) {
+                start = last - start > 2 ? start + 2 : last
+            }
+            int end = last
+            if (endsWith(chars, start, end, "*/")) {
+                end -= 2
+            }
+            if (this.javadoc == null) {
+                this.javadoc = new ArrayList<String>()
+            }
+            this.javadoc.add(new String(chars, start, end - start))
         }
-        else {
-            p = new BlockQuote()
-            PlainText format = new PlainText()
-            boolean preMode = false
-
-            text.each { final String line ->
-                if (!preMode && line.trim().matches("^<[Pp][Rr][Ee]>.*")) {
-                    preMode = true
-                    p.addItem(format)
-                    document.addItem(p)
-                    format = new PlainText()
-                    p = new CodeBlock()
-                }
-                else if (preMode && line.trim().matches("^</[Pp][Rr][Ee]>.*")) {
-                    preMode = false
-                    document.addItem(p)
-                    p = new BlockQuote()
-                    format = new PlainText()
-                }
-                else if (preMode) {
-                    p.addItem(line)
-                }
-                else {
-                    line.split("\\s+|>\\s*|</").each { final String word ->
-                        if (word.matches("^<[Pp].?") ) {
-                            p.addItem(format)
-                            format = new PlainText()
-                            document.addItem(p)
-                            p = new BlockQuote()
+
+        /**
+         * This is called when a declaration has been identified and will parse that declaration building a model for
+         * it, and then adding it to the document model. After that parseJavadoc(...) is called to add the javadoc
+         * information for the declaration to the document model.
+         * <p/>
+         * In java the javadoc comes before the declaration, but our doc format puts the declaration first and then its
+         * javadoc information.
+         *
+         * @param line The current declaration line. A declaration might occupy more than one line so until we see the
+         *             end of it, we just save the line text possibly adding it to previous text.
+         */
+        private void parseDeclarationLine(@NotNull final String line) {
+            if (this.declaration == null) {
+                this.declaration = line.trim()
+            }
+            else {
+                this.declaration += " " + line.trim()
+            }
+
+            if (isFieldOrConst(this.declaration) || isMethod(this.declaration) || isEnumConst(this.declaration)) {
+                this.inDeclarationBlock = false
+
+                final VisibilityUtil visibility = new VisibilityUtil(this.declaration)
+                final DeclarationTypeUtil declType = new DeclarationTypeUtil(this.declaration)
+
+                boolean classOrInterface = false;
+                final Paragraph p = new Paragraph()
+                if ((declType.isClass() || declType.isInterface() || declType.isEnum()) && (visibility.isPublic() || visibility.isProtected())) {
+
+                    classOrInterface = true
+                    final String[] words = WHITESPACE.split(this.declaration)
+                    boolean handledName = false
+                    for (int i = 0; i < words.length; i++) {
+                        String word = words[i]
+
+                        if (VisibilityUtil.isPublic(word) || VisibilityUtil.isProtected(word)) {
+                            final PlainText pt = new PlainText(text: word)
+                            p.addItem(pt)
                         }
-                        else if (word.matches("^</[Pp]")) {
-                            // ignore
+                        else if (DeclarationTypeUtil.isDeclarationType(word) || ModifierUtil.isModifier(word)) {
+                            Emphasis emp = new Emphasis(text: word)
+                            p.addItem(emp)
                         }
                         else {
-                            format.text += (word + " ")
+                            if (!handledName) {
+                                Strong s = new Strong(text: word + " ")
+                                p.addItem(s)
+                                handledName = true
+                            }
+                            else {
+                                // Note that we remove any  '{' at the end since we will add it ourself later
+                                // after the [package] specification.
+                                final PlainText pt = new PlainText(text:  word.replace('{', ' ').trim() + " ")
+                                p.addItem(pt)
+                            }
                         }
                     }
+                    final PlainText pt2 = new PlainText(text: "[" + this.pkg + "] {")
+                    p.addItem(pt2)
+                }
+                else {
+                    if (visibility.isPublic() || visibility.isProtected()) {
+                        final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(';', ' ').replace('{', ' ').replace('}', ' ').
+                                trim()))
+                        p.addItem(s)
+                    }
+                    // For interfaces!
+                    else if (isInterfaceMethod(this.declaration) && !visibility.isPrivate()) {
+                        final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(';', ' ').replace('{', ' ').replace('}', ' ').
+                                trim()))
+                        p.addItem(s)
+                    }
+                    else if (isEnumConst(this.declaration)) {
+                        final Strong s = new Strong(text: removeAnnotations(this.declaration.replace(',', ' ').trim()))
+                        p.addItem(s)
+                    }
+                }
+                this.document.addItem(p)
+
+                if (!classOrInterface && (visibility.isPublic() || visibility.isProtected())) {
+                    parseJavadoc(classOrInterface)
+                }
+                else if (isInterfaceMethod(this.declaration) && !visibility.isPrivate()) {
+                    parseJavadoc(classOrInterface)
                 }
+                else if (isEnumConst(this.declaration)) {
+                    parseJavadoc(classOrInterface)
+                }
+                else if (classOrInterface) {
+                    parseJavadoc(classOrInterface)
+                }
+
+                this.declaration = null
+                this.javadoc = null
             }
-            p.addItem(format)
-            document.addItem(p)
         }
 
-        if (!classOrInterface) {
+        /**
+         * Here handle previously saved javadoc text.
+         *
+         * @param classOrInterface true if this javadoc is for a class or interface.
+         */
+        private void parseJavadoc(final boolean classOrInterface) {
+            final Doc document = this.document
+            final List<String> text = new ArrayList<String>()
+            final List<String> params = new ArrayList<String>()
+            final List<String> exceptions = new ArrayList<String>()
+            String returnDesc = null
+            String seeDesc = null
+
+            if (this.javadoc == null || this.javadoc.size() == 0) {
+                if (this.javadoc == null) {
+                    this.javadoc = new ArrayList<String>()
+                }
+                this.javadoc.add("(No Javadoc provided!)")
+            }
 
-            if (returnDesc != null) {
-                p = new Paragraph()
-                p.addItem(new Emphasis(text: "Returns"))
-                document.addItem(p)
+            boolean textPart = true
+            for (int i = 0; i < this.javadoc.size(); i++) {
+                final String jdline = this.javadoc.get(i)
+                if (jdline.contains("@param")) {
+                    textPart = false
+                    params.add(jdline)
+                }
+                else if (jdline.contains("@exception") || jdline.contains("@throws")) {
+                    textPart = false
+                    exceptions.add(jdline)
+                }
+                else if (jdline.contains("@see")) {
+                    seeDesc = jdline.replace("@see", "").trim()
+                }
+                else if (jdline.contains("@return")) {
+                    returnDesc = jdline.replace("@return", "").trim()
+                }
+                else if (jdline.trim().startsWith("@")) {
+                    text.add("")
+                    text.add(jdline)
+                }
+                else if (textPart) {
+                    text.add(jdline)
+                }
+            }
+
+            DocItem p
+            if (this.parserOptions != null && this.parserOptions.getProperty(MARKDOWN_JAVADOC) != null) {
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream()
+                final PrintStream ps = new PrintStream(baos)
+                for (int i = 0; i < text.size(); i++) {
+                    ps.println(text.get(i))
+                }
+                ps.flush()
+                ps.close()
+                final MarkdownParser mdParser = new MarkdownParser()
+                final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray())
+                mdParser.parse(document, bais, this.parserOptions)
+            }
+            else {
                 p = new BlockQuote()
-                final PlainText pt = new PlainText(text: returnDesc)
-                p.addItem(pt)
+                PlainText format = new PlainText()
+                boolean preMode = false
+
+                for (int i = 0; i < text.size(); i++) {
+                    final String line = text.get(i)
+                    if (!preMode && PRE_START.matcher(line.trim()).matches()) {
+                        preMode = true
+                        p.addItem(format)
+                        document.addItem(p)
+                        format = new PlainText()
+                        p = new CodeBlock()
+                    }
+                    else if (preMode && PRE_END.matcher(line.trim()).matches()) {
+                        preMode = false
+                        document.addItem(p)
+                        p = new BlockQuote()
+                        format = new PlainText()
+                    }
+                    else if (preMode) {
+                        p.addItem(line)
+                    }
+                    else {
+                        final List<String> words = javadocWords(line)
+                        for (int w = 0; w < words.size(); w++) {
+                            final String word = words.get(w)
+                            if (isParagraphStart(word)) {
+                                p.addItem(format)
+                                format = new PlainText()
+                                document.addItem(p)
+                                p = new BlockQuote()
+                            }
+                            else if (isParagraphEnd(word)) {
+                                // ignore
+                            }
+                            else {
+                                format.addItem(word)
+                                format.addItem(" ")
+                            }
+                        }
+                    }
+                }
+                p.addItem(format)
                 document.addItem(p)
             }
 
-            if (params.size() > 0) {
-                p = new Paragraph()
-                p.addItem(new Emphasis(text: "Parameters"))
-                document.addItem(p)
+            if (!classOrInterface) {
 
-                params.each { final String param ->
+                if (returnDesc != null) {
+                    p = new Paragraph()
+                    p.addItem(new Emphasis(text: "Returns"))
+                    document.addItem(p)
                     p = new BlockQuote()
-                    final String[] words = param.split("\\s+")
-                    p.addItem(new Emphasis(text: words[1]))
-                    if (words.length > 2) {
-                        final PlainText pt = new PlainText()
-                        pt.text = "- "
-                        for (int i = 2; i < words.length; i++) {
-                            pt.text += (words[i] + " ")
-                        }
-                        p.addItem(pt)
-                    }
+                    final PlainText pt = new PlainText(text: returnDesc)
+                    p.addItem(pt)
                     document.addItem(p)
                 }
-            }
 
-            if (exceptions.size() > 0) {
-                p = new Paragraph()
-                p.addItem(new Emphasis(text: "Throws"))
-                document.addItem(p)
+                if (params.size() > 0) {
+                    p = new Paragraph()
+                    p.addItem(new Emphasis(text: "Parameters"))
+                    document.addItem(p)
 
-                exceptions.each { final String exc ->
-                    p = new BlockQuote()
-                    final String[] words = exc.split("\\s+")
-                    p.addItem(new Emphasis(text: words[1]))
-                    if (words.length > 2) {
-                        final PlainText pt = new PlainText()
-                        pt.text = "- "
-                        for (int i = 2; i < words.length; i++) {
-                            pt.text += (words[i] + " ")
-                        }
-                        p.addItem(pt)
+                    for (int i = 0; i < params.size(); i++) {
+                        document.addItem(nameAndDescription(params.get(i)))
+                    }
+                }
+
+                if (exceptions.size() > 0) {
+                    p = new Paragraph()
+                    p.addItem(new Emphasis(text: "Throws"))
+                    document.addItem(p)
+
+                    for (int i = 0; i < exceptions.size(); i++) {
+                        document.addItem(nameAndDescription(exceptions.get(i)))
                     }
+                }
+
+                if (seeDesc != null) {
+                    p = new Paragraph()
+                    p.addItem(new Emphasis(text: "See"))
+                    document.addItem(p)
+                    p = new BlockQuote()
+                    final PlainText pt = new PlainText(text: seeDesc.replace('#', '.'))
+                    p.addItem(pt)
                     document.addItem(p)
                 }
+
             }
+        }
 
-            if (seeDesc != null) {
-                p = new Paragraph()
-                p.addItem(new Emphasis(text: "See"))
-                document.addItem(p)
-                p = new BlockQuote()
-                final PlainText pt = new PlainText(text: seeDesc.replace('#', '.'))
+        /**
+         * Returns a block quote of an @param or @throws line with the name emphasized followed by the description.
+         *
+         * @param tagLine The javadoc line starting with the tag.
+         */
+        private static @NotNull BlockQuote nameAndDescription(@NotNull final String tagLine) {
+            final BlockQuote p = new BlockQuote()
+            final String[] words = WHITESPACE.split(tagLine)
+            p.addItem(new Emphasis(text: words[1]))
+            if (words.length > 2) {
+                final PlainText pt = new PlainText(text: "- ")
+                for (int i = 2; i < words.length; i++) {
+                    pt.addItem(words[i])
+                    pt.addItem(" ")
+                }
                 p.addItem(pt)
-                document.addItem(p)
             }
 
+            p
         }
     }
 
-    /**
-     * Returns true if the extension of the specified file is a valid extension for this parser.
-     *
-     * @param fileName The file to check extension of.
-     */
-    @Override
-    boolean validFileExtension(@NotNull final String fileName) {
-        fileName.endsWith(".java")
-    }
-
     /**
      * Utility for handling the visibility of a declaration.
      */
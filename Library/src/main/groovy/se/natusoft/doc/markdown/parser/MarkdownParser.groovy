@@ -40,7 +40,9 @@ import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
-import se.natusoft.doc.markdown.api.Parser
+import se.natusoft.doc.markdown.api.DocItemConsumer
+import se.natusoft.doc.markdown.api.StreamingParser
+import se.natusoft.doc.markdown.exception.GenerateException
 import se.natusoft.doc.markdown.exception.ParseException
 import se.natusoft.doc.markdown.io.Line
 import se.natusoft.doc.markdown.io.LineReader
@@ -63,10 +65,21 @@ import se.natusoft.doc.markdown.parser.markdown.model.MDList
  * </ul>
  * &lt;, &gt;, and &amp; is not handled by this parser but by the HTMLGenerator instead since
  * this tool also can generate PDF such HTML specifics should not be in the parsed text.
+ * <p/>
+ * In streaming mode (the parse methods taking a DocItemConsumer) each top level item is passed on as soon as
+ * it is complete, so only the items not yet passed on are held in memory. An item is complete when the next
+ * top level item starts and all its reference links ("[text][id]" / "[id]") have got their url from a later
+ * "[id]: url" line. An item with unresolved reference links is held back, together with all items after it to
+ * keep the order, until the links are resolved, 100 items are held back, or the end of input is reached. Any
+ * bracketed text not followed by "(", like "[x]", is such a link, so the limit keeps text that is not a link
+ * from holding back the rest of the input. When the limit is reached the first item is passed on with its links
+ * unresolved. Put the link url lines close to where they are used, within 100 items, to have them in the
+ * result. Unlike a full parse, a "[id]: url" line does not change links that have already been passed on, and
+ * an outdented list item following a list is never added to an earlier list that has already been passed on.
  */
 @CompileStatic
 @TypeChecked
-class MarkdownParser implements Parser {
+class MarkdownParser implements StreamingParser {
 
     //
     // Private Members
@@ -75,6 +88,12 @@ class MarkdownParser implements Parser {
     /** Holds parsed links. Links can be built in 2 different places. */
     private Map<String, Link> links = new HashMap<String, Link>()
 
+    /**
+     * The texts of "[id]: url" lines of the last parsed source that were not taken as such because no link with
+     * the text was known at the line.
+     */
+    private Set<String> unmatchedLinkURLSpecIds = new HashSet<String>()
+
     /** The file we are parsing. We save this to pass to ParseException. */
     private File file;
 
@@ -115,7 +134,151 @@ class MarkdownParser implements Parser {
     void parse(@NotNull final Doc doc, @NotNull final InputStream parseStream, @Nullable final Properties parserOptions)
             throws IOException, ParseException {
 
+        parseItems(parseStream, doc, null)
+    }
+
+    /**
+     * Parses a markdown file and passes each completed top level item to the consumer.
+     *
+     * @param parseFile The file whose content to parse.
+     * @param parserOptions This parser has no options!
+     * @param consumer Receives the parsed items.
+     *
+     * @throws IOException on failure.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException when thrown by the consumer.
+     */
+    @Override
+    void parse(@NotNull final File parseFile, @Nullable final Properties parserOptions,
+               @NotNull final DocItemConsumer consumer) throws IOException, ParseException, GenerateException {
+
+        this.file = parseFile
+
+        parse(new FileInputStream(parseFile), parserOptions, consumer)
+    }
+
+    /**
+     * Parses a markdown stream and passes each completed top level item to the consumer.
+     *
+     * @param parseStream The stream whose content to parse.
+     * @param parserOptions This parser has no options!
+     * @param consumer Receives the parsed items.
+     *
+     * @throws IOException on failure.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException when thrown by the consumer.
+     */
+    @Override
+    void parse(@NotNull final InputStream parseStream, @Nullable final Properties parserOptions,
+               @NotNull final DocItemConsumer consumer) throws IOException, ParseException, GenerateException {
+
+        parseItems(parseStream, null, new ItemStream(consumer: consumer, links: this.links, textBuffer: new TextBuffer()))
+    }
+
+    /**
+     * Returns true if the passed link is the one this parser knows by its text, that is the link that a later
+     * "[id]: url" line would give an url.
+     *
+     * @param link The link to check.
+     */
+    boolean isKnownLink(@NotNull final Link link) {
+        this.links.get(link.text).is(link)
+    }
+
+    /**
+     * Makes this parser know a link by its text as if it had parsed it. This restores the links of a file whose
+     * parse result was taken from a ParseCache instead of being parsed.
+     *
+     * @param link The link to add.
+     */
+    void addKnownLink(@NotNull final Link link) {
+        this.links.put(link.text, link)
+    }
+
+    /**
+     * Returns true if this parser knows a link with the passed text, that is if a "[text]: url" line would be
+     * taken as the url of a link.
+     *
+     * @param text The link text to check.
+     */
+    boolean isKnownLinkText(@NotNull final String text) {
+        this.links.containsKey(text)
+    }
+
+    /**
+     * Returns all links this parser knows by their text, that is the links a later "[id]: url" line would give
+     * an url.
+     */
+    @NotNull Collection<Link> getKnownLinks() {
+        Collections.unmodifiableCollection(this.links.values())
+    }
+
+    /**
+     * Returns the texts of the lines of the last parsed source that could have been "[id]: url" lines, but were
+     * parsed as text since this parser did not know a link with the text at the line. Parsing the same source
+     * with a parser that also knows links from earlier files only gives another result if it knows a link with
+     * one of these texts.
+     */
+    @NotNull Set<String> getUnmatchedLinkURLSpecIds() {
+        Collections.unmodifiableSet(this.unmatchedLinkURLSpecIds)
+    }
+
+    /**
+     * Sets the unmatched "[id]: url" texts as if this parser had parsed a source. This restores them for a file
+     * whose parse result was taken from a ParseCache instead of being parsed.
+     *
+     * @param ids The unmatched texts of the source.
+     */
+    void setUnmatchedLinkURLSpecIds(@NotNull final Collection<String> ids) {
+        this.unmatchedLinkURLSpecIds = new HashSet<String>(ids)
+    }
+
+    /**
+     * Returns the ids of all "[id]: url" lines the source can have. Whether such a line is one depends on the
+     * links the parser knows when it gets to the line, also from earlier files. The result of parsing the source
+     * is therefore only independent of what was parsed before it if the parser knows none of these ids. This
+     * can return more ids than there are "[id]: url" lines, but never fewer.
+     *
+     * @param source The markdown source to check. This is read to the end but not closed.
+     *
+     * @throws IOException on failure to read.
+     */
+    static @NotNull Set<String> getLinkURLSpecIds(@NotNull final Reader source) throws IOException {
+        final Set<String> ids = new HashSet<String>()
+        final BufferedReader reader = new BufferedReader(source)
+        String line
+        while ((line = reader.readLine()) != null) {
+            int end = line.indexOf("]:")
+            while (end > 0) {
+                int start = line.lastIndexOf("[", end - 1)
+                while (start >= 0) {
+                    ids.add(line.substring(start + 1, end))
+                    start = start > 0 ? line.lastIndexOf("[", start - 1) : -1
+                }
+                end = line.indexOf("]:", end + 1)
+            }
+        }
+
+        ids
+    }
+
+    /**
+     * Does the actual parsing for both the Doc and the streaming variants.
+     *
+     * @param parseStream The stream whose content to parse.
+     * @param doc The Doc to add top level items to when not streaming.
+     * @param itemStream Receives top level items when streaming.
+     *
+     * @throws IOException on failure.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException when thrown by the consumer.
+     */
+    private void parseItems(@NotNull final InputStream parseStream, @Nullable final Doc doc,
+                            @Nullable final ItemStream itemStream) throws IOException, ParseException, GenerateException {
+
         LineReader lineReader = null
+        final int firstItem = doc != null ? doc.items.size() : 0
+        this.unmatchedLinkURLSpecIds = new HashSet<String>()
         try {
             lineReader = new MDLineReader(new InputStreamReader(parseStream))
 
@@ -129,38 +292,44 @@ class MarkdownParser implements Parser {
                 if (!line.empty) {
                     DocItem docItem = null
 
-                    def divStartCase = { final MDLine it -> it.startDiv }
-                    def divEndCase = { final MDLine it -> it.endDiv }
-                    def commentStartCase = { final MDLine it -> it.commentStart }
-                    def headerCase       = { final MDLine it -> it.header }
-                    def listCase         = { final MDLine it -> it.list && (it.leadingSpaces < 4 ||
-                                                          (prevDocItem != null && prevDocItem.isHierarchy)) }
-                    def codeBlockCase    = { final MDLine it -> it.codeBlock }
-                    def blockQuoteCase   = { final MDLine it -> it.blockQuote }
-                    def horizRulerCase   = { final MDLine it -> it.horizRuler }
-                    def linkUrlCSpecCase = { final MDLine it -> it.isLinkURLSpec(this.links) }
-
-                    switch (line) {
-                        case commentStartCase : docItem = parseComment       (line, lineReader); break
-                        case headerCase       : docItem = parseHeader        (line, lineReader); break
-                        case listCase         : docItem = parseList          (line, lineReader); break
-                        case codeBlockCase    : docItem = parseCodeBlock     (line, lineReader); break
-                        case blockQuoteCase   : docItem = parseBlockQuote    (line, lineReader); break
-                        case horizRulerCase   : docItem = new HorizontalRule ();                 break
-                        case linkUrlCSpecCase : parseLinkUrlSpec             (line);             break
-                        case divStartCase     : docItem = parseStartDiv      (line);             break
-                        case divEndCase       : docItem = endDiv             ();                 break
-
-                        // The annoying underline header format.
-                        case { lineReader.hasLine() && (lineReader.peekNextLine().contains("----") ||
-                                lineReader.peekNextLine().contains("====")) } :
-                            docItem = parseHeader(line, lineReader)
-                            break
-
-                        default:
-                            Paragraph paragraph = new Paragraph()
-                            parseParagraph(paragraph, line, lineReader)
-                            docItem = paragraph
+                    // The order of these tests matters!
+                    if (line.commentStart) {
+                        docItem = parseComment(line, lineReader)
+                    }
+                    else if (line.header) {
+                        docItem = parseHeader(line, lineReader)
+                    }
+                    else if (line.list && (line.leadingSpaces < 4 || (prevDocItem != null && prevDocItem.isHierarchy))) {
+                        docItem = parseList(line, lineReader)
+                    }
+                    else if (line.codeBlock) {
+                        docItem = parseCodeBlock(line, lineReader)
+                    }
+                    else if (line.blockQuote) {
+                        docItem = parseBlockQuote(line, lineReader)
+                    }
+                    else if (line.horizRuler) {
+                        docItem = new HorizontalRule()
+                    }
+                    else if (isLinkURLSpec(line)) {
+                        parseLinkUrlSpec(line)
+                        itemStream?.flush(hierarchyStack)
+                    }
+                    else if (line.startDiv) {
+                        docItem = parseStartDiv(line)
+                    }
+                    else if (line.endDiv) {
+                        docItem = endDiv()
+                    }
+                    // The annoying underline header format.
+                    else if (lineReader.hasLine() && (lineReader.peekNextLine().contains("----") ||
+                            lineReader.peekNextLine().contains("===="))) {
+                        docItem = parseHeader(line, lineReader)
+                    }
+                    else {
+                        Paragraph paragraph = new Paragraph()
+                        parseParagraph(paragraph, line, lineReader)
+                        docItem = paragraph
                     }
 
                     // Handle specific DocItem subclass behavior.
@@ -173,10 +342,13 @@ class MarkdownParser implements Parser {
                                     prevDocItem.addItem(docItem)
                                     addItem = false
                                     hierarchyStack.push(prevDocItem)
+                                    itemStream?.nested(docItem, prevDocItem)
                                     prevDocItem = docItem
                                 }
                                 else if (docItem.isHierarchyUp(prevDocItem)) {
-                                    while (docItem.isHierarchyUp(prevDocItem)) {
+                                    // Entries of already streamed items are removed from the stack when streaming.
+                                    while (docItem.isHierarchyUp(prevDocItem) &&
+                                            (itemStream == null || !hierarchyStack.empty())) {
                                         prevDocItem = hierarchyStack.pop()
                                     }
                                 }
@@ -198,18 +370,36 @@ class MarkdownParser implements Parser {
 
                     if (docItem != null) {
                         if (this.file != null) {
-                            setParseFileOnDocItems(docItem, this.file)
+                            docItem.applyParseFile(this.file)
                         }
 
-                        doc.addItem(docItem)
+                        if (itemStream != null) {
+                            itemStream.add(docItem, hierarchyStack)
+                        }
+                        else {
+                            doc.addItem(docItem)
+                        }
                         prevDocItem = docItem
                     }
                 }
             }
+
+            if (doc != null) {
+                // Items are complete at the end, since consecutive items can be merged into the previous item.
+                final TextBuffer textBuffer = new TextBuffer()
+                for (int i = firstItem; i < doc.items.size(); i++) {
+                    doc.items.get(i).compact(textBuffer)
+                }
+                textBuffer.complete()
+            }
+            itemStream?.finish()
         }
         catch (final ParseException pe) {
             throw pe;
         }
+        catch (final GenerateException ge) {
+            throw ge
+        }
         catch (final Exception e) {
             throw new ParseException(
                     file: this.file != null ? this.file.absolutePath : "[No file]",
@@ -226,21 +416,6 @@ class MarkdownParser implements Parser {
         }
     }
 
-    /**
-     * This will provide the parse file to each DocItem created by this parser run.
-     *
-     * @param docItems The DocItem:s to set the parse file on.
-     * @param parseFile The parse file to set.
-     */
-    private void setParseFileOnDocItems(@NotNull final DocItem docItem, @NotNull final File parseFile) {
-        docItem.parseFile = parseFile
-        if (docItem.hasSubItems()) {
-            for (final DocItem subDocItem : docItem.items) {
-                setParseFileOnDocItems(subDocItem, parseFile)
-            }
-        }
-    }
-
     /**
      * Returns true if the extension of the specified file is a valid extension for this parser.
      *
@@ -439,6 +614,19 @@ class MarkdownParser implements Parser {
         list
     }
 
+    /**
+     * Returns true if the line is a "[id]: url" line for a known link. The texts of a line that could have been
+     * one, but whose link is not known, are remembered as unmatched.
+     *
+     * @param line The line to check.
+     */
+    private boolean isLinkURLSpec(@NotNull final MDLine line) {
+        if (line.isLinkURLSpec(this.links)) return true
+
+        this.unmatchedLinkURLSpecIds.addAll(line.linkURLSpecIds)
+        false
+    }
+
     /**
      * Adds urls to already parsed links.
      *
@@ -564,10 +752,10 @@ class MarkdownParser implements Parser {
             done = parseLine == null || parseLine.isEmpty()
             if (!done &&
                     parseLine != null &&
-                    (isList ?
+                    (isLinkURLSpec((MDLine) parseLine) || (isList ?
                             !((MDLine) parseLine).isPartOfListParagraph(links)
                             :
-                            !((MDLine) parseLine).isPartOfParagraph(links))
+                            !((MDLine) parseLine).isPartOfParagraph(links)))
             ) {
                 done = true
                 lineReader.pushBackLine(parseLine)
@@ -586,7 +774,7 @@ class MarkdownParser implements Parser {
             int j = (i + 1) < sb.length() ? i + 1 : -1
 
             char c = sb.charAt(i);
-            char n = j > 0 ? sb.charAt(j) : (char)0 as char
+            char n = j > 0 ? sb.charAt(j) : (char)0
 
             if (escapeChar) {
                 current << c
@@ -594,38 +782,19 @@ class MarkdownParser implements Parser {
             }
             else {
 
-                switch (c) {
-                    case '\\':
-                        escapeChar = true;
-                        break
-
-                    case { it == '.' && !(current instanceof Link)}:
-                    case { it == ',' && !(current instanceof Link)}:
-                    case { it == '!' && n != '[' && !(current instanceof Link)} :
-                    case { it == '?' && !(current instanceof Link)}:
-                        current << c
-                        if (n == ' ') {
-                            paragraph.addItem(current)
-                            current = current.createNewWithSameConfig()
-                        }
-                        break
-
-                    case {
-                        it == '_' && !ignoreFormatting &&
-                        !(current instanceof Link) &&
-                        (
-                            (
-                                (current instanceof Strong) ||
-                                (current instanceof Emphasis)
-                            ) ||
-                            (
-                                (i+2) < sb.length() &&
-                                sb.substring(i+2).contains("_")
-                            )
-                        )
-                    }:
-                    case {
-                        it == '*' && !ignoreFormatting &&
+                // The order of these tests matters!
+                if (c == '\\') {
+                    escapeChar = true;
+                }
+                else if ((c == '.' || c == ',' || (c == '!' && n != '[') ||
+                        c == '?') && !(current instanceof Link)) {
+                    current << c
+                    if (n == ' ') {
+                        paragraph.addItem(current)
+                        current = current.createNewWithSameConfig()
+                    }
+                }
+                else if ((c == '_' || c == '*') && !ignoreFormatting &&
                         !(current instanceof Link) &&
                         (
                             (
@@ -634,120 +803,108 @@ class MarkdownParser implements Parser {
                             ) ||
                             (
                                 (i+2) < sb.length() &&
-                                 sb.substring(i+2).contains("*")
+                                sb.indexOf(c == '_' ? "_" : "*", i+2) >= 0
                             )
                         )
-                    }:
-                        paragraph.addItem(current)
-                        if (n == '_' || n == '*') {
-                            ++i
-                            if (current instanceof Strong) {
-                                current = itemStack.pop().createNewWithSameConfig()
-                            }
-                            else {
-                                itemStack.push(current)
-                                current = new Strong(renderPrefixedSpace: false)
-                            }
-                        }
-                        else {
-                            if (current instanceof Emphasis) {
-                                current = itemStack.pop().createNewWithSameConfig()
-                            }
-                            else {
-                                itemStack.push(current)
-                                current = new Emphasis(renderPrefixedSpace: false)
-                            }
-                        }
-                        break
-
-                    // &nbsp;
-                    case {it == "&" && n == "n" && !ignoreFormatting} :
-                        paragraph.addItem(new Space())
-                        i = i + 5
-                        break;
-
-                    // &gt;
-                    case {it == "&" && n == "g" && !ignoreFormatting} :
-                        current << ">"
-                        i = i + 3
-                        break;
-
-                    // &lt;
-                    case {it == "&" && n == "l" && !ignoreFormatting} :
-                        current << "<"
-                        i = i + 3
-                        break;
-
-                    // &amp;
-                    case {it == "&" && n =="a" && !ignoreFormatting} :
-                        current << "&"
-                        i = i + 4
-                        break;
-
-                    case '`':
-                        paragraph.addItem(current)
-                        if (current instanceof Code) {
+                ) {
+                    paragraph.addItem(current)
+                    if (n == '_' || n == '*') {
+                        ++i
+                        if (current instanceof Strong) {
                             current = itemStack.pop().createNewWithSameConfig()
-                            ignoreFormatting = false
                         }
                         else {
                             itemStack.push(current)
-                            current = new Code(renderPrefixedSpace: false)
-                            ignoreFormatting = true
+                            current = new Strong(renderPrefixedSpace: false)
                         }
-                        break
-
-                    case { it == '[' && !ignoreFormatting && p != '!' && !(current instanceof Link) &&
-                            !(current instanceof Code)}:
-                        paragraph.addItem(current)
-                        itemStack.push((DocItem)current)
-                        current = new MDLink(renderPrefixedSpace: false)
-                        break
-
-                    case { it == '!' && !ignoreFormatting && n == '[' && !(current instanceof Link)}:
-                        paragraph.addItem(current)
-                        itemStack.push((DocItem)current)
-                        current = new MDImage(renderPrefixedSpace: false)
-                        ++i
-                        break
-
-                    case ']':
-                        if (current instanceof Link) {
-                            if (n != '(') {
-                                paragraph.addItem(current)
-                                this.links.put(((Link)current).text, (Link)current)
-                                current = itemStack.pop().createNewWithSameConfig()
-                            }
+                    }
+                    else {
+                        if (current instanceof Emphasis) {
+                            current = itemStack.pop().createNewWithSameConfig()
                         }
                         else {
-                            current << c
+                            itemStack.push(current)
+                            current = new Emphasis(renderPrefixedSpace: false)
                         }
-                        break;
-
-                    case ')':
-                        if (current instanceof Link) {
+                    }
+                }
+                // &nbsp;
+                else if (c == '&' && n == 'n' && !ignoreFormatting) {
+                    paragraph.addItem(new Space())
+                    i = i + 5
+                }
+                // &gt;
+                else if (c == '&' && n == 'g' && !ignoreFormatting) {
+                    current << ">"
+                    i = i + 3
+                }
+                // &lt;
+                else if (c == '&' && n == 'l' && !ignoreFormatting) {
+                    current << "<"
+                    i = i + 3
+                }
+                // &amp;
+                else if (c == '&' && n == 'a' && !ignoreFormatting) {
+                    current << "&"
+                    i = i + 4
+                }
+                else if (c == '`') {
+                    paragraph.addItem(current)
+                    if (current instanceof Code) {
+                        current = itemStack.pop().createNewWithSameConfig()
+                        ignoreFormatting = false
+                    }
+                    else {
+                        itemStack.push(current)
+                        current = new Code(renderPrefixedSpace: false)
+                        ignoreFormatting = true
+                    }
+                }
+                else if (c == '[' && !ignoreFormatting && p != '!' && !(current instanceof Link) &&
+                        !(current instanceof Code)) {
+                    paragraph.addItem(current)
+                    itemStack.push((DocItem)current)
+                    current = new MDLink(renderPrefixedSpace: false)
+                }
+                else if (c == '!' && !ignoreFormatting && n == '[' && !(current instanceof Link)) {
+                    paragraph.addItem(current)
+                    itemStack.push((DocItem)current)
+                    current = new MDImage(renderPrefixedSpace: false)
+                    ++i
+                }
+                else if (c == ']') {
+                    if (current instanceof Link) {
+                        if (n != '(') {
                             paragraph.addItem(current)
                             this.links.put(((Link)current).text, (Link)current)
                             current = itemStack.pop().createNewWithSameConfig()
                         }
-                        else {
-                            current << c
-                        }
-                        break
-
-                    case { it == '<' && !ignoreFormatting && (current.class == PlainText.class)} :
-                        paragraph.addItem(current)
-                        itemStack.push(current)
-                        current = new AutoLink(renderPrefixedSpace: false)
-                        break;
-
-                    case { it == '>' && !ignoreFormatting && (current.class == AutoLink.class)}:
+                    }
+                    else {
+                        current << c
+                    }
+                }
+                else if (c == ')') {
+                    if (current instanceof Link) {
                         paragraph.addItem(current)
-                        current =  itemStack.pop().createNewWithSameConfig()
-                        break
-
-                    default:
+                        this.links.put(((Link)current).text, (Link)current)
+                        current = itemStack.pop().createNewWithSameConfig()
+                    }
+                    else {
                         current << c
+                    }
+                }
+                else if (c == '<' && !ignoreFormatting && (current.class == PlainText.class)) {
+                    paragraph.addItem(current)
+                    itemStack.push(current)
+                    current = new AutoLink(renderPrefixedSpace: false)
+                }
+                else if (c == '>' && !ignoreFormatting && (current.class == AutoLink.class)) {
+                    paragraph.addItem(current)
+                    current =  itemStack.pop().createNewWithSameConfig()
+                }
+                else {
+                    current << c
                 }
             }
 
@@ -757,4 +914,176 @@ class MarkdownParser implements Parser {
         paragraph.addItem(current)
     }
 
+    //
+    // Inner Classes
+    //
+
+    /**
+     * Passes completed top level items on to a DocItemConsumer when parsing in streaming mode, holding back
+     * items with unresolved reference links. See the class documentation for details.
+     * <p/>
+     * The links map of the parser still gets all links of the document, but these are small compared to the
+     * items holding them.
+     */
+    private static class ItemStream {
+
+        //
+        // Constants
+        //
+
+        /** The max number of completed items held back waiting for link urls. */
+        static final int MAX_HELD_ITEMS = 100
+
+        //
+        // Properties
+        //
+
+        /** Receives the completed items. */
+        DocItemConsumer consumer
+
+        /** The links of the parser, used to tell if an unresolved link can still be resolved. */
+        Map<String, Link> links
+
+        /** The text of the passed on items is moved to this. */
+        TextBuffer textBuffer
+
+        //
+        // Private Members
+        //
+
+        /** The top level items not yet passed on. The last one is the item currently being parsed. */
+        private final ArrayDeque<DocItem> pending = new ArrayDeque<DocItem>()
+
+        /** The top level item of each nested hierarchy item that has been on the hierarchy stack. */
+        private final Map<DocItem, DocItem> roots = new IdentityHashMap<DocItem, DocItem>()
+
+        /** The links of the first pending item that were unresolved the last time it was checked. */
+        private java.util.List<Link> unresolvedLinks = null
+
+        //
+        // Methods
+        //
+
+        /**
+         * Adds a new top level item. This completes the previous top level item.
+         *
+         * @param docItem The new item.
+         * @param hierarchyStack The hierarchy stack of the parser.
+         */
+        void add(@NotNull final DocItem docItem, @NotNull final Stack<DocItem> hierarchyStack)
+                throws IOException, GenerateException {
+            this.pending.addLast(docItem)
+            flush(hierarchyStack)
+        }
+
+        /**
+         * Remembers the top level item of a nested hierarchy item.
+         *
+         * @param docItem The nested item.
+         * @param parent The item it was added to.
+         */
+        void nested(@NotNull final DocItem docItem, @NotNull final DocItem parent) {
+            this.roots.put(docItem, rootOf(parent))
+        }
+
+        /**
+         * Passes on all completed items in order up to the first that has unresolved links, unless more than
+         * MAX_HELD_ITEMS are held back.
+         *
+         * @param hierarchyStack The hierarchy stack of the parser.
+         */
+        void flush(@NotNull final Stack<DocItem> hierarchyStack) throws IOException, GenerateException {
+            while (this.pending.size() > 1 &&
+                    (this.pending.size() - 1 > MAX_HELD_ITEMS || !hasUnresolvedLinks(this.pending.peekFirst()))) {
+                pass(hierarchyStack)
+            }
+        }
+
+        /**
+         * Passes on all remaining items. Called at the end of input.
+         */
+        void finish() throws IOException, GenerateException {
+            final Stack<DocItem> noStack = new Stack<DocItem>()
+            while (!this.pending.empty) {
+                pass(noStack)
+            }
+            this.roots.clear()
+            this.textBuffer.complete()
+        }
+
+        /**
+         * Passes on the first pending item, and forgets all references to it.
+         *
+         * @param hierarchyStack The hierarchy stack of the parser.
+         */
+        private void pass(@NotNull final Stack<DocItem> hierarchyStack) throws IOException, GenerateException {
+            final DocItem docItem = this.pending.removeFirst()
+            this.unresolvedLinks = null
+
+            final Iterator<DocItem> stackIt = hierarchyStack.iterator()
+            while (stackIt.hasNext()) {
+                if (rootOf(stackIt.next()).is(docItem)) {
+                    stackIt.remove()
+                }
+            }
+            final Iterator<DocItem> rootsIt = this.roots.values().iterator()
+            while (rootsIt.hasNext()) {
+                if (rootsIt.next().is(docItem)) {
+                    rootsIt.remove()
+                }
+            }
+
+            docItem.compact(this.textBuffer)
+            this.consumer.consume(docItem)
+        }
+
+        /**
+         * Returns the top level item of an item.
+         *
+         * @param docItem The item to get the top level item of.
+         */
+        private @NotNull DocItem rootOf(@NotNull final DocItem docItem) {
+            final DocItem root = this.roots.get(docItem)
+            root != null ? root : docItem
+        }
+
+        /**
+         * Returns true if the item has links without url that a later "[id]: url" line can still provide.
+         *
+         * @param docItem The item to check.
+         */
+        private boolean hasUnresolvedLinks(@NotNull final DocItem docItem) {
+            if (this.unresolvedLinks == null) {
+                this.unresolvedLinks = new LinkedList<Link>()
+                collectLinks(docItem, this.unresolvedLinks)
+            }
+
+            final Iterator<Link> linkIt = this.unresolvedLinks.iterator()
+            while (linkIt.hasNext()) {
+                final Link link = linkIt.next()
+                if ((link.url != null && !link.url.empty) || !this.links.get(link.text).is(link)) {
+                    linkIt.remove()
+                }
+            }
+
+            !this.unresolvedLinks.empty
+        }
+
+        /**
+         * Collects all links without url in an item and its sub items.
+         *
+         * @param docItem The item to collect links in.
+         * @param found The found links are added to this.
+         */
+        private static void collectLinks(@NotNull final DocItem docItem, @NotNull final java.util.List<Link> found) {
+            if (docItem instanceof Link && (((Link)docItem).url == null || ((Link)docItem).url.empty)) {
+                found.add((Link)docItem)
+            }
+            if (docItem.hasSubItems()) {
+                for (final DocItem subItem : docItem.items) {
+                    collectLinks(subItem, found)
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,378 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-23: Created!
+ *
+ */
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.api.Parser
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.model.Link
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Parses a set of source files into one Doc.
+ *
+ * With a parallelism of 1 (the default) all files are parsed one after the other into the same Doc using the
+ * same parser instance for all files of the same type, exactly as has always been done.
+ *
+ * With a parallelism larger than 1 each file is parsed on a worker thread into its own Doc fragment using a
+ * new parser instance. The fragments are then added to the Doc in the order of the files. A shared markdown
+ * parser remembers reference style links ("[text][id]" and "[id]: url") between files, so a "[id]: url" line
+ * in one file can provide the url of a link used in an earlier file. Such a line is only recognized by a parser
+ * that has seen the link. To keep the result the same in both modes the fragments are merged in file order
+ * into one parser that knows the links of all files merged so far, like the shared parser. A file with a line
+ * that its own parser did not take as a "[id]: url" line, but that is one for a link of an earlier file, is
+ * parsed again by that parser. Keep link url lines in the same file as their links to avoid this.
+ *
+ * If a ParseCache is provided unchanged files are taken from it instead of being parsed, in both modes.
+ */
+@CompileStatic
+@TypeChecked
+class ParallelDocParser {
+    //
+    // Constants
+    //
+
+    /** A system property that can be used to provide the parallelism when no other configuration is available. */
+    public static final String PARALLELISM_PROPERTY = "markdowndoc.parseParallelism"
+
+    //
+    // Properties
+    //
+
+    /** The max number of files to parse at the same time. */
+    int parallelism = 1
+
+    /** If set this parser is used for all files. If null the parser is selected by file extension. */
+    @Nullable Parser parser = null
+
+    /** Options passed to each parser. */
+    @Nullable Properties parserOptions = null
+
+    /** If set parse results are taken from and stored in this cache. */
+    @Nullable ParseCache parseCache = null
+
+    //
+    // Methods
+    //
+
+    /**
+     * Parses the files and adds their content to the document in the order of the files.
+     *
+     * @param document The Doc to add the parsed content to.
+     * @param sourceFiles The files to parse.
+     *
+     * @throws IOException on failure to read files.
+     * @throws ParseException on parse failures. In parallel mode this is the failure of the first failing file.
+     */
+    void parse(@NotNull final Doc document, @NotNull final List<File> sourceFiles) throws IOException, ParseException {
+        final long start = System.nanoTime()
+        final List<File> files = new ArrayList<File>(sourceFiles)
+        final List<Parser> parsers = resolveParsers(files)
+
+        if (!isParallel(files, parsers)) {
+            for (int i = 0; i < files.size(); i++) {
+                final long fileStart = System.nanoTime()
+                if (this.parseCache != null) {
+                    document.addItems(this.parseCache.parse(files.get(i), parsers.get(i), this.parserOptions).items)
+                }
+                else {
+                    parsers.get(i).parse(document, files.get(i), this.parserOptions)
+                }
+                parsed(files.get(i), fileStart)
+            }
+        }
+        else {
+            for (final Doc fragment : parseParallel(files, parsers)) {
+                document.addItems(fragment.items)
+            }
+        }
+        Metrics.time("parse", start)
+    }
+
+    /**
+     * Parses each file into a Doc fragment of its own. This is for callers that keep the fragments of files to
+     * only parse changed files again. Reference links should be defined in the same file as they are used, since
+     * a file parsed on its own later has not seen the others.
+     *
+     * @param sourceFiles The files to parse.
+     *
+     * @return One fragment per file in the order of the files.
+     *
+     * @throws IOException on failure to read files.
+     * @throws ParseException on parse failures. In parallel mode this is the failure of the first failing file.
+     */
+    @NotNull List<Doc> parseFragments(@NotNull final List<File> sourceFiles) throws IOException, ParseException {
+        final long start = System.nanoTime()
+        final List<File> files = new ArrayList<File>(sourceFiles)
+        final List<Parser> parsers = resolveParsers(files)
+
+        if (isParallel(files, parsers)) {
+            final List<Doc> fragments = parseParallel(files, parsers)
+            Metrics.time("parse", start)
+            return fragments
+        }
+
+        final List<Doc> fragments = new ArrayList<Doc>(files.size())
+        for (int i = 0; i < files.size(); i++) {
+            final long fileStart = System.nanoTime()
+            if (this.parseCache != null) {
+                fragments.add(this.parseCache.parse(files.get(i), parsers.get(i), this.parserOptions))
+            }
+            else {
+                final Doc fragment = new Doc()
+                parsers.get(i).parse(fragment, files.get(i), this.parserOptions)
+                fragments.add(fragment)
+            }
+            parsed(files.get(i), fileStart)
+        }
+        Metrics.time("parse", start)
+
+        fragments
+    }
+
+    /**
+     * Returns true if the files should be parsed in parallel.
+     *
+     * @param files The files to parse.
+     * @param parsers The parser of each file.
+     */
+    private boolean isParallel(@NotNull final List<File> files, @NotNull final List<Parser> parsers) {
+        this.parallelism > 1 && files.size() > 1
+    }
+
+    /**
+     * Records the parse of a file in the current Metrics.
+     *
+     * @param file The parsed file.
+     * @param start When the parse started.
+     */
+    private static void parsed(@NotNull final File file, final long start) {
+        Metrics.time("parse", file.path, start)
+        Metrics.count("bytesRead", file.length())
+    }
+
+    /**
+     * Returns the parser of each file. This also makes sure that all files have a parser before anything is parsed.
+     *
+     * A parser selected by file extension is a new instance of the class ParserProvider provides, one for all
+     * files of the same type in this parse. The files still share reference links as when parsed by the same
+     * parser, but parses running at the same time never share a parser.
+     *
+     * @param files The files to get parsers for.
+     */
+    private @NotNull List<Parser> resolveParsers(@NotNull final List<File> files) throws ParseException {
+        final List<Parser> parsers = new ArrayList<Parser>(files.size())
+        final Map<Class, Parser> parsersByClass = new HashMap<Class, Parser>()
+        for (final File file : files) {
+            Parser fileParser = this.parser
+            if (fileParser == null) {
+                final Class<? extends Parser> parserClass = resolveParser(file).class
+                fileParser = parsersByClass.get(parserClass)
+                if (fileParser == null) {
+                    fileParser = parserClass.newInstance()
+                    parsersByClass.put(parserClass, fileParser)
+                }
+            }
+            parsers.add(fileParser)
+        }
+
+        parsers
+    }
+
+    /**
+     * Parses each file into a fragment of its own on a thread pool, and merges the links of the fragments in file
+     * order. See the class documentation.
+     *
+     * @param files The files to parse.
+     * @param parsers The parser to use for each file. New instances of the same class are used.
+     *
+     * @return The fragments in file order.
+     */
+    private @NotNull List<Doc> parseParallel(@NotNull final List<File> files, @NotNull final List<Parser> parsers)
+            throws IOException, ParseException {
+        final List<Parser> fileParsers = new ArrayList<Parser>(files.size())
+        for (final Parser parser : parsers) {
+            final Class<? extends Parser> parserClass = parser.class
+            fileParsers.add(parserClass.newInstance())
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, files.size()))
+        try {
+            final List<Future<Doc>> fragments = new ArrayList<Future<Doc>>(files.size())
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i)
+                final Parser fileParser = fileParsers.get(i)
+                fragments.add(executor.submit(new Callable<Doc>() {
+                    @Override
+                    Doc call() throws Exception {
+                        final long start = System.nanoTime()
+                        final Doc fragment = parseFile(file, fileParser)
+                        parsed(file, start)
+
+                        fragment
+                    }
+                }))
+            }
+
+            final List<Doc> parsed = new ArrayList<Doc>(files.size())
+            final Map<Class, MarkdownParser> linkParsers = new HashMap<Class, MarkdownParser>()
+            for (int i = 0; i < files.size(); i++) {
+                Doc fragment = getFragment(fragments.get(i))
+                if (fileParsers.get(i) instanceof MarkdownParser) {
+                    fragment = mergeLinks(files.get(i), fragment, (MarkdownParser)fileParsers.get(i), linkParsers)
+                }
+                parsed.add(fragment)
+            }
+
+            parsed
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Parses a file with the passed parser, through the ParseCache if there is one.
+     *
+     * @param file The file to parse.
+     * @param fileParser The parser to use.
+     *
+     * @return The parsed fragment.
+     */
+    private @NotNull Doc parseFile(@NotNull final File file, @NotNull final Parser fileParser)
+            throws IOException, ParseException {
+        if (this.parseCache != null) {
+            return this.parseCache.parse(file, fileParser, this.parserOptions)
+        }
+
+        final Doc fragment = new Doc()
+        fileParser.parse(fragment, file, this.parserOptions)
+
+        fragment
+    }
+
+    /**
+     * Merges the links of a markdown fragment into the parser that knows the links of all earlier fragments of
+     * the same parser class, as the parser shared by these files in a sequential parse would. If the fragment has
+     * a line that its own parser did not take as a "[id]: url" line, but that would be one for a link of an
+     * earlier fragment, the file is parsed again by that parser to get the result of a sequential parse.
+     *
+     * @param file The parsed file.
+     * @param fragment The parsed fragment.
+     * @param fileParser The parser that parsed the fragment.
+     * @param linkParsers The parser that knows the links of the earlier fragments, per parser class.
+     *
+     * @return The fragment to use.
+     */
+    private @NotNull Doc mergeLinks(@NotNull final File file, @NotNull final Doc fragment,
+                                    @NotNull final MarkdownParser fileParser,
+                                    @NotNull final Map<Class, MarkdownParser> linkParsers)
+            throws IOException, ParseException {
+        final MarkdownParser linkParser = linkParsers.get(fileParser.class)
+        if (linkParser == null) {
+            linkParsers.put(fileParser.class, fileParser)
+            return fragment
+        }
+
+        for (final String id : fileParser.unmatchedLinkURLSpecIds) {
+            if (linkParser.isKnownLinkText(id)) {
+                Metrics.count("parse.linkReparses", 1)
+                return parseFile(file, linkParser)
+            }
+        }
+
+        for (final Link link : fileParser.knownLinks) {
+            linkParser.addKnownLink(link)
+        }
+
+        fragment
+    }
+
+    /**
+     * Waits for a parsed fragment and unwraps any failure.
+     *
+     * @param fragment The future fragment to get.
+     */
+    private static @NotNull Doc getFragment(@NotNull final Future<Doc> fragment) throws IOException, ParseException {
+        try {
+            fragment.get()
+        }
+        catch (final ExecutionException ee) {
+            final Throwable cause = ee.cause
+            if (cause instanceof ParseException) throw (ParseException)cause
+            if (cause instanceof IOException) throw (IOException)cause
+            throw new ParseException(message: "Failed to parse: ${cause?.message}", cause: cause)
+        }
+        catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt()
+            throw new ParseException(message: "Interrupted while parsing!", cause: ie)
+        }
+    }
+
+    /**
+     * Returns the parser ParserProvider provides for a file.
+     *
+     * @param file The file to get a parser for.
+     *
+     * @throws ParseException if there is no parser for the file.
+     */
+    private static @NotNull Parser resolveParser(@NotNull final File file) throws ParseException {
+        final Parser fileParser = ParserProvider.getParserForFile(file)
+        if (fileParser == null) {
+            throw new ParseException(file: file.getAbsolutePath(), lineNo: 0, line: "", message: "Don't know how to parse this file!")
+        }
+
+        fileParser
+    }
+
+    /**
+     * Returns the parallelism given by the PARALLELISM_PROPERTY system property, or 1 if not set.
+     */
+    static int getParallelismFromSystemProperty() {
+        Integer.getInteger(PARALLELISM_PROPERTY, 1)
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-24: Created!
+ *
+ */
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.api.Parser
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.model.AutoLink
+import se.natusoft.doc.markdown.model.BlockQuote
+import se.natusoft.doc.markdown.model.Code
+import se.natusoft.doc.markdown.model.CodeBlock
+import se.natusoft.doc.markdown.model.Comment
+import se.natusoft.doc.markdown.model.Div
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.model.DocItem
+import se.natusoft.doc.markdown.model.Emphasis
+import se.natusoft.doc.markdown.model.Header
+import se.natusoft.doc.markdown.model.HorizontalRule
+import se.natusoft.doc.markdown.model.Image
+import se.natusoft.doc.markdown.model.Link
+import se.natusoft.doc.markdown.model.ListItem
+import se.natusoft.doc.markdown.model.Paragraph
+import se.natusoft.doc.markdown.model.PlainText
+import se.natusoft.doc.markdown.model.Space
+import se.natusoft.doc.markdown.model.Strong
+import se.natusoft.doc.markdown.model.TextBuffer
+import se.natusoft.doc.markdown.parser.markdown.model.MDImage
+import se.natusoft.doc.markdown.parser.markdown.model.MDLink
+import se.natusoft.doc.markdown.parser.markdown.model.MDList
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.CRC32
+
+import se.natusoft.doc.markdown.model.List as DocList
+
+/**
+ * An on disk cache of parse results.
+ *
+ * Each source file gets one cache file holding its parsed DocItem tree in a compact binary form. The cache file
+ * is named from a hash of the source path, the parser class and the parser options, and it holds a hash of the
+ * source content. A cached result is only used if the content hash still matches, so a changed source file is
+ * reparsed and its cache file replaced.
+ *
+ * A cache file that is truncated, corrupt, of another format version or for another key is treated as a miss and
+ * replaced. A failure to write the cache never fails a parse.
+ *
+ * A MarkdownParser remembers the links it has parsed, so that a "[id]: url" line in a later file can give them
+ * an url. The links of a file that the parser knows after parsing it are marked in its cache file and handed to
+ * the parser again when the file is taken from the cache. A markdown file with a "[id]: url" line for a link the
+ * parser already knows from an earlier file is neither taken from nor stored in the cache, since its result
+ * depends on that earlier file. The texts of lines that could have been "[id]: url" lines but were not, which
+ * ParallelDocParser needs to know if a file parsed on its own has to be parsed again, are also stored and handed
+ * back. This way the cache never changes the result.
+ *
+ * Bump FORMAT_VERSION when the model or the parsers change in a way that changes parse results!
+ */
+@CompileStatic
+@TypeChecked
+class ParseCache {
+    //
+    // Constants
+    //
+
+    /** A system property that can be used to provide the cache directory when no other configuration is available. */
+    public static final String CACHE_DIR_PROPERTY = "markdowndoc.parseCacheDir"
+
+    /** Identifies a cache file. "MDDC" */
+    private static final int MAGIC = 0x4D444443
+
+    /** The version of the cache file format and of the parse results. */
+    private static final int FORMAT_VERSION = 3
+
+    /** The extension of cache files. */
+    private static final String CACHE_FILE_EXT = ".mdpc"
+
+    /** All DocItem classes that can be cached. The index in this list is what is stored. Only add at the end! */
+    private static final java.util.List<Class> ITEM_CLASSES = [
+            Doc, Paragraph, PlainText, Code, Emphasis, Strong, Comment, Space, Header, Link, AutoLink, Image,
+            BlockQuote, CodeBlock, HorizontalRule, DocList, ListItem, Div, MDLink, MDImage, MDList
+    ] as java.util.List<Class>
+
+    /** Flags of DocItem. */
+    private static final int FLAG_KEEP_CONSECUTIVE_TOGETHER = 0x01
+    private static final int FLAG_IS_HIERARCHY = 0x02
+    private static final int FLAG_RENDER_PREFIXED_SPACE = 0x04
+    /** A link that the parser knew after parsing the file. */
+    private static final int FLAG_KNOWN_LINK = 0x08
+
+    /** Kinds of DocItem.parseFile. */
+    private static final int PARSE_FILE_NONE = 0
+    private static final int PARSE_FILE_SOURCE = 1
+    private static final int PARSE_FILE_OTHER = 2
+
+    //
+    // Properties
+    //
+
+    /** The directory to store cache files in. It is created if it does not exist. */
+    @NotNull File cacheDir
+
+    //
+    // Private Members
+    //
+
+    /** The number of parses served from cache. */
+    private final AtomicInteger hits = new AtomicInteger()
+
+    /** The number of parses not served from cache. */
+    private final AtomicInteger misses = new AtomicInteger()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the parse result of a file, from cache if available and up to date, otherwise by parsing it with the
+     * passed parser and storing the result in the cache. This can be called from several threads at the same time,
+     * as long as each thread uses its own parser. The links and unmatched "[id]: url" texts of a cached markdown
+     * file are given to the passed MarkdownParser as if it had parsed the file. See the class documentation for when the cache is not used.
+     *
+     * @param sourceFile The file to parse.
+     * @param parser The parser to use on a cache miss.
+     * @param parserOptions The parser options.
+     *
+     * @return A Doc with the parsed items of the file.
+     *
+     * @throws IOException on failure to read the source file.
+     * @throws ParseException on parse failures.
+     */
+    @NotNull Doc parse(@NotNull final File sourceFile, @NotNull final Parser parser, @Nullable final Properties parserOptions)
+            throws IOException, ParseException {
+        final String key = cacheKey(sourceFile, parser.class, parserOptions)
+        final byte[] content = Files.readAllBytes(sourceFile.toPath())
+        final MarkdownParser markdownParser = parser instanceof MarkdownParser ? (MarkdownParser)parser : null
+        if (markdownParser != null && knowsAnyLinkURLSpecId(markdownParser, content)) {
+            this.misses.incrementAndGet()
+            Metrics.count("parseCache.misses", 1)
+            final Doc fragment = new Doc()
+            parser.parse(fragment, sourceFile, parserOptions)
+            return fragment
+        }
+
+        final String contentHash = toHex(sha1(content))
+        final File cacheFile = new File(this.cacheDir, toHex(sha1(key.getBytes("UTF-8"))) + CACHE_FILE_EXT)
+
+        final java.util.List<Link> knownLinks = new ArrayList<Link>()
+        final Set<String> unmatchedIds = new HashSet<String>()
+        final Doc cached = read(cacheFile, key, contentHash, sourceFile, knownLinks, unmatchedIds)
+        if (cached != null) {
+            this.hits.incrementAndGet()
+            Metrics.count("parseCache.hits", 1)
+            if (markdownParser != null) {
+                for (final Link link : knownLinks) {
+                    markdownParser.addKnownLink(link)
+                }
+                markdownParser.unmatchedLinkURLSpecIds = unmatchedIds
+            }
+            return cached
+        }
+
+        this.misses.incrementAndGet()
+        Metrics.count("parseCache.misses", 1)
+        final Doc fragment = new Doc()
+        parser.parse(fragment, sourceFile, parserOptions)
+        write(cacheFile, key, contentHash, sourceFile, fragment, markdownParser)
+
+        fragment
+    }
+
+    /**
+     * Returns true if the parser knows a link that a "[id]: url" line of the content can be for.
+     *
+     * @param parser The parser to check.
+     * @param content The markdown content.
+     */
+    private static boolean knowsAnyLinkURLSpecId(@NotNull final MarkdownParser parser, @NotNull final byte[] content)
+            throws IOException {
+        for (final String id : MarkdownParser.getLinkURLSpecIds(new InputStreamReader(new ByteArrayInputStream(content)))) {
+            if (parser.isKnownLinkText(id)) return true
+        }
+
+        false
+    }
+
+    /**
+     * @return The number of parses served from cache.
+     */
+    int getHits() {
+        this.hits.get()
+    }
+
+    /**
+     * @return The number of parses not served from cache.
+     */
+    int getMisses() {
+        this.misses.get()
+    }
+
+    /**
+     * @return A one line summary of hits and misses.
+     */
+    @NotNull String getStatistics() {
+        "Parse cache: ${getHits()} hits, ${getMisses()} misses (${this.cacheDir})"
+    }
+
+    /**
+     * Produces the key of a source file. This identifies everything except the content that affects the result.
+     *
+     * @param sourceFile The file to parse.
+     * @param parserClass The class of the parser.
+     * @param parserOptions The parser options.
+     */
+    private static @NotNull String cacheKey(@NotNull final File sourceFile, @NotNull final Class parserClass,
+                                            @Nullable final Properties parserOptions) {
+        final StringBuilder key = new StringBuilder()
+        key.append(sourceFile.absolutePath).append('\n')
+        key.append(parserClass.name).append('\n')
+        final String implVersion = parserClass.package?.implementationVersion
+        if (implVersion != null) {
+            key.append(implVersion).append('\n')
+        }
+        if (parserOptions != null) {
+            new TreeSet<String>(parserOptions.stringPropertyNames()).each { final String name ->
+                key.append(name).append('=').append(parserOptions.getProperty(name)).append('\n')
+            }
+        }
+
+        key.toString()
+    }
+
+    /**
+     * Reads a cache file.
+     *
+     * @param cacheFile The cache file to read.
+     * @param key The expected key.
+     * @param contentHash The expected content hash.
+     * @param sourceFile The source file to set as parseFile on the items.
+     * @param knownLinks The links marked as known by the parser are added to this in the order of the items.
+     * @param unmatchedIds The unmatched "[id]: url" texts of the parser are added to this.
+     *
+     * @return The cached result or null if there is no valid and up to date cache file.
+     */
+    private static @Nullable Doc read(@NotNull final File cacheFile, @NotNull final String key,
+                                      @NotNull final String contentHash, @NotNull final File sourceFile,
+                                      @NotNull final java.util.List<Link> knownLinks,
+                                      @NotNull final Set<String> unmatchedIds) {
+        if (!cacheFile.isFile()) return null
+
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return null
+                if (readString(input) != key || readString(input) != contentHash) return null
+
+                final int length = input.readInt()
+                final long checksum = input.readLong()
+                if (length < 0 || length > cacheFile.length()) return null
+                final byte[] payload = new byte[length]
+                input.readFully(payload)
+
+                final CRC32 crc = new CRC32()
+                crc.update(payload)
+                if (crc.value != checksum) return null
+
+                final DataInputStream payloadIn = new DataInputStream(new ByteArrayInputStream(payload))
+                final DocItem item = readItem(payloadIn, sourceFile, new HashMap<String, File>(), knownLinks)
+                final int noUnmatchedIds = payloadIn.readInt()
+                if (noUnmatchedIds < 0 || noUnmatchedIds > payloadIn.available()) return null
+                for (int i = 0; i < noUnmatchedIds; i++) {
+                    unmatchedIds.add(readString(payloadIn))
+                }
+                final Doc doc = item instanceof Doc ? (Doc)item : null
+                if (doc != null) {
+                    final TextBuffer textBuffer = new TextBuffer()
+                    doc.compact(textBuffer)
+                    textBuffer.complete()
+                }
+
+                doc
+            }
+            finally {
+                input.close()
+            }
+        }
+        catch (final IOException | RuntimeException ignore) {
+            // Truncated, corrupt or otherwise unreadable. This will be a miss and the file gets replaced.
+            null
+        }
+    }
+
+    /**
+     * Writes a cache file. This is done by writing a temporary file and then replacing the cache file with it.
+     *
+     * @param cacheFile The cache file to write.
+     * @param key The key of the cache file.
+     * @param contentHash The hash of the parsed content.
+     * @param sourceFile The parsed file.
+     * @param doc The parse result to store.
+     * @param parser The parser of the result if it is a MarkdownParser. The links it knows are marked and its
+     *               unmatched "[id]: url" texts are stored.
+     */
+    private static void write(@NotNull final File cacheFile, @NotNull final String key, @NotNull final String contentHash,
+                              @NotNull final File sourceFile, @NotNull final Doc doc, @Nullable final MarkdownParser parser) {
+        File tempFile = null
+        try {
+            final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream()
+            final DataOutputStream payloadOut = new DataOutputStream(payloadBytes)
+            writeItem(payloadOut, doc, sourceFile, parser)
+            final Set<String> unmatchedIds = parser != null ? parser.unmatchedLinkURLSpecIds : new HashSet<String>()
+            payloadOut.writeInt(unmatchedIds.size())
+            for (final String id : unmatchedIds) {
+                writeString(payloadOut, id)
+            }
+            payloadOut.flush()
+            final byte[] payload = payloadBytes.toByteArray()
+
+            final CRC32 crc = new CRC32()
+            crc.update(payload)
+
+            cacheFile.parentFile.mkdirs()
+            tempFile = File.createTempFile("parse", ".tmp", cacheFile.parentFile)
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))
+            try {
+                out.writeInt(MAGIC)
+                out.writeInt(FORMAT_VERSION)
+                writeString(out, key)
+                writeString(out, contentHash)
+                out.writeInt(payload.length)
+                out.writeLong(crc.value)
+                out.write(payload)
+            }
+            finally {
+                out.close()
+            }
+
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            tempFile = null
+        }
+        catch (final IOException ioe) {
+            System.err.println("Warning: Failed to write parse cache file '${cacheFile}': ${ioe.message}")
+        }
+        finally {
+            if (tempFile != null) tempFile.delete()
+        }
+    }
+
+    /**
+     * Writes a DocItem and all its sub items.
+     *
+     * @param out The stream to write to.
+     * @param item The item to write.
+     * @param sourceFile The parsed file. parseFile references to this are stored as a flag.
+     * @param parser The parser of the item if it is a MarkdownParser. The links it knows are stored as a flag.
+     *
+     * @throws IOException on write failure or on an item class that can not be cached.
+     */
+    private static void writeItem(@NotNull final DataOutputStream out, @NotNull final DocItem item,
+                                  @NotNull final File sourceFile, @Nullable final MarkdownParser parser)
+            throws IOException {
+        final int tag = ITEM_CLASSES.indexOf(item.class)
+        if (tag < 0) throw new IOException("Can't cache items of type ${item.class.name}!")
+        out.writeByte(tag)
+
+        int flags = 0
+        if (item.keepConsecutiveTogether) flags |= FLAG_KEEP_CONSECUTIVE_TOGETHER
+        if (item.isHierarchy) flags |= FLAG_IS_HIERARCHY
+        if (item.renderPrefixedSpace) flags |= FLAG_RENDER_PREFIXED_SPACE
+        if (parser != null && item instanceof Link && parser.isKnownLink((Link)item)) flags |= FLAG_KNOWN_LINK
+        out.writeByte(flags)
+        writeString(out, item.addBetweenKeepTogether)
+
+        if (item.parseFile == null) {
+            out.writeByte(PARSE_FILE_NONE)
+        }
+        else if (item.parseFile == sourceFile) {
+            out.writeByte(PARSE_FILE_SOURCE)
+        }
+        else {
+            out.writeByte(PARSE_FILE_OTHER)
+            writeString(out, item.parseFile.path)
+        }
+
+        if (item instanceof PlainText) {
+            writeString(out, ((PlainText)item).text)
+        }
+        if (item instanceof Link) {
+            writeString(out, ((Link)item).url)
+            writeString(out, ((Link)item).title)
+        }
+        if (item instanceof Header) {
+            final Header.Level level = ((Header)item).level
+            out.writeByte(level != null ? level.ordinal() : -1)
+        }
+        if (item instanceof Div) {
+            writeString(out, ((Div)item).name)
+        }
+        if (item instanceof DocList) {
+            out.writeBoolean(((DocList)item).ordered)
+        }
+        if (item instanceof MDList) {
+            out.writeInt(((MDList)item).indentLevel)
+        }
+
+        if (item.hasSubItems()) {
+            out.writeInt(item.items.size())
+            for (final DocItem subItem : item.items) {
+                writeItem(out, subItem, sourceFile, parser)
+            }
+        }
+        else {
+            out.writeInt(0)
+        }
+    }
+
+    /**
+     * Reads a DocItem and all its sub items.
+     *
+     * @param input The stream to read from.
+     * @param sourceFile The parsed file to set as parseFile where it was when written.
+     * @param files The other parse files read so far by path, so that items of the same file share one File.
+     * @param knownLinks Links marked as known by the parser are added to this.
+     *
+     * @throws IOException on read failure or bad data.
+     */
+    private static @NotNull DocItem readItem(@NotNull final DataInputStream input, @NotNull final File sourceFile,
+                                             @NotNull final Map<String, File> files,
+                                             @NotNull final java.util.List<Link> knownLinks) throws IOException {
+        final int tag = input.readUnsignedByte()
+        if (tag >= ITEM_CLASSES.size()) throw new IOException("Bad item type: ${tag}!")
+
+        final DocItem item = (DocItem)ITEM_CLASSES.get(tag).newInstance()
+
+        final int flags = input.readUnsignedByte()
+        item.keepConsecutiveTogether = (flags & FLAG_KEEP_CONSECUTIVE_TOGETHER) != 0
+        item.isHierarchy = (flags & FLAG_IS_HIERARCHY) != 0
+        item.renderPrefixedSpace = (flags & FLAG_RENDER_PREFIXED_SPACE) != 0
+        item.addBetweenKeepTogether = readString(input)
+
+        final int parseFileKind = input.readUnsignedByte()
+        switch (parseFileKind) {
+            case PARSE_FILE_NONE: break
+            case PARSE_FILE_SOURCE: item.parseFile = sourceFile; break
+            case PARSE_FILE_OTHER:
+                final String path = readString(input)
+                File file = files.get(path)
+                if (file == null) {
+                    file = new File(path)
+                    files.put(path, file)
+                }
+                item.parseFile = file
+                break
+            default: throw new IOException("Bad parse file kind: ${parseFileKind}!")
+        }
+
+        if (item instanceof PlainText) {
+            // Header.setText(...) appends, which is the same thing since text starts out empty.
+            final String text = readString(input)
+            if (text != null) ((PlainText)item).text = text
+        }
+        if (item instanceof Link) {
+            ((Link)item).url = readString(input)
+            ((Link)item).title = readString(input)
+            if ((flags & FLAG_KNOWN_LINK) != 0) knownLinks.add((Link)item)
+        }
+        if (item instanceof Header) {
+            final int level = input.readByte()
+            if (level >= 0) ((Header)item).level = Header.Level.values()[level]
+        }
+        if (item instanceof Div) {
+            ((Div)item).name = readString(input)
+        }
+        if (item instanceof DocList) {
+            ((DocList)item).ordered = input.readBoolean()
+        }
+        if (item instanceof MDList) {
+            ((MDList)item).indentLevel = input.readInt()
+        }
+
+        final int noItems = input.readInt()
+        // Each item takes at least one byte, which also keeps a corrupt count from allocating a huge list.
+        if (noItems < 0 || noItems > input.available()) throw new IOException("Bad item count: ${noItems}!")
+        // Directly to the list since some models only accept some item types through addItem(...). This also
+        // replaces default items that some models add in their constructor.
+        final java.util.List<DocItem> subItems = new ArrayList<DocItem>(noItems)
+        for (int i = 0; i < noItems; i++) {
+            subItems.add(readItem(input, sourceFile, files, knownLinks))
+        }
+        item.items = subItems
+
+        item
+    }
+
+    /**
+     * Writes a possibly null string of any length.
+     *
+     * @param out The stream to write to.
+     * @param str The string to write.
+     */
+    private static void writeString(@NotNull final DataOutputStream out, @Nullable final String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1)
+        }
+        else {
+            final byte[] bytes = str.getBytes("UTF-8")
+            out.writeInt(bytes.length)
+            out.write(bytes)
+        }
+    }
+
+    /**
+     * Reads a string written by writeString(...).
+     *
+     * @param input The stream to read from.
+     */
+    private static @Nullable String readString(@NotNull final DataInputStream input) throws IOException {
+        final int length = input.readInt()
+        if (length < 0) return null
+        if (length > input.available()) throw new IOException("Bad string length: ${length}!")
+
+        final byte[] bytes = new byte[length]
+        input.readFully(bytes)
+
+        new String(bytes, "UTF-8")
+    }
+
+    /**
+     * Returns the SHA-1 hash of some bytes.
+     *
+     * @param bytes The bytes to hash.
+     */
+    private static @NotNull byte[] sha1(@NotNull final byte[] bytes) {
+        MessageDigest.getInstance("SHA-1").digest(bytes)
+    }
+
+    /**
+     * Returns bytes as a hex string.
+     *
+     * @param bytes The bytes to convert.
+     */
+    private static @NotNull String toHex(@NotNull final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2)
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16))
+            sb.append(Character.forDigit(b & 0x0f, 16))
+        }
+
+        sb.toString()
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.util.Metrics
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Keeps parsed documents in memory so that several generations from the same input files only parse them once.
+ *
+ * A document is keyed by a parser key, which should identify the parser and its options, and by the path,
+ * modification time and size of each input file in order. A changed input file thus gives a new key. Only the
+ * most recently used documents are kept.
+ *
+ * This is thread safe. When several threads ask for the same document at the same time one of them parses it and
+ * the others wait for the result. A failed parse is not kept, so the next request parses again.
+ *
+ * The cached documents are shared and must not be modified by their users. The generators only read them.
+ */
+@CompileStatic
+@TypeChecked
+class ParsedDocCache {
+    //
+    // Properties
+    //
+
+    /** The max number of documents to keep. */
+    int maxEntries = 16
+
+    //
+    // Private Members
+    //
+
+    /** The parsed and being parsed documents by key, in least recently used order. */
+    private final LinkedHashMap<String, Future<Doc>> docs = new LinkedHashMap<String, Future<Doc>>(16, 0.75f, true)
+
+    /** The number of documents that were already parsed. */
+    private final AtomicInteger hits = new AtomicInteger()
+
+    /** The number of documents that had to be parsed. */
+    private final AtomicInteger misses = new AtomicInteger()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the parsed document of a set of files, parsing it if it is not already parsed.
+     *
+     * @param parserKey Identifies how the files are parsed. Files parsed with different keys are cached separately.
+     * @param sourceFiles The files of the document in order.
+     * @param parse Parses the files into a new document.
+     *
+     * @throws IOException on failure to read files.
+     * @throws ParseException on parse failures.
+     */
+    @NotNull Doc get(@NotNull final String parserKey, @NotNull final List<File> sourceFiles,
+                     @NotNull final Callable<Doc> parse) throws IOException, ParseException {
+        final String key = key(parserKey, sourceFiles)
+
+        FutureTask<Doc> task = null
+        Future<Doc> doc
+        synchronized (this.docs) {
+            doc = this.docs.get(key)
+            if (doc == null) {
+                task = new FutureTask<Doc>(parse)
+                doc = task
+                this.docs.put(key, task)
+                while (this.docs.size() > Math.max(1, this.maxEntries)) {
+                    this.docs.remove(this.docs.keySet().iterator().next())
+                }
+            }
+        }
+
+        if (task != null) {
+            this.misses.incrementAndGet()
+            task.run()
+        }
+        else {
+            this.hits.incrementAndGet()
+            Metrics.count("parse.shared", 1)
+        }
+
+        try {
+            return doc.get()
+        }
+        catch (final ExecutionException ee) {
+            synchronized (this.docs) {
+                if (this.docs.get(key).is(doc)) {
+                    this.docs.remove(key)
+                }
+            }
+            if (ee.cause instanceof IOException) throw ee.cause as IOException
+            if (ee.cause instanceof ParseException) throw ee.cause as ParseException
+            throw new ParseException(message: ee.cause.message, cause: ee.cause)
+        }
+        catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt()
+            throw new InterruptedIOException("Interrupted while waiting for the files to be parsed!")
+        }
+    }
+
+    /**
+     * Produces the key of a set of files.
+     *
+     * @param parserKey Identifies how the files are parsed.
+     * @param sourceFiles The files of the document in order.
+     */
+    private static @NotNull String key(@NotNull final String parserKey, @NotNull final List<File> sourceFiles) {
+        final StringBuilder key = new StringBuilder(parserKey)
+        for (final File file : sourceFiles) {
+            key.append('\n').append(file.absolutePath).append('|').append(file.lastModified()).append('|')
+                    .append(file.length())
+        }
+        key.toString()
+    }
+
+    /**
+     * Forgets all documents.
+     */
+    void clear() {
+        synchronized (this.docs) {
+            this.docs.clear()
+        }
+    }
+
+    /**
+     * Returns the number of documents that were already parsed.
+     */
+    int getHits() {
+        this.hits.get()
+    }
+
+    /**
+     * Returns the number of documents that had to be parsed.
+     */
+    int getMisses() {
+        this.misses.get()
+    }
+
+    /**
+     * Returns a one line summary of the cache use.
+     */
+    @NotNull String getStatistics() {
+        "Shared parse results: ${getHits()} reused, ${getMisses()} parsed"
+    }
+}
@@ -43,6 +43,10 @@ import se.natusoft.doc.markdown.api.Parser
 
 /**
  * Provides a parser depending on file extension.
+ *
+ * The same parser instance is returned for all files of the same type. Parsers have state while parsing, so
+ * code that can run at the same time as other parses should create its own instances of the returned parser's
+ * class. The lookup itself can be done from any thread.
  */
 @CompileStatic
 @TypeChecked
@@ -69,7 +73,10 @@ class ParserProvider {
      * @return A parser or null.
      */
     static Parser getParserForFile(@NotNull final String file) {
-        parserLoader.find { final Parser parser -> parser.validFileExtension(file) } as Parser
+        // The ServiceLoader instantiates the parsers lazily while iterated, which is not thread safe.
+        synchronized (parserLoader) {
+            parserLoader.find { final Parser parser -> parser.validFileExtension(file) } as Parser
+        }
     }
 
 }
@@ -41,13 +41,47 @@ import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import se.natusoft.doc.markdown.io.Line
 
+import java.util.regex.Pattern
+
 /**
  * This represents a line of Markdown text.
+ * <p/>
+ * The line is classified the first time any of the is*() methods is called, and the result is remembered
+ * since the parser asks the same questions about the same line several times.
  */
 @CompileStatic
 @TypeChecked
 class MDLine extends Line  {
 
+    //
+    // Constants
+    //
+
+    // We allow 0 to 3 spaces in front, 4 would make it a code line, and so would a tab! The div also has
+    // to be the only thing on the line!
+    private static final Pattern START_DIV = Pattern.compile('[ ]?[ ]?[ ]?<div.*class=".*".*>\\s*')
+    private static final Pattern START_DIV_COMMENT = Pattern.compile('[ ]?[ ]?[ ]?<!--[ ]*@Div\\(".*"\\)[ ]*-->\\s*')
+    private static final Pattern END_DIV_COMMENT = Pattern.compile("[ ]?[ ]?[ ]?<!--[ ]*@EndDiv[ ]*-->\\s*")
+
+    private static final int CLASSIFIED     = 0x0001
+    private static final int CODE_BLOCK     = 0x0002
+    private static final int BLOCK_QUOTE    = 0x0004
+    private static final int LIST           = 0x0008
+    private static final int ORDERED_LIST   = 0x0010
+    private static final int HEADER         = 0x0020
+    private static final int HORIZ_RULER    = 0x0040
+    private static final int COMMENT_START  = 0x0080
+    private static final int COMMENT_END    = 0x0100
+    private static final int START_DIV_LINE = 0x0200
+    private static final int END_DIV_LINE   = 0x0400
+
+    //
+    // Private Members
+    //
+
+    /** The classification flags of this line. 0 until classified. */
+    private int classification = 0
+
     //
     // Constructors
     //
@@ -90,87 +124,145 @@ class MDLine extends Line  {
      * @param startsWith The text to check for.
      */
     boolean startsWith(@NotNull final String startsWith) {
-        super.startsWith(startsWith) || this.origLine.startsWith(" " + startsWith) ||
-                this.origLine.startsWith("  " + startsWith)
+        super.startsWith(startsWith) || this.origLine.startsWith(startsWith, 1) && this.origLine.startsWith(" ") ||
+                this.origLine.startsWith(startsWith, 2) && this.origLine.startsWith("  ")
     }
 
     /**
-     * Returns true if this is part of a code block.
+     * Returns true if the specified classification flag is set for this line.
+     *
+     * @param flag The flag to test.
      */
-    boolean isCodeBlock() {
-        super.origLine.length() > 0 && (
-            super.origLine.charAt(0) == ('\t' as char) ||
-                    (super.origLine.length() >= 4 && super.origLine.substring(0,4).isAllWhitespace())
-        )
+    private boolean is(final int flag) {
+        if (this.classification == 0) {
+            this.classification = classify()
+        }
+        (this.classification & flag) != 0
     }
 
     /**
-     * Returns true if this is part of a block quote.
+     * Classifies this line by looking at its first and last non blank chars. Regular expressions are only
+     * used for div lines, and only when the first non blank char is a '<'.
      */
-    boolean isBlockQuote() {
-        super.words.size() >= 1 && super.words[0] == ">"
+    private int classify() {
+        final String line = this.origLine
+        final int length = line.length()
+        final int start = getTrimStart()
+        final int end = getTrimEnd()
+        int flags = CLASSIFIED
+
+        // Code block: a tab or 4 whitespace chars first.
+        if (length > 0 && (line.charAt(0) == '\t' || (length >= 4 &&
+                Character.isWhitespace(line.charAt(0)) && Character.isWhitespace(line.charAt(1)) &&
+                Character.isWhitespace(line.charAt(2)) && Character.isWhitespace(line.charAt(3))))) {
+            flags |= CODE_BLOCK
+        }
+
+        // Block quote: a first word that is exactly ">".
+        if (length > 0 && line.charAt(0) == '>' && (length == 1 || isRegexpSpace(line.charAt(1)))) {
+            flags |= BLOCK_QUOTE
+        }
+
+        if (end > start) {
+            final char first = line.charAt(start)
+
+            if (isListStart(line, start, end)) flags |= LIST
+            if (Character.isDigit(first)) flags |= ORDERED_LIST
+
+            if (first == '<') {
+                if (start <= 3 && line.startsWith("<!--", start) && start == getLeadingSpaces()) flags |= COMMENT_START
+                if (START_DIV.matcher(line).matches() || START_DIV_COMMENT.matcher(line).matches()) {
+                    flags |= START_DIV_LINE
+                }
+                if (line.startsWith("</div>", start) || END_DIV_COMMENT.matcher(line).matches()) flags |= END_DIV_LINE
+            }
+
+            if (end - start >= 3 && line.startsWith("-->", end - 3)) flags |= COMMENT_END
+        }
+
+        if (line.startsWith("#")) flags |= HEADER
+
+        if (line.startsWith("* * *") || line.startsWith("***") || line.startsWith("- - -") || line.startsWith("---")) {
+            flags |= HORIZ_RULER
+        }
+
+        flags
     }
 
     /**
-     * Returns true if this starts a list item.
+     * Returns true if a line starts a list item.
+     *
+     * @param line The line to test.
+     * @param start The index of the first non blank char.
+     * @param end The index after the last non blank char.
      */
-    boolean isList() {
-        boolean list = false;
-
-        if (super.origLine != null && super.origLine.trim().length() >= 1) {
-            final StringTokenizer lineTokenizer = new StringTokenizer(super.origLine, " ")
-            String firstWord = lineTokenizer.nextToken()
-
-            if (firstWord.endsWith(".")) {
-                firstWord = firstWord.substring(0, firstWord.length() - 1)
-                boolean onlyDigits = true;
-                for (int i = 0; i < firstWord.length(); i++) {
-                    if (!(firstWord.charAt(i) as Character).isDigit()) {
-                        onlyDigits = false;
-                        break;
-                    }
-                }
+    private static boolean isListStart(@NotNull final String line, final int start, final int end) {
+        // The first word is delimited by ' ' only.
+        int wordStart = 0
+        while (line.charAt(wordStart) == ' ') ++wordStart
+        int wordEnd = wordStart
+        while (wordEnd < line.length() && line.charAt(wordEnd) != ' ') ++wordEnd
 
-                if (onlyDigits) {
-                    list = true;
+        boolean list
+        if (line.charAt(wordEnd - 1) == '.') {
+            list = true
+            for (int i = wordStart; i < wordEnd - 1; i++) {
+                if (!Character.isDigit(line.charAt(i))) {
+                    list = false
+                    break
                 }
             }
-            else {
-                final char c = this.origLine.trim().charAt(0)
-                char n = 0
-                try { n = this.origLine.trim().charAt(1)} catch (final IndexOutOfBoundsException ignore) {}
-                list = (c == '*' as char || c == '+' as char || c == '-' as char) &&
-                        (n != '*' as char && n != '+' as char && n != '-' as char && !n.isDigit())
-            }
+        }
+        else {
+            final char c = line.charAt(start)
+            final char n = start + 1 < end ? line.charAt(start + 1) : (char)0
+            list = (c == '*' || c == '+' || c == '-') &&
+                    (n != '*' && n != '+' && n != '-' && !Character.isDigit(n))
         }
 
         list
     }
 
+    /**
+     * Returns true if this is part of a code block.
+     */
+    boolean isCodeBlock() {
+        is(CODE_BLOCK)
+    }
+
+    /**
+     * Returns true if this is part of a block quote.
+     */
+    boolean isBlockQuote() {
+        is(BLOCK_QUOTE)
+    }
+
+    /**
+     * Returns true if this starts a list item.
+     */
+    boolean isList() {
+        is(LIST)
+    }
+
     /**
      * Returns true if this starts an ordered list item.
      */
     boolean isOrderedList() {
-        if (super.origLine != null && super.origLine.trim().length() >= 1) {
-            final char c = this.origLine.trim().charAt(0)
-            return c.isDigit()
-        }
-        false
+        is(ORDERED_LIST)
     }
 
     /**
      * Returns true if this line represents a header.
      */
     boolean isHeader() {
-        super.origLine.startsWith("#")
+        is(HEADER)
     }
 
     /**
      * Returns true if this line represents a horizontal ruler.
      */
     boolean isHorizRuler() {
-        this.origLine.startsWith("* * *") || this.origLine.startsWith("***") || this.origLine.startsWith("- - -") ||
-                this.origLine.startsWith("---")
+        is(HORIZ_RULER)
     }
 
     /**
@@ -179,16 +271,39 @@ class MDLine extends Line  {
      * @param urls The current known urls.
      */
     boolean isLinkURLSpec(@NotNull final Map urls) {
-        boolean found = false;
+        final int start = getTrimStart()
+        final int end = getTrimEnd()
+        if (end - start < 3 || this.origLine.charAt(start) != '[' || urls.isEmpty()) return false
 
-        for (final String urlText : urls.keySet()) {
-            if (this.origLine.trim().startsWith("[" + urlText + "]:")) {
-                found = true
-                break
+        // Only the texts in front of a "]:" can be the text of a link, so look those up instead of testing all links.
+        int ix = this.origLine.indexOf("]:", start + 1)
+        while (ix >= 0 && ix + 2 <= end) {
+            if (urls.containsKey(this.origLine.substring(start + 1, ix))) {
+                return true
             }
+            ix = this.origLine.indexOf("]:", ix + 1)
+        }
+
+        false
+    }
+
+    /**
+     * Returns the texts of links that this line would be a link url specification for, that is the texts in front
+     * of each "]:" when the line starts with "[". This is empty for most lines.
+     */
+    @NotNull List<String> getLinkURLSpecIds() {
+        final int start = getTrimStart()
+        final int end = getTrimEnd()
+        if (end - start < 3 || this.origLine.charAt(start) != '[') return Collections.emptyList() as List<String>
+
+        final List<String> ids = new LinkedList<String>()
+        int ix = this.origLine.indexOf("]:", start + 1)
+        while (ix >= 0 && ix + 2 <= end) {
+            ids.add(this.origLine.substring(start + 1, ix))
+            ix = this.origLine.indexOf("]:", ix + 1)
         }
 
-        found
+        ids
     }
 
     /**
@@ -197,15 +312,14 @@ class MDLine extends Line  {
     boolean isCommentStart() {
         // Accept up to 3 spaces in front of comment to distinguish it from a code line. This is also
         // the reason for not doing: this.origLine.trim().startsWith("<!--").
-        this.origLine.startsWith("<!--") || this.origLine.startsWith(" <!--") || this.origLine.startsWith("  <!--") ||
-                this.origLine.startsWith("   <!--")
+        is(COMMENT_START)
     }
 
     /**
      * Returns true if this line represents a comment end.
      */
     boolean isCommentEnd() {
-        this.origLine.trim().endsWith("-->")
+        is(COMMENT_END)
     }
 
     // Both of the following are a bit messy. There is no distinct identifier for a paragraph.
@@ -242,9 +356,7 @@ class MDLine extends Line  {
      * @return true if this line is a <div name="..."> or <!-- @Div(class) --> line.
      */
     boolean isStartDiv() {
-        // We allow 0 to 3 spaces in front, 4 would make it a code line, and so would a tab! The div also has
-        // to be the only thing on the line!
-        matches('[ ]?[ ]?[ ]?<div.*class=".*".*>\\s*') || matches('[ ]?[ ]?[ ]?<!--[ ]*@Div\\(".*"\\)[ ]*-->\\s*')
+        is(START_DIV_LINE)
         // Note that when the class name is extracted it is the text between the first and the second " character
         // that is used, and exactly 2 " characters are expected! Therefore the " character is important in the
         // comment version also. The reason for the comment version is only to support making the markdown file
@@ -260,6 +372,6 @@ class MDLine extends Line  {
      * @return true if this line is a </div> or a <!-- @EndDiv -->.
      */
     boolean isEndDiv() {
-        startsWithExcludingWhitespace("</div>") || matches("[ ]?[ ]?[ ]?<!--[ ]*@EndDiv[ ]*-->\\s*")
+        is(END_DIV_LINE)
     }
 }
@@ -76,7 +76,7 @@ class MDImage extends Image {
         }
         else {
             if (part == 0) {
-                addItem(c.toString())
+                addChar(c)
             }
             else if (part == 1) {
                 this.url = this.url + c
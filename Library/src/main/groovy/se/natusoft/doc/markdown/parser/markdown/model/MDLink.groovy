@@ -77,7 +77,7 @@ class MDLink extends Link {
         }
         else {
             if (part == 0) {
-                addItem(c.toString())
+                addChar(c)
             }
             else if (part == 1) {
                 if (this.url == null) this.url = ""
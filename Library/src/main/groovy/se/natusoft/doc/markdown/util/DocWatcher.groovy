@@ -0,0 +1,464 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.util
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+import se.natusoft.doc.markdown.api.Generator
+import se.natusoft.doc.markdown.api.Options
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.generator.FileResource
+import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.ParallelDocParser
+
+import java.nio.file.FileSystems
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchEvent
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps generating the same outputs from a set of source files as they change.
+ * <p>
+ * The parsed content of each source file is kept in memory, and only files that have changed since the last
+ * generation are parsed again. The source paths are looked up again when files or directories have been added or
+ * removed, so these are also handled. Changes to style files like the MSS and CSS of the outputs also trigger a new
+ * generation.
+ * <p>
+ * Changes that arrive close together are handled as one. A generation is done when no more changes have arrived
+ * for quietMillis. Changes that do not affect any source or style file, like the writing of the outputs themselves,
+ * do not trigger a new generation.
+ * <p>
+ * Since a file can be parsed on its own, reference links must be defined in the same file as they are used.
+ */
+@CompileStatic
+@TypeChecked
+class DocWatcher {
+
+    //
+    // Properties
+    //
+
+    /** The comma separated source path specifications to watch. */
+    @NotNull String fileSpec
+
+    /** The root dir the source paths are relative to or null for the current directory. */
+    @Nullable File projRoot = null
+
+    /** The parser to parse changed files with. */
+    @NotNull ParallelDocParser docParser = new ParallelDocParser()
+
+    /** The time to wait for more changes before generating. */
+    long quietMillis = 250
+
+    /** Where progress and failures are reported. */
+    @NotNull PrintStream log = System.out
+
+    /** If set a JSON Metrics report of each generation is written to this file. */
+    @Nullable File metricsReport = null
+
+    /** If true a Metrics summary of each generation is printed to the log. */
+    boolean metricsSummary = false
+
+    //
+    // Private Members
+    //
+
+    /** The outputs to generate. */
+    private List<Output> outputs = new LinkedList<>()
+
+    /** Files other than sources that also trigger a new generation when changed. */
+    private Set<File> styleFiles = new LinkedHashSet<>()
+
+    /** The parsed content of each source file. */
+    private Map<File, Doc> fragments = new HashMap<>()
+
+    /** The last modification and size of each source and style file when last seen. */
+    private Map<File, String> stamps = new HashMap<>()
+
+    /** The source paths of the last lookup. */
+    private SourcePaths sourcePaths = null
+
+    /** The source files found by the last lookup in order. */
+    private List<File> foundFiles = null
+
+    /** The source files of the last generation in order. */
+    private List<File> sourceFiles = null
+
+    /** The directories registered with the watch service. */
+    private Set<Path> watchedDirs = new HashSet<>()
+
+    /** The watched directories of recursive source paths. Directories created in these are also watched. */
+    private Set<Path> recursiveDirs = new HashSet<>()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Adds an output to generate. The MSS of PDF outputs and the CSS of HTML outputs are also watched.
+     *
+     * @param generator The generator to generate with.
+     * @param options The options of the generator.
+     */
+    void addOutput(@NotNull final Generator generator, @NotNull final Options options) {
+        this.outputs.add(new Output(generator: generator, options: options))
+
+        if (options instanceof PDFGeneratorOptions) {
+            final PDFGeneratorOptions pdfOptions = (PDFGeneratorOptions)options
+            if (pdfOptions.mss != null && !pdfOptions.mss.isEmpty()) {
+                addStyleFile(new FileResource(optsRootDir: pdfOptions.rootDir), pdfOptions.mss)
+            }
+        }
+        else if (options instanceof HTMLGeneratorOptions) {
+            final HTMLGeneratorOptions htmlOptions = (HTMLGeneratorOptions)options
+            if (htmlOptions.css != null && !htmlOptions.css.trim().isEmpty() && !htmlOptions.css.startsWith("classpath:")) {
+                addStyleFile(new FileResource(), htmlOptions.css)
+            }
+        }
+    }
+
+    /**
+     * Adds a style file if it can be resolved. A style file that does not exist is reported by the generator.
+     *
+     * @param fileResource Resolves the path.
+     * @param path The path of the style file.
+     */
+    private void addStyleFile(@NotNull final FileResource fileResource, @NotNull final String path) {
+        try {
+            this.styleFiles.add(fileResource.getResourceFile(path))
+        }
+        catch (final IOException ignore) {}
+    }
+
+    /**
+     * Parses changed source files and generates all outputs if anything has changed since the last time this
+     * was called. The first call parses all files.
+     *
+     * @return true if the outputs were generated, false if nothing had changed.
+     *
+     * @throws IOException on failure to read sources or write outputs.
+     * @throws ParseException on parse failures.
+     * @throws GenerateException on generate failures.
+     */
+    boolean update() throws IOException, ParseException, GenerateException {
+        doUpdate(true)
+    }
+
+    /**
+     * Parses changed source files and generates all outputs if anything has changed.
+     *
+     * @param findFiles If true the source paths are looked up again, otherwise the files of the last generation
+     *                  are checked for changes.
+     *
+     * @return true if the outputs were generated, false if nothing had changed.
+     */
+    private boolean doUpdate(final boolean findFiles) throws IOException, ParseException, GenerateException {
+        final Metrics metrics = this.metricsReport != null || this.metricsSummary ? new Metrics() : null
+        final Metrics previous = Metrics.current
+        if (metrics != null) {
+            Metrics.current = metrics
+        }
+        try {
+            final boolean generated = generateChanged(findFiles)
+            if (generated && metrics != null) {
+                metrics.report(this.metricsReport, this.metricsSummary, this.log)
+            }
+
+            generated
+        }
+        finally {
+            if (metrics != null) {
+                Metrics.current = previous
+            }
+        }
+    }
+
+    /**
+     * Parses changed source files and generates all outputs if anything has changed.
+     *
+     * @param findFiles If true the source paths are looked up again.
+     *
+     * @return true if the outputs were generated, false if nothing had changed.
+     */
+    private boolean generateChanged(final boolean findFiles) throws IOException, ParseException, GenerateException {
+        final long start = System.nanoTime()
+
+        if (findFiles || this.sourcePaths == null) {
+            final SourcePaths sourcePaths = this.projRoot != null ?
+                    new SourcePaths(this.projRoot, this.fileSpec) : new SourcePaths(this.fileSpec)
+            this.foundFiles = sourcePaths.getSourceFiles()
+            this.sourcePaths = sourcePaths
+        }
+        final List<File> files = this.foundFiles
+
+        final Map<File, String> newStamps = new HashMap<>()
+        final List<File> changed = new ArrayList<>()
+        for (final File file : files) {
+            final String stamp = stamp(file)
+            newStamps.put(file, stamp)
+            if (!this.fragments.containsKey(file) || stamp != this.stamps.get(file)) {
+                changed.add(file)
+            }
+        }
+        boolean styleChanged = false
+        for (final File file : this.styleFiles) {
+            final String stamp = stamp(file)
+            newStamps.put(file, stamp)
+            styleChanged |= this.stamps.containsKey(file) && stamp != this.stamps.get(file)
+        }
+
+        if (changed.isEmpty() && !styleChanged && files == this.sourceFiles) {
+            return false
+        }
+
+        // The stamps are taken before parsing so that a change during parsing is seen by the next update.
+        final List<Doc> parsed = this.docParser.parseFragments(changed)
+        for (int i = 0; i < changed.size(); i++) {
+            this.fragments.put(changed.get(i), parsed.get(i))
+        }
+        this.fragments.keySet().retainAll(newStamps.keySet())
+        this.stamps = newStamps
+
+        final Doc document = new Doc()
+        for (final File file : files) {
+            document.addItems(this.fragments.get(file).items)
+        }
+
+        for (final Output output : this.outputs) {
+            output.generator.generate(document, output.options, null)
+        }
+        this.sourceFiles = files
+
+        this.log.println("Generated in ${millisSince(start)} ms, ${changed.size()} of ${files.size()} files parsed.")
+
+        true
+    }
+
+    /**
+     * Generates all outputs and then keeps generating them on changes until the thread is interrupted. Failures
+     * of a generation on change are reported and then the watching continues.
+     *
+     * @throws IOException on failure to watch.
+     * @throws ParseException on parse failures of the first generation.
+     * @throws GenerateException on generate failures of the first generation.
+     */
+    void watch() throws IOException, ParseException, GenerateException {
+        final WatchService watchService = FileSystems.getDefault().newWatchService()
+        try {
+            update()
+            register(watchService, true)
+            this.log.println("Watching for changes. Stop with Ctrl-C.")
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take()
+                final long firstChange = System.nanoTime()
+                boolean filesChanged = false
+                boolean overflow = false
+                while (key != null) {
+                    final Path dir = (Path)key.watchable()
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true
+                        }
+                        else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            registerCreated(watchService, dir, dir.resolve((Path)event.context()))
+                        }
+                        filesChanged |= event.kind() != StandardWatchEventKinds.ENTRY_MODIFY
+                    }
+                    if (!key.reset()) {
+                        // The directory is gone.
+                        this.watchedDirs.remove(dir)
+                        this.recursiveDirs.remove(dir)
+                    }
+                    key = watchService.poll(this.quietMillis, TimeUnit.MILLISECONDS)
+                }
+
+                try {
+                    if (doUpdate(filesChanged)) {
+                        this.log.println("Change handled ${millisSince(firstChange)} ms after it was seen.")
+                    }
+                }
+                catch (final ParseException | GenerateException | IOException e) {
+                    this.log.println("Failed to generate: ${e.message}")
+                }
+
+                if (filesChanged) {
+                    // Source paths or the directories of files outside them might have been added. Events might
+                    // have been lost on overflow, so then all source paths are walked again.
+                    register(watchService, overflow)
+                }
+            }
+        }
+        catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt()
+        }
+        finally {
+            watchService.close()
+        }
+    }
+
+    /**
+     * Registers the directories of the source paths, source files and style files with a watch service, unless
+     * already watched. The directory tree of a recursive source path is only walked when its root is not watched
+     * yet, since directories created in it later are registered by registerCreated(...).
+     *
+     * @param watchService The watch service to register with.
+     * @param walkAll If true the trees of all recursive source paths are walked, to find directories created
+     *                without an event.
+     */
+    private void register(@NotNull final WatchService watchService, final boolean walkAll) throws IOException {
+        for (final SourcePath sourcePath : this.sourcePaths.sourcePaths) {
+            if (sourcePath.path != null && sourcePath.path.isDirectory()) {
+                final Path dir = sourcePath.path.toPath()
+                if (sourcePath.recursive && (walkAll || !this.recursiveDirs.contains(dir))) {
+                    registerTree(watchService, dir)
+                }
+                else {
+                    registerDir(watchService, dir)
+                }
+            }
+        }
+        for (final File file : this.stamps.keySet()) {
+            final File dir = file.absoluteFile.parentFile
+            if (dir != null && dir.isDirectory()) {
+                registerDir(watchService, dir.toPath())
+            }
+        }
+    }
+
+    /**
+     * Registers a created directory and all directories in it if it was created in a watched directory of a
+     * recursive source path.
+     *
+     * @param watchService The watch service to register with.
+     * @param dir The watched directory it was created in.
+     * @param created The created file or directory.
+     */
+    private void registerCreated(@NotNull final WatchService watchService, @NotNull final Path dir,
+                                 @NotNull final Path created) throws IOException {
+        if (this.recursiveDirs.contains(dir) && Files.isDirectory(created)) {
+            registerTree(watchService, created)
+        }
+    }
+
+    /**
+     * Registers a directory and all directories in it as directories of a recursive source path.
+     *
+     * @param watchService The watch service to register with.
+     * @param root The directory to register.
+     */
+    private void registerTree(@NotNull final WatchService watchService, @NotNull final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                registerDir(watchService, dir)
+                DocWatcher.this.recursiveDirs.add(dir)
+                FileVisitResult.CONTINUE
+            }
+
+            @Override
+            FileVisitResult visitFileFailed(final Path file, final IOException ioe) {
+                FileVisitResult.CONTINUE
+            }
+        })
+    }
+
+    /**
+     * Registers a directory with the watch service unless already watched.
+     *
+     * @param watchService The watch service to register with.
+     * @param dir The directory to register.
+     */
+    private void registerDir(@NotNull final WatchService watchService, @NotNull final Path dir) throws IOException {
+        if (this.watchedDirs.add(dir)) {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY)
+        }
+    }
+
+    /**
+     * Returns what is needed to see that a file has changed.
+     *
+     * @param file The file to stamp.
+     */
+    private static @NotNull String stamp(@NotNull final File file) {
+        try {
+            // File.lastModified() can be in whole seconds, which misses quick edits.
+            final BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class)
+            "${attrs.lastModifiedTime()}:${attrs.size()}"
+        }
+        catch (final IOException ignore) {
+            "missing"
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds since a System.nanoTime().
+     *
+     * @param start The start time.
+     */
+    private static long millisSince(final long start) {
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * An output to generate.
+     */
+    private static class Output {
+        /** The generator to generate with. */
+        Generator generator
+
+        /** The options of the generator. */
+        Options options
+    }
+}
@@ -39,14 +39,15 @@ package se.natusoft.doc.markdown.util
 import groovy.transform.CompileStatic
 import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
 import se.natusoft.doc.markdown.api.Options
-import se.natusoft.doc.markdown.api.Parser
 import se.natusoft.doc.markdown.exception.ParseException
 import se.natusoft.doc.markdown.generator.HTMLGenerator
 import se.natusoft.doc.markdown.generator.MarkdownGenerator
 
 import se.natusoft.doc.markdown.model.Doc
-import se.natusoft.doc.markdown.parser.ParserProvider
+import se.natusoft.doc.markdown.parser.ParallelDocParser
+import se.natusoft.doc.markdown.parser.ParseCache
 import se.natusoft.tools.optionsmgr.CommandLineOptionsManager
 
 /**
@@ -70,6 +71,20 @@ class MDDocFileHandler {
      * @throws ParseException
      */
     static execute(@NotNull final String path, final boolean verbose) throws ParseException {
+        execute(path, verbose, false)
+    }
+
+    /**
+     * Executes the .mddoc file.
+     *
+     * @param path The path to the .mdddoc file.
+     * @param verbose If true verbose information is displayed to stdout.
+     * @param watch If true the outputs are generated again each time a source file changes until the thread is
+     *              interrupted. Changes to the .mddoc file itself are not picked up.
+     *
+     * @throws ParseException
+     */
+    static execute(@NotNull final String path, final boolean verbose, final boolean watch) throws ParseException {
         final Properties mdDocFile = new Properties()
         FileInputStream mdDocFileStream = null
         BufferedInputStream bufferedInputStream = null
@@ -95,19 +110,78 @@ class MDDocFileHandler {
             }
         }
 
-        if (verbose) System.out.println("Parsing input files:")
+        // Optional number of files to parse at the same time. Default is 1.
+        final String parseParallelism = mdDocFile.getProperty("parseParallelism")
+
+        // Optional directory to cache parse results in.
+        final String parseCacheDir = mdDocFile.getProperty("parseCacheDir")
+
+        // Optional JSON report and log summary of where the time went.
+        final String metricsReportPath = mdDocFile.getProperty("metricsReport")
+        final File metricsReport = metricsReportPath != null ?
+                new File(metricsReportPath.trim()) : Metrics.getReportFileFromSystemProperty()
+        final boolean metricsSummary = mdDocFile.getProperty("metricsSummary") != null ?
+                Boolean.valueOf(mdDocFile.getProperty("metricsSummary").trim()) : Metrics.isSummaryFromSystemProperty()
+        // When watching the watcher reports each generation.
+        final DocWatcher watcher = watch ?
+                new DocWatcher(fileSpec: fileSpec, metricsReport: metricsReport, metricsSummary: metricsSummary) : null
+        final Metrics metrics = !watch && (metricsReport != null || metricsSummary) ? new Metrics() : null
+        if (metrics != null) {
+            Metrics.current = metrics
+        }
+        try {
+            generate(mdDocFile, fileSpec, parserOptions, parseParallelism, parseCacheDir, verbose, watcher)
+            if (metrics != null) {
+                metrics.report(metricsReport, metricsSummary, System.out)
+            }
+        }
+        finally {
+            if (metrics != null) {
+                Metrics.current = null
+            }
+        }
+    }
+
+    /**
+     * Parses and generates as specified by a loaded .mddoc file.
+     *
+     * @param mdDocFile The loaded .mddoc file.
+     * @param fileSpec The source files to parse.
+     * @param parserOptions The parser options.
+     * @param parseParallelism The number of files to parse at the same time or null for 1.
+     * @param parseCacheDir The directory to cache parse results in or null for no cache.
+     * @param verbose If true verbose information is displayed to stdout.
+     * @param watcher If not null the outputs are added to this, which then keeps generating them on changes.
+     */
+    private static void generate(@NotNull final Properties mdDocFile, @NotNull final String fileSpec,
+                                 @NotNull final Properties parserOptions, @Nullable final String parseParallelism,
+                                 @Nullable final String parseCacheDir, final boolean verbose,
+                                 @Nullable final DocWatcher watcher) throws ParseException {
+
+        final ParallelDocParser docParser = new ParallelDocParser(
+                parallelism: parseParallelism != null ? Integer.valueOf(parseParallelism.trim()) : 1,
+                parserOptions: parserOptions,
+                parseCache: parseCacheDir != null ? new ParseCache(cacheDir: new File(parseCacheDir.trim())) : null
+        )
+
         final Doc document = new Doc();
+        if (watcher != null) {
+            watcher.docParser = docParser
+        }
+        else {
+            if (verbose) System.out.println("Parsing input files:")
 
-        final SourcePaths sourcePaths = new SourcePaths(fileSpec);
-        for (final File file : sourcePaths.getSourceFiles()) {
-            if (verbose) System.out.println("    " + file.getPath() + " ...");
-            Parser parser = ParserProvider.getParserForFile(file);
-            if (parser == null) {
-                throw new ParseException(file: file.getAbsolutePath(), lineNo: 0, line: "", message: "Don't know how to parse this file!")
+            final SourcePaths sourcePaths = new SourcePaths(fileSpec);
+            final List<File> sourceFiles = sourcePaths.getSourceFiles()
+            if (verbose) {
+                for (final File file : sourceFiles) {
+                    System.out.println("    " + file.getPath() + " ...");
+                }
             }
-            parser.parse(document, file, parserOptions);
+            docParser.parse(document, sourceFiles)
+            if (verbose) System.out.println("All parsed!");
+            if (verbose && docParser.parseCache != null) System.out.println(docParser.parseCache.statistics)
         }
-        if (verbose) System.out.println("All parsed!");
 
         final boolean generatePDF = Boolean.valueOf(mdDocFile.getProperty("generate.pdf"))
         final boolean generateHTML = Boolean.valueOf(mdDocFile.getProperty("generate.html"))
@@ -148,9 +222,14 @@ class MDDocFileHandler {
                     new CommandLineOptionsManager<Options>(htmlGenerator.getOptionsClass());
             final Options options = optMgr.loadOptions("-", genOpts, 0);
 
-            if (verbose) System.out.print("Generating " + options.getResultFile() + "...");
-            htmlGenerator.generate(document, options, null)
-            if (verbose) System.out.println("done.");
+            if (watcher != null) {
+                watcher.addOutput(htmlGenerator, options)
+            }
+            else {
+                if (verbose) System.out.print("Generating " + options.getResultFile() + "...");
+                htmlGenerator.generate(document, options, null)
+                if (verbose) System.out.println("done.");
+            }
         }
 
         if (generateMarkdown) {
@@ -168,10 +247,18 @@ class MDDocFileHandler {
                     new CommandLineOptionsManager<Options>(markdownGenerator.getOptionsClass());
             final Options options = optMgr.loadOptions("-", genOpts, 0);
 
-            if (verbose) System.out.print("Generating " + options.getResultFile() + "...");
-            markdownGenerator.generate(document, options, null)
-            if (verbose) System.out.println("done.");
+            if (watcher != null) {
+                watcher.addOutput(markdownGenerator, options)
+            }
+            else {
+                if (verbose) System.out.print("Generating " + options.getResultFile() + "...");
+                markdownGenerator.generate(document, options, null)
+                if (verbose) System.out.println("done.");
+            }
+        }
+
+        if (watcher != null) {
+            watcher.watch()
         }
     }
 }
-
@@ -0,0 +1,385 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.util
+
+import groovy.json.JsonOutput
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Collects timings and counts of a run, to see where the time goes.
+ * <p>
+ * A run makes an instance current with setCurrent() and the parsers and generators then record into it with the
+ * static methods. These do nothing when there is no current instance. The current instance is inherited by threads
+ * started by the thread that set it, like the workers of a parallel parse.
+ * <p>
+ * Three kinds of values are recorded:
+ * <ul>
+ *     <li>phases - The wall time and number of runs of a phase, like "parse" or "pdf.layout".</li>
+ *     <li>items - The time per item of a phase, like per parsed file or per loaded image.</li>
+ *     <li>counters - Counts, like "bytesRead", "pages" or "fonts.cacheHits".</li>
+ * </ul>
+ * The result can be written as a JSON report or as a summary for a log.
+ */
+@CompileStatic
+@TypeChecked
+class Metrics {
+    //
+    // Constants
+    //
+
+    /** A system property giving a file to write a JSON report of a run to. */
+    public static final String REPORT_PROPERTY = "markdowndoc.metricsReport"
+
+    /** A system property that when "true" makes a summary of a run be printed. */
+    public static final String SUMMARY_PROPERTY = "markdowndoc.metricsSummary"
+
+    //
+    // Private Members
+    //
+
+    /** The instance recorded into by the current thread. */
+    private static final InheritableThreadLocal<Metrics> current = new InheritableThreadLocal<>()
+
+    /** When this instance was created. */
+    private final long created = System.nanoTime()
+
+    /** The total nanoseconds of each phase. */
+    private final ConcurrentMap<String, AtomicLong> phaseTimes = new ConcurrentHashMap<>()
+
+    /** The number of runs of each phase. */
+    private final ConcurrentMap<String, AtomicLong> phaseRuns = new ConcurrentHashMap<>()
+
+    /** The nanoseconds of each item per phase. */
+    private final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> itemTimes = new ConcurrentHashMap<>()
+
+    /** The counters. */
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>()
+
+    //
+    // Methods
+    //
+
+    /**
+     * @return The instance the current thread records into or null if none.
+     */
+    static @Nullable Metrics getCurrent() {
+        current.get()
+    }
+
+    /**
+     * Sets the instance the current thread, and threads it starts, records into.
+     *
+     * @param metrics The instance to record into or null to stop recording.
+     */
+    static void setCurrent(@Nullable final Metrics metrics) {
+        if (metrics != null) {
+            current.set(metrics)
+        }
+        else {
+            current.remove()
+        }
+    }
+
+    /**
+     * Records a run of a phase in the current instance, if any.
+     *
+     * @param phase The name of the phase.
+     * @param start The System.nanoTime() the phase started at.
+     */
+    static void time(@NotNull final String phase, final long start) {
+        final Metrics metrics = current.get()
+        if (metrics != null) {
+            metrics.addTime(phase, System.nanoTime() - start)
+        }
+    }
+
+    /**
+     * Records the time of an item of a phase in the current instance, if any.
+     *
+     * @param phase The name of the phase.
+     * @param item The item, like a file path or url.
+     * @param start The System.nanoTime() the item started at.
+     */
+    static void time(@NotNull final String phase, @NotNull final String item, final long start) {
+        final Metrics metrics = current.get()
+        if (metrics != null) {
+            metrics.addItemTime(phase, item, System.nanoTime() - start)
+        }
+    }
+
+    /**
+     * Adds to a counter of the current instance, if any.
+     *
+     * @param counter The name of the counter.
+     * @param amount The amount to add.
+     */
+    static void count(@NotNull final String counter, final long amount) {
+        final Metrics metrics = current.get()
+        if (metrics != null) {
+            metrics.addCount(counter, amount)
+        }
+    }
+
+    /**
+     * Returns a stream that counts the bytes written through it into a counter of the current instance. If there
+     * is no current instance the passed stream is returned.
+     *
+     * @param out The stream to count the bytes of.
+     * @param counter The name of the counter.
+     */
+    static @NotNull OutputStream countWritten(@NotNull final OutputStream out, @NotNull final String counter) {
+        final Metrics metrics = current.get()
+        metrics != null ? new CountingOutputStream(out, get(metrics.counters, counter)) : out
+    }
+
+    /**
+     * Adds a run of a phase.
+     *
+     * @param phase The name of the phase.
+     * @param nanos The time of the run.
+     */
+    void addTime(@NotNull final String phase, final long nanos) {
+        get(this.phaseTimes, phase).addAndGet(nanos)
+        get(this.phaseRuns, phase).incrementAndGet()
+    }
+
+    /**
+     * Adds to the time of an item of a phase.
+     *
+     * @param phase The name of the phase.
+     * @param item The item.
+     * @param nanos The time to add.
+     */
+    void addItemTime(@NotNull final String phase, @NotNull final String item, final long nanos) {
+        ConcurrentMap<String, AtomicLong> items = this.itemTimes.get(phase)
+        if (items == null) {
+            this.itemTimes.putIfAbsent(phase, new ConcurrentHashMap<String, AtomicLong>())
+            items = this.itemTimes.get(phase)
+        }
+        get(items, item).addAndGet(nanos)
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter The name of the counter.
+     * @param amount The amount to add.
+     */
+    void addCount(@NotNull final String counter, final long amount) {
+        get(this.counters, counter).addAndGet(amount)
+    }
+
+    /**
+     * Returns the value of a key, adding a 0 value if not there.
+     *
+     * @param values The values to get from.
+     * @param key The key of the value.
+     */
+    private static @NotNull AtomicLong get(@NotNull final ConcurrentMap<String, AtomicLong> values,
+                                           @NotNull final String key) {
+        AtomicLong value = values.get(key)
+        if (value == null) {
+            values.putIfAbsent(key, new AtomicLong())
+            value = values.get(key)
+        }
+
+        value
+    }
+
+    /**
+     * @return The total milliseconds of a phase, 0 if it has not run.
+     *
+     * @param phase The name of the phase.
+     */
+    long getMillis(@NotNull final String phase) {
+        final AtomicLong nanos = this.phaseTimes.get(phase)
+        nanos != null ? TimeUnit.NANOSECONDS.toMillis(nanos.get()) : 0
+    }
+
+    /**
+     * @return The value of a counter, 0 if never counted.
+     *
+     * @param counter The name of the counter.
+     */
+    long getCount(@NotNull final String counter) {
+        final AtomicLong value = this.counters.get(counter)
+        value != null ? value.get() : 0
+    }
+
+    /**
+     * Returns everything recorded so far as maps and numbers, sorted by name. Times are in milliseconds.
+     */
+    @NotNull Map<String, Object> toMap() {
+        final Map<String, Object> phases = new TreeMap<>()
+        for (final String phase : this.phaseTimes.keySet()) {
+            final Map<String, Object> values = new LinkedHashMap<>()
+            values.put("millis", getMillis(phase))
+            values.put("runs", get(this.phaseRuns, phase).get())
+            phases.put(phase, values)
+        }
+
+        final Map<String, Object> items = new TreeMap<>()
+        for (final Map.Entry<String, ConcurrentMap<String, AtomicLong>> phase : this.itemTimes.entrySet()) {
+            final Map<String, Object> millis = new TreeMap<>()
+            for (final Map.Entry<String, AtomicLong> item : phase.value.entrySet()) {
+                millis.put(item.key, TimeUnit.NANOSECONDS.toMillis(item.value.get()))
+            }
+            items.put(phase.key, millis)
+        }
+
+        final Map<String, Object> counts = new TreeMap<>()
+        for (final Map.Entry<String, AtomicLong> counter : this.counters.entrySet()) {
+            counts.put(counter.key, counter.value.get())
+        }
+
+        final Map<String, Object> report = new LinkedHashMap<>()
+        report.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.created))
+        report.put("phases", phases)
+        report.put("items", items)
+        report.put("counters", counts)
+
+        report
+    }
+
+    /**
+     * @return Everything recorded so far as JSON.
+     */
+    @NotNull String toJSON() {
+        JsonOutput.prettyPrint(JsonOutput.toJson(toMap()))
+    }
+
+    /**
+     * Writes everything recorded so far as JSON to a file.
+     *
+     * @param reportFile The file to write.
+     *
+     * @throws IOException on failure to write.
+     */
+    void writeReport(@NotNull final File reportFile) throws IOException {
+        reportFile.setText(toJSON(), "UTF-8")
+    }
+
+    /**
+     * @return A summary of the phases and counters for a log. Item times are left out.
+     */
+    @NotNull String getSummary() {
+        final StringBuilder summary = new StringBuilder()
+        final Map<String, Object> report = toMap()
+        summary.append("Total: ${report.get("totalMillis")} ms\n")
+        ((Map<String, Object>)report.get("phases")).each { final String phase, final Object values ->
+            final Map<String, Object> phaseValues = (Map<String, Object>)values
+            summary.append("    ${phase}: ${phaseValues.get("millis")} ms (${phaseValues.get("runs")} runs)\n")
+        }
+        ((Map<String, Object>)report.get("counters")).each { final String counter, final Object value ->
+            summary.append("    ${counter}: ${value}\n")
+        }
+
+        summary.toString()
+    }
+
+    /**
+     * Writes the JSON report and prints the summary as asked for.
+     *
+     * @param reportFile The file to write the JSON report to or null for none.
+     * @param summary If true the summary is printed.
+     * @param log Where to print the summary.
+     *
+     * @throws IOException on failure to write the report file.
+     */
+    void report(@Nullable final File reportFile, final boolean summary, @NotNull final PrintStream log)
+            throws IOException {
+        if (reportFile != null) {
+            writeReport(reportFile)
+        }
+        if (summary) {
+            log.print(getSummary())
+        }
+    }
+
+    /**
+     * @return The report file given by the REPORT_PROPERTY system property or null if not set.
+     */
+    static @Nullable File getReportFileFromSystemProperty() {
+        final String reportFile = System.getProperty(REPORT_PROPERTY)
+        reportFile != null && !reportFile.trim().isEmpty() ? new File(reportFile.trim()) : null
+    }
+
+    /**
+     * @return true if the SUMMARY_PROPERTY system property is "true".
+     */
+    static boolean isSummaryFromSystemProperty() {
+        Boolean.getBoolean(SUMMARY_PROPERTY)
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * Counts the bytes written to a stream.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /** The counter to add to. */
+        private AtomicLong written
+
+        CountingOutputStream(@NotNull final OutputStream out, @NotNull final AtomicLong written) {
+            super(out)
+            this.written = written
+        }
+
+        @Override
+        void write(final int b) throws IOException {
+            this.out.write(b)
+            this.written.incrementAndGet()
+        }
+
+        @Override
+        void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len)
+            this.written.addAndGet(len)
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ *
+ * PROJECT
+ *     Name
+ *         MarkdownDoc Library
+ *
+ *     Code Version
+ *         2.0.2
+ *
+ *     Description
+ *         Parses markdown and generates HTML and PDF.
+ *
+ * COPYRIGHTS
+ *     Copyright (C) 2012 by Natusoft AB All rights reserved.
+ *
+ * LICENSE
+ *     Apache 2.0 (Open Source)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * AUTHORS
+ *     tommy ()
+ *         Changes:
+ *         2017-06-30: Created!
+ *
+ */
+package se.natusoft.doc.markdown.util
+
+import groovy.transform.CompileStatic
+import groovy.transform.TypeChecked
+import org.jetbrains.annotations.NotNull
+import org.jetbrains.annotations.Nullable
+
+import java.nio.file.FileVisitOption
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+import java.util.regex.Pattern
+
+/**
+ * Finds the source files of SourcePath instances.
+ * <p>
+ * One instance is used for all the paths of a run. It remembers expanded file-set files and found maven
+ * root directories, so these are only looked up once per run.
+ * <p>
+ * Recursive paths are walked in parallel, one task per directory. The entries of each directory are
+ * ordered by name, so the same file structure always gives the same files in the same order. A directory
+ * that can be reached through several links is only provided at the first of its paths in that order. This is
+ * decided after the walk, since the parallel walk reaches the paths in no particular order.
+ */
+@CompileStatic
+@TypeChecked
+class SourceDiscovery {
+
+    //
+    // Private Members
+    //
+
+    /** Walks the directories of recursive paths. Its worker threads are daemon threads. */
+    private static final ForkJoinPool walkers = new ForkJoinPool()
+
+    /** The files of expanded file-set files keyed on file-set file and project root. */
+    private ConcurrentMap<String, List<File>> fileSets = new ConcurrentHashMap<>()
+
+    /** The maven root directories keyed on the directory the lookup started in. Directories without have themselves. */
+    private ConcurrentMap<File, File> mavenRoots = new ConcurrentHashMap<>()
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the files in a directory, and in its subdirectories if recursive, whose names match a filter.
+     *
+     * @param dir The directory to look in.
+     * @param recursive If true subdirectories are looked in too.
+     * @param filter A filter the whole file name must match, or null for all files.
+     */
+    @NotNull List<File> findFiles(@NotNull final File dir, final boolean recursive, @Nullable final Pattern filter) {
+        if (!dir.isDirectory()) {
+            return new ArrayList<File>()
+        }
+
+        final Path root = dir.toPath()
+        final Object rootKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey()
+        final DirectoryWalk walk = new DirectoryWalk(root, rootKey, recursive, filter, new HashSet<Object>())
+        final WalkedDirectory walked = recursive ? walkers.invoke(walk) : walk.invoke()
+
+        final Set<Object> visited = new HashSet<>()
+        if (rootKey != null) {
+            visited.add(rootKey)
+        }
+        final List<File> files = new ArrayList<>()
+        addFiles(walked, visited, files)
+
+        files
+    }
+
+    /**
+     * Adds the files of a walked directory in order, skipping subdirectories already added through another path.
+     *
+     * @param dir The walked directory.
+     * @param visited The keys of the directories added so far.
+     * @param files The list to add to.
+     */
+    private static void addFiles(@NotNull final WalkedDirectory dir, @NotNull final Set<Object> visited,
+                                 @NotNull final List<File> files) {
+        for (final Object entry : dir.entries) {
+            if (entry instanceof WalkedDirectory) {
+                final WalkedDirectory subDir = (WalkedDirectory)entry
+                if (subDir.key == null || visited.add(subDir.key)) {
+                    addFiles(subDir, visited, files)
+                }
+            }
+            else {
+                files.add((File)entry)
+            }
+        }
+    }
+
+    /**
+     * Returns the files listed by a file-set file. The paths in the file-set file are first tried relative to
+     * the project root, then relative to the file-set file, and last relative to the root of the maven
+     * project the file-set file is in.
+     *
+     * @param fsFile The file-set file to expand.
+     * @param projRoot The root dir of the project being built or null for the current directory.
+     */
+    @NotNull List<File> fileSet(@NotNull final File fsFile, @Nullable final File projRoot) {
+        final String key = fsFile.absolutePath + File.pathSeparator + (projRoot != null ? projRoot.absolutePath : "")
+        List<File> files = this.fileSets.get(key)
+        if (files == null) {
+            files = expandFileSet(fsFile, projRoot)
+            this.fileSets.put(key, files)
+        }
+
+        files
+    }
+
+    /**
+     * Expands a file-set file.
+     *
+     * @param fsFile The file-set file to expand.
+     * @param projRoot The root dir of the project being built or null for the current directory.
+     */
+    private @NotNull List<File> expandFileSet(@NotNull final File fsFile, @Nullable final File projRoot) {
+        final String fileSet = loadFileSetFile(fsFile)
+        if (fileSet == null) {
+            return new ArrayList<File>()
+        }
+
+        SourcePaths sourcePaths = projRoot != null ?
+                new SourcePaths(projRoot, fileSet, this) : new SourcePaths(fileSet, this)
+        if (sourcePaths.hasSourceFiles()) {
+            return sourcePaths.getSourceFiles()
+        }
+
+        // The paths in the fs file is not relative to provided root or current directory.
+        // So try relative to fileset file.
+        sourcePaths = new SourcePaths(fsFile.parentFile, fileSet, this)
+        if (sourcePaths.hasSourceFiles()) {
+            return sourcePaths.getSourceFiles()
+        }
+
+        // The above also failed, so as a last effort, see if this is a maven project, that is
+        // there are pom.xml files in fileset file dir or above. If so we find the top pom.xml
+        // and then try again with the top pom.xml directory as root.
+        final File mavenRoot = mavenRoot(fsFile.parentFile)
+        if (mavenRoot != null) {
+            return new SourcePaths(mavenRoot, fileSet, this).getSourceFiles()
+        }
+
+        new ArrayList<File>()
+    }
+
+    /**
+     * Returns the root directory of the maven build a directory is in, or null if it is not in one.
+     *
+     * @param dir The directory to start looking at.
+     */
+    private @Nullable File mavenRoot(@NotNull final File dir) {
+        File root = this.mavenRoots.get(dir)
+        if (root == null) {
+            root = findFirstMavenPom(dir)
+            if (root.parentFile != null) {
+                root = getMavenRootDir(root)
+            }
+            this.mavenRoots.put(dir, root)
+        }
+
+        root.parentFile != null ? root : null
+    }
+
+    /**
+     * Returns the directory containing the first found pom.xml file looking upwards, or the root directory.
+     *
+     * @param dir The directory to start looking at.
+     */
+    private static File findFirstMavenPom(File dir) {
+        while (dir.parentFile != null && !havePOM(dir)) {
+            dir = dir.parentFile
+        }
+
+        return dir
+    }
+
+    /**
+     * Returns a File representing the directory whose parent directory does not have a pom.xml.
+     * In other words, the root of a multi-module build.
+     */
+    private static File getMavenRootDir(File root) {
+        while (root.parentFile != null && havePOM(root.parentFile)) {
+            root = root.parentFile
+        }
+
+        return root
+    }
+
+    /**
+     * Checks if a directory has a pom.xml.
+     *
+     * @param dir The directory to check.
+     *
+     * @return true if found, false otherwise.
+     */
+    private static boolean havePOM(@NotNull final File dir) {
+        new File(dir, "pom.xml").isFile()
+    }
+
+    /**
+     * Loads a file-set file returning its content as a String.
+     *
+     * @param fsFile The file to load.
+     *
+     * @return A string with its content or null on failure to load.
+     */
+    private @Nullable static final String loadFileSetFile(@NotNull final File fsFile) {
+        String fsSetFiles = null
+
+        try {
+            final StringBuilder sb = new StringBuilder()
+            final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(fsFile)))
+
+            String line = ""
+            while (line != null) {
+                if (!line.trim().startsWith("#"))
+                    sb.append(line)
+
+                line = br.readLine()
+            }
+
+            br.close()
+            fsSetFiles = sb.toString()
+        }
+        catch (final IOException ioe) {
+            System.err.println("Failed to load file-set file: " + ioe.getMessage())
+        }
+
+        fsSetFiles
+    }
+
+    //
+    // Inner Classes
+    //
+
+    /**
+     * The files and walked subdirectories of one directory.
+     */
+    private static class WalkedDirectory {
+
+        /** The file key of the directory, or null if the platform has none. */
+        Object key
+
+        /** The files (File) and walked subdirectories (WalkedDirectory) in name order. */
+        List<Object> entries = new ArrayList<>()
+    }
+
+    /**
+     * Finds the matching files of one directory, and walks its subdirectories in parallel if recursive.
+     */
+    private static class DirectoryWalk extends RecursiveTask<WalkedDirectory> {
+
+        /** The directory to walk. */
+        private Path dir
+
+        /** The file key of the directory, or null if the platform has none. */
+        private Object key
+
+        /** If true subdirectories are walked too. */
+        private boolean recursive
+
+        /** The filter file names must match, or null for all files. */
+        private Pattern filter
+
+        /** The keys of this directory and the directories above it, to not walk around a link loop forever. */
+        private Set<Object> ancestors
+
+        DirectoryWalk(@NotNull final Path dir, @Nullable final Object key, final boolean recursive,
+                      @Nullable final Pattern filter, @NotNull final Set<Object> parentAncestors) {
+            this.dir = dir
+            this.key = key
+            this.recursive = recursive
+            this.filter = filter
+            this.ancestors = new HashSet<>(parentAncestors)
+            if (key != null) {
+                this.ancestors.add(key)
+            }
+        }
+
+        @Override
+        protected WalkedDirectory compute() {
+            final DirectoryEntries entries = new DirectoryEntries(this)
+            Files.walkFileTree(this.dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, entries)
+            Collections.sort(entries.entries)
+
+            final List<DirectoryWalk> subWalks = new ArrayList<>()
+            for (final Path entry : entries.entries) {
+                if (entries.directoryKeys.containsKey(entry)) {
+                    subWalks.add(new DirectoryWalk(entry, entries.directoryKeys.get(entry), true, this.filter,
+                            this.ancestors))
+                }
+            }
+            invokeAll(subWalks)
+
+            final WalkedDirectory walked = new WalkedDirectory(key: this.key)
+            final Iterator<DirectoryWalk> subWalk = subWalks.iterator()
+            for (final Path entry : entries.entries) {
+                if (entries.directoryKeys.containsKey(entry)) {
+                    walked.entries.add(subWalk.next().join())
+                }
+                else {
+                    walked.entries.add(entry.toFile())
+                }
+            }
+
+            walked
+        }
+
+        /**
+         * Returns true if a directory should be walked.
+         *
+         * @param attrs The attributes of the directory.
+         */
+        boolean shouldWalk(@NotNull final BasicFileAttributes attrs) {
+            if (!this.recursive) {
+                return false
+            }
+            final Object key = attrs.fileKey()
+            key == null || !this.ancestors.contains(key)
+        }
+
+        /**
+         * Returns true if a file should be provided.
+         *
+         * @param file The file to check.
+         */
+        boolean matches(@NotNull final Path file) {
+            this.filter == null || this.filter.matcher(file.fileName.toString()).matches()
+        }
+    }
+
+    /**
+     * Collects the entries of one directory that are to be provided or walked.
+     */
+    private static class DirectoryEntries extends SimpleFileVisitor<Path> {
+
+        /** The files and directories to provide or walk. */
+        List<Path> entries = new ArrayList<>()
+
+        /** The file keys of the entries that are directories. A key is null if the platform has none. */
+        Map<Path, Object> directoryKeys = new HashMap<>()
+
+        /** The walk to collect for. */
+        private DirectoryWalk walk
+
+        DirectoryEntries(@NotNull final DirectoryWalk walk) {
+            this.walk = walk
+        }
+
+        @Override
+        FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            // At max depth directories are also visited as files.
+            if (attrs.isDirectory()) {
+                if (this.walk.shouldWalk(attrs)) {
+                    this.entries.add(file)
+                    this.directoryKeys.put(file, attrs.fileKey())
+                }
+            }
+            else if (attrs.isRegularFile() && this.walk.matches(file)) {
+                this.entries.add(file)
+            }
+
+            FileVisitResult.CONTINUE
+        }
+
+        @Override
+        FileVisitResult visitFileFailed(final Path file, final IOException ioe) throws IOException {
+            // Unreadable entries are skipped.
+            FileVisitResult.CONTINUE
+        }
+    }
+}
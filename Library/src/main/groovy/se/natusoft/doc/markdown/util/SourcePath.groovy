@@ -41,6 +41,8 @@ import groovy.transform.TypeChecked
 import org.jetbrains.annotations.NotNull
 import org.jetbrains.annotations.Nullable
 
+import java.util.regex.Pattern
+
 /**
  */
 @CompileStatic
@@ -60,6 +62,9 @@ class SourcePath {
     /** A regular expression filter to apply to each found file. Example ".*.java" */
     private String fileRegexpFilter = null
 
+    /** The compiled fileRegexpFilter. */
+    private Pattern fileFilterPattern = null
+
     private File origProjRoot = null
 
     //
@@ -189,171 +194,74 @@ class SourcePath {
     @SuppressWarnings("GroovyUnusedDeclaration")
     void setFileRegexpFilter(@Nullable final String fileRegexpFilter) {
         this.fileRegexpFilter = fileRegexpFilter
+        this.fileFilterPattern = null
     }
 
     /**
-     * @return Returns all the source files matching the path criteria.
+     * @return The path under which to look for source files.
      */
-    @NotNull List<File> getSourceFiles() {
-        final List<File> sourceFiles = new ArrayList<File>()
-
-        findSourceFiles(this.path, sourceFiles)
-
-        sourceFiles
+    @Nullable File getPath() {
+        this.path
     }
 
     /**
-     * Support method to recursively find files.
-     *
-     * @param currentPath The path to start finding files in.
-     * @param sourceFiles Found files are added to this list.
+     * @return true if source files are searched for recursively.
      */
-    private void findSourceFiles(@NotNull final File currentPath, @NotNull final List<File> sourceFiles) {
-        if (currentPath != null) {
-            if (currentPath.exists()) {
-                for (final File file : currentPath.listFiles()) {
-                    if (file.isDirectory() && this.recursive) {
-                        findSourceFiles(file, sourceFiles)
-                    }
-                    else if (file.isFile()) {
-                        if (this.fileRegexpFilter != null) {
-                            if (file.getName().matches(this.fileRegexpFilter)) {
-                                provideFile(sourceFiles, file)
-                            }
-                        }
-                        else {
-                            provideFile(sourceFiles, file)
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Provides the specified file by adding it to sourceFiles, or if the file is a file-set file (.fs) all files
-     * specified by that file are added.
-     *
-     * @param sourceFiles The list of files to add to.
-     * @param file The file to add as is or the files it lists.
-     */
-    private void provideFile(@NotNull final List<File> sourceFiles, @NotNull final File file) {
-        if (file.getName().endsWith(".fs")) {
-            final String fileSet = loadFileSetFile(file)
-            if (fileSet != null) {
-                SourcePaths sourcePaths = this.origProjRoot != null ?
-                        new SourcePaths(this.origProjRoot, fileSet) : new SourcePaths(fileSet)
-
-                if (sourcePaths.hasSourceFiles()) {
-                    sourcePaths.getSourceFiles().each { final File fsFile ->
-                        sourceFiles.add(fsFile)
-                    }
-                }
-                else {
-                    // The paths in the fs file is not relative to provided root or current directory.
-                    // So try relative to fileset file.
-                    sourcePaths = new SourcePaths(file.parentFile, fileSet)
-                    if (sourcePaths.hasSourceFiles()) {
-                        sourcePaths.getSourceFiles().each { final File fsFile ->
-                            sourceFiles.add(fsFile)
-                        }
-                    }
-                    else {
-                        // The above also failed, so as a last effort, see if this is a maven project, that is
-                        // there are pom.xml files in fileset file dir or above. If so we find the top pom.xml
-                        // and then try again with the top pom.xml directory as root.
-                        File mavenRoot = file.parentFile
-                        mavenRoot = findFirstMavenPom(mavenRoot)
-                        if (mavenRoot.parentFile != null) {
-                            mavenRoot = getMavenRootDir(mavenRoot)
-                            if (mavenRoot.parentFile != null) {
-                                sourcePaths = new SourcePaths(mavenRoot, fileSet)
-                                sourcePaths.getSourceFiles().each { final File fsFile ->
-                                    sourceFiles.add(fsFile)
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        else {
-            sourceFiles.add(file)
-        }
+    boolean isRecursive() {
+        this.recursive
     }
 
     /**
-     * Returns the directory containing the first found pom.xml file looking upwards, or the root directory.
-     *
-     * @param dir The directory to start looking at.
+     * Returns the compiled file filter or null if there is none.
      */
-    private static File findFirstMavenPom(File dir) {
-        while (dir.parentFile != null && !havePOM(dir.listFiles())) {
-            dir = dir.parentFile
+    private @Nullable Pattern getFileFilterPattern() {
+        if (this.fileFilterPattern == null && this.fileRegexpFilter != null) {
+            this.fileFilterPattern = Pattern.compile(this.fileRegexpFilter)
         }
 
-        return dir
+        this.fileFilterPattern
     }
 
     /**
-     * Returns a File representing the directory whose parent directory does not have a pom.xml.
-     * In other words, the root of a multi-module build.
+     * @return Returns all the source files matching the path criteria.
      */
-    private static File getMavenRootDir(File root) {
-        while (havePOM(root.getParentFile().listFiles())) {
-            root = root.getParentFile()
-        }
-
-        return root
+    @NotNull List<File> getSourceFiles() {
+        getSourceFiles(new SourceDiscovery())
     }
 
     /**
-     * Checks if any of the passed files is a pom.xml.
+     * Returns all the source files matching the path criteria.
      *
-     * @param files The files to check.
-     *
-     * @return true if found, false otherwise.
+     * @param discovery The discovery of the run, which remembers expanded file-set files.
      */
-    private static boolean havePOM(File[] files) {
-        for (File file : files) { // The Groovy .each {...} fails here and only loops once even if there are more than one file!
-            if (file.name == "pom.xml") {
-                return true
+    @NotNull List<File> getSourceFiles(@NotNull final SourceDiscovery discovery) {
+        final List<File> sourceFiles = new ArrayList<File>()
+
+        if (this.path != null) {
+            for (final File file : discovery.findFiles(this.path, this.recursive, getFileFilterPattern())) {
+                provideFile(sourceFiles, file, discovery)
             }
         }
 
-        return false
+        sourceFiles
     }
 
     /**
-     * Loads a file-set file returning its content as a String.
-     *
-     * @param fsFile The file to load.
+     * Provides the specified file by adding it to sourceFiles, or if the file is a file-set file (.fs) all files
+     * specified by that file are added.
      *
-     * @return A string with its content or null on failure to load.
+     * @param sourceFiles The list of files to add to.
+     * @param file The file to add as is or the files it lists.
+     * @param discovery The discovery that expands file-set files.
      */
-    private @Nullable static final String loadFileSetFile(@NotNull final File fsFile) {
-        String fsSetFiles = null
-
-        try {
-            final StringBuilder sb = new StringBuilder()
-            final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(fsFile)))
-
-            String line = ""
-            while (line != null) {
-                if (!line.trim().startsWith("#"))
-                    sb.append(line)
-
-                line = br.readLine()
-            }
-
-            br.close()
-            fsSetFiles = sb.toString()
+    private void provideFile(@NotNull final List<File> sourceFiles, @NotNull final File file,
+                             @NotNull final SourceDiscovery discovery) {
+        if (file.getName().endsWith(".fs")) {
+            sourceFiles.addAll(discovery.fileSet(file, this.origProjRoot))
         }
-        catch (final IOException ioe) {
-            System.err.println("Failed to load file-set file: " + ioe.getMessage())
+        else {
+            sourceFiles.add(file)
         }
-
-        fsSetFiles
     }
 
     /**
@@ -53,6 +53,19 @@ class SourcePaths {
     /** All the source paths. */
     @NotNull List<SourcePath> sourcePaths = new LinkedList<SourcePath>()
 
+    //
+    // Private Members
+    //
+
+    /** Finds the files of the source paths. */
+    private SourceDiscovery discovery
+
+    /** True if this instance created its discovery, and so is not part of another lookup. */
+    private boolean ownDiscovery = false
+
+    /** The found files, once looked up. */
+    private List<File> sourceFiles = null
+
     //
     // Constructors
     //
@@ -63,6 +76,18 @@ class SourcePaths {
      * @param sourcePaths The comma separated path specifications to parse.
      */
     SourcePaths(@NotNull final String sourcePaths) {
+        this(sourcePaths, new SourceDiscovery())
+        this.ownDiscovery = true
+    }
+
+    /**
+     * Creates a new SourcePaths.
+     *
+     * @param sourcePaths The comma separated path specifications to parse.
+     * @param discovery The discovery of the run these paths are part of.
+     */
+    SourcePaths(@NotNull final String sourcePaths, @NotNull final SourceDiscovery discovery) {
+        this.discovery = discovery
         final StringTokenizer pathTokenizer = new StringTokenizer(sourcePaths, ",")
         while (pathTokenizer.hasMoreTokens()) {
             this.sourcePaths.add(new SourcePath(pathTokenizer.nextToken().trim()))
@@ -76,6 +101,20 @@ class SourcePaths {
      * @param sourcePaths The comma separated path specifications to parse.
      */
     SourcePaths(@NotNull final File projRoot, @NotNull final String sourcePaths) {
+        this(projRoot, sourcePaths, new SourceDiscovery())
+        this.ownDiscovery = true
+    }
+
+    /**
+     * Creates a new SourcePaths.
+     *
+     * @param projRoot The root dir that all source paths are relative to.
+     * @param sourcePaths The comma separated path specifications to parse.
+     * @param discovery The discovery of the run these paths are part of.
+     */
+    SourcePaths(@NotNull final File projRoot, @NotNull final String sourcePaths,
+                @NotNull final SourceDiscovery discovery) {
+        this.discovery = discovery
         final StringTokenizer pathTokenizer = new StringTokenizer(sourcePaths, ",")
         while (pathTokenizer.hasMoreTokens()) {
             String path = pathTokenizer.nextToken().trim()
@@ -92,23 +131,34 @@ class SourcePaths {
     //
 
     /**
-     * Returns all files from all source paths (in the order they were specified).
+     * Returns all files from all source paths (in the order they were specified). The files are only looked
+     * up the first time. Create a new instance to look again.
      */
     @NotNull List<File> getSourceFiles() {
-        final List<File> all = new LinkedList<File>()
-        this.sourcePaths.each { final SourcePath sourcePath ->
-            sourcePath.getSourceFiles().each { final File file ->
-                all.add(file)
+        if (this.sourceFiles == null) {
+            final long start = System.nanoTime()
+            final List<File> all = new LinkedList<File>()
+            this.sourcePaths.each { final SourcePath sourcePath ->
+                all.addAll(sourcePath.getSourceFiles(this.discovery))
+            }
+            this.sourceFiles = all
+            if (this.ownDiscovery) {
+                Metrics.time("discovery", start)
+                Metrics.count("sourceFiles", all.size())
             }
         }
 
-        return all;
+        return new LinkedList<File>(this.sourceFiles);
     }
 
     /**
      * @return true if there are source files.
      */
     boolean hasSourceFiles() {
-        return !getSourceFiles().isEmpty()
+        if (this.sourceFiles == null) {
+            getSourceFiles()
+        }
+
+        return !this.sourceFiles.isEmpty()
     }
 }
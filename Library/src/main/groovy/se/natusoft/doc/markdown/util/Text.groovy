@@ -50,7 +50,7 @@ class Text {
     //
 
     /** The words of this text. */
-    private List<Word> words = []
+    private List<Word> words = new ArrayList<>()
 
     //
     // Properties
@@ -88,23 +88,24 @@ class Text {
     }
 
     private static int skipWhiteSpace(char[] chars, int pos) {
-        while (pos < chars.length && (chars[pos] == ' ' as char || chars[pos] == '\t' as char)) {
+        while (pos < chars.length && (chars[pos] == (char)' ' || chars[pos] == (char)'\t')) {
             ++pos
         }
         pos
     }
 
     private static int findNextWhiteSpace(char[] chars, int pos) {
-        while (pos < chars.length && (chars[pos] != ' ' as char && chars[pos] != '\t' as char)) {
+        while (pos < chars.length && (chars[pos] != (char)' ' && chars[pos] != (char)'\t')) {
             ++pos
         }
         pos
     }
 
+    /**
+     * Returns the words of this text. The returned list can not be modified.
+     */
     List<Word> getWords() {
-        List<Word> _words = new LinkedList<>()
-        _words.addAll(this.words)
-        _words
+        Collections.unmodifiableList(this.words)
     }
 }
 
@@ -141,7 +142,7 @@ class Word {
             text.content.substring(this.startPos, this.endPos)
         }
         else {
-            text.content.substring(this.startPos, this.endPos).trim() + (text.content.charAt(this.endPos - 1) == ' ' as char ? ' ' : '')
+            text.content.substring(this.startPos, this.endPos).trim() + (text.content.charAt(this.endPos - 1) == (char)' ' ? ' ' : '')
         }
     }
 }
@@ -0,0 +1,113 @@
+package se.natusoft.doc.markdown.generator
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+@CompileStatic
+class HTMLGeneratorSiteTest extends GroovyTestCase {
+
+    private static final String MARKDOWN = "Before the first chapter.\n\n" +
+            "# Intro\n\nSee [the details](#details) and [the intro](#intro).\n\n" +
+            "## Details\n\nSome details.\n\n" +
+            "# Usage\n\nMore [details](#details).\n\n" +
+            "# Usage\n\nSame title again.\n"
+
+    private File dir
+
+    @Override
+    protected void setUp() throws Exception {
+        this.dir = File.createTempFile( "site", "" )
+        this.dir.delete()
+        this.dir.mkdirs()
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.dir.deleteDir()
+    }
+
+    private void generate( int splitLevel ) {
+        generate( MARKDOWN, splitLevel )
+    }
+
+    private void generate( String markdown, int splitLevel ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, new ByteArrayInputStream( markdown.getBytes( "UTF-8" ) ), new Properties() )
+        new HTMLGenerator().generate( doc, new HTMLGeneratorOptions( resultFile: "site.html", splitLevel: splitLevel ),
+                this.dir )
+    }
+
+    private String page( String name ) {
+        new File( this.dir, name ).getText( "UTF-8" )
+    }
+
+    void testOnePagePerTopLevelHeader() throws Exception {
+        generate( 1 )
+
+        assertEquals( [ "site-1.html", "site-2.html", "site-3.html", "site.html" ], this.dir.list().sort() )
+        assertTrue( page( "site.html" ).contains( "Before the first chapter." ) )
+        assertTrue( !page( "site.html" ).contains( "Some details." ) )
+
+        String intro = page( "site-1.html" )
+        assertTrue( intro, intro.contains( "<H1 id=\"intro\">Intro</H1>" ) )
+        assertTrue( intro, intro.contains( "<H2 id=\"details\">Details</H2>" ) )
+        assertTrue( intro, !intro.contains( "More" ) )
+
+        // Links to headers on the same page are left as is, and links to other pages point to that page.
+        assertTrue( intro, intro.contains( "href='#details'" ) )
+        assertTrue( page( "site-2.html" ).contains( "href='site-1.html#details'" ) )
+        assertTrue( page( "site-3.html" ).contains( "<H1 id=\"usage-1\">Usage</H1>" ) )
+    }
+
+    void testAllPagesHaveTheSameTableOfContents() throws Exception {
+        generate( 2 )
+
+        assertEquals( 5, this.dir.list().length )
+        String toc = page( "site.html" )
+        toc = toc.substring( toc.indexOf( "<div class=\"toc\">" ), toc.indexOf( "</div>" ) )
+        [ "site-1.html#intro", "site-2.html#details", "site-3.html#usage", "site-4.html#usage-1" ].each {
+            String link -> assertTrue( toc, toc.contains( "<a href='${link}'>".toString() ) )
+        }
+        [ "site-1.html", "site-2.html", "site-3.html", "site-4.html" ].each { String name ->
+            assertTrue( name, page( name ).contains( toc ) )
+        }
+    }
+
+    void testNoSplitGivesOnePageWithoutIds() throws Exception {
+        generate( 0 )
+
+        assertEquals( [ "site.html" ], this.dir.list() as java.util.List )
+        assertTrue( page( "site.html" ).contains( "<H1>Intro</H1>" ) )
+        assertTrue( !page( "site.html" ).contains( "class=\"toc\"" ) )
+    }
+
+    private static int count( String text, String part ) {
+        int count = 0
+        int ix = text.indexOf( part )
+        while ( ix >= 0 ) {
+            ++count
+            ix = text.indexOf( part, ix + part.length() )
+        }
+        count
+    }
+
+    void testDivsOpenAcrossPagesAreClosedAndOpenedAgain() throws Exception {
+        generate( "<div class=\"outer\">\n\nBefore the first chapter.\n\n" +
+                "# Intro\n\n<div class=\"inner\">\n\nIntro text.\n\n" +
+                "# Usage\n\nUsage text.\n\n</div>\n\nAfter inner.\n\n</div>\n\n" +
+                "# Last\n\nLast text.\n", 1 )
+
+        [ "site.html", "site-1.html", "site-2.html", "site-3.html" ].each { String name ->
+            String page = page( name )
+            assertEquals( page, count( page, "<div" ), count( page, "</div>" ) )
+        }
+
+        String usage = page( "site-2.html" )
+        assertTrue( usage, usage.indexOf( "<div class=\"outer\">" ) < usage.indexOf( "<div class=\"inner\">" ) )
+        assertTrue( usage, usage.indexOf( "<div class=\"inner\">" ) < usage.indexOf( "Usage text." ) )
+        assertTrue( usage, usage.indexOf( "<div class=\"outer\">" ) < usage.indexOf( "After inner." ) )
+        assertTrue( page( "site-3.html" ), !page( "site-3.html" ).contains( "class=\"outer\"" ) )
+    }
+}
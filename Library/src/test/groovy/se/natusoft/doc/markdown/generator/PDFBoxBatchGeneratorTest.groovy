@@ -0,0 +1,94 @@
+package se.natusoft.doc.markdown.generator
+
+import groovy.transform.CompileStatic
+import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.text.PDFTextStripper
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+/**
+ * Tests PDFBoxBatchGenerator.
+ */
+@CompileStatic
+class PDFBoxBatchGeneratorTest extends GroovyTestCase {
+
+    private static final String MARKDOWN = "# First\n\nSome *text* in a paragraph that is long enough to be wrapped over " +
+            "more than one line when rendered on an A4 page with the default margins.\n\n" +
+            "## Second\n\n* one\n* two\n\n    some code\n\n> A quote.\n\n# Third\n\nThe end.\n"
+
+    private static Doc parse( String markdown ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, new ByteArrayInputStream( markdown.getBytes( "UTF-8" ) ), new Properties() )
+        doc
+    }
+
+    private static PDFGeneratorOptions options( String resultFile ) {
+        new PDFGeneratorOptions(
+                resultFile: resultFile,
+                generateTOC: true,
+                generateSectionNumbers: true,
+                generateTitlePage: true,
+                title: "Batch"
+        )
+    }
+
+    private static String text( byte[] pdf ) {
+        PDDocument document = PDDocument.load( pdf )
+        try {
+            new PDFTextStripper().getText( document )
+        }
+        finally {
+            document.close()
+        }
+    }
+
+    void testParallelGivesSameResultAsSequential() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream()
+        new PDFBoxGenerator().generate( parse( MARKDOWN ), options( "expected.pdf" ), null, expected )
+        String expectedText = text( expected.toByteArray() )
+
+        java.util.List<PDFBoxBatchGenerator.Job> jobs = []
+        java.util.List<ByteArrayOutputStream> results = []
+        8.times { int ix ->
+            ByteArrayOutputStream result = new ByteArrayOutputStream()
+            results << result
+            jobs << new PDFBoxBatchGenerator.Job(
+                    document: parse( MARKDOWN ),
+                    options: options( "result${ ix }.pdf" ),
+                    resultStream: result
+            )
+        }
+
+        new PDFBoxBatchGenerator( parallelism: 4 ).generate( jobs )
+
+        results.each { ByteArrayOutputStream result ->
+            assertEquals( expectedText, text( result.toByteArray() ) )
+        }
+    }
+
+    void testFailingJobIsReported() throws Exception {
+        ByteArrayOutputStream good = new ByteArrayOutputStream()
+        java.util.List<PDFBoxBatchGenerator.Job> jobs = [
+                new PDFBoxBatchGenerator.Job(
+                        document: parse( MARKDOWN ), options: options( "good.pdf" ), resultStream: good
+                ),
+                new PDFBoxBatchGenerator.Job(
+                        document: parse( MARKDOWN ),
+                        options: new PDFGeneratorOptions( resultFile: "bad.pdf", mss: "no/such/file.mss" ),
+                        resultStream: new ByteArrayOutputStream()
+                )
+        ]
+
+        try {
+            new PDFBoxBatchGenerator( parallelism: 2 ).generate( jobs )
+            fail( "Expected GenerateException!" )
+        }
+        catch ( GenerateException ge ) {
+            assertTrue( ge.message.contains( "bad.pdf" ) )
+        }
+
+        assertTrue( good.size() > 0 )
+    }
+}
@@ -0,0 +1,104 @@
+package se.natusoft.doc.markdown.generator
+
+import groovy.transform.CompileStatic
+import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode
+import org.apache.pdfbox.text.PDFTextStripper
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+/**
+ * Tests laying out the chapters of a PDF document in parallel.
+ */
+@CompileStatic
+class PDFBoxChapterTest extends GroovyTestCase {
+
+    private static String markdown( String first ) {
+        StringBuilder sb = new StringBuilder( first )
+        for ( int chapter = 1; chapter <= 4; chapter++ ) {
+            sb.append( "# Chapter ${ chapter }\n\n" )
+            for ( int section = 1; section <= 3; section++ ) {
+                sb.append( "## Section ${ chapter }.${ section }\n\n" )
+                for ( int paragraph = 0; paragraph < 12; paragraph++ ) {
+                    sb.append( "A paragraph that is long enough to be wrapped over more than one line when rendered " +
+                            "on an A4 page with the default margins.\n\n" )
+                }
+            }
+        }
+        sb.toString()
+    }
+
+    private static byte[] generate( String markdown, int chapterParallelism ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, new ByteArrayInputStream( markdown.getBytes( "UTF-8" ) ), new Properties() )
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream()
+        new PDFBoxGenerator().generate( doc, new PDFGeneratorOptions(
+                resultFile: "chapters.pdf",
+                generateTOC: true,
+                generateSectionNumbers: true,
+                generateTitlePage: true,
+                title: "Chapters",
+                chapterParallelism: chapterParallelism
+        ), null, pdf )
+        pdf.toByteArray()
+    }
+
+    private static java.util.List<String> pageTexts( PDDocument document ) {
+        java.util.List<String> texts = []
+        PDFTextStripper stripper = new PDFTextStripper()
+        // The page numbers of joined chapters are drawn last, so the text is compared in the order it is on the page.
+        stripper.sortByPosition = true
+        for ( int page = 1; page <= document.numberOfPages; page++ ) {
+            stripper.startPage = page
+            stripper.endPage = page
+            texts.add( stripper.getText( document ) )
+        }
+        texts
+    }
+
+    private static void outline( PDDocument document, PDOutlineNode node, String indent, java.util.List<String> entries ) {
+        for ( PDOutlineItem item : node.children() ) {
+            int page = item.destination instanceof PDPageDestination ?
+                    document.pages.indexOf( ( (PDPageDestination)item.destination ).page ) : -1
+            entries.add( "${ indent }${ item.title } -> ${ page }".toString() )
+            outline( document, item, indent + "  ", entries )
+        }
+    }
+
+    private static void assertSameDocument( String markdown ) {
+        PDDocument sequential = PDDocument.load( generate( markdown, 0 ) )
+        PDDocument parallel = PDDocument.load( generate( markdown, 4 ) )
+        try {
+            assertEquals( sequential.numberOfPages, parallel.numberOfPages )
+            assertEquals( pageTexts( sequential ), pageTexts( parallel ) )
+
+            java.util.List<String> sequentialOutline = []
+            outline( sequential, sequential.documentCatalog.documentOutline, "", sequentialOutline )
+            java.util.List<String> parallelOutline = []
+            outline( parallel, parallel.documentCatalog.documentOutline, "", parallelOutline )
+            assertEquals( sequentialOutline, parallelOutline )
+            assertTrue( parallelOutline.toString(), parallelOutline.size() > 16 )
+        }
+        finally {
+            sequential.close()
+            parallel.close()
+        }
+    }
+
+    void testChaptersGiveSameDocument() throws Exception {
+        assertSameDocument( markdown( "" ) )
+    }
+
+    void testShortFirstChapterGivesSameDocument() throws Exception {
+        // The second chapter does not start a new page after a first chapter that fits on the first page.
+        assertSameDocument( "Some text before the first chapter.\n\n" + markdown( "# Preface\n\nShort.\n\n" ) )
+    }
+
+    void testLateOptionsAnnotationGivesSameDocument() throws Exception {
+        assertSameDocument( markdown( "" ) + "<!--\n  @PDFHideLinks(true)\n-->\n\nSee [a link](http://a.link/).\n" )
+    }
+}
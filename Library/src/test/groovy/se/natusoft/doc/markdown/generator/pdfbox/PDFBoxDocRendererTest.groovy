@@ -0,0 +1,101 @@
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import org.apache.pdfbox.cos.COSArray
+import org.apache.pdfbox.cos.COSName
+import org.apache.pdfbox.cos.COSStream
+import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.pdmodel.PDPage
+import org.apache.pdfbox.text.PDFTextStripper
+import se.natusoft.doc.markdown.generator.PDFBoxGenerator
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+@CompileStatic
+class PDFBoxDocRendererTest extends GroovyTestCase {
+
+    private static final String MARKDOWN = "# Layers\n\nSome text.\n\n    A code block\n    with a box behind it.\n\n" +
+            "More text.\n"
+
+    private static byte[] generate(int maxMainMemoryMB) {
+        generate(MARKDOWN, maxMainMemoryMB)
+    }
+
+    private static byte[] generate(String markdown, int maxMainMemoryMB) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse(doc, new ByteArrayInputStream(markdown.getBytes("UTF-8")), new Properties())
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream()
+        new PDFBoxGenerator().generate(doc, new PDFGeneratorOptions(resultFile: "layers.pdf",
+                maxMainMemoryMB: maxMainMemoryMB), null, pdf)
+        pdf.toByteArray()
+    }
+
+    private static java.util.List<String> layerContents(PDPage page) {
+        COSArray contents = (COSArray)page.getCOSObject().getDictionaryObject(COSName.CONTENTS)
+        java.util.List<String> layers = []
+        for (int i = 0; i < contents.size(); i++) {
+            COSStream stream = (COSStream)contents.getObject(i)
+            layers.add(stream.createInputStream().getText("ISO-8859-1").trim())
+        }
+        layers
+    }
+
+    void testAllLayersAreContentStreamsOfOnePage() throws Exception {
+        PDDocument pdf = PDDocument.load(generate(-1))
+        try {
+            java.util.List<String> layers = layerContents(pdf.getPage(0))
+
+            // Background, middle and foreground, each starting out from the graphics state of a new page.
+            assertEquals(3, layers.size())
+            layers.each { String layer ->
+                assertTrue(layer, layer.startsWith("q"))
+                assertTrue(layer, layer.endsWith("Q"))
+            }
+            assertTrue(layers[1].contains("Tj"))
+        }
+        finally {
+            pdf.close()
+        }
+    }
+
+    void testScratchFileGivesSameContent() throws Exception {
+        PDDocument inMemory = PDDocument.load(generate(-1))
+        PDDocument scratchFile = PDDocument.load(generate(0))
+        try {
+            assertEquals(inMemory.numberOfPages, scratchFile.numberOfPages)
+            for (int i = 0; i < inMemory.numberOfPages; i++) {
+                assertEquals(layerContents(inMemory.getPage(i)), layerContents(scratchFile.getPage(i)))
+            }
+        }
+        finally {
+            inMemory.close()
+            scratchFile.close()
+        }
+    }
+
+    void testWordsOfALineAreShownTogether() throws Exception {
+        // One sentence, since the parser makes each sentence a text of its own.
+        String paragraph = ""
+        for (int i = 0; i < 40; i++) {
+            paragraph += "some words that wrap "
+        }
+        paragraph = "Start with ${paragraph.trim()}."
+        PDDocument pdf = PDDocument.load(generate("# Lines\n\n${paragraph}\n".toString(), -1))
+        try {
+            String text = new PDFTextStripper().getText(pdf)
+            // The lines after the heading, without the page number.
+            java.util.List<String> lines = text.readLines().findAll { String line -> line.contains(" ") }
+            assertTrue(lines.toString(), lines.size() > 5)
+            assertEquals(paragraph.trim(), lines.join(" ").replaceAll(" +", " ").trim())
+
+            // One text operation for the page number, one for the heading and one for each line of the paragraph.
+            String layer = layerContents(pdf.getPage(0))[1]
+            assertEquals(2 + lines.size(), layer.count("Tj"))
+        }
+        finally {
+            pdf.close()
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import org.apache.pdfbox.pdmodel.font.PDType1Font
+
+@CompileStatic
+class PDFBoxFontMetricsTest extends GroovyTestCase {
+
+    void testSameWidthAsPDFBox() throws Exception {
+        PDFBoxFontMetrics metrics = PDFBoxFontMetrics.forFont(PDType1Font.HELVETICA)
+        assert PDFBoxFontMetrics.forFont(PDType1Font.HELVETICA).is(metrics)
+
+        String text = "The quick brown fox jumps over the lazy dog. 0.0.0.0.0.0   "
+        assert metrics.stringWidth(text) == PDType1Font.HELVETICA.getStringWidth(text)
+        assert metrics.stringWidth(text, 4, 9) == PDType1Font.HELVETICA.getStringWidth("quick")
+        assert metrics.charWidth('.' as char) == PDType1Font.HELVETICA.getStringWidth(".")
+    }
+
+    void testUnencodableCharsAreMeasuredAsX() throws Exception {
+        PDFBoxFontMetrics metrics = PDFBoxFontMetrics.forFont(PDType1Font.COURIER)
+
+        float xWidth = PDType1Font.COURIER.getStringWidth("X")
+        assert metrics.charWidth('\u2603' as char) == xWidth
+        assert metrics.stringWidth("a\u2603b") == PDType1Font.COURIER.getStringWidth("a") + xWidth +
+                PDType1Font.COURIER.getStringWidth("b")
+    }
+}
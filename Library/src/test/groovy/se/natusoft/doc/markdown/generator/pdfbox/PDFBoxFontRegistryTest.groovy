@@ -0,0 +1,51 @@
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import org.apache.fontbox.ttf.TrueTypeFont
+
+@CompileStatic
+class PDFBoxFontRegistryTest extends GroovyTestCase {
+
+    private static File testFile(String path) {
+        File testFile = new File("src/test/resources/${path}") // Maven
+        if (!testFile.exists()) {
+            testFile = new File("Library/src/test/resources/${path}") // IntelliJ
+        }
+        testFile
+    }
+
+    void testFontProgramIsParsedOnce() throws Exception {
+        PDFBoxFontRegistry registry = new PDFBoxFontRegistry()
+        byte[] raleway = testFile("raleway/Raleway-Regular.ttf").bytes
+        byte[] tuffy = testFile("tuffy/Tuffy.ttf").bytes
+
+        TrueTypeFont first = registry.getFontProgram("raleway", raleway)
+        TrueTypeFont second = registry.getFontProgram("raleway", raleway)
+        assert first.is(second)
+        assert registry.size() == 1
+
+        // Same path but other content is a different font program.
+        TrueTypeFont other = registry.getFontProgram("raleway", tuffy)
+        assert !other.is(first)
+        assert registry.size() == 2
+
+        registry.clear()
+        assert registry.size() == 0
+    }
+
+    void testOnlyMostRecentlyUsedAreKept() throws Exception {
+        PDFBoxFontRegistry registry = new PDFBoxFontRegistry(2)
+        byte[] raleway = testFile("raleway/Raleway-Regular.ttf").bytes
+
+        TrueTypeFont a = registry.getFontProgram("a", raleway)
+        TrueTypeFont b = registry.getFontProgram("b", raleway)
+        assert registry.getFontProgram("a", raleway).is(a)
+        registry.getFontProgram("c", raleway)
+        assert registry.size() == 2
+
+        // "b" was least recently used, so it is parsed again.
+        assert registry.getFontProgram("a", raleway).is(a)
+        assert !registry.getFontProgram("b", raleway).is(b)
+        assert registry.size() == 2
+    }
+}
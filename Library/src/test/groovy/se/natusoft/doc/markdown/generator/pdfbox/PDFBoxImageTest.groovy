@@ -0,0 +1,108 @@
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+import org.apache.pdfbox.cos.COSName
+import org.apache.pdfbox.pdmodel.PDDocument
+import org.apache.pdfbox.pdmodel.PDPage
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject
+import se.natusoft.doc.markdown.generator.PDFBoxGenerator
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+import javax.imageio.ImageIO
+import java.awt.Color
+import java.awt.Graphics2D
+import java.awt.image.BufferedImage
+
+@CompileStatic
+class PDFBoxImageTest extends GroovyTestCase {
+
+    private static File resource( String name ) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File( "src/test/resources/" + name ) // Maven
+        if ( !file.exists() ) {
+            file = new File( "Library/src/test/resources/" + name ) // IntelliJ
+        }
+        file
+    }
+
+    private static File png() {
+        BufferedImage image = new BufferedImage( 40, 20, BufferedImage.TYPE_INT_RGB )
+        Graphics2D g = image.createGraphics()
+        g.color = Color.ORANGE
+        g.fillRect( 0, 0, 40, 20 )
+        g.dispose()
+
+        File file = File.createTempFile( "image", ".png" )
+        file.deleteOnExit()
+        ImageIO.write( image, "png", file )
+        file
+    }
+
+    private static PDDocument generate( String markdown ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, new ByteArrayInputStream( markdown.getBytes( "UTF-8" ) ), new Properties() )
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream()
+        new PDFBoxGenerator().generate( doc, new PDFGeneratorOptions( resultFile: "images.pdf" ), null, pdf )
+        PDDocument.load( pdf.toByteArray() )
+    }
+
+    private static java.util.List<PDImageXObject> images( PDDocument pdf ) {
+        java.util.List<PDImageXObject> images = []
+        for ( PDPage page : pdf.pages ) {
+            for ( COSName name : page.resources.XObjectNames ) {
+                images.add( (PDImageXObject)page.resources.getXObject( name ) )
+            }
+        }
+        images
+    }
+
+    void testJPEGIsEmbeddedAsIs() throws Exception {
+        File jpeg = resource( "tommy.jpg" )
+        PDDocument pdf = generate( "![tommy](file:${ jpeg.absolutePath })\n" )
+        try {
+            java.util.List<PDImageXObject> images = images( pdf )
+            assertEquals( 1, images.size() )
+            assertEquals( [ COSName.DCT_DECODE ], images[ 0 ].stream.filters )
+            assertTrue( Arrays.equals( jpeg.bytes, images[ 0 ].stream.createInputStream( [ "DCTDecode" ] ).bytes ) )
+        }
+        finally {
+            pdf.close()
+        }
+    }
+
+    void testDecodedImageIsReleasedWhenEmbedded() throws Exception {
+        PDFBoxImage image = new PDFBoxImage( png().bytes )
+        image.decode()
+        assertTrue( image.decoded )
+
+        PDDocument document = new PDDocument()
+        try {
+            assertEquals( 40, image.createXObject( document ).width )
+            assertFalse( image.decoded )
+            // Decoded again if needed.
+            assertEquals( 40, image.createXObject( document ).width )
+        }
+        finally {
+            document.close()
+        }
+    }
+
+    void testSameImageIsEmbeddedOnce() throws Exception {
+        String jpeg = "file:${ resource( "tommy.jpg" ).absolutePath }"
+        String png = "file:${ png().absolutePath }"
+        PDDocument pdf = generate( "![a](${ jpeg })\n\n![b](${ png })\n\n<!-- @PB -->\n\n![c](${ jpeg })\n\n" +
+                "![d](${ png })\n" )
+        try {
+            assertEquals( 2, pdf.numberOfPages )
+            java.util.List<PDImageXObject> images = images( pdf )
+            assertEquals( 4, images.size() )
+            assertEquals( 2, images.collect { PDImageXObject image -> image.COSObject }.unique( false ).size() )
+        }
+        finally {
+            pdf.close()
+        }
+    }
+}
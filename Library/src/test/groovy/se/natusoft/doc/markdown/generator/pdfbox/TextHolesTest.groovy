@@ -0,0 +1,65 @@
+package se.natusoft.doc.markdown.generator.pdfbox
+
+import groovy.transform.CompileStatic
+
+/**
+ * Tests TextHoles.
+ */
+@CompileStatic
+class TextHolesTest extends GroovyTestCase {
+
+    private static final TextHole LEFT = new TextHole( x: 50.0f, y: 100.0f, width: 100.0f, height: 200.0f )
+    private static final TextHole RIGHT = new TextHole( x: 300.0f, y: 250.0f, width: 100.0f, height: 100.0f )
+    private static final TextHole OVER_LEFT = new TextHole( x: 0.0f, y: 150.0f, width: 200.0f, height: 50.0f )
+
+    void testNoHoles() throws Exception {
+        assertTrue( TextHoles.NONE.isEmpty() )
+        assertNull( TextHoles.NONE.find( 100.0f, 200.0f ) )
+    }
+
+    void testFindsHoleAtCoordinates() throws Exception {
+        TextHoles holes = TextHoles.NONE.withHole( LEFT ).withHole( RIGHT )
+
+        // Inside and on the edges.
+        assertTrue( holes.find( 100.0f, 200.0f ).is( LEFT ) )
+        assertTrue( holes.find( 50.0f, 100.0f ).is( LEFT ) )
+        assertTrue( holes.find( 150.0f, 300.0f ).is( LEFT ) )
+        assertTrue( holes.find( 350.0f, 300.0f ).is( RIGHT ) )
+
+        // Beside, above and below.
+        assertNull( holes.find( 200.0f, 200.0f ) )
+        assertNull( holes.find( 100.0f, 99.0f ) )
+        assertNull( holes.find( 100.0f, 301.0f ) )
+        assertNull( holes.find( 350.0f, 200.0f ) )
+    }
+
+    void testFindsFirstAddedOfOverlappingHoles() throws Exception {
+        assertTrue( ( TextHoles.NONE.withHole( LEFT ).withHole( OVER_LEFT ) ).find( 100.0f, 175.0f ).is( LEFT ) )
+        assertTrue( ( TextHoles.NONE.withHole( OVER_LEFT ).withHole( LEFT ) ).find( 100.0f, 175.0f ).is( OVER_LEFT ) )
+        assertTrue( ( TextHoles.NONE.withHole( LEFT ).withHole( OVER_LEFT ) ).find( 25.0f, 175.0f ).is( OVER_LEFT ) )
+    }
+
+    void testFindsAgainOnOtherLine() throws Exception {
+        TextHoles holes = TextHoles.NONE.withHole( LEFT ).withHole( RIGHT )
+
+        // Line by line, and then back to an earlier line.
+        assertTrue( holes.find( 100.0f, 200.0f ).is( LEFT ) )
+        assertNull( holes.find( 350.0f, 200.0f ) )
+        assertTrue( holes.find( 350.0f, 260.0f ).is( RIGHT ) )
+        assertTrue( holes.find( 100.0f, 260.0f ).is( LEFT ) )
+        assertNull( holes.find( 100.0f, 320.0f ) )
+        assertTrue( holes.find( 350.0f, 320.0f ).is( RIGHT ) )
+        assertNull( holes.find( 350.0f, 200.0f ) )
+    }
+
+    void testAddingKeepsOriginal() throws Exception {
+        TextHoles left = TextHoles.NONE.withHole( LEFT )
+        TextHoles both = left.withHole( RIGHT )
+
+        assertEquals( 0, TextHoles.NONE.size() )
+        assertEquals( 1, left.size() )
+        assertEquals( 2, both.size() )
+        assertNull( left.find( 350.0f, 300.0f ) )
+        assertTrue( both.find( 350.0f, 300.0f ).is( RIGHT ) )
+    }
+}
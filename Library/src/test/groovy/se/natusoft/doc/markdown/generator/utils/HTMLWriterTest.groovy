@@ -0,0 +1,48 @@
+package se.natusoft.doc.markdown.generator.utils
+
+import groovy.transform.CompileStatic
+
+@CompileStatic
+class HTMLWriterTest extends GroovyTestCase {
+
+    private static String write( int bufferSize, Closure writing ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        HTMLWriter writer = new HTMLWriter( out, bufferSize )
+        writing.call( writer )
+        writer.close()
+        out.toString( "UTF-8" )
+    }
+
+    void testEncodesAsUTF8() throws Exception {
+        String text = "plain åäö € 😀 end"
+        [ 16, 17, 18, 19, 1024 ].each { int bufferSize ->
+            assertEquals( text, write( bufferSize ) { HTMLWriter writer -> writer.text( text ) } )
+            assertEquals( text, write( bufferSize ) { HTMLWriter writer -> writer.write( text ) } )
+        }
+    }
+
+    void testEscapes() throws Exception {
+        assertEquals( "a &lt;b&gt; &amp;&amp; ö",
+                write( 16 ) { HTMLWriter writer -> writer.escaped( "a <b> && ö" ) } )
+    }
+
+    void testIndentedLines() throws Exception {
+        String nl = System.lineSeparator()
+        assertEquals( "  a${nl}  ${nl}  b${nl}  c${nl}".toString(),
+                write( 16 ) { HTMLWriter writer -> writer.indentedLines( "a\r\n\nb\rc", 2 ) } )
+        assertEquals( "  a${nl}".toString(), write( 16 ) { HTMLWriter writer -> writer.indentedLines( "a\n", 2 ) } )
+    }
+
+    void testEncodedIsWrittenInOrder() throws Exception {
+        byte[] big = new byte[ 40 ]
+        Arrays.fill( big, (byte)'x'.charAt( 0 ) )
+        assertEquals( "ab" + ( "x" * 40 ) + "cd" + "xxxx",
+                write( 16 ) { HTMLWriter writer ->
+                    writer.text( "ab" )
+                    writer.encoded( big )
+                    writer.text( "cd" )
+                    writer.encoded( "xxxx".getBytes( "UTF-8" ) )
+                }
+        )
+    }
+}
@@ -0,0 +1,96 @@
+package se.natusoft.doc.markdown.generator.utils
+
+import groovy.transform.CompileStatic
+
+@CompileStatic
+class RemoteImageCacheTest extends GroovyTestCase {
+
+    private File dir
+
+    @Override
+    protected void setUp() throws Exception {
+        this.dir = File.createTempFile( "imageCache", "" )
+        this.dir.delete()
+        this.dir.mkdirs()
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.dir.deleteDir()
+    }
+
+    private File image( String name, int size ) {
+        File file = new File( this.dir, name )
+        byte[] data = new byte[ size ]
+        Arrays.fill( data, (byte)name.charAt( 0 ) )
+        file.bytes = data
+        file
+    }
+
+    void testFetchesOnceThenFromCache() throws Exception {
+        RemoteImageCache cache = new RemoteImageCache( cacheDir: new File( this.dir, "cache" ) )
+        URL url = image( "a.png", 10 ).toURI().toURL()
+
+        assertEquals( 10, cache.fetch( url ).length )
+        assertEquals( 10, cache.fetch( url ).length )
+        assertEquals( 1, cache.misses )
+        assertEquals( 1, cache.hits )
+    }
+
+    void testStaleImageIsUsedWhenOffline() throws Exception {
+        RemoteImageCache cache = new RemoteImageCache( cacheDir: new File( this.dir, "cache" ), refreshAfterMillis: 0 )
+        File source = image( "b.png", 20 )
+        URL url = source.toURI().toURL()
+        cache.fetch( url )
+
+        source.delete()
+
+        byte[] cached = cache.fetch( url )
+        assertEquals( 20, cached.length )
+        assertEquals( (char)'b', (char)cached[ 0 ] )
+    }
+
+    void testStaleImageIsNotFetchedAgainAfterFailure() throws Exception {
+        File cacheDir = new File( this.dir, "cache" )
+        RemoteImageCache cache = new RemoteImageCache( cacheDir: cacheDir, refreshAfterMillis: 60000L )
+        File source = image( "b.png", 20 )
+        URL url = source.toURI().toURL()
+        cache.fetch( url )
+        cacheDir.listFiles()[ 0 ].setLastModified( System.currentTimeMillis() - 120000L )
+
+        source.delete()
+        assertEquals( 20, cache.fetch( url ).length )
+
+        // Back online with new content, but the stale copy was made fresh by the failed fetch.
+        image( "b.png", 30 )
+        assertEquals( 20, cache.fetch( url ).length )
+        assertEquals( 1, cache.misses )
+        assertEquals( 2, cache.hits )
+    }
+
+    void testFailsWhenNotCachedAndOffline() throws Exception {
+        RemoteImageCache cache = new RemoteImageCache( cacheDir: new File( this.dir, "cache" ) )
+        try {
+            cache.fetch( new File( this.dir, "missing.png" ).toURI().toURL() )
+            fail( "Expected IOException!" )
+        }
+        catch ( IOException ignore ) {}
+    }
+
+    void testOldestImagesAreRemovedWhenFull() throws Exception {
+        File cacheDir = new File( this.dir, "cache" )
+        RemoteImageCache cache = new RemoteImageCache( cacheDir: cacheDir )
+        long fetchTime = System.currentTimeMillis() - 10000L
+        [ "c.png", "d.png", "e.png" ].each { String name ->
+            byte[] data = cache.fetch( image( name, 100 ).toURI().toURL() )
+            File cached = cacheDir.listFiles().find { File file -> file.bytes == data }
+            cached.setLastModified( fetchTime )
+            fetchTime += 2000L
+        }
+
+        cache.maxBytes = 250
+        cache.trim()
+
+        assertEquals( [ (char)'d', (char)'e' ], cacheDir.listFiles().collect { File file -> (char)file.bytes[ 0 ] }.sort() )
+    }
+}
@@ -33,4 +33,27 @@ class LineTest extends GroovyTestCase {
         assert result == "This is a test!"
     }
 
+    public void testWordsSameAsRegexpSplit() throws Exception {
+        ["", " ", "   ", "word", " leading", "trailing ", "  both  ", "many   spaces\tand\ttabs", "\f\u000Bodd\r"].each { String text ->
+            Line line = new Line(text, 0)
+            String[] expected = text.split("\\s+")
+
+            assert line.numberOfWords == expected.length
+            for (int i = 0; i < expected.length; i++) {
+                assert line.getWord(i) == expected[i]
+            }
+        }
+    }
+
+    public void testTrimBasedChecks() throws Exception {
+        Line line = new Line("  \tSome text -->  ", 0)
+
+        assert line.startsWithExcludingWhitespace("Some")
+        assert !line.startsWithExcludingWhitespace("text")
+        assert line.endsWithExcludingWhitespace("-->")
+        assert !new Line("-", 0).endsWithExcludingWhitespace("-->")
+        assert new Line(" \t ", 0).empty
+        assert !line.empty
+    }
+
 }
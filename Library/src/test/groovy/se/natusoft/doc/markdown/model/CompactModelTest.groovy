@@ -0,0 +1,106 @@
+package se.natusoft.doc.markdown.model
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.parser.MarkdownParser
+
+/**
+ * Tests DocItem.compact(...).
+ */
+@CompileStatic
+class CompactModelTest extends GroovyTestCase {
+
+    private static File resource( String name ) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File( "src/test/resources/" + name ) // Maven
+        if ( !file.exists() ) {
+            file = new File( "Library/src/test/resources/" + name ) // IntelliJ
+        }
+        file
+    }
+
+    private static void collect( DocItem item, java.util.List<DocItem> all ) {
+        all.add( item )
+        for ( int i = 0; i < item.items.size(); i++ ) {
+            collect( item.items.get( i ), all )
+        }
+    }
+
+    void testTextIsKeptWhenCompacted() throws Exception {
+        PlainText text = new PlainText()
+        "Some text".toCharArray().each { char c -> text << c }
+        text.addItem( " and more" )
+        PlainText empty = new PlainText()
+
+        Paragraph paragraph = new Paragraph()
+        paragraph.addItem( text )
+        paragraph.addItem( empty )
+
+        TextBuffer textBuffer = new TextBuffer()
+        paragraph.compact( textBuffer )
+        textBuffer.complete()
+
+        assertEquals( "Some text and more", text.text )
+        assertEquals( 18, text.textLength )
+        assertEquals( "", empty.text )
+        assertEquals( 18, textBuffer.length() )
+        assertEquals( 2, paragraph.items.size() )
+
+        text.addItem( "!" )
+        assertEquals( "Some text and more!", text.text )
+    }
+
+    void testItemsCanBeAddedAfterCompact() throws Exception {
+        Paragraph paragraph = new Paragraph()
+        paragraph.compact( new TextBuffer() )
+        assertTrue( paragraph.items.isEmpty() )
+
+        paragraph.addItem( new PlainText( text: "Added" ) )
+        assertEquals( 1, paragraph.items.size() )
+    }
+
+    void testItemsCanBeAddedToDirectly() throws Exception {
+        Paragraph paragraph = new Paragraph()
+        paragraph.items.add( new PlainText( text: "New" ) )
+        assertEquals( 1, paragraph.items.size() )
+
+        Paragraph compacted = new Paragraph()
+        compacted.compact( new TextBuffer() )
+        compacted.items.add( new PlainText( text: "Compacted" ) )
+        assertEquals( 1, compacted.items.size() )
+        assertTrue( new Paragraph().items.isEmpty() )
+    }
+
+    void testTextIsOnlyMadeOnceUntilChanged() throws Exception {
+        PlainText text = new PlainText( text: "Some" )
+        text.addItem( " text" )
+        TextBuffer textBuffer = new TextBuffer()
+        text.compact( textBuffer )
+        textBuffer.complete()
+
+        String first = text.text
+        assertEquals( "Some text", first )
+        assertTrue( first.is( text.text ) )
+
+        text << ( '!' as char )
+        assertEquals( "Some text!", text.text )
+        text.text = "Other"
+        assertEquals( "Other", text.text )
+    }
+
+    void testParsedDocumentIsCompacted() throws Exception {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, resource( "test.md" ), new Properties() )
+
+        java.util.List<DocItem> all = []
+        collect( doc, all )
+        int texts = 0
+        for ( DocItem item : all ) {
+            assertTrue( item.class.name, item.items.isEmpty() || item.items instanceof ArrayList )
+            if ( item instanceof PlainText ) {
+                assertEquals( ( (PlainText)item ).text.length(), ( (PlainText)item ).textLength )
+                ++texts
+            }
+        }
+        assertTrue( texts > 100 )
+    }
+}
@@ -98,4 +98,85 @@ class MSSTest extends GroovyTestCase {
         assert mmsExtFont.encoding == "ISO-8859-1"
     }
 
+    void testSameContentSharesCompiledStyles() throws Exception {
+        File testFile = new File("src/test/resources/test.mss") // Maven
+        if (!testFile.exists()) {
+            testFile = new File("Library/src/test/resources/test.mss") // IntelliJ
+        }
+
+        MSS mss1 = MSS.fromInputStream(new FileInputStream(testFile))
+        MSS mss2 = MSS.fromInputStream(new FileInputStream(testFile))
+        assert !mss1.is(mss2)
+        assert mss1.forDocument.getFont(MSS.MSS_Pages.h1).is(mss2.forDocument.getFont(MSS.MSS_Pages.h1))
+
+        mss1.currentDivs = ["qaz"] as LinkedList<String>
+        try {
+            assert mss1.forDocument.getFont(MSS.MSS_Pages.block_quote).family == "COURIER"
+            assert mss2.forDocument.getFont(MSS.MSS_Pages.block_quote).family == "HELVETICA"
+        }
+        finally {
+            mss1.currentDivs = null
+        }
+    }
+
+    void testNestedDivs() throws Exception {
+        File testFile = new File("src/test/resources/test.mss") // Maven
+        if (!testFile.exists()) {
+            testFile = new File("Library/src/test/resources/test.mss") // IntelliJ
+        }
+
+        MSS mss = MSS.fromInputStream(new FileInputStream(testFile))
+        MSS.ForDocument forDocument = mss.forDocument
+        float defaultLeftMargin = forDocument.getLeftMargin(MSS.MSS_Pages.standard)
+
+        mss.currentDivs = ["rat", "qaz"] as LinkedList<String>
+        assert forDocument.getFont(MSS.MSS_Pages.block_quote).family == "COURIER"
+        assert forDocument.getLeftMargin(MSS.MSS_Pages.standard) != defaultLeftMargin
+
+        mss.currentDivs = ["qaz"] as LinkedList<String>
+        assert forDocument.getFont(MSS.MSS_Pages.block_quote).family == "COURIER"
+        assert forDocument.getLeftMargin(MSS.MSS_Pages.standard) == defaultLeftMargin
+
+        mss.currentDivs = null
+        assert forDocument.getFont(MSS.MSS_Pages.block_quote).family == "HELVETICA"
+    }
+
+    void testUndefinedDivIsIgnored() throws Exception {
+        File testFile = new File("src/test/resources/test.mss") // Maven
+        if (!testFile.exists()) {
+            testFile = new File("Library/src/test/resources/test.mss") // IntelliJ
+        }
+
+        MSS mss = MSS.fromInputStream(new FileInputStream(testFile))
+        MSS.ForDocument forDocument = mss.forDocument
+
+        mss.currentDivs = ["undefined", "qaz"] as LinkedList<String>
+        assert forDocument.getFont(MSS.MSS_Pages.block_quote).family == "COURIER"
+        assert forDocument.getColorPair(MSS.MSS_Pages.block_quote).background == new MSSColor(color: "10:11:12")
+        mss.currentDivs = null
+    }
+
+    void testCurrentDivsArePerThread() throws Exception {
+        File testFile = new File("src/test/resources/test.mss") // Maven
+        if (!testFile.exists()) {
+            testFile = new File("Library/src/test/resources/test.mss") // IntelliJ
+        }
+
+        MSS mss = MSS.fromInputStream(new FileInputStream(testFile))
+        mss.currentDivs = ["qaz"] as LinkedList<String>
+        try {
+            String family = null
+            Thread other = new Thread({
+                family = mss.forDocument.getFont(MSS.MSS_Pages.block_quote).family
+            } as Runnable)
+            other.start()
+            other.join()
+
+            assert family == "HELVETICA"
+            assert mss.forDocument.getFont(MSS.MSS_Pages.block_quote).family == "COURIER"
+        }
+        finally {
+            mss.currentDivs = null
+        }
+    }
 }
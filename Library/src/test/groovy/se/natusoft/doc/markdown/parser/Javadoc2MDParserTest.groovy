@@ -0,0 +1,174 @@
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.model.DocItem
+import se.natusoft.doc.markdown.model.PlainText
+
+/**
+ * Tests Javadoc2MDParser.
+ */
+@CompileStatic
+class Javadoc2MDParserTest extends GroovyTestCase {
+
+    private static final String SOURCE =
+            "package se.natusoft.test;\n" +
+            "\n" +
+            "import java.util.List;\n" +
+            "\n" +
+            "/**\n" +
+            " * A tested class.\n" +
+            " * <p>\n" +
+            " * With two paragraphs.\n" +
+            " */\n" +
+            "public class Tested {\n" +
+            "\n" +
+            "    private int notDocumented;\n" +
+            "\n" +
+            "    /** A constant. */\n" +
+            "    public static final int VALUE = 1;\n" +
+            "\n" +
+            "    /**\n" +
+            "     * Does something.\n" +
+            "     *\n" +
+            "     * @param name The name.\n" +
+            "     * @return The result.\n" +
+            "     * @throws IllegalArgumentException on a bad name.\n" +
+            "     */\n" +
+            "    public String method(String name) throws IllegalArgumentException {\n" +
+            "        if (name == null) {\n" +
+            "            throw new IllegalArgumentException(\"/** not a comment\");\n" +
+            "        }\n" +
+            "        return name;\n" +
+            "    }\n" +
+            "}\n"
+
+    private static final String EXPECTED =
+            "Paragraph\n" +
+            "  PlainText 'public'\n" +
+            "  Emphasis 'class'\n" +
+            "  Strong 'Tested '\n" +
+            "  PlainText ' '\n" +
+            "  PlainText '[se.natusoft.test] {'\n" +
+            "BlockQuote\n" +
+            "  PlainText ' A tested class. '\n" +
+            "BlockQuote\n" +
+            "  PlainText 'With two paragraphs. '\n" +
+            "Paragraph\n" +
+            "  Strong 'public static final int VALUE = 1'\n" +
+            "BlockQuote\n" +
+            "  PlainText ' A constant. '\n" +
+            "Paragraph\n" +
+            "  Strong 'public String method(String name) throws IllegalArgumentException'\n" +
+            "BlockQuote\n" +
+            "  PlainText ' Does something.  '\n" +
+            "Paragraph\n" +
+            "  Emphasis 'Returns'\n" +
+            "BlockQuote\n" +
+            "  PlainText 'The result.'\n" +
+            "Paragraph\n" +
+            "  Emphasis 'Parameters'\n" +
+            "BlockQuote\n" +
+            "  Emphasis 'name'\n" +
+            "  PlainText '- The name. '\n" +
+            "Paragraph\n" +
+            "  Emphasis 'Throws'\n" +
+            "BlockQuote\n" +
+            "  Emphasis 'IllegalArgumentException'\n" +
+            "  PlainText '- on a bad name. '\n" +
+            "Paragraph\n" +
+            "  PlainText '}'\n" +
+            "HorizontalRule\n" +
+            "  PlainText '_______________________________________________________________'\n" +
+            "Paragraph\n" +
+            "  PlainText '    '\n"
+
+    private File dir
+
+    @Override
+    protected void setUp() throws Exception {
+        this.dir = File.createTempDir()
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.dir.deleteDir()
+    }
+
+    private File write( String name, String source ) {
+        File file = new File( this.dir, name )
+        file.setText( source, "UTF-8" )
+        file
+    }
+
+    private static void dump( DocItem item, String indent, StringBuilder sb ) {
+        sb.append( indent ).append( item.class.simpleName )
+        if ( item instanceof PlainText ) {
+            sb.append( " '" ).append( ( (PlainText)item ).text ).append( "'" )
+        }
+        sb.append( "\n" )
+        for ( int i = 0; i < item.items.size(); i++ ) {
+            dump( item.items.get( i ), indent + "  ", sb )
+        }
+    }
+
+    private static String dump( Doc doc ) {
+        StringBuilder sb = new StringBuilder()
+        for ( int i = 0; i < doc.items.size(); i++ ) {
+            dump( doc.items.get( i ), "", sb )
+        }
+        sb.toString()
+    }
+
+    private static void assertParseFile( DocItem item, File parseFile ) {
+        assertEquals( parseFile, item.parseFile )
+        for ( int i = 0; i < item.items.size(); i++ ) {
+            assertParseFile( item.items.get( i ), parseFile )
+        }
+    }
+
+    void testDeclarationsAndJavadoc() throws Exception {
+        File source = write( "Tested.java", SOURCE )
+        Doc doc = new Doc()
+        new Javadoc2MDParser().parse( doc, source, null )
+
+        assertEquals( EXPECTED, dump( doc ) )
+        for ( int i = 0; i < doc.items.size(); i++ ) {
+            assertParseFile( doc.items.get( i ), source )
+        }
+    }
+
+    void testStreamGivesSameAsFile() throws Exception {
+        Doc doc = new Doc()
+        new Javadoc2MDParser().parse( doc, new ByteArrayInputStream( SOURCE.getBytes( "UTF-8" ) ), null )
+
+        assertEquals( EXPECTED, dump( doc ) )
+    }
+
+    void testLineEndings() throws Exception {
+        for ( String lineEnd : [ "\r\n", "\r" ] ) {
+            Doc doc = new Doc()
+            new Javadoc2MDParser().parse( doc, write( "Tested.java", SOURCE.replace( "\n", lineEnd ) ), null )
+
+            assertEquals( EXPECTED, dump( doc ) )
+        }
+    }
+
+    void testParallelParseKeepsFileOrder() throws Exception {
+        java.util.List<File> files = []
+        for ( int i = 0; i < 8; i++ ) {
+            files.add( write( "Tested${ i }.java", SOURCE.replace( "Tested", "Tested${ i }" ) ) )
+        }
+
+        Doc sequential = new Doc()
+        new ParallelDocParser( parser: new Javadoc2MDParser() ).parse( sequential, files )
+        Doc parallel = new Doc()
+        new ParallelDocParser( parallelism: 4, parser: new Javadoc2MDParser() ).parse( parallel, files )
+
+        String parsed = dump( parallel )
+        assertEquals( dump( sequential ), parsed )
+        for ( int i = 1; i < 8; i++ ) {
+            assertTrue( parsed.indexOf( "Tested${ i - 1 } " ) < parsed.indexOf( "Tested${ i } " ) )
+        }
+    }
+}
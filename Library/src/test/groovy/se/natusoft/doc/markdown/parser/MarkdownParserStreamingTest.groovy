@@ -0,0 +1,140 @@
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.api.DocItemConsumer
+import se.natusoft.doc.markdown.api.GeneratorStream
+import se.natusoft.doc.markdown.api.Options
+import se.natusoft.doc.markdown.api.StreamingGenerator
+import se.natusoft.doc.markdown.exception.GenerateException
+import se.natusoft.doc.markdown.generator.HTMLGenerator
+import se.natusoft.doc.markdown.generator.MarkdownGenerator
+import se.natusoft.doc.markdown.generator.options.HTMLGeneratorOptions
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.model.DocItem
+import se.natusoft.doc.markdown.model.Link
+
+/**
+ * Tests the streaming mode of MarkdownParser together with the streaming generators.
+ */
+@CompileStatic
+class MarkdownParserStreamingTest extends GroovyTestCase {
+
+    private static File resource( String name ) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File( "src/test/resources/" + name ) // Maven
+        if ( !file.exists() ) {
+            file = new File( "Library/src/test/resources/" + name ) // IntelliJ
+        }
+        file
+    }
+
+    private static String generateFromDoc( StreamingGenerator generator, Options options, File source ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, source, new Properties() )
+
+        File result = new File( options.resultFile )
+        try {
+            generator.generate( doc, options, null )
+            result.getText( "UTF-8" )
+        }
+        finally {
+            result.delete()
+        }
+    }
+
+    private static String tempFile() {
+        File.createTempFile( "result", ".out" ).absolutePath
+    }
+
+    private static String generateStreamed( StreamingGenerator generator, Options options, File source ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        GeneratorStream stream = generator.generateStream( options, null, out )
+        new MarkdownParser().parse( source, new Properties(), stream )
+        stream.finish()
+        out.toString( "UTF-8" )
+    }
+
+    void testStreamedMarkdownSameAsFromDoc() throws Exception {
+        [ "test.md", "blogEntry.md", "Apache-2.0.md" ].each { String name ->
+            File source = resource( name )
+            Options options = new MarkdownGeneratorOptions( resultFile: tempFile() )
+            assertEquals( name, generateFromDoc( new MarkdownGenerator(), options, source ),
+                    generateStreamed( new MarkdownGenerator(), options, source ) )
+        }
+    }
+
+    void testStreamedHTMLSameAsFromDoc() throws Exception {
+        File source = resource( "test.md" )
+        Options options = new HTMLGeneratorOptions( css: "test.css", resultFile: tempFile() )
+        assertEquals( generateFromDoc( new HTMLGenerator(), options, source ),
+                generateStreamed( new HTMLGenerator(), options, source ) )
+    }
+
+    void testItemsWithReferenceLinksAreHeldUntilResolved() throws Exception {
+        String markdown = "First [ref] here.\n\nSecond paragraph.\n\n[ref]: http://a.link/\n\n" +
+                "Third paragraph.\n\nFourth paragraph.\n"
+
+        java.util.List<String> received = []
+        new MarkdownParser().parse( new ByteArrayInputStream( markdown.getBytes( "UTF-8" ) ), null,
+                new DocItemConsumer() {
+                    @Override
+                    void consume( DocItem docItem ) throws IOException, GenerateException {
+                        received.add( linkUrls( docItem ) )
+                    }
+                }
+        )
+
+        assertEquals( 4, received.size() )
+        assertEquals( "http://a.link/", received[ 0 ] )
+    }
+
+    void testItemsAfterUnresolvableLinkArePassedOnBeforeEndOfInput() throws Exception {
+        StringBuilder markdown = new StringBuilder( "Check [x] before merging.\n\n" )
+        5000.times { int i -> markdown.append( "Paragraph number ${i}.\n\n" ) }
+        ByteArrayInputStream input = new ByteArrayInputStream( markdown.toString().getBytes( "UTF-8" ) )
+
+        java.util.List<String> received = []
+        java.util.List<Integer> unreadWhenReceived = []
+        new MarkdownParser().parse( input, null, new DocItemConsumer() {
+            @Override
+            void consume( DocItem docItem ) throws IOException, GenerateException {
+                received.add( linkUrls( docItem ) )
+                unreadWhenReceived.add( input.available() )
+            }
+        } )
+
+        assertEquals( 5001, received.size() )
+        assertEquals( "", received[ 0 ] )
+        // The item with the link and the items after it are passed on when the hold back limit is reached.
+        assertTrue( unreadWhenReceived[ 1 ] > 0 )
+    }
+
+    void testItemsArePassedOnBeforeEndOfInput() throws Exception {
+        StringBuilder markdown = new StringBuilder()
+        5000.times { int i -> markdown.append( "Paragraph number ${i}.\n\n- item\n    - sub item\n\n" ) }
+        ByteArrayInputStream input = new ByteArrayInputStream( markdown.toString().getBytes( "UTF-8" ) )
+
+        java.util.List<Integer> unreadWhenReceived = []
+        new MarkdownParser().parse( input, null, new DocItemConsumer() {
+            @Override
+            void consume( DocItem docItem ) throws IOException, GenerateException {
+                unreadWhenReceived.add( input.available() )
+            }
+        } )
+
+        assertEquals( 10000, unreadWhenReceived.size() )
+        assertTrue( unreadWhenReceived.first() > 0 )
+    }
+
+    private static String linkUrls( DocItem docItem ) {
+        StringBuilder sb = new StringBuilder()
+        if ( docItem instanceof Link ) {
+            sb.append( ( (Link)docItem ).url )
+        }
+        if ( docItem.hasSubItems() ) {
+            docItem.items.each { DocItem item -> sb.append( linkUrls( item ) ) }
+        }
+        sb.toString()
+    }
+}
@@ -0,0 +1,133 @@
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.generator.MarkdownGenerator
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.util.Metrics
+
+/**
+ * Tests ParallelDocParser.
+ */
+@CompileStatic
+class ParallelDocParserTest extends GroovyTestCase {
+
+    private static File resource( String name ) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File( "src/test/resources/" + name ) // Maven
+        if ( !file.exists() ) {
+            file = new File( "Library/src/test/resources/" + name ) // IntelliJ
+        }
+        file
+    }
+
+    private static String toMarkdown( Doc doc ) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream()
+        new MarkdownGenerator().generate( doc, new MarkdownGeneratorOptions( resultFile: "test.md" ), null, result )
+        new String( result.toByteArray(), "UTF-8" )
+    }
+
+    private static Doc parse( int parallelism, java.util.List<File> files ) {
+        parse( parallelism, files, null )
+    }
+
+    private static Doc parse( int parallelism, java.util.List<File> files, ParseCache parseCache ) {
+        Doc doc = new Doc()
+        new ParallelDocParser( parallelism: parallelism, parseCache: parseCache ).parse( doc, files )
+        doc
+    }
+
+    void testParallelSameAsSequential() throws Exception {
+        java.util.List<File> files = [
+                resource( "test.md" ), resource( "blogEntry.md" ), resource( "Apache-2.0.md" ),
+                resource( "test.md" ), resource( "blogEntry.md" ), resource( "Apache-2.0.md" )
+        ]
+
+        String sequential = toMarkdown( parse( 1, files ) )
+        String parallel = toMarkdown( parse( 4, files ) )
+
+        assertTrue( sequential.contains( "Apache License" ) )
+        assertEquals( sequential, parallel )
+    }
+
+    void testReferenceLinkDefinedInOtherFile() throws Exception {
+        File dir = File.createTempDir()
+        try {
+            File uses = new File( dir, "uses.md" )
+            uses.text = "See [the site][site] for more.\n"
+            File defines = new File( dir, "defines.md" )
+            defines.text = "More text.\n\n[site]: http://www.example.com/\n"
+            java.util.List<File> files = [ uses, defines, uses, defines ]
+
+            String sequential = toMarkdown( parse( 1, files ) )
+            String parallel = toMarkdown( parse( 4, files ) )
+
+            assertTrue( sequential.contains( "http://www.example.com/" ) )
+            assertFalse( sequential.contains( "[site]:" ) )
+            assertEquals( sequential, parallel )
+        }
+        finally {
+            dir.deleteDir()
+        }
+    }
+
+    void testReferenceLinkDefinedInOtherCachedFile() throws Exception {
+        File dir = File.createTempDir()
+        try {
+            File uses = new File( dir, "uses.md" )
+            uses.text = "See [the site][site] for more.\n"
+            File defines = new File( dir, "defines.md" )
+            defines.text = "More text.\n\n[site]: http://www.example.com/\n"
+            java.util.List<File> files = [ defines, uses, defines ]
+            ParseCache parseCache = new ParseCache( cacheDir: new File( dir, "cache" ) )
+
+            String sequential = toMarkdown( parse( 1, files ) )
+            String first = toMarkdown( parse( 4, files, parseCache ) )
+            String second = toMarkdown( parse( 4, files, parseCache ) )
+
+            assertTrue( parseCache.hits > 0 )
+            assertTrue( sequential.contains( "http://www.example.com/" ) )
+            assertEquals( sequential, first )
+            assertEquals( sequential, second )
+        }
+        finally {
+            dir.deleteDir()
+        }
+    }
+
+    void testFilesWithOwnLinkURLsAreNotParsedAgain() throws Exception {
+        File dir = File.createTempDir()
+        Metrics metrics = new Metrics()
+        Metrics.current = metrics
+        try {
+            java.util.List<File> files = []
+            4.times { int i ->
+                File file = new File( dir, "file${i}.md" )
+                file.text = "Text with [a link][ref] in it.\n\n[ref]: http://www.example.com/${i}\n"
+                files.add( file )
+            }
+
+            String sequential = toMarkdown( parse( 1, files ) )
+            String parallel = toMarkdown( parse( 4, files ) )
+
+            assertTrue( sequential.contains( "http://www.example.com/3" ) )
+            assertEquals( sequential, parallel )
+            assertEquals( 0L, metrics.getCount( "parse.linkReparses" ) )
+        }
+        finally {
+            Metrics.current = null
+            dir.deleteDir()
+        }
+    }
+
+    void testFirstFailureInFileOrderIsReported() throws Exception {
+        try {
+            parse( 4, [ resource( "test.md" ), resource( "test.mss" ) ] )
+            fail( "Expected ParseException!" )
+        }
+        catch ( ParseException pe ) {
+            assertTrue( pe.file.endsWith( "test.mss" ) )
+        }
+    }
+}
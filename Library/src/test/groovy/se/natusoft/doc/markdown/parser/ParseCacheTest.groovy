@@ -0,0 +1,146 @@
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.generator.MarkdownGenerator
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+
+/**
+ * Tests ParseCache.
+ */
+@CompileStatic
+class ParseCacheTest extends GroovyTestCase {
+
+    private File cacheDir
+
+    private static File resource( String name ) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File( "src/test/resources/" + name ) // Maven
+        if ( !file.exists() ) {
+            file = new File( "Library/src/test/resources/" + name ) // IntelliJ
+        }
+        file
+    }
+
+    private static String toMarkdown( Doc doc ) {
+        File result = File.createTempFile( "result", ".md" )
+        try {
+            new MarkdownGenerator().generate( doc, new MarkdownGeneratorOptions( resultFile: result.absolutePath ), null )
+            result.getText( "UTF-8" )
+        }
+        finally {
+            result.delete()
+        }
+    }
+
+    private static String parseUncached( File file ) {
+        Doc doc = new Doc()
+        new MarkdownParser().parse( doc, file, new Properties() )
+        toMarkdown( doc )
+    }
+
+    @Override
+    void setUp() {
+        this.cacheDir = File.createTempFile( "parsecache", "" )
+        this.cacheDir.delete()
+        this.cacheDir.mkdirs()
+    }
+
+    @Override
+    void tearDown() {
+        this.cacheDir.listFiles().each { File file -> file.delete() }
+        this.cacheDir.delete()
+    }
+
+    void testHitGivesSameResult() throws Exception {
+        File source = resource( "test.md" )
+        ParseCache cache = new ParseCache( cacheDir: this.cacheDir )
+
+        String first = toMarkdown( cache.parse( source, new MarkdownParser(), new Properties() ) )
+        String second = toMarkdown( cache.parse( source, new MarkdownParser(), new Properties() ) )
+
+        assertEquals( 1, cache.hits )
+        assertEquals( 1, cache.misses )
+        assertEquals( parseUncached( source ), first )
+        assertEquals( first, second )
+    }
+
+    void testReferenceLinksOfCachedFileAreKnownByParser() throws Exception {
+        File uses = new File( this.cacheDir, "uses.md" )
+        uses.setText( "See [the site][site] for more.\n", "UTF-8" )
+        File defines = new File( this.cacheDir, "defines.md" )
+        defines.setText( "More text.\n\n[site]: http://www.example.com/\n", "UTF-8" )
+        ParseCache cache = new ParseCache( cacheDir: this.cacheDir )
+
+        Doc uncached = new Doc()
+        MarkdownParser parser = new MarkdownParser()
+        parser.parse( uncached, uses, null )
+        parser.parse( uncached, defines, null )
+
+        java.util.List<String> results = []
+        2.times {
+            Doc doc = new Doc()
+            MarkdownParser sharedParser = new MarkdownParser()
+            doc.addItems( cache.parse( uses, sharedParser, null ).items )
+            doc.addItems( cache.parse( defines, sharedParser, null ).items )
+            results.add( toMarkdown( doc ) )
+        }
+
+        // The url line depends on the link of the other file, so that file is never cached.
+        assertEquals( 1, cache.hits )
+        assertEquals( 3, cache.misses )
+        assertTrue( results[ 1 ], results[ 1 ].contains( "http://www.example.com/" ) )
+        assertEquals( toMarkdown( uncached ), results[ 0 ] )
+        assertEquals( results[ 0 ], results[ 1 ] )
+    }
+
+    void testChangedSourceIsReparsed() throws Exception {
+        File source = new File( this.cacheDir, "source.md" )
+        source.setText( "# Header\n\nSome text.\n", "UTF-8" )
+        ParseCache cache = new ParseCache( cacheDir: this.cacheDir )
+
+        cache.parse( source, new MarkdownParser(), null )
+        source.setText( "# Header\n\nOther text.\n", "UTF-8" )
+        String result = toMarkdown( cache.parse( source, new MarkdownParser(), null ) )
+
+        assertEquals( 0, cache.hits )
+        assertEquals( 2, cache.misses )
+        assertTrue( result, result.contains( "Other text." ) )
+    }
+
+    void testParserOptionsArePartOfKey() throws Exception {
+        File source = resource( "blogEntry.md" )
+        ParseCache cache = new ParseCache( cacheDir: this.cacheDir )
+        Properties options = new Properties()
+        options.setProperty( "someOption", "true" )
+
+        cache.parse( source, new MarkdownParser(), null )
+        cache.parse( source, new MarkdownParser(), options )
+        cache.parse( source, new MarkdownParser(), options )
+
+        assertEquals( 1, cache.hits )
+        assertEquals( 2, cache.misses )
+    }
+
+    void testCorruptCacheFileIsAMiss() throws Exception {
+        File source = resource( "test.md" )
+        ParseCache cache = new ParseCache( cacheDir: this.cacheDir )
+        String expected = toMarkdown( cache.parse( source, new MarkdownParser(), null ) )
+
+        File cacheFile = this.cacheDir.listFiles().find { File file -> file.name.endsWith( ".mdpc" ) }
+        byte[] content = cacheFile.bytes
+        content[ content.length - 10 ] = (byte)( content[ content.length - 10 ] ^ 0x55 )
+        cacheFile.bytes = content
+
+        assertEquals( expected, toMarkdown( cache.parse( source, new MarkdownParser(), null ) ) )
+        assertEquals( 2, cache.misses )
+
+        cacheFile.bytes = Arrays.copyOf( content, 20 )
+
+        assertEquals( expected, toMarkdown( cache.parse( source, new MarkdownParser(), null ) ) )
+        assertEquals( 3, cache.misses )
+
+        assertEquals( expected, toMarkdown( cache.parse( source, new MarkdownParser(), null ) ) )
+        assertEquals( 1, cache.hits )
+    }
+}
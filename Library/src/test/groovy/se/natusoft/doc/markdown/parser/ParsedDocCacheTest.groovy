@@ -0,0 +1,138 @@
+package se.natusoft.doc.markdown.parser
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.exception.ParseException
+import se.natusoft.doc.markdown.model.Doc
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Tests ParsedDocCache.
+ */
+@CompileStatic
+class ParsedDocCacheTest extends GroovyTestCase {
+
+    private File source
+
+    @Override
+    protected void setUp() throws Exception {
+        this.source = File.createTempFile( "source", ".md" )
+        this.source.setText( "# Title\n\nSome text.\n", "UTF-8" )
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.source.delete()
+    }
+
+    private Callable<Doc> parse( final AtomicInteger parses ) {
+        new Callable<Doc>() {
+            @Override
+            Doc call() throws Exception {
+                parses.incrementAndGet()
+                Doc doc = new Doc()
+                new MarkdownParser().parse( doc, ParsedDocCacheTest.this.source, new Properties() )
+                doc
+            }
+        }
+    }
+
+    void testSameFilesAreParsedOnce() throws Exception {
+        ParsedDocCache cache = new ParsedDocCache()
+        AtomicInteger parses = new AtomicInteger()
+
+        Doc first = cache.get( "markdown", [ this.source ], parse( parses ) )
+        Doc second = cache.get( "markdown", [ this.source ], parse( parses ) )
+        assertTrue( first.is( second ) )
+        assertEquals( 1, parses.get() )
+
+        cache.get( "other", [ this.source ], parse( parses ) )
+        assertEquals( 2, parses.get() )
+        assertEquals( 1, cache.hits )
+        assertEquals( 2, cache.misses )
+    }
+
+    void testChangedFileIsParsedAgain() throws Exception {
+        ParsedDocCache cache = new ParsedDocCache()
+        AtomicInteger parses = new AtomicInteger()
+
+        Doc first = cache.get( "markdown", [ this.source ], parse( parses ) )
+        this.source.setText( "# Title\n\nSome other text.\n", "UTF-8" )
+        this.source.setLastModified( this.source.lastModified() + 2000 )
+        Doc second = cache.get( "markdown", [ this.source ], parse( parses ) )
+
+        assertTrue( !first.is( second ) )
+        assertEquals( 2, parses.get() )
+    }
+
+    void testConcurrentRequestsWaitForOneParse() throws Exception {
+        final ParsedDocCache cache = new ParsedDocCache()
+        final AtomicInteger parses = new AtomicInteger()
+        final CountDownLatch start = new CountDownLatch( 1 )
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 )
+        try {
+            java.util.List<Future<Doc>> docs = []
+            for ( int i = 0; i < 8; i++ ) {
+                docs.add( executor.submit( new Callable<Doc>() {
+                    @Override
+                    Doc call() throws Exception {
+                        start.await()
+                        cache.get( "markdown", [ ParsedDocCacheTest.this.source ], parse( parses ) )
+                    }
+                } ) )
+            }
+            start.countDown()
+
+            Doc doc = docs[ 0 ].get()
+            for ( Future<Doc> other : docs ) {
+                assertTrue( other.get().is( doc ) )
+            }
+            assertEquals( 1, parses.get() )
+        }
+        finally {
+            executor.shutdown()
+        }
+    }
+
+    void testFailedParseIsNotKept() throws Exception {
+        ParsedDocCache cache = new ParsedDocCache()
+        try {
+            cache.get( "markdown", [ this.source ], new Callable<Doc>() {
+                @Override
+                Doc call() throws Exception {
+                    throw new ParseException( message: "Failed!" )
+                }
+            } )
+            fail( "Expected a ParseException!" )
+        }
+        catch ( ParseException pe ) {
+            assertTrue( pe.message, pe.message.startsWith( "Failed!" ) )
+        }
+
+        AtomicInteger parses = new AtomicInteger()
+        cache.get( "markdown", [ this.source ], parse( parses ) )
+        assertEquals( 1, parses.get() )
+    }
+
+    void testOnlyMostRecentlyUsedAreKept() throws Exception {
+        ParsedDocCache cache = new ParsedDocCache( maxEntries: 2 )
+        AtomicInteger parses = new AtomicInteger()
+
+        cache.get( "a", [ this.source ], parse( parses ) )
+        cache.get( "b", [ this.source ], parse( parses ) )
+        cache.get( "a", [ this.source ], parse( parses ) )
+        cache.get( "c", [ this.source ], parse( parses ) )
+        assertEquals( 3, parses.get() )
+
+        cache.get( "a", [ this.source ], parse( parses ) )
+        assertEquals( 3, parses.get() )
+        cache.get( "b", [ this.source ], parse( parses ) )
+        assertEquals( 4, parses.get() )
+    }
+}
@@ -0,0 +1,131 @@
+package se.natusoft.doc.markdown.util
+
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.generator.MarkdownGenerator
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
+
+@CompileStatic
+class DocWatcherTest extends GroovyTestCase {
+
+    private File root
+
+    private File result
+
+    private ByteArrayOutputStream log
+
+    private DocWatcher watcher
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp()
+        this.root = File.createTempFile("docWatcher", "")
+        this.root.delete()
+        new File(this.root, "docs").mkdirs()
+        write("docs/a.md", "# First\n\nSome text.\n")
+        write("docs/b.md", "# Second\n\nMore text.\n")
+
+        this.result = new File(this.root, "result.md")
+        this.log = new ByteArrayOutputStream()
+        this.watcher = new DocWatcher(fileSpec: new File(this.root, "docs/.*.md").path, quietMillis: 50,
+                log: new PrintStream(this.log, true))
+        this.watcher.addOutput(new MarkdownGenerator(), new MarkdownGeneratorOptions(resultFile: this.result.path))
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.root.deleteDir()
+        super.tearDown()
+    }
+
+    private void write(String path, String content) {
+        new File(this.root, path).setText(content, "UTF-8")
+    }
+
+    private String lastLogLine() {
+        this.log.toString("UTF-8").readLines().last()
+    }
+
+    void testOnlyChangedFilesAreParsed() throws Exception {
+        assertTrue(this.watcher.update())
+        assertEquals("2 of 2 files parsed.", lastLogLine().substring(lastLogLine().indexOf(",") + 2))
+        assertFalse(this.watcher.update())
+
+        write("docs/b.md", "# Second\n\nChanged text.\n")
+        assertTrue(this.watcher.update())
+        assertEquals("1 of 2 files parsed.", lastLogLine().substring(lastLogLine().indexOf(",") + 2))
+
+        String markdown = this.result.getText("UTF-8")
+        assertTrue(markdown, markdown.contains("Some text."))
+        assertTrue(markdown, markdown.contains("Changed text."))
+        assertTrue(markdown.indexOf("First") < markdown.indexOf("Second"))
+    }
+
+    void testAddedAndRemovedFilesAreHandled() throws Exception {
+        this.watcher.update()
+
+        write("docs/c.md", "# Third\n\nNew text.\n")
+        assertTrue(this.watcher.update())
+        assertTrue(this.result.getText("UTF-8").contains("New text."))
+
+        new File(this.root, "docs/a.md").delete()
+        assertTrue(this.watcher.update())
+        String markdown = this.result.getText("UTF-8")
+        assertTrue(markdown, !markdown.contains("Some text."))
+        assertTrue(markdown, markdown.contains("New text."))
+    }
+
+    private boolean waitFor(Closure<Boolean> condition, long timeout) {
+        while (!condition.call() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20)
+        }
+        condition.call()
+    }
+
+    void testWatchRegeneratesOnChange() throws Exception {
+        Thread watching = new Thread({ this.watcher.watch() } as Runnable)
+        watching.start()
+        try {
+            long timeout = System.currentTimeMillis() + 10000
+            while (!this.log.toString("UTF-8").contains("Watching") && System.currentTimeMillis() < timeout) {
+                Thread.sleep(20)
+            }
+
+            write("docs/a.md", "# First\n\nWatched text.\n")
+            while (!(this.result.exists() && this.result.getText("UTF-8").contains("Watched text.")) &&
+                    System.currentTimeMillis() < timeout) {
+                Thread.sleep(20)
+            }
+
+            assertTrue(this.result.getText("UTF-8").contains("Watched text."))
+        }
+        finally {
+            watching.interrupt()
+            watching.join(5000)
+        }
+        assertFalse(watching.isAlive())
+    }
+
+    void testWatchHandlesCreatedDirectories() throws Exception {
+        this.watcher = new DocWatcher(fileSpec: new File(this.root, "docs/**/.*.md").path, quietMillis: 50,
+                log: new PrintStream(this.log, true))
+        this.watcher.addOutput(new MarkdownGenerator(), new MarkdownGeneratorOptions(resultFile: this.result.path))
+
+        Thread watching = new Thread({ this.watcher.watch() } as Runnable)
+        watching.start()
+        try {
+            long timeout = System.currentTimeMillis() + 10000
+            assertTrue(waitFor({ this.log.toString("UTF-8").contains("Watching") }, timeout))
+
+            // The new file is only seen if the directories created before it are watched.
+            new File(this.root, "docs/sub/deeper").mkdirs()
+            Thread.sleep(500)
+            write("docs/sub/deeper/c.md", "# Third\n\nNew text.\n")
+            assertTrue(waitFor({ this.result.getText("UTF-8").contains("New text.") }, timeout))
+        }
+        finally {
+            watching.interrupt()
+            watching.join(5000)
+        }
+        assertFalse(watching.isAlive())
+    }
+}
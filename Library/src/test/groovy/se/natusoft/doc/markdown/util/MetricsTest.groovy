@@ -0,0 +1,113 @@
+package se.natusoft.doc.markdown.util
+
+import groovy.json.JsonSlurper
+import groovy.transform.CompileStatic
+import se.natusoft.doc.markdown.generator.MarkdownGenerator
+import se.natusoft.doc.markdown.generator.PDFBoxGenerator
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions
+import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions
+import se.natusoft.doc.markdown.model.Doc
+import se.natusoft.doc.markdown.parser.MarkdownParser
+import se.natusoft.doc.markdown.parser.ParallelDocParser
+
+@CompileStatic
+class MetricsTest extends GroovyTestCase {
+
+    private static File resource(String name) {
+        // Handle both IntelliJ and Maven who runs from different roots!
+        File file = new File("src/test/resources/" + name) // Maven
+        if (!file.exists()) {
+            file = new File("Library/src/test/resources/" + name) // IntelliJ
+        }
+        file
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Metrics.current = null
+        super.tearDown()
+    }
+
+    void testNothingIsRecordedWithoutCurrent() throws Exception {
+        Metrics.current = null
+        Metrics.time("parse", System.nanoTime())
+        Metrics.count("pages", 1)
+
+        OutputStream out = new ByteArrayOutputStream()
+        assertTrue(Metrics.countWritten(out, "bytesWritten").is(out))
+    }
+
+    void testRecordingIsInheritedByStartedThreads() throws Exception {
+        Metrics metrics = new Metrics()
+        Metrics.current = metrics
+
+        Thread worker = new Thread({ Metrics.count("pages", 2) } as Runnable)
+        worker.start()
+        worker.join()
+        Metrics.count("pages", 1)
+
+        assertEquals(3L, metrics.getCount("pages"))
+    }
+
+    void testReportOfRun() throws Exception {
+        Metrics metrics = new Metrics()
+        Metrics.current = metrics
+
+        File source = resource("test.md")
+        Doc document = new Doc()
+        new ParallelDocParser(parallelism: 2).parse(document, [source, resource("blogEntry.md")])
+
+        File result = File.createTempFile("metrics", ".md")
+        try {
+            new MarkdownGenerator().generate(document, new MarkdownGeneratorOptions(resultFile: result.path), null)
+            assertEquals(result.length(), metrics.getCount("bytesWritten"))
+        }
+        finally {
+            result.delete()
+        }
+
+        Map report = (Map)new JsonSlurper().parseText(metrics.toJSON())
+        Map phases = (Map)report.get("phases")
+        assertTrue(phases.containsKey("parse"))
+        assertTrue(phases.containsKey("markdown"))
+        assertEquals(1, ((Map)phases.get("parse")).get("runs"))
+        assertTrue(((Map)((Map)report.get("items")).get("parse")).containsKey(source.path))
+        assertEquals(source.length() + resource("blogEntry.md").length(),
+                ((Map)report.get("counters")).get("bytesRead") as long)
+
+        String summary = metrics.summary
+        assertTrue(summary, summary.contains("parse: "))
+        assertTrue(summary, summary.contains("bytesWritten: "))
+    }
+
+    void testBytesWrittenToStream() throws Exception {
+        Metrics metrics = new Metrics()
+        Metrics.current = metrics
+
+        Doc document = new Doc()
+        new MarkdownParser().parse(document, resource("test.md"), null)
+        ByteArrayOutputStream result = new ByteArrayOutputStream()
+        new MarkdownGenerator().generate(document, new MarkdownGeneratorOptions(resultFile: "test.md"), null, result)
+
+        assertTrue(result.size() > 0)
+        assertEquals((long)result.size(), metrics.getCount("bytesWritten"))
+    }
+
+    void testPDFPhasesAndPages() throws Exception {
+        Metrics metrics = new Metrics()
+        Metrics.current = metrics
+
+        Doc document = new Doc()
+        new MarkdownParser().parse(document, new ByteArrayInputStream("# Metrics\n\nSome text.\n".getBytes("UTF-8")),
+                new Properties())
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream()
+        new PDFBoxGenerator().generate(document, new PDFGeneratorOptions(resultFile: "metrics.pdf"), null, pdf)
+
+        assertTrue(metrics.getCount("pages") > 0)
+        assertEquals((long)pdf.size(), metrics.getCount("bytesWritten"))
+        Map phases = (Map)metrics.toMap().get("phases")
+        ["pdf", "pdf.layout", "pdf.save", "mss"].each { String phase ->
+            assertTrue(phase, phases.containsKey(phase))
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package se.natusoft.doc.markdown.util
+
+import groovy.transform.CompileStatic
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+@CompileStatic
+class SourcePathsTest extends GroovyTestCase {
+
+    private File root
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp()
+        this.root = File.createTempFile("sourcePaths", "")
+        this.root.delete()
+
+        file("b.md")
+        file("a.md")
+        file("notes.txt")
+        file("sub/d.md")
+        file("sub/c.md")
+        file("sub/deeper/e.md")
+        file("other/f.md")
+        new File(this.root, "set.fs").setText("# A file set\nother/f.md,\nsub/c.md\n", "UTF-8")
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.root.deleteDir()
+        super.tearDown()
+    }
+
+    private File file(String path) {
+        File file = new File(this.root, path)
+        file.parentFile.mkdirs()
+        file.setText("# ${path}\n", "UTF-8")
+        file
+    }
+
+    private java.util.List<String> relativePaths(java.util.List<File> files) {
+        int rootLength = this.root.absolutePath.length() + 1
+        files.collect { File file -> file.absolutePath.substring(rootLength).replace(File.separatorChar, '/' as char) }
+    }
+
+    void testDirectoryIsOrderedByName() throws Exception {
+        assertEquals(["a.md", "b.md"], relativePaths(new SourcePaths(this.root, ".*.md").getSourceFiles()))
+    }
+
+    void testRecursiveIsDepthFirstByName() throws Exception {
+        assertEquals(["a.md", "b.md", "other/f.md", "sub/c.md", "sub/d.md", "sub/deeper/e.md"],
+                relativePaths(new SourcePaths(this.root, "**/.*.md").getSourceFiles()))
+    }
+
+    void testLinkedDirectoryIsProvidedAtFirstPath() throws Exception {
+        java.util.List<Path> links = [
+                Files.createSymbolicLink(new File(this.root, "alink").toPath(), new File(this.root, "sub").toPath()),
+                Files.createSymbolicLink(new File(this.root, "zlink").toPath(), new File(this.root, "sub").toPath()),
+                Files.createSymbolicLink(new File(this.root, "sub/loop").toPath(), this.root.toPath())
+        ]
+        try {
+            10.times {
+                assertEquals(["a.md", "alink/c.md", "alink/d.md", "alink/deeper/e.md", "b.md", "other/f.md"],
+                        relativePaths(new SourcePaths(this.root, "**/.*.md").getSourceFiles()))
+            }
+        }
+        finally {
+            // Before tearDown() follows them.
+            links.each { Path link -> Files.delete(link) }
+        }
+    }
+
+        void testFileSetIsExpanded() throws Exception {
+        assertEquals(["other/f.md", "sub/c.md", "a.md"],
+                relativePaths(new SourcePaths(this.root, "set.fs, a.md").getSourceFiles()))
+    }
+
+    void testFileSetRelativeToItself() throws Exception {
+        // The paths of the file set are not relative to the given root, but to the file set.
+        File projRoot = this.root.parentFile
+        String fsPath = this.root.absolutePath + "/set.fs"
+        assertEquals(["other/f.md", "sub/c.md"],
+                relativePaths(new SourcePaths(projRoot, fsPath).getSourceFiles()))
+    }
+
+    void testMissingPathGivesNoFiles() throws Exception {
+        SourcePaths sourcePaths = new SourcePaths(this.root, "missing/**/.*.md")
+        assertFalse(sourcePaths.hasSourceFiles())
+        assertTrue(sourcePaths.getSourceFiles().isEmpty())
+    }
+}
@@ -50,14 +50,25 @@ import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions;
 import se.natusoft.doc.markdown.generator.options.PDFGeneratorOptions;
 import se.natusoft.doc.markdown.model.Doc;
 import se.natusoft.doc.markdown.parser.MarkdownParser;
-import se.natusoft.doc.markdown.parser.ParserProvider;
+import se.natusoft.doc.markdown.parser.ParallelDocParser;
+import se.natusoft.doc.markdown.parser.ParseCache;
+import se.natusoft.doc.markdown.parser.ParsedDocCache;
 import se.natusoft.doc.markdown.util.MDDocFileHandler;
+import se.natusoft.doc.markdown.util.Metrics;
 import se.natusoft.doc.markdown.util.SourcePaths;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Goal which touches a timestamp file.
@@ -65,10 +76,17 @@ import java.util.Properties;
  * @goal doc
  *
  * @phase generate-sources
+ *
+ * @threadSafe
  */
 @SuppressWarnings({"unused", "JavaDoc"})
 public class MarkdownDocMavenPlugin extends AbstractMojo {
 
+    /**
+     * Parse results shared by all executions of the build. Executions over the same unchanged files parse them once.
+     */
+    private static final ParsedDocCache parsedDocs = new ParsedDocCache();
+
     /**
      * Provides the options for which generator to run.
      *
@@ -132,7 +150,8 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
             throw new MojoExecutionException("Missing: <generatorOptions><generator>...</generator></generatorOptions>!");
         }
 
-        if (this.generatorOptions.getGenerator().trim().toLowerCase().equals("pdf")) {
+        List<String> generators = getGeneratorNames();
+        if (generators.contains("pdf")) {
             if (this.pdfGeneratorOptions == null) {
                 throw new MojoExecutionException("The PDF generator needs <pdfGeneratorOptions>...</pdfGeneratorOptions> configuration!");
             }
@@ -142,7 +161,7 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
                         "<pdfGeneratorOptions><resultFile>...</resultFile></pdfGeneratorOptions>!");
             }
         }
-        if (this.generatorOptions.getGenerator().trim().toLowerCase().equals("html")) {
+        if (generators.contains("html")) {
             if (this.htmlGeneratorOptions == null) {
                 throw new MojoExecutionException("The PDF generator needs <htmlGeneratorOptions>...</htmlGeneratorOptions> configuration!");
             }
@@ -153,8 +172,7 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
             }
 
         }
-        if ((this.generatorOptions.getGenerator().trim().toLowerCase().equals("md") ||
-                this.generatorOptions.getGenerator().trim().toLowerCase().equals("markdown"))) {
+        if (generators.contains("md") || generators.contains("markdown")) {
             if (this.mdGeneratorOptions == null) {
                 throw new MojoExecutionException("The PDF generator needs <mdGeneratorOptions>...</mdGeneratorOptions> configuration!");
             }
@@ -166,6 +184,19 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
         }
     }
 
+    /**
+     * Returns the names of the generators to run in lower case.
+     */
+    private List<String> getGeneratorNames() {
+        List<String> names = new ArrayList<>();
+        for (String name : this.generatorOptions.getGenerator().split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim().toLowerCase());
+            }
+        }
+        return names;
+    }
+
     /**
      * Executes this mojo.
      *
@@ -206,37 +237,86 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
             throw new MojoExecutionException("Unknown parser specified: '" + selParser + "'!");
         }
 
-        Options options = null;
-        String selGenerator = generatorOptions.getGenerator().toLowerCase();
-        Generator generator = GeneratorProvider.getGeneratorByName(selGenerator);
-        if (generator == null) {
-            throw new MojoExecutionException("Unknown generator: '" + selGenerator + "'!");
-        }
+        List<Generator> generators = new ArrayList<>();
+        List<Options> generatorsOptions = new ArrayList<>();
+        for (String selGenerator : getGeneratorNames()) {
+            Generator generator = GeneratorProvider.getGeneratorByName(selGenerator);
+            if (generator == null) {
+                throw new MojoExecutionException("Unknown generator: '" + selGenerator + "'!");
+            }
 
-        // Hmm ... We can't get around having an options model for a generator declared as a private member and
-        // plugin parameter. But with this reflection match we only need to add it above.
-        for (Field field : getClass().getDeclaredFields()) {
-            if (field.getType().equals(generator.getOptionsClass())) {
-                //noinspection EmptyCatchBlock
-                try {
-                    options = (Options)field.get(this);
-                    break;
+            // Hmm ... We can't get around having an options model for a generator declared as a private member and
+            // plugin parameter. But with this reflection match we only need to add it above.
+            Options options = null;
+            for (Field field : getClass().getDeclaredFields()) {
+                if (field.getType().equals(generator.getOptionsClass())) {
+                    //noinspection EmptyCatchBlock
+                    try {
+                        options = (Options)field.get(this);
+                        break;
+                    }
+                    catch (IllegalAccessException iae) {}
                 }
-                catch (IllegalAccessException iae) {}
             }
+
+            if (options == null) {
+                throw new MojoExecutionException("No options provided for " + generator.getOptionsClass().getSimpleName() + "!");
+            }
+            generators.add(generator);
+            generatorsOptions.add(options);
+        }
+
+        Metrics metrics = null;
+        File metricsReport = null;
+        String metricsReportPath = this.generatorOptions.getMetricsReport();
+        if (metricsReportPath != null && !metricsReportPath.trim().isEmpty()) {
+            metricsReport = new File(metricsReportPath.trim());
+            if (!metricsReport.isAbsolute()) {
+                metricsReport = new File(this.baseDir, metricsReportPath.trim());
+            }
+        }
+        if (metricsReport != null || this.generatorOptions.isMetricsSummary()) {
+            metrics = new Metrics();
         }
+        Metrics.setCurrent(metrics);
+        try {
+            executeStd(generators, generatorsOptions, parser);
 
-        if (options == null) {
-            throw new MojoExecutionException("No options provided for " + generator.getOptionsClass().getSimpleName() + "!");
+            if (metrics != null) {
+                if (metricsReport != null) {
+                    metrics.writeReport(metricsReport);
+                    getLog().info("Wrote metrics report: " + metricsReport);
+                }
+                if (this.generatorOptions.isMetricsSummary()) {
+                    getLog().info("Metrics:\n" + metrics.getSummary());
+                }
+            }
         }
+        catch (IOException ioe) {
+            throw new MojoExecutionException("Failed to write metrics report!", ioe);
+        }
+        finally {
+            Metrics.setCurrent(null);
+        }
+    }
 
+    /**
+     * Parses and generates.
+     *
+     * @param generators The generators to run.
+     * @param generatorsOptions The options of each generator.
+     * @param parser The parser to use for all files or null to select by file extension.
+     *
+     * @throws MojoExecutionException on failures.
+     */
+    private void executeStd(List<Generator> generators, List<Options> generatorsOptions, final Parser parser)
+            throws MojoExecutionException {
         // Parse
 
-        File projRoot = getRootDir();
-        Doc document = new Doc();
+        final File projRoot = getRootDir();
         SourcePaths sourcePaths = new SourcePaths(projRoot, generatorOptions.getInputPaths());
         String parserOptsStr = generatorOptions.getParserOptions();
-        Properties parserOptions = new Properties();
+        final Properties parserOptions = new Properties();
         if (parserOptsStr != null) {
             for (String parserOpt : parserOptsStr.split(",")) {
                 String[] nameValue = parserOpt.split("=");
@@ -244,20 +324,25 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
             }
         }
         if (sourcePaths.hasSourceFiles()) {
+            final Doc document;
             try {
                 getLog().info("Parsing the following files:");
-                for (File sourceFile : sourcePaths.getSourceFiles()) {
+                final List<File> sourceFiles = sourcePaths.getSourceFiles();
+                for (File sourceFile : sourceFiles) {
                     System.out.println("    " + sourceFile);
-                    Parser fileParser = parser;
-                    if (fileParser == null) {
-                        fileParser = ParserProvider.getParserForFile(sourceFile);
-                    }
-                    if (fileParser == null) {
-                        throw new MojoExecutionException("Don't know how to parse '" + sourceFile.getName() + "'!");
-                    }
-                    fileParser.parse(document, sourceFile, parserOptions);
                 }
+                // The parallelism is part of the key since it decides how the files are parsed.
+                String parserKey = (parser != null ? parser.getClass().getName() : "byExtension") +
+                        " parallelism=" + this.generatorOptions.getParseParallelism() +
+                        " options=" + new TreeMap<>(parserOptions);
+                document = parsedDocs.get(parserKey, sourceFiles, new Callable<Doc>() {
+                    @Override
+                    public Doc call() throws Exception {
+                        return parse(sourceFiles, parser, parserOptions);
+                    }
+                });
                 getLog().info("All parsed!");
+                getLog().info(parsedDocs.getStatistics());
             }
             catch (ParseException pe) {
                 throw new MojoExecutionException("Parse failure!", pe);
@@ -268,21 +353,32 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
 
             // Generate
 
-            try {
-                if (options.getResultFile().startsWith(projRoot.getAbsolutePath())) {
-                    System.out.println("Generating: " + options.getResultFile());
-                    generator.generate(document, options, null);
+            if (generators.size() == 1) {
+                generate(generators.get(0), generatorsOptions.get(0), document, projRoot);
+            }
+            else {
+                // The generators only read the document, so they can share it.
+                ExecutorService executor = Executors.newFixedThreadPool(generators.size());
+                try {
+                    List<Future<Void>> generations = new ArrayList<>();
+                    for (int i = 0; i < generators.size(); i++) {
+                        generations.add(executor.submit(generateTask(generators.get(i), generatorsOptions.get(i),
+                                document, projRoot)));
+                    }
+                    for (Future<Void> generation : generations) {
+                        generation.get();
+                    }
                 }
-                else {
-                    System.out.println("Generating: " + projRoot.getAbsolutePath() + File.separator + options.getResultFile());
-                    generator.generate(document, options, projRoot);
+                catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof MojoExecutionException) throw (MojoExecutionException)ee.getCause();
+                    throw new MojoExecutionException("Failed to generate!", ee.getCause());
+                }
+                catch (InterruptedException ie) {
+                    throw new MojoExecutionException("Interrupted while generating!", ie);
+                }
+                finally {
+                    executor.shutdownNow();
                 }
-            }
-            catch (GenerateException ge) {
-                throw new MojoExecutionException("Failed to generate html!", ge);
-            }
-            catch (IOException ioe) {
-                throw new MojoExecutionException("I/O problems when generating!", ioe);
             }
         }
         else {
@@ -290,6 +386,89 @@ public class MarkdownDocMavenPlugin extends AbstractMojo {
         }
     }
 
+    /**
+     * Parses the source files into a new document.
+     *
+     * @param sourceFiles The files to parse.
+     * @param parser The parser to use for all files or null to select by file extension.
+     * @param parserOptions The options to pass to the parsers.
+     *
+     * @throws IOException on failure to read files.
+     * @throws ParseException on parse failures.
+     */
+    private Doc parse(List<File> sourceFiles, Parser parser, Properties parserOptions) throws IOException, ParseException {
+        Doc document = new Doc();
+        ParallelDocParser docParser = new ParallelDocParser();
+        docParser.setParser(parser);
+        docParser.setParserOptions(parserOptions);
+        docParser.setParallelism(this.generatorOptions.getParseParallelism());
+        String parseCacheDir = this.generatorOptions.getParseCacheDir();
+        if (parseCacheDir != null && !parseCacheDir.trim().isEmpty()) {
+            File cacheDir = new File(parseCacheDir.trim());
+            if (!cacheDir.isAbsolute()) {
+                cacheDir = new File(this.baseDir, parseCacheDir.trim());
+            }
+            ParseCache parseCache = new ParseCache();
+            parseCache.setCacheDir(cacheDir);
+            docParser.setParseCache(parseCache);
+        }
+        docParser.parse(document, sourceFiles);
+        if (docParser.getParseCache() != null) {
+            getLog().info(docParser.getParseCache().getStatistics());
+        }
+
+        return document;
+    }
+
+    /**
+     * Returns a task that runs a generator.
+     *
+     * @param generator The generator to run.
+     * @param options The options of the generator.
+     * @param document The document to generate from.
+     * @param projRoot The root of the project.
+     */
+    private Callable<Void> generateTask(final Generator generator, final Options options, final Doc document,
+                                        final File projRoot) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                generate(generator, options, document, projRoot);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Runs a generator.
+     *
+     * @param generator The generator to run.
+     * @param options The options of the generator.
+     * @param document The document to generate from.
+     * @param projRoot The root of the project.
+     *
+     * @throws MojoExecutionException on failures.
+     */
+    private void generate(Generator generator, Options options, Doc document, File projRoot)
+            throws MojoExecutionException {
+        try {
+            if (options.getResultFile().startsWith(projRoot.getAbsolutePath())) {
+                System.out.println("Generating: " + options.getResultFile());
+                generator.generate(document, options, null);
+            }
+            else {
+                System.out.println("Generating: " + projRoot.getAbsolutePath() + File.separator + options.getResultFile());
+                generator.generate(document, options, projRoot);
+            }
+        }
+        catch (GenerateException ge) {
+            throw new MojoExecutionException("Failed to generate " + generator.getName() + "!", ge);
+        }
+        catch (IOException ioe) {
+            throw new MojoExecutionException("I/O problems when generating!", ioe);
+        }
+    }
+
     /**
      * Returns a File representing the directory whose parent directory does not have a pom.xml.
      * In other words, the root of a multi-module build.
@@ -0,0 +1,143 @@
+package se.natusoft.doc.markdowndoc;
+
+import junit.framework.TestCase;
+import se.natusoft.doc.markdown.generator.options.GeneratorOptions;
+import se.natusoft.doc.markdown.generator.options.MarkdownGeneratorOptions;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MarkdownDocMavenPluginTest extends TestCase {
+
+    private File baseDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.baseDir = Files.createTempDirectory("mojo").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.baseDir);
+        super.tearDown();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Writes markdown files that use reference links defined in the other files, so a parser shared with
+     * another execution mixes up the links.
+     */
+    private void writeSources(String name, int noFiles) throws Exception {
+        File dir = new File(this.baseDir, name);
+        dir.mkdirs();
+        for (int i = 0; i < noFiles; i++) {
+            StringBuilder md = new StringBuilder();
+            md.append("# ").append(name).append(" ").append(i).append("\n\n");
+            for (int j = 0; j < 50; j++) {
+                md.append("Text of ").append(name).append(" with [a link][ref").append(j).append("] in it.\n\n");
+            }
+            for (int j = 0; j < 50; j++) {
+                md.append("[ref").append(j).append("]: http://").append(name).append(".example.com/").append(j)
+                        .append("\n\n");
+            }
+            Files.write(new File(dir, "file" + i + ".md").toPath(), md.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private MarkdownDocMavenPlugin mojo(String name) throws Exception {
+        GeneratorOptions generatorOptions = new GeneratorOptions();
+        generatorOptions.setGenerator("md");
+        generatorOptions.setInputPaths(name + "/.*.md");
+        MarkdownGeneratorOptions mdGeneratorOptions = new MarkdownGeneratorOptions();
+        mdGeneratorOptions.setResultFile(name + ".md");
+
+        MarkdownDocMavenPlugin mojo = new MarkdownDocMavenPlugin();
+        set(mojo, "generatorOptions", generatorOptions);
+        set(mojo, "mdGeneratorOptions", mdGeneratorOptions);
+        set(mojo, "baseDir", this.baseDir.getAbsolutePath());
+        return mojo;
+    }
+
+    private static void set(Object target, String fieldName, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private String result(String name) throws Exception {
+        return new String(Files.readAllBytes(new File(this.baseDir, name + ".md").toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Changes the modification time of the sources so that the next execution parses them again instead of
+     * taking the document parsed by an earlier one.
+     */
+    private void touchSources(String name, long time) {
+        for (File file : new File(this.baseDir, name).listFiles()) {
+            file.setLastModified(time);
+        }
+    }
+
+    public void testConcurrentExecutionsSelectingParserByExtension() throws Exception {
+        final String[] names = {"one", "two"};
+        List<String> expected = new ArrayList<>();
+        for (String name : names) {
+            writeSources(name, 8);
+            mojo(name).execute();
+            expected.add(result(name));
+            assertTrue(expected.get(expected.size() - 1).contains("http://" + name + ".example.com/49"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(names.length);
+        try {
+            long time = System.currentTimeMillis() - 1000000L;
+            for (int round = 0; round < 10; round++) {
+                time += 2000L;
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<Void>> executions = new ArrayList<>();
+                for (final String name : names) {
+                    touchSources(name, time);
+                    final MarkdownDocMavenPlugin mojo = mojo(name);
+                    executions.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            start.await();
+                            mojo.execute();
+                            return null;
+                        }
+                    }));
+                }
+                start.countDown();
+                for (Future<Void> execution : executions) {
+                    execution.get();
+                }
+
+                for (int i = 0; i < names.length; i++) {
+                    assertEquals(expected.get(i), result(names[i]));
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}